@@ -0,0 +1,76 @@
+package simulizer.assembler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulizer.assembler.extractor.problem.StoreProblemLogger;
+import simulizer.assembler.representation.Program;
+import simulizer.utils.FileUtils;
+
+/**
+ * Measures assembling a small program (one of the integration tests, with annotations) and a large generated program
+ * of around five hundred lines (larger than any of the examples). Continuous assembly in the editor re-assembles the
+ * whole program after every edit. Assembling takes long enough (and grows quickly enough with the length of the program)
+ * that each assembly is timed individually
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AssemblerBenchmark {
+	private static final int LARGE_BLOCKS = 100;
+
+	@Param({ "small", "large" })
+	public String program;
+
+	private String source;
+
+	@Setup
+	public void setup() {
+		if (program.equals("small"))
+			source = FileUtils.getResourceContent("/simulizer/integration_tests/BubbleTest.s");
+		else
+			source = generateProgram(LARGE_BLOCKS);
+
+		// make sure the program is valid, otherwise the error handling is being measured
+		StoreProblemLogger log = new StoreProblemLogger();
+		if (Assembler.assemble(source, log, false) == null)
+			throw new IllegalStateException("benchmark program does not assemble: " + log.getProblems());
+	}
+
+	/**
+	 * @return a program with the given number of labelled blocks of arithmetic, memory and branch instructions
+	 */
+	private static String generateProgram(int blocks) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(".data\narray: .space 4096\n.text\nmain:\n    la $s0, array\n");
+		for (int i = 0; i < blocks; i++) {
+			sb.append("block").append(i).append(":\n");
+			sb.append("    addi $t0, $t0, ").append(i % 100).append('\n');
+			sb.append("    lw $t1, ").append((i % 1024) * 4).append("($s0)\n");
+			sb.append("    add $t1, $t1, $t0\n");
+			sb.append("    sw $t1, ").append((i % 1024) * 4).append("($s0)\n");
+			sb.append("    bne $t0, $zero, block").append((i + 1) % blocks).append('\n');
+		}
+		sb.append("    li $v0, 10\n    syscall\n");
+		return sb.toString();
+	}
+
+	@Benchmark
+	public Program assemble() {
+		return Assembler.assemble(source, new StoreProblemLogger(), false);
+	}
+}
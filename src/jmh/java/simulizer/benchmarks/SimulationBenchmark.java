@@ -0,0 +1,242 @@
+package simulizer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntFunction;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import simulizer.assembler.Assembler;
+import simulizer.assembler.extractor.problem.StoreProblemLogger;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUPipeline;
+import simulizer.simulation.cpu.user_interaction.BufferIO;
+import simulizer.simulation.messages.ProblemMessage;
+import simulizer.simulation.messages.SimulationListener;
+import simulizer.utils.FileUtils;
+
+/**
+ * Runs whole MIPS programs headlessly at full speed on both the non-pipelined and the pipelined CPU and reports how
+ * quickly the simulator gets through them. Unlike the JMH microbenchmarks, this measures everything involved in running
+ * a program: fetching, decoding, executing, syscalls and sending messages to the (empty) set of listeners.
+ *
+ * For each workload and CPU, reports the instructions retired per second, the bytes allocated per instruction and the
+ * wall time per run. The results are printed as a table and written as JSON (see gradle/benchmarks.gradle).
+ *
+ * usage: SimulationBenchmark [-warmup N] [-runs N] [-out FILE] [WORKLOAD[=SIZE]...]
+ *
+ * with no workloads given, every workload is run at its default size.
+ */
+public class SimulationBenchmark {
+	/**
+	 * A program to run, along with how to generate the input for a given problem size
+	 */
+	private static class Workload {
+		final String name;
+		final String resource;
+		final int defaultSize;
+		final IntFunction<String> input;
+
+		Workload(String name, String resource, int defaultSize, IntFunction<String> input) {
+			this.name = name;
+			this.resource = resource;
+			this.defaultSize = defaultSize;
+			this.input = input;
+		}
+	}
+
+	/**
+	 * the default sizes are chosen so that every workload takes a few seconds on each CPU. Pass larger sizes to
+	 * measure longer runs
+	 */
+	private static final Workload[] workloads = {
+		new Workload("loop", "/simulizer/benchmarks/loop.s", 10000, Integer::toString),
+		new Workload("fibonacci", "/simulizer/benchmarks/fibonacci.s", 15, Integer::toString),
+		new Workload("hanoi", "/simulizer/integration_tests/HanoiTest.s", 8, Integer::toString),
+		new Workload("bubble-sort", "/simulizer/integration_tests/BubbleTest.s", 50, SimulationBenchmark::reversedList),
+		new Workload("quick-sort", "/simulizer/benchmarks/quick-sort.s", 1000, Integer::toString),
+		new Workload("strings", "/simulizer/benchmarks/strings.s", 50, SimulationBenchmark::lines),
+		// each node takes 18 bytes of the 1MiB heap on average, so at most around 58000 nodes
+		new Workload("allocator", "/simulizer/benchmarks/allocator.s", 2000, Integer::toString),
+	};
+
+	/**
+	 * The results of running one workload on one CPU, averaged over the measured runs
+	 */
+	@SuppressWarnings("unused") // written by Gson
+	private static class Result {
+		String workload;
+		int size;
+		String cpu;
+		int runs;
+		long instructions;
+		long cycles;
+		double wallTimeMs;
+		double instructionsPerSecond;
+		double bytesPerInstruction;
+	}
+
+	/**
+	 * @return input for the bubble sort test: the number of values followed by the values in descending order (the
+	 *         worst case)
+	 */
+	private static String reversedList(int size) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(size).append('\n');
+		for (int i = size; i > 0; i--)
+			sb.append(i).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * @return input for the string processing workload: the number of lines followed by the lines
+	 */
+	private static String lines(int size) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(size).append('\n');
+		for (int i = 0; i < size; i++)
+			sb.append("The quick brown fox jumps over the lazy dog, line ").append(i).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by all of the live threads (the simulation sends messages to
+	 *         another thread, so the allocation of the current thread alone isn't enough)
+	 */
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			if (bytes > 0)
+				total += bytes;
+		return total;
+	}
+
+	private static Result run(Workload workload, int size, boolean pipelined, int warmup, int runs) {
+		String source = FileUtils.getResourceContent(workload.resource);
+		StoreProblemLogger log = new StoreProblemLogger();
+		Program program = Assembler.assemble(source, log, false);
+		if (program == null)
+			throw new IllegalStateException(workload.name + " does not assemble: " + log.getProblems());
+		String input = workload.input.apply(size);
+
+		BufferIO io = new BufferIO(input);
+		CPU cpu = pipelined ? new CPUPipeline(io) : new CPU(io);
+		cpu.setCycleFreq(0); // as fast as possible
+		// written by the message manager's threads, read here
+		final List<ProblemMessage> problems = new CopyOnWriteArrayList<>();
+		cpu.registerListener(new SimulationListener() {
+			@Override
+			public void processProblemMessage(ProblemMessage m) {
+				problems.add(m);
+			}
+		});
+
+		Result r = new Result();
+		r.workload = workload.name;
+		r.size = size;
+		r.cpu = pipelined ? "pipelined" : "non-pipelined";
+		r.runs = runs;
+
+		long totalTime = 0, totalBytes = 0;
+		for (int i = 0; i < warmup + runs; i++) {
+			io.feedInput(input);
+			cpu.loadProgram(program);
+
+			long bytesBefore = allocatedBytes();
+			long start = System.nanoTime();
+			cpu.runProgram();
+			long time = System.nanoTime() - start;
+			long bytes = allocatedBytes() - bytesBefore;
+
+			if (!problems.isEmpty())
+				throw new IllegalStateException(workload.name + " failed: " + problems.get(0).e);
+
+			if (i >= warmup) {
+				totalTime += time;
+				totalBytes += bytes;
+				// the program is deterministic so every run executes the same instructions
+				r.instructions = cpu.getInstructionsRetired();
+				r.cycles = cpu.getCycles();
+			}
+		}
+		cpu.shutdown();
+
+		double seconds = totalTime / 1e9;
+		r.wallTimeMs = seconds * 1000 / runs;
+		r.instructionsPerSecond = r.instructions * runs / seconds;
+		r.bytesPerInstruction = r.instructions == 0 ? 0 : (double) totalBytes / (r.instructions * runs);
+		return r;
+	}
+
+	private static Workload findWorkload(String name) {
+		for (Workload w : workloads)
+			if (w.name.equals(name))
+				return w;
+		throw new IllegalArgumentException("unknown workload: " + name);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int warmup = 1, runs = 3;
+		File out = null;
+		Map<Workload, Integer> selected = new LinkedHashMap<>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-warmup":
+					warmup = Integer.parseInt(args[++i]);
+					break;
+				case "-runs":
+					runs = Integer.parseInt(args[++i]);
+					break;
+				case "-out":
+					out = new File(args[++i]);
+					break;
+				default:
+					String[] parts = args[i].split("=", 2);
+					Workload w = findWorkload(parts[0]);
+					selected.put(w, parts.length == 2 ? Integer.parseInt(parts[1]) : w.defaultSize);
+			}
+		}
+		if (runs < 1)
+			throw new IllegalArgumentException("at least one measured run is required");
+		if (selected.isEmpty())
+			for (Workload w : workloads)
+				selected.put(w, w.defaultSize);
+
+		List<Result> results = new ArrayList<>();
+		System.out.println(String.format("%-12s %8s  %-14s %12s %14s %12s %12s",
+				"workload", "size", "cpu", "instructions", "instr/s", "bytes/instr", "wall ms"));
+		for (Map.Entry<Workload, Integer> e : selected.entrySet()) {
+			for (boolean pipelined : new boolean[] { false, true }) {
+				Result r = run(e.getKey(), e.getValue(), pipelined, warmup, runs);
+				results.add(r);
+				System.out.println(String.format("%-12s %8d  %-14s %12d %14.0f %12.1f %12.1f",
+						r.workload, r.size, r.cpu, r.instructions, r.instructionsPerSecond, r.bytesPerInstruction,
+						r.wallTimeMs));
+			}
+		}
+
+		if (out != null) {
+			File parent = out.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+			Gson g = new GsonBuilder().setPrettyPrinting().create();
+			try (Writer w = Files.newBufferedWriter(out.toPath(), StandardCharsets.UTF_8)) {
+				g.toJson(results, w);
+			}
+			System.out.println("results written to " + out);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package simulizer.simulation.cpu.components;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulizer.assembler.representation.Instruction;
+import simulizer.simulation.data.representation.DataConverter;
+import simulizer.simulation.data.representation.Word;
+import simulizer.simulation.exceptions.InstructionException;
+
+/**
+ * Measures the ALU operations used by most instructions (arithmetic, logic, shifts and branch comparisons)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ALUBenchmark {
+	@Param({ "add", "addu", "sub", "and", "sll", "slt", "beq", "mul", "div" })
+	public String instruction;
+
+	private Instruction op;
+	private Optional<Word> first, second;
+	private Optional<CPU> noCPU = Optional.empty();
+
+	@Setup
+	public void setup() {
+		op = Instruction.valueOf(instruction);
+		first = Optional.of(new Word(DataConverter.encodeAsSigned(123456)));
+		second = Optional.of(new Word(DataConverter.encodeAsSigned(-789)));
+	}
+
+	@Benchmark
+	public Word execute() throws InstructionException {
+		return ALU.execute(op, first, second, noCPU);
+	}
+}
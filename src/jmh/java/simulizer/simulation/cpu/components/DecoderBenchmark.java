@@ -0,0 +1,76 @@
+package simulizer.simulation.cpu.components;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulizer.assembler.representation.Instruction;
+import simulizer.assembler.representation.Register;
+import simulizer.assembler.representation.operand.AddressOperand;
+import simulizer.assembler.representation.operand.IntegerOperand;
+import simulizer.assembler.representation.operand.Operand;
+import simulizer.assembler.representation.operand.RegisterOperand;
+import simulizer.simulation.cpu.user_interaction.BufferIO;
+import simulizer.simulation.exceptions.DecodeException;
+import simulizer.simulation.instructions.InstructionFormat;
+
+/**
+ * Measures decoding an instruction of each common operand format. Decoding also sends a message to the (empty) list of
+ * simulation listeners, as it does when the simulation runs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DecoderBenchmark {
+	private CPU cpu;
+	private Decoder decoder;
+
+	private final List<Operand> registers = Arrays.asList(new RegisterOperand(Register.t0),
+			new RegisterOperand(Register.t1), new RegisterOperand(Register.t2));
+	private final List<Operand> immediate = Arrays.asList(new RegisterOperand(Register.t0),
+			new RegisterOperand(Register.t1), new IntegerOperand(42));
+	private final List<Operand> address = Arrays.asList(new RegisterOperand(Register.t0),
+			new AddressOperand(Optional.empty(), Optional.of(4), Optional.of(Register.sp)));
+
+	@Setup
+	public void setup() {
+		cpu = new CPU(new BufferIO());
+		decoder = new Decoder(cpu);
+	}
+
+	@TearDown
+	public void tearDown() {
+		cpu.shutdown();
+	}
+
+	@Benchmark
+	public InstructionFormat decodeRegisters() throws DecodeException {
+		return decoder.decode(Instruction.add, registers);
+	}
+
+	@Benchmark
+	public InstructionFormat decodeImmediate() throws DecodeException {
+		return decoder.decode(Instruction.addi, immediate);
+	}
+
+	@Benchmark
+	public InstructionFormat decodeAddress() throws DecodeException {
+		return decoder.decode(Instruction.lw, address);
+	}
+}
@@ -0,0 +1,86 @@
+package simulizer.simulation.cpu.components;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulizer.assembler.Assembler;
+import simulizer.simulation.cpu.user_interaction.BufferIO;
+import simulizer.simulation.exceptions.HeapException;
+import simulizer.simulation.exceptions.MemoryException;
+import simulizer.simulation.exceptions.StackException;
+
+/**
+ * Measures reading and writing a word in each segment of memory, both allocating a new array for each read (as
+ * instructions do) and reading into an existing buffer (as the memory view does)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MainMemoryBenchmark {
+	@Param({ "static", "heap", "stack" })
+	public String segment;
+
+	private CPU cpu;
+	private MainMemory memory;
+	private int address;
+	private final byte[] word = { 1, 2, 3, 4 };
+	private final byte[] buffer = new byte[4];
+
+	@Setup
+	public void setup() throws HeapException, MemoryException, StackException {
+		cpu = new CPU(new BufferIO());
+		cpu.loadProgram(Assembler.assemble(".data\nnums: .space 64\n.text\nmain: li $v0, 10\nsyscall\n", null, false));
+		memory = cpu.getMainMemory();
+
+		switch (segment) {
+			case "static":
+				address = memory.getStartOfStaticData().getValue() + 32;
+				break;
+			case "heap":
+				address = memory.getHeap().sbrk(64).getValue() + 32;
+				break;
+			case "stack":
+				address = memory.getTopOfStack().getValue() - 32;
+				break;
+			default:
+				throw new IllegalArgumentException(segment);
+		}
+		memory.writeToMem(address, word); // the stack grows on the first write
+	}
+
+	@TearDown
+	public void tearDown() {
+		cpu.shutdown();
+	}
+
+	@Benchmark
+	public byte[] read() throws HeapException, MemoryException, StackException {
+		return memory.readFromMem(address, 4);
+	}
+
+	@Benchmark
+	public byte[] readIntoBuffer() throws HeapException, MemoryException, StackException {
+		memory.readFromMem(address, buffer, 0, 4);
+		return buffer;
+	}
+
+	@Benchmark
+	public void write() throws HeapException, MemoryException, StackException {
+		memory.writeToMem(address, word);
+	}
+}
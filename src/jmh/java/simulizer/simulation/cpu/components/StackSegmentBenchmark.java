@@ -0,0 +1,46 @@
+package simulizer.simulation.cpu.components;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulizer.simulation.exceptions.StackException;
+
+/**
+ * Measures growing a new stack by pushing words onto it (as deep recursion does), which reallocates and copies the
+ * stack each time it runs out of space
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StackSegmentBenchmark {
+	private static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+	/**
+	 * the number of bytes pushed onto the stack
+	 */
+	@Param({ "1024", "65536", "1048576" })
+	public int depth;
+
+	private final byte[] word = { 1, 2, 3, 4 };
+
+	@Benchmark
+	public StackSegment push() throws StackException {
+		StackSegment stack = new StackSegment(MAX_LENGTH);
+		for (int address = -4; address >= -depth; address -= 4)
+			stack.setBytes(address, word);
+		return stack;
+	}
+}
@@ -0,0 +1,49 @@
+package simulizer.simulation.data.representation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures converting between values and the bytes stored in registers and memory, which happens several times per
+ * instruction
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DataConverterBenchmark {
+	// not final so that the conversions can't be constant folded
+	private long value = -123456789;
+	private byte[] bytes = DataConverter.encodeAsSigned(value);
+
+	@Benchmark
+	public byte[] encodeAsSigned() {
+		return DataConverter.encodeAsSigned(value);
+	}
+
+	@Benchmark
+	public byte[] encodeAsUnsigned() {
+		return DataConverter.encodeAsUnsigned(value & 0xFFFFFFFFL);
+	}
+
+	@Benchmark
+	public long decodeAsSigned() {
+		return DataConverter.decodeAsSigned(bytes);
+	}
+
+	@Benchmark
+	public long decodeAsUnsigned() {
+		return DataConverter.decodeAsUnsigned(bytes);
+	}
+}
@@ -0,0 +1,69 @@
+package simulizer.simulation.messages;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulizer.simulation.cpu.user_interaction.BufferIO;
+import simulizer.simulation.messages.StageEnterMessage.Stage;
+
+/**
+ * Measures how many messages per second the message manager can deliver to its listeners, including waiting for them
+ * all to be processed (as the CPU does at the end of every cycle)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MessageManagerBenchmark {
+	private static final int MESSAGES = 1000;
+
+	@Param({ "0", "1", "4" })
+	public int listeners;
+
+	private MessageManager manager;
+	private final AtomicLong received = new AtomicLong();
+	private final Message message = new StageEnterMessage(Stage.Execute);
+
+	@Setup
+	public void setup() {
+		manager = new MessageManager(new BufferIO());
+		for (int i = 0; i < listeners; i++) {
+			manager.registerListener(new SimulationListener() {
+				@Override
+				public void processStageEnterMessage(StageEnterMessage m) {
+					received.incrementAndGet();
+				}
+			});
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		manager.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public long sendAndWait() {
+		for (int i = 0; i < MESSAGES; i++)
+			manager.sendMessage(message);
+		manager.waitForAll();
+		return received.get();
+	}
+}
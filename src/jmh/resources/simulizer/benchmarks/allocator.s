@@ -0,0 +1,66 @@
+# benchmark workload: heap-heavy allocation with sbrk
+#
+# builds a linked list where each node points to a separately allocated block of between 1 and 4 words,
+# then walks the list summing the blocks. Each node takes 18 bytes of the heap on average.
+#
+# input: the number of nodes
+# output: the sum of the blocks
+
+.data
+total: .asciiz "sum: "
+
+.text
+main:
+    li $v0, 5               # read the number of nodes
+    syscall
+    move $s0, $v0
+
+    li $s1, 0               # head of the list
+    li $t0, 0               # i
+build:
+    bge $t0, $s0, built
+
+    li $a0, 8               # node: { block, next }
+    li $v0, 9
+    syscall
+    move $t1, $v0
+    sw $s1, 4($t1)
+    move $s1, $t1
+
+    andi $t2, $t0, 3        # block of (i % 4) + 1 words
+    addi $t2, $t2, 1
+    sll $a0, $t2, 2
+    li $v0, 9
+    syscall
+    sw $v0, 0($t1)
+
+    move $t3, $v0           # fill the block with i
+fill:
+    blez $t2, filled
+    sw $t0, 0($t3)
+    addi $t3, $t3, 4
+    addi $t2, $t2, -1
+    j fill
+filled:
+    addi $t0, $t0, 1
+    j build
+
+built:
+    li $t4, 0               # sum
+walk:
+    beqz $s1, walked
+    lw $t1, 0($s1)
+    lw $t2, 0($t1)
+    addu $t4, $t4, $t2
+    lw $s1, 4($s1)
+    j walk
+
+walked:
+    li $v0, 4
+    la $a0, total
+    syscall
+    li $v0, 1
+    move $a0, $t4
+    syscall
+    li $v0, 10
+    syscall
@@ -0,0 +1,51 @@
+# benchmark workload: naive recursive fibonacci, dominated by calls and stack accesses
+#
+# input: n
+# output: fib(n)
+
+.data
+result: .asciiz "fib(n) = "
+
+.text
+main:
+    li $v0, 5               # read n
+    syscall
+    move $a0, $v0
+    jal fib
+    move $s0, $v0
+
+    li $v0, 4
+    la $a0, result
+    syscall
+    li $v0, 1
+    move $a0, $s0
+    syscall
+    li $v0, 10
+    syscall
+
+# fib(n) = n < 2 ? n : fib(n-1) + fib(n-2)
+fib:
+    li $t0, 2
+    blt $a0, $t0, fib_base
+
+    addi $sp, $sp, -12
+    sw $ra, 8($sp)
+    sw $a0, 4($sp)
+
+    addi $a0, $a0, -1
+    jal fib
+    sw $v0, 0($sp)          # fib(n-1)
+
+    lw $a0, 4($sp)
+    addi $a0, $a0, -2
+    jal fib
+    lw $t1, 0($sp)
+    addu $v0, $v0, $t1
+
+    lw $ra, 8($sp)
+    addi $sp, $sp, 12
+    jr $ra
+
+fib_base:
+    move $v0, $a0
+    jr $ra
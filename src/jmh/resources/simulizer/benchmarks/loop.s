@@ -0,0 +1,37 @@
+# benchmark workload: a tight integer loop
+#
+# input: the number of iterations
+# output: a checksum of the values computed by the loop
+
+.data
+checksum: .asciiz "checksum: "
+
+.text
+main:
+    li $v0, 5               # read the number of iterations
+    syscall
+    move $s0, $v0
+
+    li $t0, 0               # i
+    li $t1, 1               # accumulator
+loop:
+    bge $t0, $s0, done
+    sll $t2, $t1, 3         # acc = (acc * 9) ^ i
+    addu $t1, $t1, $t2
+    xor $t1, $t1, $t0
+    andi $t3, $t0, 7        # every eighth iteration: acc += i
+    bne $t3, $zero, next
+    addu $t1, $t1, $t0
+next:
+    addi $t0, $t0, 1
+    j loop
+
+done:
+    li $v0, 4
+    la $a0, checksum
+    syscall
+    li $v0, 1
+    move $a0, $t1
+    syscall
+    li $v0, 10
+    syscall
@@ -0,0 +1,109 @@
+# benchmark workload: quick sort over a large array of pseudo-random values on the heap
+#
+# input: the number of values to sort
+# output: whether the array was sorted
+
+.data
+sorted:   .asciiz "sorted\n"
+unsorted: .asciiz "NOT SORTED\n"
+
+.text
+main:
+    li $v0, 5               # read the number of values
+    syscall
+    move $s0, $v0
+
+    sll $a0, $s0, 2         # allocate the array
+    li $v0, 9
+    syscall
+    move $s1, $v0
+
+    # fill the array using a linear congruential generator
+    li $t0, 0               # i
+    li $t1, 12345           # seed
+    li $t4, 69069           # multiplier
+fill:
+    bge $t0, $s0, fill_done
+    mul $t1, $t1, $t4
+    addiu $t1, $t1, 12345
+    srl $t2, $t1, 8         # keep the values positive
+    sll $t3, $t0, 2
+    addu $t3, $t3, $s1
+    sw $t2, 0($t3)
+    addi $t0, $t0, 1
+    j fill
+
+fill_done:
+    move $a0, $s1           # the address of the first value
+    addi $t0, $s0, -1
+    sll $t0, $t0, 2
+    addu $a1, $s1, $t0      # the address of the last value
+    jal quicksort
+
+    # check that the array is sorted
+    li $t0, 1
+check:
+    bge $t0, $s0, ok
+    sll $t3, $t0, 2
+    addu $t3, $t3, $s1
+    lw $t5, -4($t3)
+    lw $t6, 0($t3)
+    bgt $t5, $t6, bad
+    addi $t0, $t0, 1
+    j check
+
+ok:
+    la $a0, sorted
+    j finish
+bad:
+    la $a0, unsorted
+finish:
+    li $v0, 4
+    syscall
+    li $v0, 10
+    syscall
+
+# quicksort(lo, hi) sorts the words between the addresses lo and hi (inclusive)
+# using the Lomuto partition scheme with the last value as the pivot
+quicksort:
+    bge $a0, $a1, qs_return
+
+    addi $sp, $sp, -16
+    sw $ra, 12($sp)
+    sw $a0, 8($sp)
+    sw $a1, 4($sp)
+
+    lw $t0, 0($a1)          # pivot
+    move $t1, $a0           # where the next value <= pivot goes
+    move $t2, $a0           # j
+partition:
+    bge $t2, $a1, partition_done
+    lw $t3, 0($t2)
+    bgt $t3, $t0, partition_next
+    lw $t4, 0($t1)          # swap
+    sw $t3, 0($t1)
+    sw $t4, 0($t2)
+    addi $t1, $t1, 4
+partition_next:
+    addi $t2, $t2, 4
+    j partition
+
+partition_done:
+    lw $t4, 0($t1)          # move the pivot into place
+    sw $t0, 0($t1)
+    sw $t4, 0($a1)
+    sw $t1, 0($sp)
+
+    lw $a0, 8($sp)          # quicksort(lo, p-1)
+    addi $a1, $t1, -4
+    jal quicksort
+
+    lw $t1, 0($sp)          # quicksort(p+1, hi)
+    addi $a0, $t1, 4
+    lw $a1, 4($sp)
+    jal quicksort
+
+    lw $ra, 12($sp)
+    addi $sp, $sp, 16
+qs_return:
+    jr $ra
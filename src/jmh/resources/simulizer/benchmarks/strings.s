@@ -0,0 +1,83 @@
+# benchmark workload: string processing with syscalls
+#
+# input: the number of lines, then that many lines of text
+# output: each line reversed and in upper case, followed by its length
+
+.data
+buffer:  .space 256
+newline: .asciiz "\n"
+space:   .asciiz " "
+
+.text
+main:
+    li $v0, 5               # read the number of lines
+    syscall
+    move $s0, $v0
+    li $v0, 8               # skip the rest of the first line
+    la $a0, buffer
+    li $a1, 256
+    syscall
+
+line:
+    blez $s0, done
+    addi $s0, $s0, -1
+
+    li $v0, 8               # read a line
+    la $a0, buffer
+    li $a1, 256
+    syscall
+
+    # find the length (stopping at the newline or the null terminator)
+    la $t0, buffer
+    li $t5, 10
+length:
+    lbu $t1, 0($t0)
+    beqz $t1, length_done
+    beq $t1, $t5, length_done
+    addi $t0, $t0, 1
+    j length
+length_done:
+    sb $zero, 0($t0)
+    la $t2, buffer
+    sub $s1, $t0, $t2       # the length
+
+    # reverse in place, converting to upper case
+    addi $t0, $t0, -1
+    li $t6, 97              # 'a'
+    li $t7, 122             # 'z'
+reverse:
+    bgt $t2, $t0, reverse_done
+    lbu $t3, 0($t2)
+    lbu $t4, 0($t0)
+    blt $t3, $t6, upper1
+    bgt $t3, $t7, upper1
+    addi $t3, $t3, -32
+upper1:
+    blt $t4, $t6, upper2
+    bgt $t4, $t7, upper2
+    addi $t4, $t4, -32
+upper2:
+    sb $t4, 0($t2)
+    sb $t3, 0($t0)
+    addi $t2, $t2, 1
+    addi $t0, $t0, -1
+    j reverse
+
+reverse_done:
+    li $v0, 4
+    la $a0, buffer
+    syscall
+    li $v0, 4
+    la $a0, space
+    syscall
+    li $v0, 1
+    move $a0, $s1
+    syscall
+    li $v0, 4
+    la $a0, newline
+    syscall
+    j line
+
+done:
+    li $v0, 10
+    syscall
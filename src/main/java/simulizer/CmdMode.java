@@ -1,13 +1,24 @@
 package simulizer;
 
+import java.io.File;
+import java.io.IOException;
+
 import simulizer.annotations.AnnotationManager;
 import simulizer.assembler.Assembler;
 import simulizer.assembler.extractor.problem.StoreProblemLogger;
 import simulizer.assembler.representation.Program;
 import simulizer.cmd.CmdIO;
 import simulizer.cmd.CmdSimulationListener;
+import simulizer.simulation.cpu.PipelineReport;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor;
+import simulizer.simulation.cpu.cache.Cache;
+import simulizer.simulation.cpu.cache.CacheHierarchy;
+import simulizer.simulation.cpu.cache.CacheReport;
 import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUFiveStagePipeline;
+import simulizer.simulation.cpu.components.CPUPipeline;
 import simulizer.utils.FileUtils;
+import simulizer.utils.Tracer;
 
 /**
  * Created by matthew on 06/09/16.
@@ -33,12 +44,44 @@ class CmdMode {
 
 		io = new CmdIO(args.showDebugStream);
 
-		cpu = new CPU(io); // not pipelined
+		if (args.pipelined) {
+			CPUPipeline pipeline;
+			if (args.fiveStage) {
+				CPUFiveStagePipeline fiveStage = new CPUFiveStagePipeline(io);
+				fiveStage.setSingleMemoryPort(args.singleMemoryPort);
+				pipeline = fiveStage;
+			} else {
+				pipeline = new CPUPipeline(io);
+			}
+			pipeline.setForwarding(args.forwarding);
+			pipeline.setBranchPredictor(BranchPredictor.Strategy.fromId(args.branchPredictor).create(BranchPredictor.DEFAULT_TABLE_SIZE));
+			cpu = pipeline;
+		} else {
+			cpu = new CPU(io);
+		}
+		cpu.getMetrics().register();
+
+		if (args.cache) {
+			CacheHierarchy.Configuration c = new CacheHierarchy.Configuration();
+			c.instructionSize = args.l1iSize;
+			c.dataSize = args.l1dSize;
+			c.l2Size = args.l2Size;
+			c.associativity = args.cacheAssociativity;
+			c.l2Associativity = args.l2Associativity;
+			c.lineSize = args.cacheLineSize;
+			c.replacement = Cache.Replacement.fromId(args.cacheReplacement);
+			c.writeBack = !args.writeThrough;
+			c.l2Latency = args.l2Latency;
+			c.memoryLatency = args.memoryLatency;
+			cpu.getCaches().configure(c);
+		}
 
 		AnnotationManager a = null;
 		if (args.runAnnotations) {
 			a = new AnnotationManager(cpu, io, false/*enable visualisations*/);
 			a.newExecutor();
+			a.setAsynchronous(args.asyncAnnotations, args.annotationLag);
+			a.setTimeBudget(args.annotationBudget, false);
 		}
 
 		simListener = new CmdSimulationListener(a);
@@ -46,8 +89,24 @@ class CmdMode {
 		cpu.registerListener(simListener);
 		cpu.setCycleFreq(0); // Hz
 
+		if (args.traceFile != null)
+			Tracer.start(Tracer.DEFAULT_CAPACITY);
+
 		String programText = FileUtils.getFileContent(args.files.get(0));
 		assembleAndRun(programText, args.permissive);
+
+		if (args.pipelineStats && cpu instanceof CPUPipeline)
+			System.err.print("\n" + PipelineReport.generate((CPUPipeline) cpu));
+		if (args.cache)
+			System.err.print("\n" + CacheReport.generate(cpu.getCaches(), cpu.getProgram()));
+
+		if (args.traceFile != null) {
+			try {
+				Tracer.save(new File(args.traceFile));
+			} catch (IOException e) {
+				System.err.println("Could not save the trace: " + e.getMessage());
+			}
+		}
 	}
 
 	private static void assembleAndRun(String programText, boolean permissive) {
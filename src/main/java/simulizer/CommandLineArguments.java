@@ -40,6 +40,69 @@ class CommandLineArguments {
         @Parameter(names = {"-a", "--run-annotations"}, description = "whether annotations should be run")
         boolean runAnnotations = false;
 
+        @Parameter(names = {"--async-annotations"}, description = "run annotations on their own thread so that they do not hold up the simulation")
+        boolean asyncAnnotations = false;
+
+        @Parameter(names = {"--annotation-lag"}, description = "the number of instructions the simulation may run ahead of asynchronous annotations")
+        int annotationLag = 1000;
+
+        @Parameter(names = {"--annotation-budget"}, description = "the time (milliseconds) a single annotation may take before it is disabled. 0 for no limit")
+        int annotationBudget = 0;
+
+        @Parameter(names = {"--trace"}, description = "record a timeline of the assembly and simulation to the given file, viewable with chrome://tracing")
+        String traceFile = null;
+
+        @Parameter(names = {"--pipelined"}, description = "run the program on the pipelined CPU")
+        boolean pipelined = false;
+
+        @Parameter(names = {"--five-stage"}, description = "use the five stage pipeline: fetch, decode, execute, memory and write back (with --pipelined)")
+        boolean fiveStage = false;
+
+        @Parameter(names = {"--single-memory-port"}, description = "fetches and loads/stores share one memory port, so loads and stores delay fetching (with --five-stage)")
+        boolean singleMemoryPort = false;
+
+        @Parameter(names = {"--forwarding"}, description = "forward results to the next instruction rather than stalling (with --pipelined)")
+        boolean forwarding = false;
+
+        @Parameter(names = {"--branch-predictor"}, description = "how branches are predicted (with --pipelined): not-taken, backward-taken, 1-bit, 2-bit or btb")
+        String branchPredictor = "not-taken";
+
+        @Parameter(names = {"--pipeline-stats"}, description = "print the CPI breakdown, stalls and branch statistics (and the stalls reordering could avoid, with --five-stage) once the program finishes (with --pipelined)")
+        boolean pipelineStats = false;
+
+        @Parameter(names = {"--cache"}, description = "simulate the caches and print their statistics once the program finishes")
+        boolean cache = false;
+
+        @Parameter(names = {"--l1i-size"}, description = "the size (bytes) of the level 1 instruction cache (with --cache)")
+        int l1iSize = 1024;
+
+        @Parameter(names = {"--l1d-size"}, description = "the size (bytes) of the level 1 data cache (with --cache)")
+        int l1dSize = 1024;
+
+        @Parameter(names = {"--l2-size"}, description = "the size (bytes) of the unified level 2 cache, 0 for none (with --cache)")
+        int l2Size = 0;
+
+        @Parameter(names = {"--cache-associativity"}, description = "the number of lines in each set of the level 1 caches (with --cache)")
+        int cacheAssociativity = 2;
+
+        @Parameter(names = {"--l2-associativity"}, description = "the number of lines in each set of the level 2 cache (with --cache)")
+        int l2Associativity = 4;
+
+        @Parameter(names = {"--cache-line-size"}, description = "the size (bytes) of each cache line (with --cache)")
+        int cacheLineSize = 16;
+
+        @Parameter(names = {"--cache-replacement"}, description = "how the line to evict is chosen (with --cache): lru, fifo or random")
+        String cacheReplacement = "lru";
+
+        @Parameter(names = {"--write-through"}, description = "write every store through to the level below rather than writing back dirty lines when evicted (with --cache)")
+        boolean writeThrough = false;
+
+        @Parameter(names = {"--l2-latency"}, description = "the cycles taken to fetch a line from the level 2 cache (with --cache)")
+        int l2Latency = 10;
+
+        @Parameter(names = {"--memory-latency"}, description = "the cycles taken to fetch a line from main memory (with --cache)")
+        int memoryLatency = 100;
+
         //TODO: not implemented
         //@Parameter(names = {"--output-errors"}, description = "file to output encountered parse errors")
         //public String errorOutputPath;
@@ -6,7 +6,9 @@ import javafx.stage.Stage;
 import simulizer.settings.Settings;
 import simulizer.ui.WindowManager;
 import simulizer.ui.components.CurrentFile;
+import simulizer.ui.windows.Editor;
 import simulizer.ui.windows.SplashScreen;
+import simulizer.utils.DebugUtils;
 import simulizer.utils.FileUtils;
 import simulizer.utils.UIUtils;
 
@@ -26,6 +28,10 @@ public class GuiMode {
 	public static WindowManager wm;
 	public static Settings settings;
 	public static CommandLineArguments.GuiModeArgs args;
+	/**
+	 * reports how long each phase of starting the GUI takes (when the debug menu is enabled)
+	 */
+	public static final DebugUtils.PhaseTimer startupTimer = new DebugUtils.PhaseTimer("Startup");
 
 	public static Image getIcon() {
 		if (icon == null) {
@@ -53,6 +59,12 @@ public class GuiMode {
                         settingsFile.getPath() + "' was missing");
                 throw new RuntimeException("missing settings file " + settingsFile.getPath());
             }
+			// only of interest to developers
+			startupTimer.setEnabled((boolean) settings.get("menubar.debug"));
+			startupTimer.phase("loading the settings");
+
+			// read the editor scripts while the splash screen is being set up
+			Editor.preloadScripts(settings);
 		}
 
 		@Override
@@ -62,6 +74,7 @@ public class GuiMode {
 
 			// GUI needs to be active in order to display dialogs on failure
 			CurrentFile.loadInitialFile();
+			startupTimer.phase("loading the initial file");
 
 			boolean showSplash = (boolean) settings.get("splash-screen.enabled");
 			if (args.noSplash) // takes precedence over settings file
@@ -100,6 +113,7 @@ public class GuiMode {
 		// Just show the main window for now
 		try {
 			wm = new WindowManager(app, primaryStage, settings);
+			startupTimer.phase("creating the main window");
 		} catch (IOException ex) {
 			UIUtils.showErrorDialog("Failed To Launch", ex.getMessage());
 			throw new RuntimeException("failed to launch: " + ex.getMessage());
@@ -0,0 +1,45 @@
+package simulizer.annotations;
+
+/**
+ * The deadline of the annotation which is running.
+ *
+ * Annotations run on the thread which reached them, and a script can't be stopped from outside (Nashorn ignores
+ * interrupts), so the budget is enforced cooperatively: the bridges check the deadline whenever a script calls them
+ * and throw AnnotationTimeout to end the script once it has passed. A script which never calls a bridge runs to
+ * completion and is only disabled afterwards, holding up the simulation until it does.
+ *
+ * Only one annotation runs at a time (they hold the lock on their executor), so one deadline is shared by the bridges.
+ */
+class AnnotationBudget {
+	private volatile boolean running = false;
+	private volatile long deadline = 0; // System.nanoTime()
+
+	/**
+	 * start timing an annotation
+	 *
+	 * @param millis
+	 *            the time the annotation may take
+	 */
+	void start(long millis) {
+		deadline = System.nanoTime() + millis * 1000000;
+		running = true;
+	}
+
+	/**
+	 * stop timing (the annotation has finished)
+	 */
+	void stop() {
+		running = false;
+	}
+
+	/**
+	 * called by the bridges whenever a script calls them
+	 *
+	 * @throws AnnotationTimeout
+	 *             if the annotation being timed has exceeded its budget
+	 */
+	void check() throws AnnotationTimeout {
+		if (running && System.nanoTime() - deadline > 0)
+			throw new AnnotationTimeout();
+	}
+}
@@ -127,7 +127,7 @@ public class AnnotationExecutor {
 	 * @param annotation the annotation to execute
 	 * @return the result of evaulating the script (ie the script `var x = 14; x;` returns `Integer(14)`)
 	 */
-	Object exec(Annotation annotation) throws ScriptException, SecurityException, AnnotationEarlyReturn, AssertionError {
+	Object exec(Annotation annotation) throws ScriptException, SecurityException, AnnotationEarlyReturn, AnnotationTimeout, AssertionError {
 		@SuppressWarnings("UnusedAssignment") // this is actually necessary
 		Object res = null;
 
@@ -144,12 +144,18 @@ public class AnnotationExecutor {
 				if (cause instanceof AnnotationEarlyReturn) {
 					promoteToGlobal();
 					throw (AnnotationEarlyReturn) cause;
+				} else if (cause instanceof AnnotationTimeout) { // re-thrown by the script
+					promoteToGlobal();
+					throw (AnnotationTimeout) cause;
 				} else {
 					throw e;
 				}
 			} else {
 				throw e;
 			}
+		} catch(AnnotationTimeout e) { // thrown from a bridge
+			promoteToGlobal();
+			throw e;
 		} catch(AssertionError e) {
 			promoteToGlobal();
 			throw new AssertionError(annotation.code); // exception message = code that caused it
@@ -1,12 +1,19 @@
 package simulizer.annotations;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.script.ScriptException;
 
+import simulizer.Simulizer;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
 import simulizer.simulation.cpu.components.CPU;
 import simulizer.simulation.cpu.user_interaction.IO;
 import simulizer.simulation.cpu.user_interaction.IOStream;
 import simulizer.simulation.messages.AnnotationMessage;
 import simulizer.ui.WindowManager;
+import simulizer.utils.Tracer;
 import simulizer.utils.UIUtils;
 
 /**
@@ -16,9 +23,29 @@ import simulizer.utils.UIUtils;
  */
 @SuppressWarnings("WeakerAccess") // because bridges accessed from javascript
 public class AnnotationManager {
-	private AnnotationExecutor ex;
+	private volatile AnnotationExecutor ex;
 	private static final boolean giveDetailedInfo = false;
-	private boolean enabled = true;
+	private volatile boolean enabled = true;
+	/**
+	 * null unless annotations are running asynchronously (on their own thread, allowed to lag behind the CPU)
+	 */
+	private AsyncAnnotationRunner asyncRunner = null;
+
+	private final AnnotationProfiler profiler = new AnnotationProfiler();
+	private static final int profilerReportLength = 5;
+	/**
+	 * the maximum time (milliseconds) a single execution of an annotation may take before it is disabled. 0 for no limit
+	 */
+	private volatile long timeBudget = 0;
+	private volatile boolean pauseOnOverrun = true;
+	/**
+	 * the deadline of the running annotation, checked by the bridges
+	 */
+	private final AnnotationBudget budget = new AnnotationBudget();
+	/**
+	 * annotations which have been disabled for the rest of the simulation for exceeding their time budget
+	 */
+	private final Set<Address> overrunAnnotations = ConcurrentHashMap.newKeySet();
 
 	private WindowManager wm = null;
 	private CPU cpu;
@@ -37,6 +64,8 @@ public class AnnotationManager {
 
 		debugBridge = new DebugBridge();
 		simulationBridge = new SimulationBridge();
+		debugBridge.budget = budget;
+		simulationBridge.budget = budget;
 
 		this.enableVisualisations = enableVisualisations;
 		if (enableVisualisations) {
@@ -50,6 +79,10 @@ public class AnnotationManager {
 		this(wm.getCPU(), wm.getIO(), true/* enable visualisations */);
 		this.wm = wm;
 		this.enabled = (boolean) wm.getSettings().get("simulation.annotations");
+		setAsynchronous((boolean) wm.getSettings().get("simulation.annotations-async"),
+				(int) wm.getSettings().get("simulation.annotation-max-lag"));
+		setTimeBudget((int) wm.getSettings().get("simulation.annotation-time-budget"),
+				(boolean) wm.getSettings().get("simulation.annotation-overrun-pause"));
 	}
 
 	/**
@@ -66,10 +99,19 @@ public class AnnotationManager {
 	 *            the new CPU object
 	 */
 	public synchronized void onNewProgram(CPU cpu) {
+		this.cpu = cpu;
+
 		// refresh for each new program
+		if (asyncRunner != null)
+			asyncRunner.reset();
+		overrunAnnotations.clear();
+		profiler.clear();
 		newExecutor();
 
 		simulationBridge.cpu = cpu;
+		if (asyncRunner != null)
+			cpu.addTickBarrier(asyncRunner);
+		cpu.getMetrics().setAnnotationTime(profiler::getTotalNanos);
 	}
 
 	/**
@@ -81,6 +123,9 @@ public class AnnotationManager {
 		debugBridge.io = io;
 
 		simulationBridge.cpu = cpu;
+		simulationBridge.snapshot = null;
+		simulationBridge.writeQueue = null;
+		simulationBridge.watchedRegions.clear();
 
 		if (enableVisualisations) {
 			visualisationBridge.wm = wm;
@@ -93,6 +138,10 @@ public class AnnotationManager {
 	 */
 	public void onEndProgram() {
 		simulationBridge.cpu = null;
+
+		String report = profiler.report(profilerReportLength);
+		if (!report.isEmpty())
+			io.printString(IOStream.DEBUG, report);
 	}
 
 	/**
@@ -112,6 +161,16 @@ public class AnnotationManager {
 		setupBridges();
 	}
 
+	/**
+	 * @return the (0 based) line number the annotation is bound to, or AnnotationProfiler.INITIAL_ANNOTATION
+	 */
+	private int getLineNumber(AnnotationMessage msg) {
+		Program p = cpu.getProgram();
+		if (msg.boundAddress == null || p == null)
+			return AnnotationProfiler.INITIAL_ANNOTATION;
+		return p.lineNumbers.getOrDefault(msg.boundAddress, AnnotationProfiler.INITIAL_ANNOTATION);
+	}
+
 	private String getAnnotationLineString(AnnotationMessage msg) {
 		if (msg.boundAddress != null) {
 			// TODO: in edge cases the simulation might have finished, creating a NullPointerException here. Maybe cache the program at the beginning to get around this?
@@ -129,10 +188,81 @@ public class AnnotationManager {
 	 *            the message containing the annotation to run
 	 */
 	public synchronized void processAnnotationMessage(AnnotationMessage msg) {
-		if (!enabled)
+		if (!enabled || (msg.boundAddress != null && overrunAnnotations.contains(msg.boundAddress)))
 			return;
+
+		// the initial annotation always runs synchronously since it sets up the state that the others rely on
+		// (eg which regions of memory to watch)
+		if (asyncRunner != null && msg.boundAddress != null) {
+			// the CPU is waiting for this message to be processed, so its state is consistent right now
+			final SimulationSnapshot snapshot = new SimulationSnapshot(cpu, simulationBridge.watchedRegions);
+			final AnnotationExecutor executor = ex;
+			final AsyncAnnotationRunner runner = asyncRunner;
+			runner.submit(snapshot.cycle, () -> runAsynchronously(msg, executor, snapshot, runner));
+		} else {
+			final AnnotationExecutor executor = ex;
+			synchronized (executor) {
+				execute(msg, executor);
+			}
+		}
+	}
+
+	/**
+	 * disable an annotation which has exceeded its time budget and tell the user about it
+	 *
+	 * @param stopped
+	 *            whether the annotation was stopped early (rather than running to completion)
+	 */
+	private void onOverrun(AnnotationMessage msg, boolean stopped) {
+		if (!overrunAnnotations.add(msg.boundAddress))
+			return; // already reported
+
+		io.printString(IOStream.ERROR, "Annotation exceeded its time budget of " + timeBudget + " ms:\n");
+		io.printString(IOStream.ERROR, "  From " + getAnnotationLineString(msg) + "\n");
+		io.printString(IOStream.ERROR, (stopped ? "  It was stopped and has" : "  It has")
+				+ " been disabled for the rest of the simulation.\n");
+
+		// in cmd mode there would be no way to resume
+		if (pauseOnOverrun && Simulizer.hasGUI() && cpu.isRunning() && !cpu.isPaused()) {
+			cpu.pause();
+			io.printString(IOStream.ERROR, "  The simulation has been paused.\n");
+		}
+	}
+
+	/**
+	 * run an annotation on the annotation thread against a snapshot of the simulation. Its writes are queued on the
+	 * runner, to be applied by the simulation thread
+	 */
+	private void runAsynchronously(AnnotationMessage msg, AnnotationExecutor executor, SimulationSnapshot snapshot,
+			AsyncAnnotationRunner runner) {
+		synchronized (executor) {
+			if (!enabled || executor != ex || overrunAnnotations.contains(msg.boundAddress))
+				return; // disabled or a new program has been loaded since the annotation was reached
+
+			simulationBridge.snapshot = snapshot;
+			simulationBridge.writeQueue = runner;
+			try {
+				execute(msg, executor);
+			} finally {
+				simulationBridge.snapshot = null;
+				simulationBridge.writeQueue = null;
+			}
+		}
+	}
+
+	/**
+	 * execute an annotation on the calling thread, timing how long it takes and stopping it (the next time it calls a
+	 * bridge) if it exceeds its time budget. Must hold the lock on the executor
+	 */
+	private void execute(AnnotationMessage msg, AnnotationExecutor executor) {
+		boolean budgeted = timeBudget > 0 && msg.boundAddress != null;
+		long start = System.nanoTime();
+		if (budgeted)
+			budget.start(timeBudget);
 		try {
-			ex.exec(msg.annotation);
+			executor.exec(msg.annotation);
+		} catch (AnnotationTimeout e) {
+			onOverrun(msg, true);
 		} catch (AnnotationEarlyReturn ignored) {
 		} catch (AssertionError e) {
 			io.printString(IOStream.ERROR, "Assertion error:\n");
@@ -143,6 +273,18 @@ public class AnnotationManager {
 			io.printString(IOStream.ERROR, "  From " + getAnnotationLineString(msg) + "\n");
 			if (giveDetailedInfo)
 				UIUtils.showExceptionDialog(e);
+		} finally {
+			budget.stop();
+			long end = System.nanoTime();
+			long duration = end - start;
+			profiler.record(getLineNumber(msg), duration);
+			if (Tracer.isEnabled()) {
+				int line = getLineNumber(msg);
+				String name = line == AnnotationProfiler.INITIAL_ANNOTATION ? "initial annotation" : "annotation on line " + (line + 1);
+				Tracer.record(Tracer.ANNOTATIONS, name, start, end);
+			}
+			if (budgeted && duration > timeBudget * 1000000)
+				onOverrun(msg, false); // finished without calling a bridge after its deadline
 		}
 	}
 
@@ -150,6 +292,58 @@ public class AnnotationManager {
 		enabled = value;
 	}
 
+	/**
+	 * Choose whether annotations run on the simulation message threads (holding up the CPU until they finish) or
+	 * asynchronously on their own thread against a snapshot of the simulation state. Takes effect for the next
+	 * program if one is running
+	 *
+	 * @param async
+	 *            whether to run asynchronously
+	 * @param maxLag
+	 *            the number of cycles the CPU is allowed to get ahead of the annotations before it waits
+	 */
+	public synchronized void setAsynchronous(boolean async, long maxLag) {
+		if (async) {
+			if (asyncRunner == null)
+				asyncRunner = new AsyncAnnotationRunner(maxLag);
+			else
+				asyncRunner.setMaxLag(maxLag);
+		} else if (asyncRunner != null) {
+			cpu.removeTickBarrier(asyncRunner);
+			asyncRunner.shutdown();
+			asyncRunner = null;
+		}
+		if (asyncRunner != null && !cpu.isRunning())
+			cpu.addTickBarrier(asyncRunner);
+	}
+
+	public boolean isAsynchronous() {
+		return asyncRunner != null;
+	}
+
+	/**
+	 * Limit the time a single execution of an annotation may take. Annotations which exceed the limit are stopped the
+	 * next time they call a bridge, and are disabled for the rest of the simulation rather than holding up the whole
+	 * simulation. The annotations still run on the thread which reached them, so an annotation which doesn't call a
+	 * bridge runs to completion before it is disabled
+	 *
+	 * @param budget
+	 *            the time budget in milliseconds, 0 for no limit
+	 * @param pause
+	 *            whether to also pause the simulation when an annotation exceeds its budget (GUI only)
+	 */
+	public void setTimeBudget(long budget, boolean pause) {
+		timeBudget = budget;
+		pauseOnOverrun = pause;
+	}
+
+	/**
+	 * @return the time spent executing each annotation during the current (or last) simulation
+	 */
+	public AnnotationProfiler getProfiler() {
+		return profiler;
+	}
+
 	public boolean isEnabled() {
 		return enabled;
 	}
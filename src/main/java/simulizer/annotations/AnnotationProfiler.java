@@ -0,0 +1,120 @@
+package simulizer.annotations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how much time is spent executing each annotation, keyed by the line of source code the annotation is bound
+ * to, so that the annotations which are slowing down a simulation can be identified.
+ */
+public class AnnotationProfiler {
+	/**
+	 * the line number used for the initial annotation (which isn't bound to a line)
+	 */
+	public static final int INITIAL_ANNOTATION = -1;
+
+	/**
+	 * the time spent executing the annotation bound to a single line
+	 */
+	public static class Entry {
+		public final int lineNumber; // 0 based, INITIAL_ANNOTATION for the initial annotation
+		private long executions;
+		private long totalNanos;
+		private long maxNanos;
+
+		private Entry(int lineNumber) {
+			this.lineNumber = lineNumber;
+		}
+
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		@Override
+		public String toString() {
+			String name = lineNumber == INITIAL_ANNOTATION ? "initial annotation" : "line " + (lineNumber + 1);
+			return String.format("%s: %.3f ms total, %d executions, %.3f ms mean, %.3f ms max", name, totalNanos / 1e6,
+					executions, totalNanos / 1e6 / executions, maxNanos / 1e6);
+		}
+	}
+
+	private final Map<Integer, Entry> entries = new HashMap<>();
+
+	/**
+	 * record a single execution of an annotation
+	 *
+	 * @param lineNumber
+	 *            the (0 based) line the annotation is bound to
+	 * @param nanos
+	 *            the time taken to execute the annotation
+	 */
+	public synchronized void record(int lineNumber, long nanos) {
+		Entry e = entries.get(lineNumber);
+		if (e == null) {
+			e = new Entry(lineNumber);
+			entries.put(lineNumber, e);
+		}
+		e.executions++;
+		e.totalNanos += nanos;
+		e.maxNanos = Math.max(e.maxNanos, nanos);
+	}
+
+	/**
+	 * @param n
+	 *            the maximum number of entries to return
+	 * @return copies of the entries with the most total time spent executing, slowest first
+	 */
+	public synchronized List<Entry> getSlowest(int n) {
+		List<Entry> sorted = new ArrayList<>(entries.size());
+		for (Entry e : entries.values()) {
+			Entry copy = new Entry(e.lineNumber);
+			copy.executions = e.executions;
+			copy.totalNanos = e.totalNanos;
+			copy.maxNanos = e.maxNanos;
+			sorted.add(copy);
+		}
+		sorted.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+		return sorted.subList(0, Math.min(n, sorted.size()));
+	}
+
+	/**
+	 * @return the total time spent executing annotations
+	 */
+	public synchronized long getTotalNanos() {
+		long total = 0;
+		for (Entry e : entries.values())
+			total += e.totalNanos;
+		return total;
+	}
+
+	/**
+	 * @param n
+	 *            the maximum number of annotations to list
+	 * @return a human readable summary of the slowest annotations, empty if no annotations have run
+	 */
+	public String report(int n) {
+		List<Entry> slowest = getSlowest(n);
+		if (slowest.isEmpty())
+			return "";
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Slowest annotations (%.3f ms in total):\n", getTotalNanos() / 1e6));
+		for (Entry e : slowest)
+			sb.append("  ").append(e).append('\n');
+		return sb.toString();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
@@ -0,0 +1,12 @@
+package simulizer.annotations;
+
+/**
+ * An exception thrown from a bridge when the annotation calling it has exceeded its time budget, to end the annotation
+ */
+class AnnotationTimeout extends RuntimeException {
+	private static final long serialVersionUID = -2969427040318412645L;
+
+	AnnotationTimeout() {
+		super("annotation exceeded its time budget", null, false, false); // thrown often, so no stack trace
+	}
+}
@@ -0,0 +1,186 @@
+package simulizer.annotations;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import simulizer.simulation.cpu.TickBarrier;
+import simulizer.utils.ThreadUtils;
+
+/**
+ * Runs annotations in order on a dedicated thread so that a slow annotation does not stall the simulation.
+ *
+ * The CPU is allowed to run ahead of the annotations by a bounded number of cycles. When the oldest outstanding
+ * annotation falls further behind than that, the CPU is blocked (through the TickBarrier interface) until it catches
+ * up.
+ *
+ * Annotations read from a snapshot of the simulation, but their writes (to registers and memory) have to reach the
+ * live simulation. They are queued and applied by the simulation thread the next time it passes the barrier, so the
+ * annotation thread never touches the CPU while it is running.
+ */
+class AsyncAnnotationRunner implements TickBarrier {
+	private final static long allowedDrainTime = 1000; // milliseconds
+
+	private ExecutorService executor;
+	/**
+	 * the cycle at which each outstanding (queued or running) annotation was reached, oldest first
+	 */
+	private final ArrayDeque<Long> outstanding;
+	private int generation; // incremented on reset so that abandoned tasks don't affect the new queue
+	private volatile long maxLag;
+	/**
+	 * writes made by annotations, waiting to be applied by the simulation thread (in the order they were made)
+	 */
+	private final ConcurrentLinkedQueue<Runnable> writes = new ConcurrentLinkedQueue<>();
+
+	AsyncAnnotationRunner(long maxLag) {
+		this.maxLag = maxLag;
+		outstanding = new ArrayDeque<>();
+		executor = newExecutor();
+	}
+
+	private static ExecutorService newExecutor() {
+		// a single thread means the annotations run in the order they were reached
+		return Executors.newSingleThreadExecutor(new ThreadUtils.NamedThreadFactory("Annotations"));
+	}
+
+	void setMaxLag(long maxLag) {
+		this.maxLag = maxLag;
+		synchronized (outstanding) {
+			outstanding.notifyAll();
+		}
+	}
+
+	long getMaxLag() {
+		return maxLag;
+	}
+
+	/**
+	 * queue an annotation to run
+	 *
+	 * @param cycle
+	 *            the cycle at which the annotation was reached
+	 * @param task
+	 *            the work to run
+	 */
+	void submit(long cycle, Runnable task) {
+		final int submittedGeneration;
+		synchronized (outstanding) {
+			outstanding.addLast(cycle);
+			submittedGeneration = generation;
+		}
+		executor.submit(() -> {
+			try {
+				task.run();
+			} finally {
+				synchronized (outstanding) {
+					if (submittedGeneration == generation)
+						outstanding.pollFirst();
+					outstanding.notifyAll();
+				}
+			}
+		});
+	}
+
+	/**
+	 * queue a write to the live simulation, to be applied by the simulation thread at the next tick barrier
+	 *
+	 * @param write
+	 *            the write (must not depend on state which the annotation might change afterwards)
+	 */
+	void deferWrite(Runnable write) {
+		writes.add(write);
+	}
+
+	/**
+	 * apply the queued writes. Called from the simulation thread
+	 */
+	private void applyWrites() {
+		Runnable w;
+		while ((w = writes.poll()) != null)
+			w.run();
+	}
+
+	/**
+	 * @return the number of annotations queued or running
+	 */
+	int getOutstandingCount() {
+		synchronized (outstanding) {
+			return outstanding.size();
+		}
+	}
+
+	@Override
+	public boolean awaitCycle(long cycle, long timeout) throws InterruptedException {
+		applyWrites();
+		boolean proceed;
+		synchronized (outstanding) {
+			proceed = withinLag(cycle);
+			if (!proceed) {
+				outstanding.wait(timeout);
+				proceed = withinLag(cycle);
+			}
+		}
+		applyWrites(); // made while waiting
+		return proceed;
+	}
+
+	private boolean withinLag(long cycle) {
+		Long oldest = outstanding.peekFirst();
+		return oldest == null || cycle - oldest <= maxLag;
+	}
+
+	@Override
+	public void awaitAll() {
+		try {
+			drain();
+		} finally {
+			applyWrites();
+		}
+	}
+
+	private void drain() {
+		synchronized (outstanding) {
+			// give up if no progress has been made for a while (eg an annotation stuck in a loop)
+			int lastSize = -1;
+			while (!outstanding.isEmpty() && outstanding.size() != lastSize) {
+				lastSize = outstanding.size();
+				try {
+					outstanding.wait(allowedDrainTime);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * abandon any outstanding annotations, eg when a new program is loaded
+	 */
+	void reset() {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(allowedDrainTime, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ignored) {
+		}
+		synchronized (outstanding) {
+			++generation;
+			outstanding.clear();
+			outstanding.notifyAll();
+		}
+		writes.clear();
+		executor = newExecutor();
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+		synchronized (outstanding) {
+			++generation;
+			outstanding.clear();
+			outstanding.notifyAll();
+		}
+		writes.clear();
+	}
+}
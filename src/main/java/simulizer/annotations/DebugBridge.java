@@ -22,8 +22,13 @@ public class DebugBridge {
 	// set package-visible attributes using BridgeFactory
 	CPU cpu = null;
 	IO io = null;
+	/**
+	 * the deadline of the running annotation, checked whenever a script calls the bridge
+	 */
+	AnnotationBudget budget = null;
 
 	public void log(String string) {
+		checkBudget();
 		if(io != null) {
 			io.printString(IOStream.DEBUG, "js> " + string + "\n");
 		} else {
@@ -31,6 +36,7 @@ public class DebugBridge {
 		}
 	}
 	public String hex(byte[] data) {
+		checkBudget();
         return hex(data, -1);
     }
 
@@ -38,6 +44,7 @@ public class DebugBridge {
      * hex string with spaces inserted every n digits
 	 */
 	public String hex(byte[] data, int spaces) {
+		checkBudget();
         String hexStr = DatatypeConverter.printHexBinary(data);
 		if(spaces > 0)
             return StringUtils.insert(hexStr, " ", spaces);
@@ -46,19 +53,28 @@ public class DebugBridge {
 	}
 
 	public long currentTime() {
+		checkBudget();
 		return System.currentTimeMillis();
 	}
 
 	public void assertTrue(boolean condition) {
+		checkBudget();
 		if(!condition)
 			throw new AssertionError();
 	}
 
 	public void alert(String msg) {
+		checkBudget();
 		Platform.runLater(() -> UIUtils.showInfoDialog("Javascript Alert", msg));
 	}
 
 	public CPU getCPU() {
+		checkBudget();
 		return cpu;
 	}
+
+	private void checkBudget() {
+		if(budget != null)
+			budget.check();
+	}
 }
@@ -1,5 +1,6 @@
 package simulizer.annotations;
 
+import simulizer.assembler.representation.Address;
 import simulizer.assembler.representation.Register;
 import simulizer.simulation.cpu.components.CPU;
 import simulizer.simulation.cpu.components.MainMemory;
@@ -9,9 +10,12 @@ import simulizer.simulation.exceptions.HeapException;
 import simulizer.simulation.exceptions.MemoryException;
 import simulizer.simulation.exceptions.StackException;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A collection of methods for accessing information about the simulation from annotations
@@ -23,9 +27,42 @@ public class SimulationBridge {
 	// package-visible Attributes not visible from JavaScript
 	// set package-visible attributes using BridgeFactory
 	CPU cpu = null;
+	/**
+	 * the deadline of the running annotation, checked whenever a script calls the bridge
+	 */
+	AnnotationBudget budget = null;
+	/**
+	 * when running asynchronously: the state of the simulation when the current annotation was reached.
+	 * Reads are served from the snapshot where possible, writes go to the snapshot and to writeQueue
+	 */
+	SimulationSnapshot snapshot = null;
+	/**
+	 * when running asynchronously: where writes to the live simulation are queued, to be applied by the simulation
+	 * thread (the annotation thread must not touch the CPU while it is running)
+	 */
+	AsyncAnnotationRunner writeQueue = null;
+	/**
+	 * the regions of memory to include in snapshots
+	 */
+	final List<SimulationSnapshot.Region> watchedRegions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * the largest access (bytes) which uses the scratch buffer, larger accesses allocate their own
+	 */
+	private static final int SCRATCH_SIZE = 1024;
+	/**
+	 * scratch space for small bulk memory accesses, re-used between annotations. Guarded by its own lock: annotations
+	 * hold the lock on their executor, but an annotation from the last program may still be running on the
+	 * asynchronous thread with a different executor
+	 */
+	private final byte[] scratch = new byte[SCRATCH_SIZE];
 
-	public void pause() { cpu.pause(); }
+	public void pause() {
+		checkBudget();
+		cpu.pause();
+	}
 	public void stop() {
+		checkBudget();
 		cpu.stopRunning();
 	}
 
@@ -33,69 +70,290 @@ public class SimulationBridge {
 	 * Technically setting the frequency rather than 'speed'
 	 */
 	public void setSpeed(double freq) {
+		checkBudget();
 		cpu.setCycleFreq(freq);
 	}
 
 	public boolean isPipelined() {
+		checkBudget();
 		return cpu.isPipelined();
 	}
 
 	public Word[] getRegisters() {
+		checkBudget();
+		if(snapshot != null)
+			return snapshot.registers.clone();
 		if(cpu == null)
 			throw new IllegalStateException();
 		return cpu.getRegisters();
 	}
 
+	private Word getRegister(Register r) {
+		return snapshot != null ? snapshot.registers[r.getID()] : cpu.getRegister(r);
+	}
+
 	public long getRegisterU(Register r) {
-		return DataConverter.decodeAsUnsigned(cpu.getRegister(r).getBytes());
+		checkBudget();
+		return DataConverter.decodeAsUnsigned(getRegister(r).getBytes());
 	}
 	public long getRegisterS(Register r) {
-		return DataConverter.decodeAsSigned(cpu.getRegister(r).getBytes());
+		checkBudget();
+		return DataConverter.decodeAsSigned(getRegister(r).getBytes());
 	}
 
 	public void setRegisterU(Register r, long val) {
-		Word w = new Word(DataConverter.encodeAsUnsigned(val));
-        cpu.setRegister(r, w);
+		checkBudget();
+		setRegister(r, new Word(DataConverter.encodeAsUnsigned(val)));
 	}
 	public void setRegisterS(Register r, long val) {
-		Word w = new Word(DataConverter.encodeAsSigned(val));
-		cpu.setRegister(r, w);
+		checkBudget();
+		setRegister(r, new Word(DataConverter.encodeAsSigned(val)));
+	}
+
+	private void setRegister(Register r, Word w) {
+		if(writeQueue == null) {
+			cpu.setRegister(r, w);
+		} else {
+			snapshot.registers[r.getID()] = w;
+			final CPU target = cpu;
+			writeQueue.deferWrite(() -> target.setRegister(r, w));
+		}
+	}
+
+	/**
+	 * write a range of a buffer to memory, or queue the write when running asynchronously (copying the bytes)
+	 */
+	private void writeToMem(int startAddress, byte[] src, int srcPos, int length) throws MemoryException, HeapException, StackException {
+		final MainMemory mem = cpu.getMainMemory();
+		if(writeQueue == null) {
+			mem.writeToMem(startAddress, src, srcPos, length);
+			return;
+		}
+		if(length == 0)
+			return;
+		// fail now, as the live write would, rather than when the write is applied
+		if(length < 0 || !mem.isReadable(startAddress, length))
+			throw new MemoryException("Writing to an invalid area of memory", new Address(startAddress));
+
+		final byte[] data = Arrays.copyOfRange(src, srcPos, srcPos + length);
+		snapshot.write(startAddress, data, 0, length);
+		writeQueue.deferWrite(() -> {
+			try {
+				mem.writeToMem(startAddress, data, 0, length);
+			} catch(MemoryException | HeapException | StackException ignored) {
+				// the region became invalid (eg the heap shrank) since the annotation wrote to it
+			}
+		});
+	}
+
+	/**
+	 * @return the scratch buffer if it is large enough, otherwise a new buffer. Hold the lock on the returned buffer
+	 * while using it
+	 */
+	private byte[] getBuffer(int length) {
+		return length <= SCRATCH_SIZE ? scratch : new byte[length];
+	}
+
+	/**
+	 * read a region of memory into a buffer with a single memory access
+	 * @param startAddress the address of the first byte to read
+	 * @param buffer the buffer to read into (from getBuffer)
+	 * @param length the number of bytes to read
+	 */
+	private void readIntoBuffer(int startAddress, byte[] buffer, int length) throws MemoryException, HeapException, StackException {
+		if(length > 0 && (snapshot == null || !snapshot.read(startAddress, buffer, 0, length)))
+			cpu.getMainMemory().readFromMem(startAddress, buffer, 0, length);
 	}
 
+	/**
+	 * @param length the length of the region in bytes (a multiple of 4)
+	 * @return a list of the (unsigned) words in the region [startAddress, startAddress+length)
+	 */
 	public List<Long> readUnsignedWordsFromMem(int startAddress, int length) throws MemoryException, HeapException, StackException {
-		MainMemory mem = cpu.getMainMemory();
-		List<Long> words = new ArrayList<>();
+		checkBudget();
+		long[] words = readUnsignedWordArrayFromMem(startAddress, length);
+		List<Long> list = new ArrayList<>(words.length);
+		for(long w : words)
+			list.add(w);
+		return list;
+	}
 
+	/**
+	 * @param length the length of the region in bytes (a multiple of 4)
+	 * @return the (unsigned) words in the region [startAddress, startAddress+length)
+	 */
+	public long[] readUnsignedWordArrayFromMem(int startAddress, int length) throws MemoryException, HeapException, StackException {
+		checkBudget();
 		assert (length > 0) && (length % 4 == 0);
-		int end = startAddress+length;
-		for(int i = startAddress; i <= end; i+=4) {
-			words.add(DataConverter.decodeAsUnsigned(mem.readFromMem(i, 4)));
-		}
+		long[] words = new long[length / 4];
+		readUnsignedWordsIntoArray(startAddress, words);
+		return words;
+	}
+
+	/**
+	 * @param length the length of the region in bytes (a multiple of 4)
+	 * @return the (signed) words in the region [startAddress, startAddress+length)
+	 */
+	public int[] readSignedWordArrayFromMem(int startAddress, int length) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		assert (length > 0) && (length % 4 == 0);
+		int[] words = new int[length / 4];
+		readSignedWordsIntoArray(startAddress, words);
 		return words;
 	}
+
+	/**
+	 * fill an existing array with consecutive (unsigned) words starting at the given address.
+	 * Re-using the array between annotations avoids allocating for every read
+	 * @param dest the array to fill, dest.length words are read
+	 */
+	public void readUnsignedWordsIntoArray(int startAddress, long[] dest) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		byte[] data = getBuffer(dest.length * 4);
+		synchronized(data) {
+			readIntoBuffer(startAddress, data, dest.length * 4);
+			for(int i = 0, b = 0; i < dest.length; ++i, b += 4) {
+				dest[i] = ((data[b] & 0xFFL) << 24) | ((data[b+1] & 0xFFL) << 16) | ((data[b+2] & 0xFFL) << 8) | (data[b+3] & 0xFFL);
+			}
+		}
+	}
+
+	/**
+	 * fill an existing array with consecutive (signed) words starting at the given address.
+	 * Re-using the array between annotations avoids allocating for every read
+	 * @param dest the array to fill, dest.length words are read
+	 */
+	public void readSignedWordsIntoArray(int startAddress, int[] dest) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		byte[] data = getBuffer(dest.length * 4);
+		synchronized(data) {
+			readIntoBuffer(startAddress, data, dest.length * 4);
+			ByteBuffer.wrap(data, 0, dest.length * 4).asIntBuffer().get(dest); // big endian by default
+		}
+	}
+
+	/**
+	 * @param length the number of bytes to read
+	 * @return a big endian buffer holding a copy of the region [startAddress, startAddress+length)
+	 */
+	public ByteBuffer readBufferFromMem(int startAddress, int length) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		return ByteBuffer.wrap(readBytesFromMem(startAddress, length));
+	}
+
 	public String readStringFromMem(int startAddress) throws MemoryException, HeapException, StackException {
+		checkBudget();
 		MainMemory mem = cpu.getMainMemory();
         byte[] data = mem.readUntilNull(startAddress);
 		return new String(data, StandardCharsets.UTF_8);
 	}
 	public byte[] readBytesFromMem(int startAddress, int length) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		if(snapshot != null && length > 0) {
+			byte[] data = new byte[length];
+			if(snapshot.read(startAddress, data, 0, length))
+				return data;
+		}
 		MainMemory mem = cpu.getMainMemory();
         return mem.readFromMem(startAddress, length);
 	}
 	public boolean[] readBoolsFromMem(int startAddress, int length) throws MemoryException, HeapException, StackException {
-		MainMemory mem = cpu.getMainMemory();
-		byte[] bytes = mem.readFromMem(startAddress, length);
-		boolean[] bools = new boolean[bytes.length];
-		for(int i = 0; i < bytes.length; ++i)
-			bools[i] = bytes[i] != 0;
+		checkBudget();
+		boolean[] bools = new boolean[length];
+		byte[] bytes = getBuffer(length);
+		synchronized(bytes) {
+			readIntoBuffer(startAddress, bytes, length);
+			for(int i = 0; i < length; ++i)
+				bools[i] = bytes[i] != 0;
+		}
 		return bools;
 	}
+
+	public void writeBytesToMem(int startAddress, byte[] data) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		writeToMem(startAddress, data, 0, data.length);
+	}
+
+	/**
+	 * write consecutive (signed) words to memory with a single memory access
+	 */
+	public void writeSignedWordsToMem(int startAddress, int[] words) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		int length = words.length * 4;
+		byte[] buffer = getBuffer(length);
+		synchronized(buffer) {
+			ByteBuffer.wrap(buffer, 0, length).asIntBuffer().put(words); // big endian by default
+			writeToMem(startAddress, buffer, 0, length);
+		}
+	}
+
+	/**
+	 * write consecutive (unsigned) words to memory with a single memory access.
+	 * Values are truncated to 32 bits
+	 */
+	public void writeUnsignedWordsToMem(int startAddress, long[] words) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		int length = words.length * 4;
+		byte[] buffer = getBuffer(length);
+		synchronized(buffer) {
+			for(int i = 0, b = 0; i < words.length; ++i, b += 4) {
+				long w = words[i];
+				buffer[b]   = (byte) (w >> 24);
+				buffer[b+1] = (byte) (w >> 16);
+				buffer[b+2] = (byte) (w >> 8);
+				buffer[b+3] = (byte) w;
+			}
+			writeToMem(startAddress, buffer, 0, length);
+		}
+	}
+
+	/**
+	 * write the remaining bytes of the buffer to memory, starting at the given address.
+	 * The position of the buffer is advanced to its limit
+	 */
+	public void writeBufferToMem(int startAddress, ByteBuffer data) throws MemoryException, HeapException, StackException {
+		checkBudget();
+		int length = data.remaining();
+		if(data.hasArray()) {
+			writeToMem(startAddress, data.array(), data.arrayOffset() + data.position(), length);
+			data.position(data.limit());
+		} else {
+			byte[] buffer = getBuffer(length);
+			synchronized(buffer) {
+				data.get(buffer, 0, length);
+				writeToMem(startAddress, buffer, 0, length);
+			}
+		}
+	}
 	
+	/**
+	 * declare a region of memory which annotations read from. When annotations run asynchronously, the region is
+	 * copied every time an annotation is reached so that the annotation sees the values from that moment rather than
+	 * values written by the CPU since. Reads from memory outside of any declared region see the live values.
+	 * Should be called from the initial annotation
+	 */
+	public void watchMemory(int startAddress, int length) {
+		checkBudget();
+		assert length > 0;
+		watchedRegions.add(new SimulationSnapshot.Region(startAddress, length));
+	}
+	public void unwatchMemory() {
+		checkBudget();
+		watchedRegions.clear();
+	}
+
 	public byte[] getLo() {
-		return cpu.getLo().getBytes();
+		checkBudget();
+		return snapshot != null ? snapshot.lo.getBytes() : cpu.getLo().getBytes();
 	}
 	
 	public byte[] getHi() {
-		return cpu.getHi().getBytes();
+		checkBudget();
+		return snapshot != null ? snapshot.hi.getBytes() : cpu.getHi().getBytes();
+	}
+
+	private void checkBudget() {
+		if(budget != null)
+			budget.check();
 	}
 }
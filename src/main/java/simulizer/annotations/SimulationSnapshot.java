@@ -0,0 +1,103 @@
+package simulizer.annotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.MainMemory;
+import simulizer.simulation.data.representation.Word;
+import simulizer.simulation.exceptions.HeapException;
+import simulizer.simulation.exceptions.MemoryException;
+import simulizer.simulation.exceptions.StackException;
+
+/**
+ * A copy of the state of the simulation at the moment an annotation was reached, so that the annotation can run
+ * asynchronously (while the CPU carries on) and still observe consistent values.
+ *
+ * All registers are captured. Memory is only captured for the regions declared with
+ * SimulationBridge.watchMemory because copying the whole of memory for every annotation would be too expensive.
+ */
+class SimulationSnapshot {
+	/**
+	 * a region of memory declared by an annotation as one that it reads from
+	 */
+	static class Region {
+		final int start;
+		final int length;
+
+		Region(int start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+	}
+
+	final long cycle; // the number of cycles the CPU had completed when the snapshot was taken
+	final Word[] registers; // updated by the annotation's own writes
+	final Word hi;
+	final Word lo;
+
+	private final List<Region> regions;
+	private final List<byte[]> regionData;
+
+	/**
+	 * copy the current state of the CPU. The CPU must not be running an instruction at the time
+	 *
+	 * @param cpu
+	 *            the CPU to copy
+	 * @param watched
+	 *            the memory regions to copy
+	 */
+	SimulationSnapshot(CPU cpu, List<Region> watched) {
+		cycle = cpu.getCycles();
+		// words are immutable so a shallow copy is enough
+		registers = cpu.getRegisters().clone();
+		hi = cpu.getHi();
+		lo = cpu.getLo();
+
+		regions = new ArrayList<>(watched.size());
+		regionData = new ArrayList<>(watched.size());
+
+		MainMemory mem = cpu.getMainMemory();
+		for (Region r : watched) {
+			try {
+				byte[] data = new byte[r.length];
+				mem.readFromMem(r.start, data, 0, r.length);
+				regions.add(r);
+				regionData.add(data);
+			} catch (MemoryException | HeapException | StackException ignored) {
+				// region not (yet) valid, eg the heap has not grown to cover it. Reads will use the live memory
+			}
+		}
+	}
+
+	/**
+	 * copy the given region of memory out of the snapshot
+	 *
+	 * @return whether the snapshot contains the whole region (if not then dest is not modified)
+	 */
+	boolean read(int address, byte[] dest, int destPos, int length) {
+		for (int i = 0; i < regions.size(); i++) {
+			Region r = regions.get(i);
+			if (address >= r.start && address + length <= r.start + r.length) {
+				System.arraycopy(regionData.get(i), address - r.start, dest, destPos, length);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * copy a write made by the annotation into the snapshot (the parts of it which lie inside the captured regions), so
+	 * that the annotation reads back what it wrote. The write to the live memory is made separately
+	 */
+	void write(int address, byte[] src, int srcPos, int length) {
+		long end = (long) address + length;
+		for (int i = 0; i < regions.size(); i++) {
+			Region r = regions.get(i);
+			long start = Math.max(address, r.start);
+			long stop = Math.min(end, (long) r.start + r.length);
+			if (start < stop)
+				System.arraycopy(src, (int) (srcPos + start - address), regionData.get(i), (int) (start - r.start), (int) (stop - start));
+		}
+	}
+}
@@ -20,6 +20,7 @@ import simulizer.parser.SimpParser;
 import simulizer.simulation.data.representation.DataConverter;
 import simulizer.simulation.data.representation.Word;
 import simulizer.utils.DataUtils;
+import simulizer.utils.Tracer;
 
 /**
  * Assemble SIMP source code into a form that is consumable be the simulation.
@@ -62,7 +63,15 @@ public class Assembler {
      * @return the assembled program (or null if errors are encountered)
      */
     public static Program assemble(String input, ProblemLogger log, boolean permissive) {
+        long start = Tracer.begin();
+        try {
+            return assembleProgram(input, log, permissive);
+        } finally {
+            Tracer.end(Tracer.ASSEMBLER, "assemble", start);
+        }
+    }
 
+    private static Program assembleProgram(String input, ProblemLogger log, boolean permissive) {
         input += '\n'; // to parse correctly, must end with a newline
 
         SimpLexer lexer = new SimpLexer(new ANTLRInputStream(input));
@@ -4,6 +4,7 @@ import simulizer.annotations.AnnotationManager;
 import simulizer.simulation.messages.AnnotationMessage;
 import simulizer.simulation.messages.ProblemMessage;
 import simulizer.simulation.messages.SimulationListener;
+import simulizer.simulation.messages.SimulationMessage;
 
 /**
  * Created by matthew on 06/09/16.
@@ -26,6 +27,13 @@ public class CmdSimulationListener extends SimulationListener {
 		}
 	}
 
+	@Override
+	public void processSimulationMessage(SimulationMessage m) {
+		if (m.detail == SimulationMessage.Detail.SIMULATION_STOPPED && a != null) {
+			a.onEndProgram(); // reports the slowest annotations to the debug stream
+		}
+	}
+
 	@Override
 	public void processProblemMessage(ProblemMessage m) {
 		System.err.print("problem: " + m.e.toString());
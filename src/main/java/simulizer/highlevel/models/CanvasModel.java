@@ -3,6 +3,7 @@ package simulizer.highlevel.models;
 import javafx.geometry.VPos;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
@@ -11,6 +12,11 @@ import simulizer.utils.CircularIntBuffer;
 
 /**
  * Model for accessing a JavaFX canvas from annotations
+ *
+ * There are two ways to draw: directly onto the canvas through ctx (and the helpers such as drawPixels), or into a
+ * frame buffer with plot, fillRect and text, followed by present. Drawing into the frame buffer is much faster for
+ * programs which change many pixels since nothing is drawn until the finished frame is presented, and then the
+ * visualiser uploads the latest presented frame to the canvas in one go (at most once per screen refresh).
  * 
  * @author mbway
  *
@@ -43,6 +49,16 @@ public class CanvasModel extends DataStructureModel {
 	 */
 	public volatile int input;
 
+	// -- frame buffer drawing
+	private static final int DEFAULT_RESOLUTION = 128;
+	private final Object frameLock = new Object(); // guards readyFrame, shownFrame and changes
+	private FrameBuffer frame; // drawn into by the annotations
+	private FrameBuffer readyFrame; // the latest frame to be presented
+	private FrameBuffer shownFrame; // the frame being shown by the visualiser
+	private final ChangeCoalescer<FrameBuffer> changes = new ChangeCoalescer<>();
+	private String textFont = "Monospace";
+	private double textSize = 12;
+
 	public CanvasModel(IO io) {
 		super(io);
 		input = 0;
@@ -156,18 +172,25 @@ public class CanvasModel extends DataStructureModel {
 		}
 	}
 
+	/**
+	 * @return the frame rate averaged over the last few frames
+	 */
+	private double recordFrameTime() {
+		long now = System.currentTimeMillis();
+		if(lastFrameMs != 0) {
+			frameTimes.add((int) (now - lastFrameMs));
+		}
+		lastFrameMs = now;
+
+		return 1000.0/frameTimes.mean();
+	}
+
 	/**
 	 * used internally to keep track of frames and display an FPS counter if requested
 	 */
 	private void submitFrame() {
 		if(showFPS) {
-			long now = System.currentTimeMillis();
-			if(lastFrameMs != 0) {
-				frameTimes.add((int) (now - lastFrameMs));
-			}
-			lastFrameMs = now;
-
-			double fps = 1000.0/frameTimes.mean();
+			double fps = recordFrameTime();
 
 			ctx.setFont(Font.font("monospace", 10));
 			ctx.setFill(textColor);
@@ -185,9 +208,168 @@ public class CanvasModel extends DataStructureModel {
 		ctx.fillText(text, canvas.getWidth()/2, canvas.getHeight()/2);
 	}
 
+	/**
+	 * Sets the resolution of the frame buffer (which is scaled to fill the canvas) and clears it
+	 *
+	 * @param width
+	 *            the width in pixels
+	 * @param height
+	 *            the height in pixels
+	 */
+	public void setResolution(int width, int height) {
+		if (width < 1 || height < 1 || width > FrameBuffer.MAX_DIMENSION || height > FrameBuffer.MAX_DIMENSION) {
+			printError("Invalid resolution: " + width + "x" + height);
+			return;
+		}
+		if (frame == null)
+			frame = new FrameBuffer(width, height);
+		else
+			frame.resize(width, height);
+	}
+
+	private FrameBuffer getFrame() {
+		if (frame == null)
+			frame = new FrameBuffer(DEFAULT_RESOLUTION, DEFAULT_RESOLUTION);
+		return frame;
+	}
+
+	/**
+	 * @return the width of the frame buffer in pixels
+	 */
+	public int getFrameWidth() {
+		return getFrame().getWidth();
+	}
+
+	/**
+	 * @return the height of the frame buffer in pixels
+	 */
+	public int getFrameHeight() {
+		return getFrame().getHeight();
+	}
+
+	/**
+	 * @return a colour (for the frame buffer) from its red, green and blue components (0-255)
+	 */
+	public int rgb(int r, int g, int b) {
+		return 0xFF000000 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+	}
+
+	/**
+	 * @param colorName
+	 *            a colour in any format accepted by Color.web (eg 'red' or '#AABBCC')
+	 * @return the colour (for the frame buffer)
+	 */
+	public int color(String colorName) {
+		return toARGB(Color.web(colorName));
+	}
+
+	private static int toARGB(Paint p) {
+		// gradients can't be used in the frame buffer
+		Color c = p instanceof Color ? (Color) p : Color.WHITE;
+		return (int) Math.round(c.getOpacity() * 255) << 24 | (int) Math.round(c.getRed() * 255) << 16
+			| (int) Math.round(c.getGreen() * 255) << 8 | (int) Math.round(c.getBlue() * 255);
+	}
+
+	/**
+	 * Sets a pixel of the frame buffer. Pixels outside of the frame are ignored
+	 */
+	public void plot(int x, int y, int color) {
+		getFrame().plot(x, y, color);
+	}
+
+	/**
+	 * Fills a rectangle of the frame buffer
+	 */
+	public void fillRect(int x, int y, int width, int height, int color) {
+		getFrame().fillRect(x, y, width, height, color);
+	}
+
+	/**
+	 * Fills the whole frame buffer with a colour and removes any text
+	 */
+	public void fill(int color) {
+		getFrame().clear(color);
+	}
+
+	/**
+	 * Sets the font used by text
+	 *
+	 * @param family
+	 *            the font family
+	 * @param size
+	 *            the size in frame buffer pixels
+	 */
+	public void setTextFont(String family, double size) {
+		textFont = family;
+		textSize = size;
+	}
+
+	/**
+	 * Draws text over the pixels of the frame buffer
+	 *
+	 * @param text
+	 *            the text to draw
+	 * @param x
+	 *            the x coordinate of the left of the text (in frame buffer pixels)
+	 * @param y
+	 *            the y coordinate of the top of the text (in frame buffer pixels)
+	 * @param color
+	 *            the colour of the text
+	 */
+	public void text(String text, double x, double y, int color) {
+		if (!getFrame().text(text, x, y, color, textFont, textSize) && getFrame().takeTextOverflowed())
+			printError("Too much text in one frame (the limit is " + FrameBuffer.MAX_TEXT_COMMANDS + ")");
+	}
+
+	/**
+	 * Removes the text from the frame buffer, keeping the pixels
+	 */
+	public void clearText() {
+		getFrame().clearText();
+	}
+
+	/**
+	 * Shows the frame buffer on the canvas. The frame buffer keeps its contents so the next frame can be drawn on top
+	 * of this one. If frames are presented faster than the screen refreshes then only the latest is shown
+	 */
+	public void present() {
+		FrameBuffer f = getFrame();
+		synchronized (frameLock) {
+			if (readyFrame == null) {
+				readyFrame = new FrameBuffer(f.getWidth(), f.getHeight());
+				shownFrame = new FrameBuffer(f.getWidth(), f.getHeight());
+			}
+			readyFrame.copyFrom(f);
+			if (showFPS) {
+				double fps = recordFrameTime();
+				double size = Math.max(8, f.getHeight() / 20.0);
+				readyFrame.text(String.format("%.1f FPS", fps), 1, 1, toARGB(textColor), "Monospace", size);
+			}
+			changes.addReplacement();
+		}
+		enforceFPSLimit();
+	}
+
 	@Override
 	public ModelType modelType() {
 		return ModelType.CANVAS;
 	}
 
+	/**
+	 * @return the latest frame to be presented since the last call, or null if none have been presented. Drawing
+	 *         directly to the canvas isn't included
+	 */
+	@Override
+	public ModelChanges<FrameBuffer> takeChanges() {
+		synchronized (frameLock) {
+			if (changes.isEmpty())
+				return null;
+			// the visualiser is finished with the frame it was last given, so it can be reused for the next frame
+			FrameBuffer ready = readyFrame;
+			readyFrame = shownFrame;
+			shownFrame = ready;
+			return changes.take(ready);
+		}
+	}
+
 }
@@ -0,0 +1,57 @@
+package simulizer.highlevel.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the changes made to a model until they are collected by the visualiser. Only a bounded number of changes
+ * are kept, after that only the number of changes is counted (the visualiser has to jump to the latest state).
+ *
+ * Not thread safe, the model should only use it while holding the lock for its data structure.
+ *
+ *
+ * @param <E>
+ *            the type of the data structure
+ */
+class ChangeCoalescer<E> {
+	static final int MAX_ACTIONS = 256;
+
+	private List<ModelAction<E>> actions = new ArrayList<>();
+	private int count = 0;
+
+	void add(ModelAction<E> action) {
+		count++;
+		if (actions != null) {
+			if (actions.size() < MAX_ACTIONS)
+				actions.add(action);
+			else
+				actions = null; // too many to animate
+		}
+	}
+
+	/**
+	 * record a change which can't be animated (eg the whole structure being replaced)
+	 */
+	void addReplacement() {
+		count++;
+		actions = null;
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * @param structure
+	 *            a copy of the current state of the data structure
+	 * @return the changes recorded since the last call, or null if there were none
+	 */
+	ModelChanges<E> take(E structure) {
+		if (count == 0)
+			return null;
+		ModelChanges<E> changes = new ModelChanges<>(structure, actions, count);
+		actions = new ArrayList<>();
+		count = 0;
+		return changes;
+	}
+}
@@ -37,6 +37,13 @@ public abstract class DataStructureModel extends Observable {
 
 	public abstract ModelType modelType();
 
+	/**
+	 * Collects the changes made to the model since the last call. Called by the visualiser (at most) once per frame
+	 * 
+	 * @return the changes merged together, or null if nothing has changed
+	 */
+	public abstract ModelChanges<?> takeChanges();
+
 	protected void printError(String error) {
 		// TODO: Throw an actual exception so the annotation number is printed.
 		io.printString(IOStream.ERROR, "[" + modelType() + "] " + error + "\n");
@@ -28,6 +28,9 @@ public class DataStructureModelStub extends DataStructureModel {
     @Override
     public ModelType modelType() { return ModelType.STUB; }
 
+    @Override
+    public ModelChanges<?> takeChanges() { return null; }
+
     @Override
     protected void printError(String error) { }
 
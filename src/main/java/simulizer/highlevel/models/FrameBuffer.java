@@ -0,0 +1,193 @@
+package simulizer.highlevel.models;
+
+import java.util.Arrays;
+
+/**
+ * A frame drawn by an annotation script for the canvas visualisation: a grid of ARGB pixels with some text drawn on
+ * top. The pixels and the text commands are stored in preallocated arrays, so drawing into a frame from a script
+ * doesn't allocate and doesn't touch JavaFX (which can only be used from the JavaFX thread). Finished frames are
+ * uploaded to the canvas in one go by the visualiser.
+ *
+ * The frame has its own resolution which is scaled to fill the canvas.
+ */
+public class FrameBuffer {
+	/**
+	 * The largest width or height of a frame
+	 */
+	public static final int MAX_DIMENSION = 4096;
+	/**
+	 * The number of text commands which can be recorded in a frame
+	 */
+	public static final int MAX_TEXT_COMMANDS = 256;
+
+	private int width, height;
+	private int[] pixels;
+
+	private int textCount = 0;
+	private boolean textOverflowed = false;
+	private final String[] texts = new String[MAX_TEXT_COMMANDS];
+	private final double[] textX = new double[MAX_TEXT_COMMANDS];
+	private final double[] textY = new double[MAX_TEXT_COMMANDS];
+	private final int[] textColors = new int[MAX_TEXT_COMMANDS];
+	private final double[] textSizes = new double[MAX_TEXT_COMMANDS];
+	private final String[] textFonts = new String[MAX_TEXT_COMMANDS];
+
+	FrameBuffer(int width, int height) {
+		resize(width, height);
+	}
+
+	/**
+	 * Changes the resolution of the frame, clearing it
+	 */
+	void resize(int width, int height) {
+		if (width < 1 || height < 1 || width > MAX_DIMENSION || height > MAX_DIMENSION)
+			throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		pixels = new int[width * height];
+		textCount = 0;
+	}
+
+	/**
+	 * Sets a pixel. Pixels outside of the frame are ignored
+	 */
+	void plot(int x, int y, int argb) {
+		if (x >= 0 && y >= 0 && x < width && y < height)
+			pixels[y * width + x] = argb;
+	}
+
+	/**
+	 * Fills a rectangle, clipped to the frame
+	 */
+	void fillRect(int x, int y, int w, int h, int argb) {
+		int x1 = Math.max(0, x);
+		int y1 = Math.max(0, y);
+		// long arithmetic so that huge rectangles don't overflow
+		int x2 = (int) Math.min(width, (long) x + w);
+		int y2 = (int) Math.min(height, (long) y + h);
+		if (x1 >= x2)
+			return;
+		for (int row = y1; row < y2; row++) {
+			int offset = row * width;
+			Arrays.fill(pixels, offset + x1, offset + x2, argb);
+		}
+	}
+
+	/**
+	 * Fills the whole frame and removes the text
+	 */
+	void clear(int argb) {
+		Arrays.fill(pixels, argb);
+		textCount = 0;
+	}
+
+	/**
+	 * Records some text to draw over the pixels
+	 *
+	 * @return false if the text could not be recorded because there are too many text commands in the frame
+	 */
+	boolean text(String text, double x, double y, int argb, String font, double size) {
+		if (textCount == MAX_TEXT_COMMANDS) {
+			textOverflowed = true;
+			return false;
+		}
+		int i = textCount++;
+		texts[i] = text;
+		textX[i] = x;
+		textY[i] = y;
+		textColors[i] = argb;
+		textFonts[i] = font;
+		textSizes[i] = size;
+		return true;
+	}
+
+	/**
+	 * @return whether text has been dropped since the last call
+	 */
+	boolean takeTextOverflowed() {
+		boolean overflowed = textOverflowed;
+		textOverflowed = false;
+		return overflowed;
+	}
+
+	/**
+	 * Removes the text commands, keeping the pixels
+	 */
+	void clearText() {
+		textCount = 0;
+	}
+
+	/**
+	 * Makes this frame a copy of another, reusing the existing arrays where possible
+	 */
+	void copyFrom(FrameBuffer other) {
+		if (width != other.width || height != other.height) {
+			width = other.width;
+			height = other.height;
+			pixels = new int[width * height];
+		}
+		System.arraycopy(other.pixels, 0, pixels, 0, pixels.length);
+		textCount = other.textCount;
+		System.arraycopy(other.texts, 0, texts, 0, textCount);
+		System.arraycopy(other.textX, 0, textX, 0, textCount);
+		System.arraycopy(other.textY, 0, textY, 0, textCount);
+		System.arraycopy(other.textColors, 0, textColors, 0, textCount);
+		System.arraycopy(other.textFonts, 0, textFonts, 0, textCount);
+		System.arraycopy(other.textSizes, 0, textSizes, 0, textCount);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the pixels of the frame in rows, as non-premultiplied ARGB. Must not be modified
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * @return the number of text commands in the frame
+	 */
+	public int getTextCount() {
+		return textCount;
+	}
+
+	public String getText(int i) {
+		return texts[i];
+	}
+
+	/**
+	 * @return the x coordinate of the left of the text, in frame pixels
+	 */
+	public double getTextX(int i) {
+		return textX[i];
+	}
+
+	/**
+	 * @return the y coordinate of the top of the text, in frame pixels
+	 */
+	public double getTextY(int i) {
+		return textY[i];
+	}
+
+	public int getTextColor(int i) {
+		return textColors[i];
+	}
+
+	public String getTextFont(int i) {
+		return textFonts[i];
+	}
+
+	/**
+	 * @return the font size, in frame pixels
+	 */
+	public double getTextSize(int i) {
+		return textSizes[i];
+	}
+}
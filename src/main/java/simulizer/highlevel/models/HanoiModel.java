@@ -15,8 +15,9 @@ import simulizer.simulation.cpu.user_interaction.IO;
  */
 @SuppressWarnings("WeakerAccess")
 public class HanoiModel extends DataStructureModel {
-	private final List<Stack<Integer>> pegs = new ArrayList<>(3);
+	private final List<Stack<Integer>> pegs = new ArrayList<>(3); // also guards changes
 	private int numDiscs = 0;
+	private final ChangeCoalescer<List<Stack<Integer>>> changes = new ChangeCoalescer<>();
 
 	HanoiModel(IO io) {
 		super(io);
@@ -46,10 +47,9 @@ public class HanoiModel extends DataStructureModel {
 			Stack<Integer> firstPeg = pegs.get(0);
 			for (int disc = n - 1; disc >= 0; disc--)
 				firstPeg.push(disc);
-		}
 
-		setChanged();
-		notifyObservers(new Discs(n));
+			changes.addReplacement();
+		}
 	}
 
 	/**
@@ -78,23 +78,34 @@ public class HanoiModel extends DataStructureModel {
 				return;
 			}
 			pegs.get(endPeg).push(item);
+
+			changes.add(new Move(startPeg, endPeg));
 		}
+	}
 
-		// Notify Observers
-		setChanged();
-		notifyObservers(new Move(startPeg, endPeg));
+	public List<Stack<Integer>> getPegs() {
+		synchronized (pegs) {
+			return copyPegs();
+		}
 	}
 
 	@SuppressWarnings("unchecked")
-	public List<Stack<Integer>> getPegs() {
+	private List<Stack<Integer>> copyPegs() {
+		// Copies all the pegs to a new object
+		List<Stack<Integer>> pegsCopy = new ArrayList<>(3);
+		for (Stack<Integer> pegOrig : pegs) {
+			// noinspection unchecked
+			pegsCopy.add((Stack<Integer>) pegOrig.clone());
+		}
+		return pegsCopy;
+	}
+
+	@Override
+	public ModelChanges<List<Stack<Integer>>> takeChanges() {
 		synchronized (pegs) {
-			// Copies all the pegs to a new object
-			List<Stack<Integer>> pegsCopy = new ArrayList<>(3);
-			for (Stack<Integer> pegOrig : pegs) {
-				// noinspection unchecked
-				pegsCopy.add((Stack<Integer>) pegOrig.clone());
-			}
-			return pegsCopy;
+			if (changes.isEmpty())
+				return null;
+			return changes.take(copyPegs());
 		}
 	}
 
@@ -114,18 +125,9 @@ public class HanoiModel extends DataStructureModel {
 		public final int start, end;
 
 		private Move(int start, int end) {
-			super(getPegs(), true);
+			super(true);
 			this.start = start;
 			this.end = end;
 		}
 	}
-
-	public class Discs extends ModelAction<List<Stack<Integer>>> {
-		public final int numDiscs;
-
-		private Discs(int numDiscs) {
-			super(getPegs(), false);
-			this.numDiscs = numDiscs;
-		}
-	}
 }
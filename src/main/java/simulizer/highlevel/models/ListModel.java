@@ -11,15 +11,35 @@ import simulizer.simulation.cpu.user_interaction.IO;
 
 /**
  * Model for visualising a list
- * 
+ *
+ * Changes are recorded rather than sent to the visualiser straight away. The visualiser collects them once per frame
+ * (see takeChanges)
+ *
  * @author Michael
  *
  */
 @SuppressWarnings("WeakerAccess")
 public class ListModel extends DataStructureModel {
+	private final Object lock = new Object(); // guards list, markers and changes
 	private long[] list;
 	private int size = 0;
 	private Map<Integer, ArrayList<String>> markers = new HashMap<>();
+	private final ChangeCoalescer<long[]> changes = new ChangeCoalescer<>();
+	private volatile Style style = Style.AUTO;
+
+	/**
+	 * How the list is drawn
+	 */
+	public enum Style {
+		/** boxes for short lists, bars for long ones */
+		AUTO,
+		/** a labelled box for each element (animated) */
+		BOXES,
+		/** a bar chart */
+		BARS,
+		/** a strip coloured by value */
+		HEAT_MAP
+	}
 
 	public ListModel(IO io, List<Long> list) {
 		super(io);
@@ -33,27 +53,39 @@ public class ListModel extends DataStructureModel {
 
 	/**
 	 * Sets the list
-	 * 
+	 *
 	 * @param list
 	 *            the list to set
 	 */
 	public void setList(List<Long> list) {
-		synchronized (this.list) {
-			synchronized (markers) {
-				this.list = new long[list.size()];
-				size = list.size();
+		long[] copy = new long[list.size()];
+		for (int i = 0; i < copy.length; i++)
+			copy[i] = list.get(i);
+		replaceList(copy);
+	}
 
-				for (int i = 0; i < list.size(); i++)
-					this.list[i] = list.get(i);
-			}
+	/**
+	 * Sets the list from a primitive array (eg one read in bulk from memory), avoiding boxing
+	 *
+	 * @param list
+	 *            the list to set, which is copied
+	 */
+	public void setList(long[] list) {
+		replaceList(Arrays.copyOf(list, list.length));
+	}
+
+	private void replaceList(long[] newList) {
+		synchronized (lock) {
+			this.list = newList;
+			size = newList.length;
+			markers.keySet().removeIf(i -> i >= newList.length);
+			changes.addReplacement();
 		}
-		setChanged();
-		notifyObservers(new ListAction());
 	}
 
 	/**
 	 * Checks whether an index exists. Will print error if invalid.
-	 * 
+	 *
 	 * @param index
 	 *            the index to check
 	 * @return whether it exists or not.
@@ -68,32 +100,31 @@ public class ListModel extends DataStructureModel {
 
 	/**
 	 * Sets an item in a list
-	 * 
+	 *
 	 * @param i
 	 *            the index to replace
 	 * @param item
 	 *            the item to replace with
 	 */
 	public void set(int i, Long item) {
-		synchronized (list) {
+		synchronized (lock) {
 			if (checkIndex(i))
 				return;
 			list[i] = item;
-			setChanged();
-			notifyObservers(new ListAction());
+			changes.add(new SetAction(i, item));
 		}
 	}
 
 	/**
 	 * Swaps two elements in the list
-	 * 
+	 *
 	 * @param i
 	 *            the first index
 	 * @param j
 	 *            the second index
 	 */
 	public void swap(int i, int j) {
-		synchronized (list) {
+		synchronized (lock) {
 			if (checkIndex(i))
 				return;
 			if (checkIndex(j))
@@ -104,60 +135,56 @@ public class ListModel extends DataStructureModel {
 			list[i] = list[j];
 			list[j] = temp;
 
-			// Notify Listeners
-			setChanged();
-			notifyObservers(new SwapAction(i, j));
+			changes.add(new SwapAction(i, j));
 		}
 	}
 
 	/**
 	 * Puts a marker on an index
-	 * 
+	 *
 	 * @param markerName
 	 *            the marker name to add
 	 * @param index
 	 *            the index to add the marker to
 	 */
 	public void setMarkers(String markerName, int index) {
-		synchronized (markers) {
+		synchronized (lock) {
 			if (checkIndex(index))
 				return;
 
 			ArrayList<String> exMarkers = markers.get(index);
-			if (exMarkers != null)
-				exMarkers.add(markerName);
-			else {
+			if (exMarkers == null) {
 				exMarkers = new ArrayList<>(2);
 				markers.put(index, exMarkers);
 			}
+			exMarkers.add(markerName);
 
-			setChanged();
-			notifyObservers(new MarkerAction(index, markerName));
+			changes.add(new MarkerAction(index, markerName));
 		}
 	}
 
 	/**
 	 * Highlights a marker
-	 * 
+	 *
 	 * @param index
 	 *            the index to highlight markers for
 	 */
 	public void highlightMarker(int index) {
-		setChanged();
-		notifyObservers(new HighlightAction(index));
+		synchronized (lock) {
+			changes.add(new HighlightAction(index));
+		}
 	}
 
 	/**
 	 * Clears a marker
-	 * 
+	 *
 	 * @param index
 	 *            the index to clear markers for
 	 */
 	public void clearMarker(int index) {
-		synchronized (markers) {
+		synchronized (lock) {
 			markers.remove(index);
-			setChanged();
-			notifyObservers(new MarkerAction(index));
+			changes.add(new MarkerAction(index));
 		}
 	}
 
@@ -165,40 +192,69 @@ public class ListModel extends DataStructureModel {
 	 * Clears all markers
 	 */
 	public void clearMarkers() {
-		synchronized (markers) {
+		synchronized (lock) {
 			markers.clear();
-			setChanged();
-			notifyObservers(new MarkerAction());
+			changes.add(new MarkerAction());
 		}
 	}
 
 	/**
 	 * Emphasises a particular element
-	 * 
+	 *
 	 * @param index
 	 *            the index of the element to emphasise
 	 */
 	public void emphasise(int index) {
-		setChanged();
-		notifyObservers(new EmphasiseAction(index));
+		synchronized (lock) {
+			changes.add(new EmphasiseAction(index));
+		}
+	}
+
+	/**
+	 * Sets how the list is drawn
+	 *
+	 * @param style
+	 *            one of "auto", "boxes", "bars" or "heat-map"
+	 */
+	public void setStyle(String style) {
+		switch (style) {
+			case "auto":
+				this.style = Style.AUTO;
+				break;
+			case "boxes":
+				this.style = Style.BOXES;
+				break;
+			case "bars":
+				this.style = Style.BARS;
+				break;
+			case "heat-map":
+				this.style = Style.HEAT_MAP;
+				break;
+			default:
+				printError("There is no style " + style);
+		}
+	}
+
+	/**
+	 * @return how the list is drawn
+	 */
+	public Style getStyle() {
+		return style;
 	}
 
 	/**
 	 * @return the size of the list
 	 */
 	public int size() {
-		return list.length;
+		return size;
 	}
 
 	/**
 	 * @return a copy of the list in it's current state
 	 */
 	public long[] getList() {
-		synchronized (list) {
-			if (list.length == 0)
-				return new long[0];
-			else
-				return Arrays.copyOf(list, list.length);
+		synchronized (lock) {
+			return Arrays.copyOf(list, list.length);
 		}
 	}
 
@@ -206,7 +262,7 @@ public class ListModel extends DataStructureModel {
 	 * @return a copy of the markers in it's current state
 	 */
 	public Map<Integer, ArrayList<String>> getMarkers() {
-		synchronized (markers) {
+		synchronized (lock) {
 			Map<Integer, ArrayList<String>> copy = new HashMap<>();
 			for (Map.Entry<Integer, ArrayList<String>> entry : markers.entrySet()) {
 				copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
@@ -216,21 +272,32 @@ public class ListModel extends DataStructureModel {
 		}
 	}
 
+	@Override
+	public ModelChanges<long[]> takeChanges() {
+		synchronized (lock) {
+			if (changes.isEmpty())
+				return null;
+			// the list is only copied once per batch of changes
+			return changes.take(Arrays.copyOf(list, list.length));
+		}
+	}
+
 	@Override
 	public ModelType modelType() {
 		return ModelType.LIST;
 	}
 
 	/**
-	 * List changed action
-	 * 
-	 * @author Michael
-	 *
+	 * Defines a Set Action
 	 */
-	public class ListAction extends ModelAction<long[]> {
+	public class SetAction extends ModelAction<long[]> {
+		public final int index;
+		public final long value;
 
-		private ListAction() {
-			super(getList(), false);
+		private SetAction(final int index, final long value) {
+			super(false);
+			this.index = index;
+			this.value = value;
 		}
 	}
 
@@ -243,7 +310,7 @@ public class ListModel extends DataStructureModel {
 		public final int a, b;
 
 		private SwapAction(final int a, final int b) {
-			super(getList(), true);
+			super(true);
 			this.a = a;
 			this.b = b;
 		}
@@ -268,7 +335,7 @@ public class ListModel extends DataStructureModel {
 		 *            the index
 		 */
 		private MarkerAction(final int index, final String name) {
-			super(getList(), false);
+			super(false);
 			this.index = Optional.of(index);
 			this.name = Optional.of(name);
 		}
@@ -280,7 +347,7 @@ public class ListModel extends DataStructureModel {
 		 *            the index
 		 */
 		private MarkerAction(final int index) {
-			super(getList(), false);
+			super(false);
 			this.index = Optional.of(index);
 			this.name = Optional.empty();
 		}
@@ -289,7 +356,7 @@ public class ListModel extends DataStructureModel {
 		 * Clear all markers
 		 */
 		private MarkerAction() {
-			super(getList(), false);
+			super(false);
 			this.name = Optional.empty();
 			this.index = Optional.empty();
 		}
@@ -305,7 +372,7 @@ public class ListModel extends DataStructureModel {
 		public final int index;
 
 		private EmphasiseAction(final int index) {
-			super(getList(), false);
+			super(false);
 			this.index = index;
 		}
 	}
@@ -314,7 +381,7 @@ public class ListModel extends DataStructureModel {
 		public final int index;
 
 		private HighlightAction(final int index) {
-			super(getList(), false);
+			super(false);
 			this.index = index;
 		}
 	}
@@ -1,7 +1,8 @@
 package simulizer.highlevel.models;
 
 /**
- * Model action tells the visualisation what has changed
+ * Model action tells the visualisation what has changed. Actions are collected by the visualiser in batches (see
+ * ModelChanges), so they describe the change rather than carrying a copy of the data structure
  * 
  * @author Michael
  *
@@ -10,17 +11,13 @@ package simulizer.highlevel.models;
  */
 public class ModelAction<E> {
 
-	public final E structure;
 	public final boolean skipable;
 
 	/**
-	 * @param structure
-	 *            a copy of the data structure
 	 * @param skippable
 	 *            whether this change can be skipped
 	 */
-	public ModelAction(E structure, boolean skippable) {
-		this.structure = structure;
+	public ModelAction(boolean skippable) {
 		this.skipable = skippable;
 	}
 
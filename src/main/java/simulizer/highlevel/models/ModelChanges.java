@@ -0,0 +1,60 @@
+package simulizer.highlevel.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes made to a model since a visualiser last collected them, merged together. Models record the individual
+ * changes as they are made (by annotations) and the visualiser collects them at most once per frame, so a model which
+ * is changed thousands of times per second costs the visualiser one update per frame.
+ *
+ * The visualiser can either animate the individual changes, or jump straight to the latest state of the model. If too
+ * many changes were made to record them all, only the latest state is available.
+ *
+ *
+ * @param <E>
+ *            the type of the data structure
+ */
+public class ModelChanges<E> {
+	/**
+	 * a copy of the data structure after all of the changes
+	 */
+	public final E structure;
+	private final List<ModelAction<E>> actions;
+	private final int count;
+
+	/**
+	 * @param structure
+	 *            a copy of the data structure after the changes
+	 * @param actions
+	 *            the changes in the order they were made, or null if too many were made to record
+	 * @param count
+	 *            the number of changes made
+	 */
+	ModelChanges(E structure, List<ModelAction<E>> actions, int count) {
+		this.structure = structure;
+		this.actions = actions;
+		this.count = count;
+	}
+
+	/**
+	 * @return whether the individual changes were recorded (so can be animated)
+	 */
+	public boolean hasActions() {
+		return actions != null;
+	}
+
+	/**
+	 * @return the changes in the order they were made (empty if they were not recorded)
+	 */
+	public List<ModelAction<E>> getActions() {
+		return actions == null ? Collections.emptyList() : Collections.unmodifiableList(actions);
+	}
+
+	/**
+	 * @return the number of changes which were merged
+	 */
+	public int getCount() {
+		return count;
+	}
+}
@@ -1,6 +1,8 @@
 package simulizer.lowlevel.models;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Observer;
@@ -10,26 +12,71 @@ import java.util.Set;
 import simulizer.assembler.representation.Address;
 import simulizer.simulation.messages.PipelineHazardMessage;
 import simulizer.simulation.messages.PipelineStateMessage;
+import simulizer.simulation.messages.PipelineStateMessage.BranchOutcome;
 
 /**
  * Represents the model for the history of the pipeline, including the waiting and
- * completed instructions at each stage.
+ * completed instructions at each stage. The pipeline has three stages (fetch, decode and
+ * execute) or five (adding memory and write back).
  *
- * @author Kelsey McKenna
+ * The history is stored as columns of primitives (one entry per cycle) split into
+ * fixed size chunks, so that recording a cycle costs a constant (small) amount of
+ * memory and never copies the existing history. The waiting and completed
+ * instructions are not stored, they are calculated when a cycle is looked at.
+ *
+ * Cycles are recorded by a single thread at a time, but may be read from another
+ * thread while they are being recorded.
  *
+ * @author Kelsey McKenna
  */
 public class PipelineHistoryModel {
-	private static final int MAX_SIZE = 10_000;
-	private List<PipelineState> history = new ArrayList<>();
+	private static final int CHUNK_BITS = 14;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // cycles
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	/**
+	 * the number of earlier cycles to search when calculating the completed instructions
+	 */
+	private static final int MAX_LOOKBACK = 64;
+
+	private static final int NO_ADDRESS = -1; // addresses are never negative
+	private static final int JUMP_FLAG = 0x80;
+	private static final int FETCH_PREDICTED_FLAG = 0x40; // the instruction fetched was predicted to be a taken branch
+	private static final int DECODE_PREDICTED_FLAG = 0x20; // the instruction decoded was predicted to be a taken branch
+	private static final int CORRECT_FLAG = 0x10; // the branch executed was predicted correctly
+	private static final int MISPREDICTED_FLAG = 0x08; // the branch executed was mispredicted
+	private static final int HAZARD_MASK = 0x07; // the hazard ordinal + 1 (0 for no hazard)
+	private static final PipelineHazardMessage.Hazard[] hazards = PipelineHazardMessage.Hazard.values();
+
+	/**
+	 * the columns for CHUNK_SIZE consecutive cycles
+	 */
+	private static class Chunk {
+		final int[] fetched = new int[CHUNK_SIZE];
+		final int[] decoded = new int[CHUNK_SIZE];
+		final int[] executed = new int[CHUNK_SIZE];
+		// only allocated for five stage pipelines
+		int[] memory;
+		int[] writeback;
+		final byte[] flags = new byte[CHUNK_SIZE];
+	}
+
+	private volatile Chunk[] chunks = new Chunk[16];
+	private volatile int size = 0;
+	private volatile int stages = 3;
 	private Set<Observer> observers = new HashSet<>();
 	private PipelineHazardMessage.Hazard currentHazard;
 
 	/**
 	 * Represents a single state in the pipeline. This has public fields
-	 * for accessing the fetch, decode, and execute addresses, as well as
+	 * for accessing the fetch, decode, and execute addresses (and memory and
+	 * write back, for five stage pipelines), as well as
 	 * lists of the addresses before (waiting) and after (complete) the
 	 * pipeline. There is also information about whether or not the stage
-	 * represents a jump instruction, and whether it has a hazard.
+	 * represents a jump instruction, and whether it has a hazard, and what the
+	 * branch predictor did.
+	 *
+	 * States are created on demand from the stored history, so should only
+	 * be requested for the cycles which are being looked at.
 	 *
 	 * @author Kelsey McKenna
 	 *
@@ -39,31 +86,98 @@ public class PipelineHistoryModel {
 		public final Address fetched;
 		public final Address decoded;
 		public final Address executed;
+		public final Address memory; // null for three stage pipelines
+		public final Address writeback; // null for three stage pipelines
+		public final int stages;
 		public final List<Address> after;
 		public final boolean isJump;
 		public final Optional<PipelineHazardMessage.Hazard> hazard;
+		public final boolean fetchPredictedTaken;
+		public final boolean decodePredictedTaken;
+		public final BranchOutcome outcome;
+
+		private PipelineState(Chunk[] chunks, int cycle) {
+			Chunk c = chunks[cycle >>> CHUNK_BITS];
+			int i = cycle & CHUNK_MASK;
+			fetched = toAddress(c.fetched[i]);
+			decoded = toAddress(c.decoded[i]);
+			executed = toAddress(c.executed[i]);
+			stages = c.memory == null ? 3 : 5;
+			memory = c.memory == null ? null : toAddress(c.memory[i]);
+			writeback = c.writeback == null ? null : toAddress(c.writeback[i]);
+			isJump = (c.flags[i] & JUMP_FLAG) != 0;
+			int h = c.flags[i] & HAZARD_MASK;
+			hazard = h == 0 ? Optional.empty() : Optional.of(hazards[h - 1]);
+			fetchPredictedTaken = (c.flags[i] & FETCH_PREDICTED_FLAG) != 0;
+			decodePredictedTaken = (c.flags[i] & DECODE_PREDICTED_FLAG) != 0;
+			if ((c.flags[i] & CORRECT_FLAG) != 0)
+				outcome = BranchOutcome.CORRECTLY_PREDICTED;
+			else if ((c.flags[i] & MISPREDICTED_FLAG) != 0)
+				outcome = BranchOutcome.MISPREDICTED;
+			else
+				outcome = BranchOutcome.NONE;
+
+			// -- Calculate addresses before the pipeline
+			if (fetched == null) {
+				before = Collections.emptyList();
+			} else {
+				before = new ArrayList<>(3);
+				for (int j = 3; j >= 1; --j)
+					before.add(new Address(fetched.getValue() + 4 * j));
+			}
 
-		PipelineState(List<Address> before, Address fetch, Address decode, Address execute, List<Address> after, boolean isJump) {
-			this.before = before;
-			this.fetched = fetch;
-			this.decoded = decode;
-			this.executed = execute;
-			this.after = after;
-			this.isJump = isJump;
-
-			if (fetch == null || decode == null || execute == null) {
-				if (currentHazard == null) this.hazard = Optional.empty();
-				else this.hazard = Optional.of(currentHazard);
-			} else this.hazard = Optional.empty();
+			// -- Get the addresses after the pipeline
+			// If there has been a jump, nothing is after the pipeline.
+			// Otherwise add as many (up to 3) instructions after the pipeline,
+			// and stop looking if you reach a jump instruction
+			after = new ArrayList<>(3);
+			if (!isJump) {
+				int stop = Math.max(0, cycle - MAX_LOOKBACK);
+				for (int j = cycle - 1; j >= stop && after.size() < 3; --j) {
+					Chunk prev = chunks[j >>> CHUNK_BITS];
+					int k = j & CHUNK_MASK;
+					if ((prev.flags[k] & JUMP_FLAG) != 0)
+						break;
+					// instructions leave the five stage pipeline after write back
+					int[] last = prev.writeback == null ? prev.executed : prev.writeback;
+					if (last[k] != NO_ADDRESS)
+						after.add(new Address(last[k]));
+				}
+			}
 		}
 	}
 
-	public List<PipelineState> getHistory() {
-		return history;
+	private static Address toAddress(int value) {
+		return value == NO_ADDRESS ? null : new Address(value);
+	}
+
+	private static int fromAddress(Address address) {
+		return address == null ? NO_ADDRESS : address.getValue();
+	}
+
+	/**
+	 * @param cycle
+	 *            the cycle to look at (between 0 and size()-1)
+	 * @return the state of the pipeline at the given cycle
+	 */
+	public PipelineState get(int cycle) {
+		Chunk[] cs = chunks;
+		int chunkIndex = cycle >>> CHUNK_BITS;
+		// the history may have been cleared since size was read
+		if (cycle < 0 || cycle >= size || chunkIndex >= cs.length || cs[chunkIndex] == null)
+			throw new IndexOutOfBoundsException("cycle " + cycle + " has not been recorded");
+		return new PipelineState(cs, cycle);
 	}
 
 	public int size() {
-		return history.size();
+		return size;
+	}
+
+	/**
+	 * @return the number of stages of the pipeline which sent the most recent cycle (3 or 5)
+	 */
+	public int getStageCount() {
+		return stages;
 	}
 
 	public void addObserver(Observer observer) {
@@ -81,53 +195,63 @@ public class PipelineHistoryModel {
 	 *            the pipeline state message
 	 */
 	public void processPipelineStateMessage(final PipelineStateMessage m) {
-		if (size() >= MAX_SIZE) return;
+		final int cycle = size;
+		if (cycle == Integer.MAX_VALUE)
+			return;
 
-		final Address fetched = m.getFetched();
-		final Address decoded = m.getDecoded();
-		final Address executed = m.getExecuted();
-
-		List<Address> before = new ArrayList<>(3);
-		List<Address> after = new ArrayList<>(3);
-		boolean isJump = false;
+		final int fetched = fromAddress(m.getFetched());
+		final int decoded = fromAddress(m.getDecoded());
+		final int executed = fromAddress(m.getExecuted());
 
-		if (fetched != null) {
-			int currentFetchAddress = fetched.getValue();
-
-			// -- Calculate addresses before the pipeline
-			for (int i = 3; i >= 1; --i)
-				before.add(new Address(currentFetchAddress + 4 * i));
+		Chunk[] cs = chunks;
+		int chunkIndex = cycle >>> CHUNK_BITS;
+		if (chunkIndex == cs.length)
+			cs = Arrays.copyOf(cs, cs.length * 2);
+		if (cs[chunkIndex] == null)
+			cs[chunkIndex] = new Chunk();
+		if (m.getStageCount() == 5 && cs[chunkIndex].memory == null) {
+			cs[chunkIndex].memory = new int[CHUNK_SIZE];
+			cs[chunkIndex].writeback = new int[CHUNK_SIZE];
+			Arrays.fill(cs[chunkIndex].memory, NO_ADDRESS);
+			Arrays.fill(cs[chunkIndex].writeback, NO_ADDRESS);
+		}
+		chunks = cs;
 
-			// -- Get the addresses after the pipeline
-			// It *is* a jump if the current fetch address is not equal to `last` or `last + 4`
-			if (history.size() > 0) {
-				Address lastFetch = history.get(history.size() - 1).fetched;
-				if (lastFetch != null) {
-					int lastFetchAddress = lastFetch.getValue();
-					isJump = currentFetchAddress != lastFetchAddress && currentFetchAddress != lastFetchAddress + 4;
-				}
-			}
+		// It *is* a jump if the current fetch address is not equal to `last` or `last + 4`
+		boolean isJump = false;
+		if (fetched != NO_ADDRESS && cycle > 0) {
+			int last = cycle - 1;
+			int lastFetch = cs[last >>> CHUNK_BITS].fetched[last & CHUNK_MASK];
+			isJump = lastFetch != NO_ADDRESS && fetched != lastFetch && fetched != lastFetch + 4;
 		}
 
-		// If there has been a jump, clear what's after the pipeline
-		// otherwise, add calculate the appropriate things
-		if (!isJump) {
-			int count = 0;
+		int flags = isJump ? JUMP_FLAG : 0;
+		if ((fetched == NO_ADDRESS || decoded == NO_ADDRESS || executed == NO_ADDRESS) && currentHazard != null)
+			flags |= currentHazard.ordinal() + 1;
+		final int predicted = fromAddress(m.getPredictedTaken());
+		if (predicted != NO_ADDRESS && predicted == fetched)
+			flags |= FETCH_PREDICTED_FLAG;
+		if (predicted != NO_ADDRESS && predicted == decoded)
+			flags |= DECODE_PREDICTED_FLAG;
+		if (m.getOutcome() == BranchOutcome.CORRECTLY_PREDICTED)
+			flags |= CORRECT_FLAG;
+		else if (m.getOutcome() == BranchOutcome.MISPREDICTED)
+			flags |= MISPREDICTED_FLAG;
 
-			// Add as many (up to 3) instructions after the pipeline,
-			// and stop looking if you reach a jump instruction
-			PipelineState state;
-			for (int i = history.size() - 1; i >= 0 && count < 3 && !(state = history.get(i)).isJump; --i) {
-				if (state.executed != null) {
-					after.add(state.executed);
-					++count;
-				}
-			}
+		Chunk c = cs[chunkIndex];
+		int i = cycle & CHUNK_MASK;
+		c.fetched[i] = fetched;
+		c.decoded[i] = decoded;
+		c.executed[i] = executed;
+		if (c.memory != null) {
+			c.memory[i] = fromAddress(m.getMemory());
+			c.writeback[i] = fromAddress(m.getWriteback());
 		}
+		c.flags[i] = (byte) flags;
+		stages = m.getStageCount();
+		size = cycle + 1; // publishes the new cycle to readers
 
-		PipelineState nextState = new PipelineState(before, fetched, decoded, executed, after, isJump);
-		history.add(nextState);
-		notifyObservers(nextState);
+		notifyObservers(cycle);
 	}
 
 	/**
@@ -141,17 +265,18 @@ public class PipelineHistoryModel {
 	}
 
 	public void clear() {
-		history.clear();
-		notifyObservers(null);
+		size = 0;
+		chunks = new Chunk[16]; // release the memory used by the last run
+		notifyObservers(-1);
 	}
 
 	/**
 	 * Notifies the observers about the most recent pipeline state
 	 *
-	 * @param nextState
-	 *            the pipeline state to send to the observers
+	 * @param cycle
+	 *            the cycle which was just recorded (-1 when the history is cleared)
 	 */
-	private void notifyObservers(PipelineState nextState) {
-		observers.forEach(t -> t.update(null, nextState));
+	private void notifyObservers(int cycle) {
+		observers.forEach(t -> t.update(null, cycle));
 	}
 }
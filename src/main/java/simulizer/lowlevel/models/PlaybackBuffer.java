@@ -0,0 +1,352 @@
+package simulizer.lowlevel.models;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import simulizer.assembler.representation.Address;
+import simulizer.simulation.cpu.TickBarrier;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.data.representation.Word;
+import simulizer.simulation.messages.Message;
+import simulizer.simulation.messages.PipelineHazardMessage;
+import simulizer.simulation.messages.PipelineStateMessage;
+import simulizer.simulation.messages.SimulationListener;
+import simulizer.simulation.messages.SimulationMessage;
+
+/**
+ * Records how the state of the CPU changes each cycle so that the simulation can run ahead (at full speed) of what is
+ * shown to the user. The UI then plays the recorded cycles back at the speed chosen by the user, which makes seeking
+ * forward and skipping to the end instant.
+ *
+ * The CPU may only get a bounded number of cycles ahead of the playback. It waits (through the TickBarrier interface)
+ * when the buffer is full.
+ *
+ * The deltas are recorded on the CPU thread each tick, after the messages for the tick have been processed, so the
+ * CPU is not executing at the time.
+ */
+public class PlaybackBuffer implements TickBarrier {
+	private final static long allowedDrainTime = 1000; // milliseconds (the longest to wait for the playback to progress)
+
+	/**
+	 * the changes made to the CPU during a single cycle
+	 */
+	private static class CycleDelta {
+		final long cycle;
+		final int[] changedRegisters; // register IDs
+		final Word[] newValues;
+		final Word hi, lo;
+		final Address pc;
+		/**
+		 * PipelineStateMessages and PipelineHazardMessages in the order they were received
+		 */
+		final List<Message> pipelineMessages;
+
+		CycleDelta(long cycle, int[] changedRegisters, Word[] newValues, Word hi, Word lo, Address pc, List<Message> pipelineMessages) {
+			this.cycle = cycle;
+			this.changedRegisters = changedRegisters;
+			this.newValues = newValues;
+			this.hi = hi;
+			this.lo = lo;
+			this.pc = pc;
+			this.pipelineMessages = pipelineMessages;
+		}
+	}
+
+	/**
+	 * The state of the CPU at the cycle which is currently being shown
+	 */
+	public static class State {
+		public final long cycle;
+		public final Word[] registers;
+		public final Word hi;
+		public final Word lo;
+		public final Address pc;
+		public final PipelineStateMessage stages; // may be null
+
+		private State(long cycle, Word[] registers, Word hi, Word lo, Address pc, PipelineStateMessage stages) {
+			this.cycle = cycle;
+			this.registers = registers;
+			this.hi = hi;
+			this.lo = lo;
+			this.pc = pc;
+			this.stages = stages;
+		}
+	}
+
+	private final PipelineHistoryModel pipelineModel;
+	private final Recorder recorder = new Recorder();
+	private CPU cpu = null;
+	private volatile int capacity;
+
+	private final ArrayDeque<CycleDelta> buffered = new ArrayDeque<>();
+	private List<Message> pendingMessages = new ArrayList<>();
+	private long lastRecordedCycle;
+	private Word[] recordedRegisters = null;
+	private Word recordedHi, recordedLo;
+
+	private State played = null;
+	/**
+	 * set when the rest of the simulation should be played back instantly, until the next simulation starts
+	 */
+	private volatile boolean skipping = false;
+
+	/**
+	 * @param pipelineModel
+	 *            the model which is fed the pipeline states as they are played back
+	 * @param capacity
+	 *            the number of cycles the CPU may get ahead of the playback
+	 */
+	public PlaybackBuffer(PipelineHistoryModel pipelineModel, int capacity) {
+		this.pipelineModel = pipelineModel;
+		this.capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * start recording the given CPU (detaches from the previous CPU)
+	 *
+	 * @param cpu
+	 *            the CPU to record, or null to detach
+	 */
+	public synchronized void attach(CPU cpu) {
+		if (this.cpu != null) {
+			this.cpu.unregisterListener(recorder);
+			this.cpu.removeTickBarrier(this);
+		}
+		this.cpu = cpu;
+		buffered.clear();
+		pendingMessages.clear();
+		recordedRegisters = null;
+		played = null;
+		notifyAll();
+		if (cpu != null) {
+			cpu.registerListener(recorder);
+			cpu.addTickBarrier(this);
+		}
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return whether there is a recorded simulation to play back
+	 */
+	public synchronized boolean isActive() {
+		return played != null;
+	}
+
+	/**
+	 * @return the number of recorded cycles which have not yet been played back
+	 */
+	public synchronized int getBufferedCycles() {
+		return buffered.size();
+	}
+
+	/**
+	 * @return the state at the cycle currently being shown, or null if nothing has been recorded
+	 */
+	public synchronized State getPlayedState() {
+		return played;
+	}
+
+	public boolean isSkipping() {
+		return skipping;
+	}
+
+	/**
+	 * play back the given number of cycles (or fewer if not enough have been recorded yet)
+	 *
+	 * @return the number of cycles played back
+	 */
+	public synchronized int advance(int cycles) {
+		if (played == null || buffered.isEmpty() || cycles <= 0)
+			return 0;
+
+		Word[] registers = played.registers.clone();
+		Word hi = played.hi, lo = played.lo;
+		Address pc = played.pc;
+		PipelineStateMessage stages = played.stages;
+		long cycle = played.cycle;
+
+		int n = 0;
+		while (n < cycles && !buffered.isEmpty()) {
+			CycleDelta d = buffered.pollFirst();
+			for (int i = 0; i < d.changedRegisters.length; i++)
+				registers[d.changedRegisters[i]] = d.newValues[i];
+			if (d.hi != null)
+				hi = d.hi;
+			if (d.lo != null)
+				lo = d.lo;
+			pc = d.pc;
+			cycle = d.cycle;
+
+			for (Message m : d.pipelineMessages) {
+				if (m instanceof PipelineStateMessage) {
+					stages = (PipelineStateMessage) m;
+					pipelineModel.processPipelineStateMessage(stages);
+				} else {
+					pipelineModel.processHazardStateMessage((PipelineHazardMessage) m);
+				}
+			}
+			n++;
+		}
+
+		played = new State(cycle, registers, hi, lo, pc, stages);
+		notifyAll();
+		return n;
+	}
+
+	/**
+	 * play back cycles until the given cycle is reached (or everything recorded so far has been played)
+	 */
+	public synchronized void seek(long cycle) {
+		while (played != null && played.cycle < cycle && !buffered.isEmpty())
+			advance(1);
+	}
+
+	/**
+	 * play back the rest of the simulation instantly (including cycles which are yet to be recorded)
+	 */
+	public void skipToEnd() {
+		skipping = true;
+		advance(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * start recording a new simulation. Called on the message thread (the CPU is not executing)
+	 */
+	private synchronized void reset() {
+		skipping = false;
+		buffered.clear();
+		pendingMessages.clear();
+		lastRecordedCycle = cpu.getCycles();
+		recordedRegisters = cpu.getRegisters().clone();
+		recordedHi = cpu.getHi();
+		recordedLo = cpu.getLo();
+		played = new State(lastRecordedCycle, recordedRegisters.clone(), recordedHi, recordedLo, cpu.getProgramCounter(), null);
+		notifyAll();
+	}
+
+	/**
+	 * store the changes made since the last recorded cycle. Called on the CPU thread between ticks
+	 */
+	private void record(long cycle) {
+		Word[] registers = cpu.getRegisters();
+		int changed = 0;
+		for (int i = 0; i < registers.length; i++)
+			if (registers[i] != recordedRegisters[i])
+				changed++;
+
+		// words are immutable, so comparing references is enough to find the changes
+		int[] ids = new int[changed];
+		Word[] values = new Word[changed];
+		for (int i = 0, j = 0; i < registers.length; i++) {
+			if (registers[i] != recordedRegisters[i]) {
+				ids[j] = i;
+				values[j] = registers[i];
+				recordedRegisters[i] = registers[i];
+				j++;
+			}
+		}
+		Word hi = cpu.getHi() == recordedHi ? null : cpu.getHi();
+		Word lo = cpu.getLo() == recordedLo ? null : cpu.getLo();
+		recordedHi = cpu.getHi();
+		recordedLo = cpu.getLo();
+
+		buffered.addLast(new CycleDelta(cycle, ids, values, hi, lo, cpu.getProgramCounter(), pendingMessages));
+		pendingMessages = new ArrayList<>(3);
+		lastRecordedCycle = cycle;
+	}
+
+	@Override
+	public synchronized boolean awaitCycle(long cycle, long timeout) throws InterruptedException {
+		if (recordedRegisters == null)
+			return true; // no simulation started (eg attached mid-simulation)
+
+		if (cycle != lastRecordedCycle)
+			record(cycle);
+
+		if (skipping || buffered.size() < capacity)
+			return true;
+		wait(timeout);
+		return skipping || buffered.size() < capacity;
+	}
+
+	@Override
+	public synchronized void awaitAll() {
+		if (recordedRegisters == null)
+			return;
+		record(cpu.getCycles()); // whatever happened since the last tick
+		drain();
+	}
+
+	/**
+	 * wait until every cycle recorded so far has been played back, so that something which can't be played back (eg
+	 * an annotation or the program's I/O) happens when the cycle before it is being shown. Gives up if the playback
+	 * stops making progress. Must not be called from the thread playing back the cycles
+	 */
+	public synchronized void awaitPlayback() {
+		if (recordedRegisters == null)
+			return;
+		drain();
+	}
+
+	/**
+	 * wait until the cycles recorded so far have been played back (but not any recorded while waiting)
+	 */
+	private void drain() {
+		final long target = lastRecordedCycle;
+		// give up if the playback stops making progress (eg the simulation is paused)
+		long lastPlayed = -1;
+		while (!skipping && played != null && played.cycle < target && played.cycle != lastPlayed) {
+			lastPlayed = played.cycle;
+			try {
+				wait(drainWait(cpu.getCycleFreq()));
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param cycleFreq
+	 *            the frequency the cycles are being played back at
+	 * @return how long (milliseconds) to wait for the playback to progress by a couple of cycles. Never 0 (which would
+	 *         wait forever) and never more than allowedDrainTime, even if the clock is stopped (frequency 0) or is too
+	 *         fast to measure
+	 */
+	static long drainWait(double cycleFreq) {
+		if (!(cycleFreq > 0) || Double.isInfinite(cycleFreq))
+			return allowedDrainTime;
+		return Math.max(1, Math.min(allowedDrainTime, (long) Math.ceil(2000 / cycleFreq)));
+	}
+
+	/**
+	 * collects the pipeline messages for the current cycle
+	 */
+	private class Recorder extends SimulationListener {
+		@Override
+		public void processSimulationMessage(SimulationMessage m) {
+			if (m.detail == SimulationMessage.Detail.SIMULATION_STARTED)
+				reset();
+		}
+
+		@Override
+		public void processPipelineStateMessage(PipelineStateMessage m) {
+			synchronized (PlaybackBuffer.this) {
+				pendingMessages.add(m);
+			}
+		}
+
+		@Override
+		public void processPipelineHazardMessage(PipelineHazardMessage m) {
+			synchronized (PlaybackBuffer.this) {
+				pendingMessages.add(m);
+			}
+		}
+	}
+}
@@ -108,7 +108,30 @@ public class Settings {
 		settings.add(new ObjectSetting("simulation", "CPU Simulation")
 						.add(new DoubleSetting("default-CPU-frequency", "Default CPU cycle frequency", "Default number of cycles (runs of fetch+decode+execute) per second (Hz)", 4, 0.05, 5000))
 						.add(new BooleanSetting("pipelined", "Use pipelined CPU?", "Should the mips program run on a pipelined cpu?", false))
+						.add(new StringSetting("branch-predictor", "Branch Predictor", "How the pipelined CPU predicts branches: not-taken, backward-taken, 1-bit, 2-bit or btb", "not-taken"))
+						.add(new IntegerSetting("branch-predictor-size", "Branch Predictor Size", "The number of entries in the branch history table (1-bit, 2-bit) or branch target buffer (btb)", 256, 1, 65536))
+						.add(new BooleanSetting("forwarding", "Forwarding", "Forward results from the execute stage to the decode stage of the pipelined CPU rather than stalling (loads and syscalls still stall)", false))
+						.add(new BooleanSetting("five-stage", "Five Stage Pipeline", "Use the five stage pipeline (fetch, decode, execute, memory and write back) rather than the three stage pipeline", false))
+						.add(new BooleanSetting("single-memory-port", "Single Memory Port", "In the five stage pipeline, fetches share one memory port with loads and stores, so nothing can be fetched while a load or store is in the memory stage", false))
+						.add(new ObjectSetting("cache", "Caches")
+							.add(new BooleanSetting("enabled", "Simulate Caches", "Pass every fetch, load and store through simulated caches and record their hits and misses", false))
+							.add(new IntegerSetting("l1-instruction-size", "L1 Instruction Cache Size", "The size (bytes) of the level 1 instruction cache", 1024, 4, Integer.MAX_VALUE))
+							.add(new IntegerSetting("l1-data-size", "L1 Data Cache Size", "The size (bytes) of the level 1 data cache", 1024, 4, Integer.MAX_VALUE))
+							.add(new IntegerSetting("l2-size", "L2 Cache Size", "The size (bytes) of the unified level 2 cache, 0 for none", 0, 0, Integer.MAX_VALUE))
+							.add(new IntegerSetting("associativity", "L1 Associativity", "The number of lines in each set of the level 1 caches (1 for direct mapped)", 2, 1, 65536))
+							.add(new IntegerSetting("l2-associativity", "L2 Associativity", "The number of lines in each set of the level 2 cache", 4, 1, 65536))
+							.add(new IntegerSetting("line-size", "Line Size", "The size (bytes) of each cache line", 16, 4, 65536))
+							.add(new StringSetting("replacement", "Replacement Policy", "How the line to evict from a full set is chosen: lru, fifo or random", "lru"))
+							.add(new BooleanSetting("write-through", "Write Through", "Write every store through to the level below, rather than writing dirty lines back when they are evicted", false))
+							.add(new IntegerSetting("l2-latency", "L2 Latency", "The cycles taken to fetch a line from the level 2 cache", 10, 0, Integer.MAX_VALUE))
+							.add(new IntegerSetting("memory-latency", "Memory Latency", "The cycles taken to fetch a line from main memory", 100, 0, Integer.MAX_VALUE)))
 						.add(new BooleanSetting("annotations", "Run Annotations", "Enable/Disable executing javascript annotations", true))
+						.add(new BooleanSetting("annotations-async", "Run Annotations Asynchronously", "Run annotations on their own thread against a snapshot of the simulation, so that slow annotations do not hold up the CPU", false))
+						.add(new IntegerSetting("annotation-max-lag", "Maximum Annotation Lag", "The number of instructions the CPU may run ahead of asynchronous annotations before waiting for them to catch up", 1000, 0, Integer.MAX_VALUE))
+						.add(new IntegerSetting("annotation-time-budget", "Annotation Time Budget", "The time (milliseconds) a single execution of an annotation may take before it is disabled. 0 for no limit", 0, 0, Integer.MAX_VALUE))
+						.add(new BooleanSetting("annotation-overrun-pause", "Pause On Slow Annotation", "Pause the simulation when an annotation exceeds its time budget", false))
+						.add(new BooleanSetting("run-ahead", "Run Ahead", "Run the simulation as fast as possible and play back the cycles at the chosen clock speed. The playback can only be moved forward (fast forward or skip to the end)", false))
+						.add(new IntegerSetting("run-ahead-buffer", "Run Ahead Buffer", "The number of cycles the simulation may get ahead of what is being shown", 100000, 1, Integer.MAX_VALUE))
 					);
 		
 		settings.add(new ObjectSetting("editor", "Editor")
@@ -119,6 +142,7 @@ public class Settings {
 					.add(new BooleanSetting("soft-tabs", "Soft tabs", "", true))
 					.add(new StringSetting("theme", "Color theme", "Name of the color scheme to load. Supported: (prefix: ace/theme/) default, high-viz, monokai, ambiance, chaos, tomorrow_night_eighties, predawn, flatland", "ace/theme/monokai"))
 					.add(new BooleanSetting("user-control-during-execution", "User control during execution", "Whether the user is allowed to scroll freely during execution of a program", false))
+					.add(new DoubleSetting("follow-max-frequency", "Follow execution up to", "The fastest clock speed (Hz) at which the editor scrolls to follow the running program. Above this the lines are still highlighted but the editor stays where it is", 20, 0, Double.MAX_VALUE))
 					.add(new BooleanSetting("vim-mode", "Vim mode", "Vim keybindings for the editor", false))
 					.add(new BooleanSetting("wrap", "Wrap long lines", "", false))
 					.add(new BooleanSetting("continuous-assembly", "Continuous Assembly", "Repeatedly assemble the program behind the scenes as you type, and highlight problems in the editor", true))
@@ -129,6 +153,7 @@ public class Settings {
 		settings.add(new ObjectSetting("logger", "Logger")
 				.add(new BooleanSetting("emphasise", "Emphasise Logger", "Toggles whether to emphasise logger when requesting input", true))
 				.add(new IntegerSetting("font-size", "Font Size", "Font size for the Program I/O", 15, 1, 100))
+				.add(new IntegerSetting("scroll-back", "Scroll-back", "The number of lines of output to keep for each stream", 100000, 100, Integer.MAX_VALUE))
 				);
 		
 		settings.add(new ObjectSetting("hlvis", "High Level Visualiser")
@@ -0,0 +1,86 @@
+package simulizer.simulation.cpu;
+
+/**
+ * Where the cycles of a pipelined simulation went, as cycles per instruction (CPI). Every instruction takes one cycle
+ * (the base CPI) plus the cycles lost to:
+ * <ul>
+ * <li>stalls for read after write (RAW) data hazards</li>
+ * <li>stalls for structural hazards: instructions which couldn't be fetched because the memory was busy (five stage
+ * pipeline only)</li>
+ * <li>branches and jumps: predicted taken branches which had to be decoded before they could be followed, and
+ * mispredicted branches which flushed the pipeline</li>
+ * <li>filling the pipeline at the start of the program and draining it at the end</li>
+ * </ul>
+ */
+public class CPIBreakdown {
+	public final long instructions;
+	public final long cycles;
+	public final long rawStalls;
+	public final long structuralStalls;
+	public final long controlCycles;
+
+	/**
+	 * @param instructions
+	 *            the number of instructions executed
+	 * @param cycles
+	 *            the number of cycles taken
+	 * @param rawStalls
+	 *            the number of cycles the pipeline stalled for because of RAW hazards
+	 * @param structuralStalls
+	 *            the number of cycles the pipeline stalled for because of structural hazards
+	 * @param controlCycles
+	 *            the number of cycles lost to branches and jumps
+	 */
+	public CPIBreakdown(long instructions, long cycles, long rawStalls, long structuralStalls, long controlCycles) {
+		this.instructions = instructions;
+		this.cycles = cycles;
+		this.rawStalls = rawStalls;
+		this.structuralStalls = structuralStalls;
+		this.controlCycles = controlCycles;
+	}
+
+	/**
+	 * @return the cycles not accounted for by instructions, stalls or branches (filling and draining the pipeline)
+	 */
+	public long getOtherCycles() {
+		return Math.max(0, cycles - instructions - rawStalls - structuralStalls - controlCycles);
+	}
+
+	private double perInstruction(long n) {
+		return instructions == 0 ? 0 : (double) n / instructions;
+	}
+
+	public double getCPI() {
+		return perInstruction(cycles);
+	}
+
+	public double getBaseCPI() {
+		return perInstruction(instructions);
+	}
+
+	public double getRAWCPI() {
+		return perInstruction(rawStalls);
+	}
+
+	public double getStructuralCPI() {
+		return perInstruction(structuralStalls);
+	}
+
+	public double getControlCPI() {
+		return perInstruction(controlCycles);
+	}
+
+	public double getOtherCPI() {
+		return perInstruction(getOtherCycles());
+	}
+
+	@Override
+	public String toString() {
+		if (structuralStalls > 0)
+			return String.format(
+					"CPI %.2f = %.2f base + %.2f RAW stalls + %.2f structural + %.2f control + %.2f fill/drain",
+					getCPI(), getBaseCPI(), getRAWCPI(), getStructuralCPI(), getControlCPI(), getOtherCPI());
+		return String.format("CPI %.2f = %.2f base + %.2f RAW stalls + %.2f control + %.2f fill/drain", getCPI(),
+				getBaseCPI(), getRAWCPI(), getControlCPI(), getOtherCPI());
+	}
+}
@@ -0,0 +1,249 @@
+package simulizer.simulation.cpu;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.messages.MessageManager;
+
+/**
+ * Collects the live counters of a CPU and publishes them over JMX. The CPU reports the time it spends waiting, the
+ * rest is read from the CPU and its message manager when asked for
+ */
+public class CPUMetrics implements CPUMetricsMXBean {
+	/**
+	 * rates are recalculated when they are read at most this often (milliseconds), so that several JMX clients
+	 * polling at once don't shorten each other's measurements
+	 */
+	private static final long SAMPLE_PERIOD = 1000;
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private final CPU cpu;
+	private final MessageManager messageManager;
+	private final ObjectName name;
+
+	// written by the simulation thread only
+	private volatile long waitForAllNanos = 0;
+	private volatile long tickBarrierNanos = 0;
+	private volatile long clockWaitNanos = 0;
+	private volatile Thread simulationThread = null;
+	private volatile LongSupplier annotationNanos = () -> 0;
+
+	// sampled rates
+	private long lastSampleTime;
+	private long lastCycles;
+	private long lastAllocated = -1;
+	private double effectiveCycleFreq = 0;
+	private double allocationRate = 0;
+	private double bytesPerCycle = 0;
+
+	public CPUMetrics(CPU cpu, MessageManager messageManager) {
+		this.cpu = cpu;
+		this.messageManager = messageManager;
+
+		ObjectName n;
+		try {
+			n = new ObjectName("simulizer:type=CPU,id=" + nextId.getAndIncrement());
+		} catch (JMException e) {
+			n = null;
+		}
+		name = n;
+		lastSampleTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * publish the counters to the platform MBean server. Failing to do so is not fatal: the simulation works the same.
+	 * The server holds on to the CPU until it is shut down, so only register CPUs which will be (and only once they
+	 * have been fully constructed)
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (name != null && !server.isRegistered(name))
+				server.registerMBean(this, name);
+		} catch (JMException e) {
+			System.err.println("could not publish the CPU metrics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * stop publishing the counters (so that the CPU can be garbage collected)
+	 */
+	public void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (name != null && server.isRegistered(name))
+				server.unregisterMBean(name);
+		} catch (JMException ignored) {
+		}
+	}
+
+	/**
+	 * called by the CPU when a program starts running (from the simulation thread). Resets the totals
+	 */
+	public void onStart() {
+		simulationThread = Thread.currentThread();
+		waitForAllNanos = 0;
+		tickBarrierNanos = 0;
+		clockWaitNanos = 0;
+		messageManager.resetDispatchTimes();
+	}
+
+	/**
+	 * called by the CPU after waiting for the listeners to handle its messages
+	 */
+	public void addWaitForAll(long nanos) {
+		waitForAllNanos += nanos;
+	}
+
+	/**
+	 * called by the CPU after waiting on its tick barriers
+	 */
+	public void addTickBarrier(long nanos) {
+		tickBarrierNanos += nanos;
+	}
+
+	/**
+	 * called by the CPU after waiting for the next tick of the clock
+	 */
+	public void addClockWait(long nanos) {
+		clockWaitNanos += nanos;
+	}
+
+	/**
+	 * @param annotationNanos
+	 *            where to read the total time spent executing annotations from
+	 */
+	public void setAnnotationTime(LongSupplier annotationNanos) {
+		this.annotationNanos = annotationNanos;
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+
+		long total = 0;
+		Thread sim = simulationThread;
+		if (sim != null)
+			total += Math.max(0, sunThreads.getThreadAllocatedBytes(sim.getId()));
+		for (long bytes : sunThreads.getThreadAllocatedBytes(messageManager.getThreadIds()))
+			total += Math.max(0, bytes); // -1 for threads which have died
+		return total;
+	}
+
+	/**
+	 * recalculate the rates if the last sample is old enough
+	 */
+	private synchronized void sample() {
+		long now = System.currentTimeMillis();
+		long elapsed = now - lastSampleTime;
+		if (elapsed < SAMPLE_PERIOD)
+			return;
+
+		long cycles = cpu.getCycles();
+		long allocated = getAllocatedBytes();
+		// the cycle count goes back to 0 when a new program starts
+		long newCycles = cycles >= lastCycles ? cycles - lastCycles : cycles;
+
+		effectiveCycleFreq = newCycles * 1000.0 / elapsed;
+		if (allocated >= 0 && lastAllocated >= 0) {
+			// threads which die take their allocation with them, so the total can go down
+			long newBytes = Math.max(0, allocated - lastAllocated);
+			allocationRate = newBytes * 1000.0 / elapsed;
+			bytesPerCycle = newCycles == 0 ? 0 : (double) newBytes / newCycles;
+		}
+
+		lastSampleTime = now;
+		lastCycles = cycles;
+		lastAllocated = allocated;
+	}
+
+	@Override
+	public boolean isPipelined() {
+		return cpu.isPipelined();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return cpu.isRunning();
+	}
+
+	@Override
+	public long getInstructionsRetired() {
+		return cpu.getInstructionsRetired();
+	}
+
+	@Override
+	public long getCycles() {
+		return cpu.getCycles();
+	}
+
+	@Override
+	public double getRequestedCycleFreq() {
+		return cpu.getCycleFreq();
+	}
+
+	@Override
+	public double getEffectiveCycleFreq() {
+		sample();
+		return effectiveCycleFreq;
+	}
+
+	@Override
+	public int getMessageQueueDepth() {
+		return messageManager.getQueueDepth();
+	}
+
+	@Override
+	public Map<String, Double> getListenerMeanDispatchMicros() {
+		return messageManager.getDispatchMicros(false);
+	}
+
+	@Override
+	public Map<String, Double> getListenerMaxDispatchMicros() {
+		return messageManager.getDispatchMicros(true);
+	}
+
+	@Override
+	public double getWaitForAllMillis() {
+		return waitForAllNanos / 1e6;
+	}
+
+	@Override
+	public double getTickBarrierMillis() {
+		return tickBarrierNanos / 1e6;
+	}
+
+	@Override
+	public double getClockWaitMillis() {
+		return clockWaitNanos / 1e6;
+	}
+
+	@Override
+	public double getAnnotationMillis() {
+		return annotationNanos.getAsLong() / 1e6;
+	}
+
+	@Override
+	public double getAllocationRate() {
+		sample();
+		return allocationRate;
+	}
+
+	@Override
+	public double getBytesPerCycle() {
+		sample();
+		return bytesPerCycle;
+	}
+}
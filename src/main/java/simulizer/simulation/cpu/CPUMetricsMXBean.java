@@ -0,0 +1,96 @@
+package simulizer.simulation.cpu;
+
+import java.util.Map;
+
+/**
+ * Live counters for a CPU, published over JMX (under simulizer:type=CPU) so that a running simulation can be watched
+ * with standard JVM tools such as jconsole or VisualVM. The totals cover the current (or last) simulation, the rates
+ * are measured over roughly the last second
+ */
+public interface CPUMetricsMXBean {
+	/**
+	 * @return whether the CPU is pipelined
+	 */
+	boolean isPipelined();
+
+	/**
+	 * @return whether a program is running (including paused)
+	 */
+	boolean isRunning();
+
+	/**
+	 * @return the number of instructions executed (not counting pipeline bubbles)
+	 */
+	long getInstructionsRetired();
+
+	/**
+	 * @return the number of cycles completed
+	 */
+	long getCycles();
+
+	/**
+	 * @return the clock speed (cycles per second) which has been asked for, 0 for as fast as possible
+	 */
+	double getRequestedCycleFreq();
+
+	/**
+	 * @return the number of cycles which were actually completed per second
+	 */
+	double getEffectiveCycleFreq();
+
+	/**
+	 * @return the number of messages which have been sent by the CPU but not yet passed to the listeners
+	 */
+	int getMessageQueueDepth();
+
+	/**
+	 * @return the mean time (microseconds) each listener takes to handle a message
+	 */
+	Map<String, Double> getListenerMeanDispatchMicros();
+
+	/**
+	 * @return the longest time (microseconds) each listener has taken to handle a message
+	 */
+	Map<String, Double> getListenerMaxDispatchMicros();
+
+	/**
+	 * @return the time (milliseconds) the simulation has spent waiting for the listeners to handle messages
+	 */
+	double getWaitForAllMillis();
+
+	/**
+	 * @return the time (milliseconds) the simulation has spent waiting for the UI or for asynchronous annotations to
+	 *         catch up with it
+	 */
+	double getTickBarrierMillis();
+
+	/**
+	 * @return the time (milliseconds) the simulation has spent waiting for the clock, ie idle because it is keeping to
+	 *         the requested clock speed
+	 */
+	double getClockWaitMillis();
+
+	/**
+	 * @return the time (milliseconds) spent executing annotations
+	 */
+	double getAnnotationMillis();
+
+	/**
+	 * @return the number of bytes allocated so far by the simulation thread and the threads which handle its messages
+	 *         (since the threads started, not since the simulation started), or -1 if the JVM doesn't measure
+	 *         allocation
+	 */
+	long getAllocatedBytes();
+
+	/**
+	 * @return the number of bytes allocated per second by the simulation thread and the threads which handle its
+	 *         messages
+	 */
+	double getAllocationRate();
+
+	/**
+	 * @return the number of bytes allocated per cycle by the simulation thread and the threads which handle its
+	 *         messages
+	 */
+	double getBytesPerCycle();
+}
@@ -0,0 +1,124 @@
+package simulizer.simulation.cpu;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Statement;
+import simulizer.simulation.cpu.branch_prediction.BranchStatistics;
+import simulizer.simulation.cpu.components.CPUFiveStagePipeline;
+import simulizer.simulation.cpu.components.CPUPipeline;
+import simulizer.simulation.cpu.scheduling.ReorderingAnalysis;
+
+/**
+ * A plain text report of where the cycles of a pipelined simulation went: the CPI breakdown, the pairs of instructions
+ * which caused RAW stalls (or had their values forwarded) and how well each branch was predicted. For the five stage
+ * pipeline, also the stalls which could be avoided by reordering the program. Shown by the pipeline view and printed by
+ * command line mode.
+ */
+public class PipelineReport {
+	/**
+	 * the most dependencies to list (the most frequent are listed first)
+	 */
+	private static final int MAX_DEPENDENCIES = 50;
+	/**
+	 * the most blocks to suggest reordering (the most cycles saved are listed first)
+	 */
+	private static final int MAX_REORDERINGS = 10;
+
+	/**
+	 * @param cpu
+	 *            the CPU which is running (or has run) the program
+	 * @return the report (several lines)
+	 */
+	public static String generate(CPUPipeline cpu) {
+		Program program = cpu.getProgram();
+		Map<Address, Integer> lineNumbers = program == null ? Collections.emptyMap() : program.lineNumbers;
+		Map<Address, Statement> textSegment = program == null ? Collections.emptyMap() : program.textSegment;
+		StringBuilder sb = new StringBuilder();
+
+		CPIBreakdown cpi = cpu.getCPIBreakdown();
+		sb.append(String.format("Pipeline: %d stages", cpu.getStageCount()));
+		if (cpu instanceof CPUFiveStagePipeline && ((CPUFiveStagePipeline) cpu).isSingleMemoryPort())
+			sb.append(" (single memory port)");
+		sb.append(String.format("%n"));
+		sb.append(String.format("Branch predictor: %s%n", cpu.getBranchPredictor()));
+		sb.append(String.format("Forwarding: %s%n", cpu.isForwarding() ? "on" : "off"));
+		sb.append(String.format("%d instructions in %d cycles%n", cpi.instructions, cpi.cycles));
+		sb.append(String.format("%-12s %10s %8s%n", "", "Cycles", "CPI"));
+		sb.append(String.format("%-12s %10d %8.2f%n", "base", cpi.instructions, cpi.getBaseCPI()));
+		sb.append(String.format("%-12s %10d %8.2f%n", "RAW stalls", cpi.rawStalls, cpi.getRAWCPI()));
+		if (cpu.getStageCount() > 3)
+			sb.append(String.format("%-12s %10d %8.2f%n", "structural", cpi.structuralStalls, cpi.getStructuralCPI()));
+		sb.append(String.format("%-12s %10d %8.2f%n", "control", cpi.controlCycles, cpi.getControlCPI()));
+		sb.append(String.format("%-12s %10d %8.2f%n", "fill/drain", cpi.getOtherCycles(), cpi.getOtherCPI()));
+		sb.append(String.format("%-12s %10d %8.2f%n", "total", cpi.cycles, cpi.getCPI()));
+
+		StallStatistics stalls = cpu.getStallStatistics();
+		List<StallStatistics.Dependency> dependencies = stalls.getDependencies();
+		sb.append(String.format("%nRAW dependencies: %d stalls, %d forwarded%n", stalls.getStalls(), stalls.getForwarded()));
+		if (!dependencies.isEmpty()) {
+			sb.append(String.format("%-6s %-24s %-6s %-24s %-6s %8s %10s%n", "Line", "Writer", "Line", "Reader",
+					"Reg", "Stalls", "Forwarded"));
+			for (StallStatistics.Dependency d : dependencies.subList(0, Math.min(MAX_DEPENDENCIES, dependencies.size()))) {
+				sb.append(String.format("%-6s %-24s %-6s %-24s %-6s %8d %10d%n", line(lineNumbers, d.producer),
+						statement(textSegment, d.producer), line(lineNumbers, d.consumer),
+						statement(textSegment, d.consumer), "$" + d.register.getName(), d.getStalls(),
+						d.getForwarded()));
+			}
+			if (dependencies.size() > MAX_DEPENDENCIES)
+				sb.append(String.format("... and %d more%n", dependencies.size() - MAX_DEPENDENCIES));
+		}
+
+		BranchStatistics branches = cpu.getBranchStatistics();
+		List<BranchStatistics.Site> sites = branches.getSites();
+		sb.append(String.format("%nBranches%n"));
+		sb.append(String.format("%-10s %6s %10s %10s %9s %8s %6s%n", "Address", "Line", "Executed", "Taken", "Accuracy",
+				"Avoided", "CPI"));
+		sites.add(branches.getTotal());
+		for (BranchStatistics.Site s : sites) {
+			sb.append(String.format("%-10s %6s %10d %10d %8.1f%% %8d %6.2f%n", s.address == null ? "total" : s.address,
+					s.address == null ? "" : line(lineNumbers, s.address), s.getExecutions(), s.getTaken(),
+					s.getAccuracy() * 100, s.getFlushesAvoided(), s.getCPI()));
+		}
+
+		if (cpu instanceof CPUFiveStagePipeline && program != null)
+			appendReordering(sb, (CPUFiveStagePipeline) cpu, program);
+
+		return sb.toString();
+	}
+
+	private static void appendReordering(StringBuilder sb, CPUFiveStagePipeline cpu, Program program) {
+		ReorderingAnalysis analysis = new ReorderingAnalysis(program, cpu.isForwarding(), cpu::getExecutions);
+		List<ReorderingAnalysis.Block> improvements = analysis.getImprovements();
+		long saved = analysis.getCyclesSaved();
+		long cycles = cpu.getCycles();
+		sb.append(String.format("%nReordering: about %d cycles (%.1f%%) could be saved by reordering instructions%n",
+				saved, cycles == 0 ? 0.0 : 100.0 * saved / cycles));
+		for (ReorderingAnalysis.Block b : improvements.subList(0, Math.min(MAX_REORDERINGS, improvements.size()))) {
+			sb.append(String.format("%nLines %s-%s, executed %d times: %d stalls => %d stalls, %d cycles saved%n",
+					line(program.lineNumbers, b.original.get(0)),
+					line(program.lineNumbers, b.original.get(b.original.size() - 1)), b.executions, b.stallsBefore,
+					b.stallsAfter, b.getCyclesSaved()));
+			for (Address a : b.reordered)
+				sb.append(String.format("  %-6s %s%n", line(program.lineNumbers, a), statement(program.textSegment, a)));
+		}
+		if (improvements.size() > MAX_REORDERINGS)
+			sb.append(String.format("... and %d more%n", improvements.size() - MAX_REORDERINGS));
+	}
+
+	/**
+	 * @return the (1 based) line number of the given address
+	 */
+	private static String line(Map<Address, Integer> lineNumbers, Address address) {
+		Integer line = lineNumbers.get(address);
+		return line == null ? "?" : "" + (line + 1);
+	}
+
+	private static String statement(Map<Address, Statement> textSegment, Address address) {
+		Statement s = textSegment.get(address);
+		return s == null ? address.toString() : s.toString();
+	}
+}
@@ -0,0 +1,134 @@
+package simulizer.simulation.cpu;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Register;
+
+/**
+ * The read after write (RAW) dependencies which the pipelined CPU found between consecutive instructions of the running
+ * program, for each pair of instructions (the one writing a register and the one reading it). Each dependency either
+ * stalled the pipeline for a cycle or had its value forwarded. Recorded by the simulation thread and read from any
+ * thread.
+ */
+public class StallStatistics {
+	/**
+	 * the statistics for one pair of instructions
+	 */
+	public static class Dependency {
+		/**
+		 * the instruction which writes the register
+		 */
+		public final Address producer;
+		/**
+		 * the instruction which reads the register
+		 */
+		public final Address consumer;
+		public final Register register;
+		private long stalls;
+		private long forwarded;
+
+		private Dependency(Address producer, Address consumer, Register register) {
+			this.producer = producer;
+			this.consumer = consumer;
+			this.register = register;
+		}
+
+		private Dependency(Dependency d) {
+			this(d.producer, d.consumer, d.register);
+			stalls = d.stalls;
+			forwarded = d.forwarded;
+		}
+
+		/**
+		 * @return the number of cycles the pipeline stalled for because of the dependency
+		 */
+		public long getStalls() {
+			return stalls;
+		}
+
+		/**
+		 * @return the number of times the value was forwarded, so the pipeline didn't have to stall
+		 */
+		public long getForwarded() {
+			return forwarded;
+		}
+	}
+
+	// producer => consumer => dependency
+	private final Map<Address, Map<Address, Dependency>> dependencies = new HashMap<>();
+	private long stalls = 0;
+	private long forwarded = 0;
+
+	/**
+	 * record a dependency between an instruction being executed and the instruction being decoded
+	 *
+	 * @param producer
+	 *            the address of the instruction writing the register
+	 * @param consumer
+	 *            the address of the instruction reading the register
+	 * @param register
+	 *            the register
+	 * @param wasForwarded
+	 *            whether the value was forwarded (otherwise the pipeline stalled for a cycle)
+	 */
+	public synchronized void record(Address producer, Address consumer, Register register, boolean wasForwarded) {
+		Map<Address, Dependency> consumers = dependencies.get(producer);
+		if (consumers == null) {
+			consumers = new HashMap<>();
+			dependencies.put(producer, consumers);
+		}
+		Dependency d = consumers.get(consumer);
+		if (d == null) {
+			d = new Dependency(producer, consumer, register);
+			consumers.put(consumer, d);
+		}
+		if (wasForwarded) {
+			d.forwarded++;
+			forwarded++;
+		} else {
+			d.stalls++;
+			stalls++;
+		}
+	}
+
+	public synchronized void clear() {
+		dependencies.clear();
+		stalls = 0;
+		forwarded = 0;
+	}
+
+	/**
+	 * @return the total number of cycles the pipeline stalled for
+	 */
+	public synchronized long getStalls() {
+		return stalls;
+	}
+
+	/**
+	 * @return the total number of values which were forwarded
+	 */
+	public synchronized long getForwarded() {
+		return forwarded;
+	}
+
+	/**
+	 * @return a copy of the statistics for each pair of instructions, the most frequent dependencies first
+	 */
+	public synchronized List<Dependency> getDependencies() {
+		List<Dependency> copies = new ArrayList<>();
+		for (Map<Address, Dependency> consumers : dependencies.values())
+			for (Dependency d : consumers.values())
+				copies.add(new Dependency(d));
+		copies.sort((a, b) -> {
+			int c = Long.compare(b.stalls + b.forwarded, a.stalls + a.forwarded);
+			if (c == 0)
+				c = Integer.compare(a.producer.getValue(), b.producer.getValue());
+			return c;
+		});
+		return copies;
+	}
+}
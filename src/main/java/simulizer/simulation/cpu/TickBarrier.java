@@ -0,0 +1,27 @@
+package simulizer.simulation.cpu;
+
+/**
+ * Something outside of the simulation which the CPU must not get too far ahead of
+ * (eg annotations which are running asynchronously).
+ *
+ * The CPU consults the barrier once per tick (from the simulation thread), after the outstanding messages have been
+ * processed, so the barrier may also apply changes to the simulation at that point.
+ */
+public interface TickBarrier {
+
+	/**
+	 * wait until the simulation is allowed to proceed past the given cycle
+	 *
+	 * @param cycle
+	 *            the number of cycles the CPU has completed
+	 * @param timeout
+	 *            the maximum time to wait (milliseconds)
+	 * @return whether the simulation may proceed (false if the timeout elapsed first)
+	 */
+	boolean awaitCycle(long cycle, long timeout) throws InterruptedException;
+
+	/**
+	 * wait for any outstanding work to finish. Called when the simulation ends
+	 */
+	void awaitAll();
+}
@@ -0,0 +1,153 @@
+package simulizer.simulation.cpu.branch_prediction;
+
+import simulizer.assembler.representation.Address;
+
+/**
+ * Guesses whether branches will be taken so that the pipeline can carry on fetching instructions before the branch is
+ * executed. A wrong guess (misprediction) means the instructions fetched after the branch have to be flushed.
+ *
+ * The pipeline asks the predictor at two points:
+ * <ul>
+ * <li>when an instruction is fetched, before it is known to be a branch: only a predictor which remembers branch
+ * targets (a branch target buffer) can redirect the fetch here, which costs nothing if the guess is right</li>
+ * <li>when a branch is decoded, once its target is known: redirecting the fetch here costs the one instruction which
+ * was fetched after the branch</li>
+ * </ul>
+ * Once the branch has executed, the predictor is told the outcome so that it can learn from it.
+ */
+public abstract class BranchPredictor {
+	/**
+	 * the number of entries in the pattern table or branch target buffer when not given in the settings
+	 */
+	public static final int DEFAULT_TABLE_SIZE = 256;
+
+	/**
+	 * the available prediction strategies
+	 */
+	public enum Strategy {
+		NOT_TAKEN("not-taken"), BACKWARD_TAKEN("backward-taken"), ONE_BIT("1-bit"), TWO_BIT("2-bit"), BTB("btb");
+
+		/**
+		 * the name used in the settings
+		 */
+		public final String id;
+
+		Strategy(String id) {
+			this.id = id;
+		}
+
+		/**
+		 * @param id
+		 *            the name used in the settings
+		 * @return the strategy with the given name, or NOT_TAKEN if there isn't one
+		 */
+		public static Strategy fromId(String id) {
+			for (Strategy s : values())
+				if (s.id.equalsIgnoreCase(id))
+					return s;
+			return NOT_TAKEN;
+		}
+
+		/**
+		 * @param tableSize
+		 *            the number of entries in the pattern table or branch target buffer (ignored by the static
+		 *            strategies)
+		 * @return a new predictor using this strategy
+		 */
+		public BranchPredictor create(int tableSize) {
+			switch (this) {
+				case BACKWARD_TAKEN:
+					return new StaticBackwardTaken();
+				case ONE_BIT:
+					return new PatternTablePredictor(tableSize, 1);
+				case TWO_BIT:
+					return new PatternTablePredictor(tableSize, 2);
+				case BTB:
+					return new BranchTargetBuffer(tableSize);
+				case NOT_TAKEN:
+				default:
+					return new StaticNotTaken();
+			}
+		}
+
+		@Override
+		public String toString() {
+			switch (this) {
+				case NOT_TAKEN:
+					return "Static Not Taken";
+				case BACKWARD_TAKEN:
+					return "Static Backward Taken";
+				case ONE_BIT:
+					return "1-bit Pattern Table";
+				case TWO_BIT:
+					return "2-bit Pattern Table";
+				case BTB:
+					return "Branch Target Buffer";
+				default:
+					return "UNKNOWN";
+			}
+		}
+	}
+
+	/**
+	 * @return the strategy this predictor uses
+	 */
+	public abstract Strategy getStrategy();
+
+	/**
+	 * called as an instruction is fetched, before it has been decoded
+	 *
+	 * @param address
+	 *            the address of the instruction being fetched
+	 * @return the address to fetch next if the instruction is predicted to be a taken branch, otherwise null
+	 */
+	public Address predictTarget(Address address) {
+		return null;
+	}
+
+	/**
+	 * called as a conditional branch is decoded (unless it was already predicted taken when fetched)
+	 *
+	 * @param address
+	 *            the address of the branch
+	 * @param target
+	 *            the address the branch goes to if taken
+	 * @return whether the branch is predicted to be taken
+	 */
+	public abstract boolean predictTaken(Address address, Address target);
+
+	/**
+	 * @return whether unconditional jumps are followed as soon as they are decoded, rather than after they have
+	 *         executed
+	 */
+	public boolean followsJumps() {
+		return true;
+	}
+
+	/**
+	 * called once a branch or jump has executed
+	 *
+	 * @param address
+	 *            the address of the branch
+	 * @param taken
+	 *            whether the branch was taken (always true for jumps)
+	 * @param target
+	 *            the address the branch goes to if taken
+	 */
+	public void update(Address address, boolean taken, Address target) {
+	}
+
+	/**
+	 * forget everything learned (for a new program)
+	 */
+	public void reset() {
+	}
+
+	/**
+	 * @return a description of the predictor
+	 */
+	@Override
+	public String toString() {
+		return getStrategy().toString();
+	}
+}
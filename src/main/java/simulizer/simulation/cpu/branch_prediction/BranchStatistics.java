@@ -0,0 +1,168 @@
+package simulizer.simulation.cpu.branch_prediction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simulizer.assembler.representation.Address;
+
+/**
+ * How well the branches (and jumps) of the running program were predicted, for each branch site (the address of a
+ * branch instruction). Recorded by the simulation thread and read from any thread.
+ */
+public class BranchStatistics {
+	/**
+	 * the statistics for one branch site (or a total over several)
+	 */
+	public static class Site {
+		/**
+		 * null for a total over several sites
+		 */
+		public final Address address;
+		private long executions;
+		private long taken;
+		private long correct;
+		private long flushes;
+		private long penaltyCycles;
+
+		private Site(Address address) {
+			this.address = address;
+		}
+
+		private Site(Site s) {
+			address = s.address;
+			add(s);
+		}
+
+		private void add(Site s) {
+			executions += s.executions;
+			taken += s.taken;
+			correct += s.correct;
+			flushes += s.flushes;
+			penaltyCycles += s.penaltyCycles;
+		}
+
+		/**
+		 * @return the number of times the branch was executed
+		 */
+		public long getExecutions() {
+			return executions;
+		}
+
+		/**
+		 * @return the number of times the branch was taken
+		 */
+		public long getTaken() {
+			return taken;
+		}
+
+		/**
+		 * @return the number of times the branch was predicted correctly
+		 */
+		public long getCorrect() {
+			return correct;
+		}
+
+		/**
+		 * @return the proportion of executions which were predicted correctly (0 to 1)
+		 */
+		public double getAccuracy() {
+			return executions == 0 ? 0 : (double) correct / executions;
+		}
+
+		/**
+		 * @return the number of times the pipeline was flushed because the branch was mispredicted
+		 */
+		public long getFlushes() {
+			return flushes;
+		}
+
+		/**
+		 * @return the number of flushes saved compared to predicting that no branch is taken (which flushes on every
+		 *         taken branch). Negative when branches which aren't taken are predicted taken
+		 */
+		public long getFlushesAvoided() {
+			return taken - flushes;
+		}
+
+		/**
+		 * @return the number of cycles lost to the branch (instructions which were fetched and then thrown away)
+		 */
+		public long getPenaltyCycles() {
+			return penaltyCycles;
+		}
+
+		/**
+		 * @return the average number of cycles the branch took to pass through the pipeline, counting the cycles lost
+		 *         to it (1 if there was no penalty)
+		 */
+		public double getCPI() {
+			return executions == 0 ? 0 : 1 + (double) penaltyCycles / executions;
+		}
+	}
+
+	private final Map<Address, Site> sites = new HashMap<>();
+
+	/**
+	 * record a branch which has just executed
+	 *
+	 * @param address
+	 *            the address of the branch
+	 * @param taken
+	 *            whether the branch was taken
+	 * @param correct
+	 *            whether the prediction was correct
+	 * @param penaltyCycles
+	 *            the number of cycles lost to the branch (including the flush if mispredicted)
+	 */
+	public synchronized void record(Address address, boolean taken, boolean correct, int penaltyCycles) {
+		Site s = sites.get(address);
+		if (s == null) {
+			s = new Site(address);
+			sites.put(address, s);
+		}
+		s.executions++;
+		if (taken)
+			s.taken++;
+		if (correct)
+			s.correct++;
+		else
+			s.flushes++;
+		s.penaltyCycles += penaltyCycles;
+	}
+
+	public synchronized void clear() {
+		sites.clear();
+	}
+
+	/**
+	 * @return a copy of the statistics for the given branch site, or null if it hasn't been executed
+	 */
+	public synchronized Site getSite(Address address) {
+		Site s = sites.get(address);
+		return s == null ? null : new Site(s);
+	}
+
+	/**
+	 * @return a copy of the statistics for each branch site, in address order
+	 */
+	public synchronized List<Site> getSites() {
+		List<Site> copies = new ArrayList<>(sites.size());
+		for (Site s : sites.values())
+			copies.add(new Site(s));
+		copies.sort(Comparator.comparingInt(s -> s.address.getValue()));
+		return copies;
+	}
+
+	/**
+	 * @return the statistics of all the branch sites combined
+	 */
+	public synchronized Site getTotal() {
+		Site total = new Site((Address) null);
+		for (Site s : sites.values())
+			total.add(s);
+		return total;
+	}
+}
@@ -0,0 +1,86 @@
+package simulizer.simulation.cpu.branch_prediction;
+
+import java.util.Arrays;
+
+import simulizer.assembler.representation.Address;
+
+/**
+ * Remembers where recently taken branches and jumps (including jumps to a register, such as jr $ra) went, along with a
+ * 2-bit counter of whether they are usually taken. The buffer is looked up as each instruction is fetched, so a branch
+ * which is predicted taken is followed straight away, without waiting for it to be decoded.
+ *
+ * The buffer is direct mapped: each address can only be stored in one entry, which is overwritten when another taken
+ * branch maps to the same entry. Branches which aren't in the buffer are predicted not taken.
+ */
+public class BranchTargetBuffer extends BranchPredictor {
+	private static final int NO_ADDRESS = -1; // addresses are never negative
+
+	private final int[] tags;
+	private final int[] targets;
+	private final byte[] counters;
+
+	/**
+	 * @param size
+	 *            the number of entries
+	 */
+	public BranchTargetBuffer(int size) {
+		size = Math.max(1, size);
+		tags = new int[size];
+		targets = new int[size];
+		counters = new byte[size];
+		reset();
+	}
+
+	private int index(Address address) {
+		return Math.floorMod(address.getValue() >> 2, tags.length);
+	}
+
+	@Override
+	public Strategy getStrategy() {
+		return Strategy.BTB;
+	}
+
+	@Override
+	public Address predictTarget(Address address) {
+		int i = index(address);
+		if (tags[i] == address.getValue() && counters[i] >= 2)
+			return new Address(targets[i]);
+		return null;
+	}
+
+	@Override
+	public boolean predictTaken(Address address, Address target) {
+		// only reached for branches which were not predicted taken when they were fetched
+		return false;
+	}
+
+	@Override
+	public void update(Address address, boolean taken, Address target) {
+		int i = index(address);
+		if (tags[i] == address.getValue()) {
+			if (taken) {
+				targets[i] = target.getValue();
+				counters[i] = (byte) Math.min(3, counters[i] + 1);
+			} else {
+				counters[i] = (byte) Math.max(0, counters[i] - 1);
+			}
+		} else if (taken) {
+			// replace whatever was there
+			tags[i] = address.getValue();
+			targets[i] = target.getValue();
+			counters[i] = 2; // weakly taken
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(tags, NO_ADDRESS);
+		Arrays.fill(targets, NO_ADDRESS);
+		Arrays.fill(counters, (byte) 0);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " (" + tags.length + " entries)";
+	}
+}
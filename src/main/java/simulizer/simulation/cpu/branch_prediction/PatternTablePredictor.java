@@ -0,0 +1,67 @@
+package simulizer.simulation.cpu.branch_prediction;
+
+import java.util.Arrays;
+
+import simulizer.assembler.representation.Address;
+
+/**
+ * Remembers the recent outcomes of each branch in a table of saturating counters, indexed by the address of the branch
+ * (so branches whose addresses are a multiple of the table size apart share an entry).
+ *
+ * With 1 bit, the prediction is whatever the branch did last time, so a loop branch is mispredicted twice per loop
+ * (on leaving and on the first iteration of the next run of the loop). With 2 bits, the prediction only changes after
+ * two wrong guesses in a row, so a loop branch is only mispredicted once per loop.
+ */
+public class PatternTablePredictor extends BranchPredictor {
+	private final int bits;
+	private final int max;
+	private final byte[] counters;
+
+	/**
+	 * @param tableSize
+	 *            the number of counters
+	 * @param bits
+	 *            the number of bits in each counter (1 or 2)
+	 */
+	public PatternTablePredictor(int tableSize, int bits) {
+		this.bits = bits;
+		max = (1 << bits) - 1;
+		counters = new byte[Math.max(1, tableSize)];
+		reset();
+	}
+
+	private int index(Address address) {
+		return Math.floorMod(address.getValue() >> 2, counters.length);
+	}
+
+	@Override
+	public Strategy getStrategy() {
+		return bits == 1 ? Strategy.ONE_BIT : Strategy.TWO_BIT;
+	}
+
+	@Override
+	public boolean predictTaken(Address address, Address target) {
+		// the top half of the range predicts taken
+		return counters[index(address)] > max / 2;
+	}
+
+	@Override
+	public void update(Address address, boolean taken, Address target) {
+		int i = index(address);
+		if (taken && counters[i] < max)
+			counters[i]++;
+		else if (!taken && counters[i] > 0)
+			counters[i]--;
+	}
+
+	@Override
+	public void reset() {
+		// start at (weakly) not taken
+		Arrays.fill(counters, (byte) (max / 2));
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " (" + counters.length + " entries)";
+	}
+}
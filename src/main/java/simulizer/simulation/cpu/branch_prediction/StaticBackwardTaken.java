@@ -0,0 +1,19 @@
+package simulizer.simulation.cpu.branch_prediction;
+
+import simulizer.assembler.representation.Address;
+
+/**
+ * Assumes that branches to earlier instructions are taken (they are usually the end of a loop) and that branches to
+ * later instructions are not taken (they usually skip over something)
+ */
+public class StaticBackwardTaken extends BranchPredictor {
+	@Override
+	public Strategy getStrategy() {
+		return Strategy.BACKWARD_TAKEN;
+	}
+
+	@Override
+	public boolean predictTaken(Address address, Address target) {
+		return target.getValue() <= address.getValue();
+	}
+}
@@ -0,0 +1,24 @@
+package simulizer.simulation.cpu.branch_prediction;
+
+import simulizer.assembler.representation.Address;
+
+/**
+ * Assumes that no branch is taken, so keeps fetching the following instructions. Every taken branch and every jump is
+ * only followed once it has executed, flushing the pipeline
+ */
+public class StaticNotTaken extends BranchPredictor {
+	@Override
+	public Strategy getStrategy() {
+		return Strategy.NOT_TAKEN;
+	}
+
+	@Override
+	public boolean predictTaken(Address address, Address target) {
+		return false;
+	}
+
+	@Override
+	public boolean followsJumps() {
+		return false;
+	}
+}
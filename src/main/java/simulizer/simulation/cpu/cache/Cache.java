@@ -0,0 +1,382 @@
+package simulizer.simulation.cpu.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * One level of a set associative cache. Only the addresses are simulated: the data always lives in main memory, so the
+ * cache decides whether each access would have hit and which lines it would have held.
+ *
+ * An address is split into a tag, a set index and an offset into the line. Each set holds up to associativity lines
+ * (a direct mapped cache has 1 way, a fully associative cache has 1 set). When a set is full, the line to evict is
+ * chosen by the replacement policy.
+ *
+ * Writes are either:
+ * <ul>
+ * <li>write-back: the line is fetched on a write miss and marked dirty, and is only written to the level below when it
+ * is evicted</li>
+ * <li>write-through: every write is passed to the level below, and a write miss does not fetch the line</li>
+ * </ul>
+ *
+ * The geometry is rounded down to powers of two (at least one set of one 4 byte line). Not thread safe: accessed
+ * through a CacheHierarchy.
+ */
+public class Cache {
+	/**
+	 * how the line to evict from a full set is chosen
+	 */
+	public enum Replacement {
+		LRU("lru"), FIFO("fifo"), RANDOM("random");
+
+		/**
+		 * the name used in the settings
+		 */
+		public final String id;
+
+		Replacement(String id) {
+			this.id = id;
+		}
+
+		/**
+		 * @param id
+		 *            the name used in the settings
+		 * @return the policy with the given name, or LRU if there isn't one
+		 */
+		public static Replacement fromId(String id) {
+			for (Replacement r : values())
+				if (r.id.equalsIgnoreCase(id))
+					return r;
+			return LRU;
+		}
+
+		@Override
+		public String toString() {
+			switch (this) {
+				case LRU:
+					return "Least Recently Used";
+				case FIFO:
+					return "First In First Out";
+				case RANDOM:
+					return "Random";
+				default:
+					return "UNKNOWN";
+			}
+		}
+	}
+
+	/**
+	 * a copy of the lines held by a cache, indexed by set * associativity + way
+	 */
+	public static class Snapshot {
+		public final int sets;
+		public final int associativity;
+		public final int lineSize;
+		/**
+		 * the address of the first byte of each line
+		 */
+		public final int[] addresses;
+		public final boolean[] valid;
+		public final boolean[] dirty;
+		/**
+		 * the number of accesses to the cache before each line was last used
+		 */
+		public final long[] lastUsed;
+		/**
+		 * the number of accesses to the cache (and how many missed) when the snapshot was taken
+		 */
+		public final long accesses;
+		public final long misses;
+
+		private Snapshot(Cache c) {
+			sets = c.sets;
+			associativity = c.associativity;
+			lineSize = c.lineSize;
+			addresses = new int[c.tags.length];
+			for (int i = 0; i < addresses.length; ++i)
+				addresses[i] = (c.tags[i] * sets + i / associativity) * lineSize;
+			valid = c.valid.clone();
+			dirty = c.dirty.clone();
+			lastUsed = c.lastUsed.clone();
+			accesses = c.accesses;
+			misses = c.misses;
+		}
+	}
+
+	private final String name;
+	private final int size;
+	private final int sets;
+	private final int associativity;
+	private final int lineSize;
+	private final int offsetBits;
+	private final Replacement replacement;
+	private final boolean writeBack;
+	/**
+	 * the level below, or null for main memory
+	 */
+	private final Cache next;
+	/**
+	 * the cycles taken to fetch a line from the level below (not counting any misses there)
+	 */
+	private final int missPenalty;
+
+	private final int[] tags;
+	private final boolean[] valid;
+	private final boolean[] dirty;
+	private final long[] lastUsed;
+	private final long[] filled;
+	private final Random random = new Random(0); // the same evictions every run
+
+	private long accesses;
+	private long misses;
+	private long writes;
+	private long writeMisses;
+	private long evictions;
+	private long writeBacks;
+
+	/**
+	 * @param name
+	 *            the name of the level (eg L1D)
+	 * @param size
+	 *            the capacity in bytes
+	 * @param associativity
+	 *            the number of lines in each set
+	 * @param lineSize
+	 *            the number of bytes in each line
+	 * @param replacement
+	 *            how the line to evict is chosen
+	 * @param writeBack
+	 *            whether writes are written back on eviction (otherwise written through)
+	 * @param next
+	 *            the level below, or null if it is main memory
+	 * @param missPenalty
+	 *            the cycles taken to fetch a line from the level below
+	 */
+	public Cache(String name, int size, int associativity, int lineSize, Replacement replacement, boolean writeBack,
+			Cache next, int missPenalty) {
+		this.name = name;
+		this.lineSize = Integer.highestOneBit(Math.max(4, lineSize));
+		this.associativity = Math.max(1, associativity);
+		this.sets = Math.max(1, Integer.highestOneBit(Math.max(1, size / (this.lineSize * this.associativity))));
+		this.size = sets * this.associativity * this.lineSize;
+		this.offsetBits = Integer.numberOfTrailingZeros(this.lineSize);
+		this.replacement = replacement;
+		this.writeBack = writeBack;
+		this.next = next;
+		this.missPenalty = missPenalty;
+
+		int lines = sets * this.associativity;
+		tags = new int[lines];
+		valid = new boolean[lines];
+		dirty = new boolean[lines];
+		lastUsed = new long[lines];
+		filled = new long[lines];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the capacity in bytes (after rounding)
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public int getSets() {
+		return sets;
+	}
+
+	public int getAssociativity() {
+		return associativity;
+	}
+
+	public int getLineSize() {
+		return lineSize;
+	}
+
+	public Replacement getReplacement() {
+		return replacement;
+	}
+
+	public boolean isWriteBack() {
+		return writeBack;
+	}
+
+	/**
+	 * @return the level below, or null if it is main memory
+	 */
+	public Cache getNext() {
+		return next;
+	}
+
+	/**
+	 * forget every line and reset the statistics (the next level is reset separately)
+	 */
+	public void clear() {
+		Arrays.fill(valid, false);
+		Arrays.fill(dirty, false);
+		Arrays.fill(lastUsed, 0);
+		Arrays.fill(filled, 0);
+		random.setSeed(0);
+		accesses = misses = writes = writeMisses = evictions = writeBacks = 0;
+	}
+
+	/**
+	 * @return the address of the first byte of the line containing the given address
+	 */
+	public int lineAddress(int address) {
+		return address & -lineSize;
+	}
+
+	/**
+	 * access the line containing the given address
+	 *
+	 * @param address
+	 *            the address being accessed
+	 * @param write
+	 *            whether the access is a write
+	 * @return the cycles the access would have stalled for. Writes which don't need the line fetched never stall
+	 *         (they are assumed to go through a write buffer)
+	 */
+	public int access(int address, boolean write) {
+		accesses++;
+		if (write)
+			writes++;
+
+		int lineNumber = address >>> offsetBits;
+		int set = lineNumber & (sets - 1);
+		int tag = lineNumber >>> Integer.numberOfTrailingZeros(sets);
+		int first = set * associativity;
+
+		for (int i = first; i < first + associativity; ++i) {
+			if (valid[i] && tags[i] == tag) {
+				lastUsed[i] = accesses;
+				if (write) {
+					if (writeBack)
+						dirty[i] = true;
+					else if (next != null)
+						next.access(address, true);
+				}
+				return 0;
+			}
+		}
+
+		misses++;
+		if (write) {
+			writeMisses++;
+			if (!writeBack) { // no write allocate
+				if (next != null)
+					next.access(address, true);
+				return 0;
+			}
+		}
+
+		int stall = missPenalty + (next == null ? 0 : next.access(address, false));
+		int victim = chooseVictim(first);
+		if (valid[victim]) {
+			evictions++;
+			if (dirty[victim]) {
+				writeBacks++;
+				if (next != null)
+					next.access((tags[victim] * sets + set) * lineSize, true);
+			}
+		}
+		tags[victim] = tag;
+		valid[victim] = true;
+		dirty[victim] = write;
+		lastUsed[victim] = accesses;
+		filled[victim] = accesses;
+		return stall;
+	}
+
+	/**
+	 * @return the index of the line to replace in the set starting at the given index: an empty line if there is one
+	 */
+	private int chooseVictim(int first) {
+		for (int i = first; i < first + associativity; ++i)
+			if (!valid[i])
+				return i;
+
+		if (replacement == Replacement.RANDOM)
+			return first + random.nextInt(associativity);
+
+		long[] age = replacement == Replacement.LRU ? lastUsed : filled;
+		int oldest = first;
+		for (int i = first + 1; i < first + associativity; ++i)
+			if (age[i] < age[oldest])
+				oldest = i;
+		return oldest;
+	}
+
+	/**
+	 * @return the number of lines which hold something in each set
+	 */
+	public int[] getOccupancy() {
+		int[] occupancy = new int[sets];
+		for (int i = 0; i < valid.length; ++i)
+			if (valid[i])
+				occupancy[i / associativity]++;
+		return occupancy;
+	}
+
+	/**
+	 * @return a copy of the lines held by the cache
+	 */
+	public Snapshot getSnapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * @return the number of reads and writes (including those passed down from the level above)
+	 */
+	public long getAccesses() {
+		return accesses;
+	}
+
+	public long getHits() {
+		return accesses - misses;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	public long getWriteMisses() {
+		return writeMisses;
+	}
+
+	/**
+	 * @return the proportion of accesses which missed (0 to 1)
+	 */
+	public double getMissRate() {
+		return accesses == 0 ? 0 : (double) misses / accesses;
+	}
+
+	/**
+	 * @return the number of lines which were replaced to make room for another
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of dirty lines which were written to the level below when evicted
+	 */
+	public long getWriteBacks() {
+		return writeBacks;
+	}
+
+	/**
+	 * @return a short description of the geometry, eg "1024 bytes, 2-way, 16 byte lines, LRU, write-back"
+	 */
+	public String describe() {
+		String ways = sets == 1 ? "fully associative" : associativity == 1 ? "direct mapped" : associativity + "-way";
+		return String.format("%d bytes, %s, %d byte lines, %s, %s", size, ways, lineSize, replacement.id.toUpperCase(),
+				writeBack ? "write-back" : "write-through");
+	}
+}
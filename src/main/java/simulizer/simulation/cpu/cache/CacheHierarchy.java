@@ -0,0 +1,407 @@
+package simulizer.simulation.cpu.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Label;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.cpu.components.MainMemory;
+
+/**
+ * The caches between the CPU and main memory: separate level 1 instruction and data caches, and optionally a unified
+ * level 2 cache below them. Every instruction fetch goes through the instruction cache and every load and store (and
+ * the strings read and written by syscalls) goes through the data cache.
+ *
+ * As well as the statistics of each cache, the hits and misses are recorded for each instruction (so they can be shown
+ * against the lines of the program) and for each data label (the nearest label at or before the address accessed, or
+ * the heap or stack).
+ *
+ * The memory stall cycles are an estimate: each miss costs the latency of the level below, the CPU is assumed to wait
+ * for every miss in turn, and writes which don't need a line fetched are assumed never to stall.
+ *
+ * Disabled until configured, so recording an access costs a single volatile read otherwise. Recorded by the simulation
+ * thread and read from any thread.
+ */
+public class CacheHierarchy {
+	/**
+	 * the levels of the hierarchy
+	 */
+	public enum Level {
+		L1_INSTRUCTION("L1I"), L1_DATA("L1D"), L2("L2");
+
+		/**
+		 * the short name of the level
+		 */
+		public final String id;
+
+		Level(String id) {
+			this.id = id;
+		}
+
+		@Override
+		public String toString() {
+			switch (this) {
+				case L1_INSTRUCTION:
+					return "L1 Instruction";
+				case L1_DATA:
+					return "L1 Data";
+				case L2:
+					return "L2 (Unified)";
+				default:
+					return "UNKNOWN";
+			}
+		}
+	}
+
+	/**
+	 * the sizes, associativity etc of the caches
+	 */
+	public static class Configuration {
+		public int instructionSize = 1024;
+		public int dataSize = 1024;
+		/**
+		 * 0 for no L2 cache
+		 */
+		public int l2Size = 0;
+		public int associativity = 2;
+		public int l2Associativity = 4;
+		public int lineSize = 16;
+		public Cache.Replacement replacement = Cache.Replacement.LRU;
+		/**
+		 * whether the data caches write back (otherwise they write through)
+		 */
+		public boolean writeBack = true;
+		/**
+		 * the cycles taken to fetch a line from the L2 cache
+		 */
+		public int l2Latency = 10;
+		/**
+		 * the cycles taken to fetch a line from main memory
+		 */
+		public int memoryLatency = 100;
+	}
+
+	/**
+	 * the accesses to memory made by one instruction, or to the data around one label
+	 */
+	public static class Site {
+		/**
+		 * the instruction making the accesses (null when grouped by label)
+		 */
+		public final Address address;
+		/**
+		 * the data label accessed (null when grouped by instruction)
+		 */
+		public final String label;
+		private long fetches;
+		private long fetchMisses;
+		private long accesses;
+		private long misses;
+		private long stallCycles;
+
+		private Site(Address address, String label) {
+			this.address = address;
+			this.label = label;
+		}
+
+		private Site(Site s) {
+			this(s.address, s.label);
+			fetches = s.fetches;
+			fetchMisses = s.fetchMisses;
+			accesses = s.accesses;
+			misses = s.misses;
+			stallCycles = s.stallCycles;
+		}
+
+		private void record(long missed, int stall) {
+			accesses++;
+			misses += missed;
+			stallCycles += stall;
+		}
+
+		/**
+		 * @return the number of times the instruction was fetched
+		 */
+		public long getFetches() {
+			return fetches;
+		}
+
+		/**
+		 * @return the number of fetches which missed the L1 instruction cache
+		 */
+		public long getFetchMisses() {
+			return fetchMisses;
+		}
+
+		/**
+		 * @return the number of L1 data cache accesses (an access spanning two lines counts twice)
+		 */
+		public long getAccesses() {
+			return accesses;
+		}
+
+		/**
+		 * @return the number of L1 data cache accesses which missed
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return the proportion of data accesses which missed (0 to 1)
+		 */
+		public double getMissRate() {
+			return accesses == 0 ? 0 : (double) misses / accesses;
+		}
+
+		/**
+		 * @return the estimated cycles spent waiting for the memory accessed (fetches and data)
+		 */
+		public long getStallCycles() {
+			return stallCycles;
+		}
+	}
+
+	private volatile boolean enabled = false;
+	private Cache instructionCache;
+	private Cache dataCache;
+	private Cache l2;
+	private long stallCycles;
+	private final Map<Address, Site> instructions = new HashMap<>();
+	private final Map<String, Site> labels = new HashMap<>();
+
+	// for finding the label of a data address
+	private final TreeMap<Integer, String> dataLabels = new TreeMap<>();
+	private int heapStart = Integer.MAX_VALUE;
+	private int stackStart = Integer.MAX_VALUE;
+
+	/**
+	 * replace the caches with new ones (empty, and with the statistics reset)
+	 *
+	 * @param c
+	 *            the configuration, or null to disable the caches
+	 */
+	public synchronized void configure(Configuration c) {
+		if (c == null) {
+			instructionCache = dataCache = l2 = null;
+			enabled = false;
+		} else {
+			l2 = c.l2Size > 0 ? new Cache(Level.L2.id, c.l2Size, c.l2Associativity, c.lineSize, c.replacement,
+					c.writeBack, null, c.memoryLatency) : null;
+			int l1Penalty = l2 == null ? c.memoryLatency : c.l2Latency;
+			instructionCache = new Cache(Level.L1_INSTRUCTION.id, c.instructionSize, c.associativity, c.lineSize,
+					c.replacement, true, l2, l1Penalty);
+			dataCache = new Cache(Level.L1_DATA.id, c.dataSize, c.associativity, c.lineSize, c.replacement,
+					c.writeBack, l2, l1Penalty);
+			enabled = true;
+		}
+		clearStatistics();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * empty the caches and reset the statistics, ready to run a program
+	 *
+	 * @param program
+	 *            the program about to run (used to find the labels of data addresses), may be null
+	 */
+	public synchronized void reset(Program program) {
+		dataLabels.clear();
+		heapStart = stackStart = Integer.MAX_VALUE;
+		if (program != null) {
+			for (Map.Entry<Label, Address> e : program.labels.entrySet())
+				if (e.getKey().getType() == Label.Type.VARIABLE)
+					dataLabels.put(e.getValue().getValue(), e.getKey().getName());
+			heapStart = program.dynamicSegmentStart.getValue();
+			stackStart = heapStart + MainMemory.MAX_HEAP_SIZE;
+		}
+		clearStatistics();
+	}
+
+	private void clearStatistics() {
+		for (Cache c : new Cache[] { instructionCache, dataCache, l2 })
+			if (c != null)
+				c.clear();
+		stallCycles = 0;
+		instructions.clear();
+		labels.clear();
+	}
+
+	/**
+	 * record an instruction being fetched
+	 *
+	 * @param address
+	 *            the address of the instruction
+	 */
+	public void fetch(Address address) {
+		if (!enabled)
+			return;
+		synchronized (this) {
+			if (instructionCache == null)
+				return;
+			long misses = instructionCache.getMisses();
+			int stall = instructionCache.access(address.getValue(), false);
+			Site s = getSite(address);
+			s.fetches++;
+			s.fetchMisses += instructionCache.getMisses() - misses;
+			s.stallCycles += stall;
+			stallCycles += stall;
+		}
+	}
+
+	/**
+	 * record an instruction reading from memory
+	 *
+	 * @param instruction
+	 *            the address of the instruction reading (null if not known)
+	 * @param address
+	 *            the first byte read
+	 * @param length
+	 *            the number of bytes read
+	 */
+	public void read(Address instruction, int address, int length) {
+		if (enabled)
+			access(instruction, address, length, false);
+	}
+
+	/**
+	 * record an instruction writing to memory
+	 *
+	 * @param instruction
+	 *            the address of the instruction writing (null if not known)
+	 * @param address
+	 *            the first byte written
+	 * @param length
+	 *            the number of bytes written
+	 */
+	public void write(Address instruction, int address, int length) {
+		if (enabled)
+			access(instruction, address, length, true);
+	}
+
+	private synchronized void access(Address instruction, int address, int length, boolean write) {
+		if (dataCache == null || length <= 0)
+			return;
+		Site byInstruction = instruction == null ? null : getSite(instruction);
+		Site byLabel = getLabelSite(address);
+		int end = address + length - 1;
+		// one access per line touched
+		for (long line = dataCache.lineAddress(address); line <= end; line += dataCache.getLineSize()) {
+			long misses = dataCache.getMisses();
+			int stall = dataCache.access((int) line, write);
+			long missed = dataCache.getMisses() - misses;
+			stallCycles += stall;
+			if (byInstruction != null)
+				byInstruction.record(missed, stall);
+			byLabel.record(missed, stall);
+		}
+	}
+
+	private Site getSite(Address instruction) {
+		Site s = instructions.get(instruction);
+		if (s == null) {
+			s = new Site(instruction, null);
+			instructions.put(instruction, s);
+		}
+		return s;
+	}
+
+	private Site getLabelSite(int address) {
+		String label = getLabel(address);
+		Site s = labels.get(label);
+		if (s == null) {
+			s = new Site(null, label);
+			labels.put(label, s);
+		}
+		return s;
+	}
+
+	/**
+	 * @return the name of the data label at or before the address, or (heap), (stack) or (unlabelled)
+	 */
+	public synchronized String getLabel(int address) {
+		if (address >= stackStart)
+			return "(stack)";
+		if (address >= heapStart)
+			return "(heap)";
+		Map.Entry<Integer, String> e = dataLabels.floorEntry(address);
+		return e == null ? "(unlabelled)" : e.getValue();
+	}
+
+	/**
+	 * @return the cache at the given level, or null if there isn't one. Only for use while holding the lock on this
+	 *         hierarchy (eg by CacheReport): everything else should use getSnapshot
+	 */
+	synchronized Cache getCache(Level level) {
+		switch (level) {
+			case L1_INSTRUCTION:
+				return instructionCache;
+			case L1_DATA:
+				return dataCache;
+			case L2:
+				return l2;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return a copy of the lines held by the cache at the given level, or null if there isn't one
+	 */
+	public synchronized Cache.Snapshot getSnapshot(Level level) {
+		Cache c = getCache(level);
+		return c == null ? null : c.getSnapshot();
+	}
+
+	/**
+	 * @return the total number of accesses to the level 1 caches, which changes whenever the caches do
+	 */
+	public synchronized long getAccesses() {
+		long accesses = 0;
+		if (instructionCache != null)
+			accesses += instructionCache.getAccesses();
+		if (dataCache != null)
+			accesses += dataCache.getAccesses();
+		return accesses;
+	}
+
+	/**
+	 * @return the estimated number of cycles spent waiting for memory
+	 */
+	public synchronized long getStallCycles() {
+		return stallCycles;
+	}
+
+	/**
+	 * @return a copy of the statistics for each instruction which accessed memory, the most misses first
+	 */
+	public synchronized List<Site> getInstructions() {
+		return sorted(instructions);
+	}
+
+	/**
+	 * @return a copy of the statistics for each data label which was accessed, the most misses first
+	 */
+	public synchronized List<Site> getLabels() {
+		return sorted(labels);
+	}
+
+	private static List<Site> sorted(Map<?, Site> sites) {
+		List<Site> copies = new ArrayList<>(sites.size());
+		for (Site s : sites.values())
+			copies.add(new Site(s));
+		copies.sort(Comparator.comparingLong((Site s) -> -(s.misses + s.fetchMisses))
+				.thenComparingLong(s -> -s.accesses)
+				.thenComparingInt(s -> s.address == null ? 0 : s.address.getValue())
+				.thenComparing(s -> s.label == null ? "" : s.label));
+		return copies;
+	}
+}
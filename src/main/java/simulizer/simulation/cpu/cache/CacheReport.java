@@ -0,0 +1,97 @@
+package simulizer.simulation.cpu.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Statement;
+
+/**
+ * A plain text report of how well the program used the caches: the hits and misses of each cache, the estimated cycles
+ * spent waiting for memory, and the lines of the program and data labels which missed the most. Shown by the cache
+ * view and printed by command line mode.
+ */
+public class CacheReport {
+	/**
+	 * the most instructions and labels to list (the most misses are listed first)
+	 */
+	private static final int MAX_SITES = 50;
+
+	/**
+	 * @param caches
+	 *            the caches of the CPU which is running (or has run) the program
+	 * @param program
+	 *            the program (used for line numbers), may be null
+	 * @return the report (several lines)
+	 */
+	public static String generate(CacheHierarchy caches, Program program) {
+		Map<Address, Integer> lineNumbers = program == null ? Collections.emptyMap() : program.lineNumbers;
+		Map<Address, Statement> textSegment = program == null ? Collections.emptyMap() : program.textSegment;
+		StringBuilder sb = new StringBuilder();
+
+		if (!caches.isEnabled()) {
+			sb.append(String.format("Caches: not simulated%n"));
+			return sb.toString();
+		}
+
+		// the statistics are read in one go so that they are consistent
+		synchronized (caches) {
+			sb.append(String.format("%-5s %s%n", "Cache", "Configuration"));
+			for (CacheHierarchy.Level level : CacheHierarchy.Level.values()) {
+				Cache c = caches.getCache(level);
+				sb.append(String.format("%-5s %s%n", level.id, c == null ? "none" : c.describe()));
+			}
+
+			sb.append(String.format("%n%-5s %10s %10s %10s %9s %10s %11s%n", "Cache", "Accesses", "Hits", "Misses",
+					"Miss rate", "Evictions", "Write-backs"));
+			for (CacheHierarchy.Level level : CacheHierarchy.Level.values()) {
+				Cache c = caches.getCache(level);
+				if (c != null)
+					sb.append(String.format("%-5s %10d %10d %10d %8.1f%% %10d %11d%n", level.id, c.getAccesses(),
+							c.getHits(), c.getMisses(), c.getMissRate() * 100, c.getEvictions(), c.getWriteBacks()));
+			}
+			sb.append(String.format("%nEstimated memory stall cycles: %d%n", caches.getStallCycles()));
+		}
+
+		// only the instructions which missed or accessed data
+		List<CacheHierarchy.Site> instructions = caches.getInstructions();
+		instructions.removeIf(s -> s.getFetchMisses() == 0 && s.getAccesses() == 0);
+		sb.append(String.format("%nBy line%n"));
+		sb.append(String.format("%-6s %-24s %8s %8s %10s %8s %9s %10s%n", "Line", "Instruction", "Fetches", "Misses",
+				"Data", "Misses", "Miss rate", "Stalls"));
+		for (CacheHierarchy.Site s : instructions.subList(0, Math.min(MAX_SITES, instructions.size()))) {
+			sb.append(String.format("%-6s %-24s %8d %8d %10d %8d %8.1f%% %10d%n", line(lineNumbers, s.address),
+					statement(textSegment, s.address), s.getFetches(), s.getFetchMisses(), s.getAccesses(),
+					s.getMisses(), s.getMissRate() * 100, s.getStallCycles()));
+		}
+		if (instructions.size() > MAX_SITES)
+			sb.append(String.format("... and %d more%n", instructions.size() - MAX_SITES));
+
+		List<CacheHierarchy.Site> labels = caches.getLabels();
+		sb.append(String.format("%nBy data label%n"));
+		sb.append(String.format("%-24s %10s %8s %9s %10s%n", "Label", "Accesses", "Misses", "Miss rate", "Stalls"));
+		for (CacheHierarchy.Site s : labels.subList(0, Math.min(MAX_SITES, labels.size()))) {
+			sb.append(String.format("%-24s %10d %8d %8.1f%% %10d%n", s.label, s.getAccesses(), s.getMisses(),
+					s.getMissRate() * 100, s.getStallCycles()));
+		}
+		if (labels.size() > MAX_SITES)
+			sb.append(String.format("... and %d more%n", labels.size() - MAX_SITES));
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return the (1 based) line number of the given address
+	 */
+	private static String line(Map<Address, Integer> lineNumbers, Address address) {
+		Integer line = lineNumbers.get(address);
+		return line == null ? "?" : "" + (line + 1);
+	}
+
+	private static String statement(Map<Address, Statement> textSegment, Address address) {
+		Statement s = textSegment.get(address);
+		return s == null ? address.toString() : s.toString();
+	}
+}
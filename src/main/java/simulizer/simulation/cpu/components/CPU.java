@@ -2,10 +2,8 @@ package simulizer.simulation.cpu.components;
 
 
 import java.util.*;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import javafx.application.Platform;
-import simulizer.Simulizer;
 import simulizer.assembler.representation.Address;
 import simulizer.assembler.representation.Annotation;
 import simulizer.assembler.representation.Instruction;
@@ -14,6 +12,9 @@ import simulizer.assembler.representation.Program;
 import simulizer.assembler.representation.Register;
 import simulizer.assembler.representation.Statement;
 import simulizer.assembler.representation.operand.Operand;
+import simulizer.simulation.cpu.CPUMetrics;
+import simulizer.simulation.cpu.TickBarrier;
+import simulizer.simulation.cpu.cache.CacheHierarchy;
 import simulizer.simulation.cpu.user_interaction.IO;
 import simulizer.simulation.data.representation.DataConverter;
 import simulizer.simulation.data.representation.Word;
@@ -30,6 +31,7 @@ import simulizer.simulation.messages.SimulationListener;
 import simulizer.simulation.messages.SimulationMessage;
 import simulizer.simulation.messages.StageEnterMessage;
 import simulizer.simulation.messages.StageEnterMessage.Stage;
+import simulizer.utils.Tracer;
 
 /**
  * this is the central CPU class
@@ -48,21 +50,36 @@ import simulizer.simulation.messages.StageEnterMessage.Stage;
 public class CPU {
 
 	private MessageManager messageManager;
+	/**
+	 * live counters, published over JMX once registered (by GUI and command line mode, not by every CPU)
+	 */
+	private final CPUMetrics metrics;
 
 	Address programCounter;
 	Statement instructionRegister;
 
 	final Clock clock;
-	long cycles;
+	// written by the simulation thread only, read by the metrics and the speed monitor
+	volatile long cycles;
+	/**
+	 * the number of instructions which have been executed (not counting pipeline bubbles)
+	 */
+	volatile long instructionsRetired;
 	/**
 	 * used for resume for single cycle
 	 */
 	boolean breakAfterCycle;
-    private final Semaphore tickLock;
-	private long lastFXWait;
+	/**
+	 * prevent the simulation from getting too far ahead of something else (eg asynchronous annotations)
+	 */
+	private final CopyOnWriteArrayList<TickBarrier> tickBarriers = new CopyOnWriteArrayList<>();
 
 	private Word[] registers;
 	private MainMemory memory;
+	/**
+	 * the caches the memory accesses go through (kept between programs)
+	 */
+	private final CacheHierarchy caches = new CacheHierarchy();
 
 	private Decoder decoder;
 	private Executor executor;
@@ -94,16 +111,14 @@ public class CPU {
 		this.clock = new Clock();
 		this.cycles = 0;
 		this.breakAfterCycle = false;
-		this.tickLock = new Semaphore(1); // used to ensure JavaFX tasks are done before the next tick
-        this.tickLock.tryAcquire();
-		this.lastFXWait = 0;
 		this.isRunning = false;
 		this.io = io;
 		this.decoder = new Decoder(this);
 		this.executor = new Executor(this);
 		this.lo = Word.ZERO;
 		this.hi = Word.ZERO;
-		
+
+		this.metrics = new CPUMetrics(this, messageManager);
 	}
 
 	/**method stops sim, shuts down clock and message manager
@@ -113,6 +128,7 @@ public class CPU {
 		stopRunning();
 		clock.stop();
 		messageManager.shutdown();
+		metrics.unregister();
 	}
 
 	/**
@@ -148,6 +164,25 @@ public class CPU {
 	public long getTicks() {
 		return clock.getTicks();
 	}
+	/**
+	 * @return the number of cycles completed since the program started
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+	/**
+	 * @return the number of instructions executed since the program started (for the pipelined CPU this does not
+	 *         include the bubbles, so it can be less than the number of cycles)
+	 */
+	public long getInstructionsRetired() {
+		return instructionsRetired;
+	}
+	/**
+	 * @return the live counters of this CPU (published over JMX after getMetrics().register())
+	 */
+	public CPUMetrics getMetrics() {
+		return metrics;
+	}
 
 	/**return if the simulation is currently running
 	 * 
@@ -209,22 +244,6 @@ public class CPU {
 		}
 	}
 
-	/**
-	 * Wait for the Platform.runLater() tasks to finish
-	 * @param interval the time to leave between JavaFX waiting. -1 to ensure waiting
-	 */
-	private void waitForFX(int interval) {
-		if(Simulizer.hasGUI() && System.currentTimeMillis() - interval > lastFXWait) {
-			// hopefully runLater tasks run in a queue, so this occurs after all the
-			// outstanding JavaFX tasks have run
-			Platform.runLater(tickLock::release);
-			try {
-				tickLock.acquire();
-			} catch (InterruptedException ignored) { }
-            lastFXWait = System.currentTimeMillis();
-		}
-	}
-
 	/**method makes simulation wait for the next clock tick to take place
 	 * 
 	 * @throws EndedException If program ended
@@ -235,10 +254,27 @@ public class CPU {
 				throw new EndedException();
 			}
 
+			long start = System.nanoTime();
             messageManager.waitForAll();
+			long waited = System.nanoTime();
+			metrics.addWaitForAll(waited - start);
+			Tracer.record(Tracer.WAIT, "wait for listeners", start, waited);
+
+			// only blocks if the simulation has got too far ahead
+			for(TickBarrier barrier : tickBarriers) {
+				while(isRunning && !barrier.awaitCycle(cycles, 10)) {
+					// keep checking whether the simulation has been stopped
+				}
+			}
+			long barriers = System.nanoTime();
+			metrics.addTickBarrier(barriers - waited);
+			Tracer.record(Tracer.WAIT, "wait for UI and annotations", waited, barriers);
 
             // if the clock is stopped then it advances by 1 tick to unlock this thread
             clock.waitForNextTick();
+			long ticked = System.nanoTime();
+			metrics.addClockWait(ticked - barriers);
+			Tracer.record(Tracer.WAIT, "wait for clock tick", barriers, ticked);
 
 			if(!isRunning) {
 				throw new EndedException();
@@ -249,6 +285,39 @@ public class CPU {
 		}
 	}
 
+	/**
+	 * Add something which the simulation must not get too far ahead of
+	 *
+	 * @param barrier
+	 *            the barrier to consult every tick (added only once)
+	 */
+	public void addTickBarrier(TickBarrier barrier) {
+		tickBarriers.addIfAbsent(barrier);
+	}
+
+	/**
+	 * @param barrier
+	 *            the barrier to stop consulting
+	 */
+	public void removeTickBarrier(TickBarrier barrier) {
+		tickBarriers.remove(barrier);
+	}
+
+	/**
+	 * Let the simulation run as fast as possible regardless of the cycle frequency, so that it can get ahead of
+	 * what is being shown (the UI plays the cycles back at the cycle frequency)
+	 *
+	 * @param runAhead
+	 *            whether to run ahead
+	 */
+	public void setRunAhead(boolean runAhead) {
+		clock.setUnthrottled(runAhead);
+	}
+
+	public boolean isRunAhead() {
+		return clock.isUnthrottled();
+	}
+
 	/**
 	 * Register a listener to receive messages
 	 * wrapper for method in listener, makes more sense as wrapper for connecting to CPU
@@ -304,7 +373,7 @@ public class CPU {
 		// program is run again
 		byte[] staticDataSegment = Arrays.copyOf(this.program.dataSegment, this.program.dataSegment.length);
 		Map<Address, Statement> textSegment = this.program.textSegment;
-		this.memory = new MainMemory(textSegment, staticDataSegment, dataSegmentStart, dynamicSegmentStart, stackPointer);
+		this.memory = new MainMemory(textSegment, staticDataSegment, dataSegmentStart, dynamicSegmentStart, stackPointer, caches);
 
 		labels = new HashMap<>();
 		labelMetaData = new HashMap<>();
@@ -368,10 +437,12 @@ public class CPU {
 	 *
 	 */
 	protected void fetch() throws MemoryException {
+		long start = Tracer.begin();
 		sendMessage(new StageEnterMessage(Stage.Fetch));// signal start of stage
 		this.instructionRegister = this.memory.readFromTextSegment(this.programCounter);
 		sendMessage(new DataMovementMessage(Optional.empty(), Optional.of(this.instructionRegister)));
 		this.programCounter = new Address(this.programCounter.getValue() + 4);// incrementing the program counter
+		Tracer.end(Tracer.CPU, "fetch", start);
 	}
 
 	/**
@@ -387,7 +458,12 @@ public class CPU {
 	 *             if something goes wrong during decode
 	 */
 	protected InstructionFormat decode(Instruction instruction, List<Operand> operandList) throws DecodeException {
-		return this.decoder.decode(instruction, operandList);
+		long start = Tracer.begin();
+		try {
+			return this.decoder.decode(instruction, operandList);
+		} finally {
+			Tracer.end(Tracer.CPU, "decode", start);
+		}
 	}
 
 	/**
@@ -396,9 +472,16 @@ public class CPU {
 	 * 
 	 * @param instruction
 	 *            instruction set up with all necessary data
+	 * @param address
+	 *            the address of the instruction (null for a pipeline bubble), used to attribute its memory accesses
 	 */
-	protected void execute(InstructionFormat instruction) throws InstructionException, ExecuteException, MemoryException, HeapException, StackException {
-		this.programCounter = this.executor.execute(instruction, this.getProgramCounter());// will set the program counter if changed
+	protected void execute(InstructionFormat instruction, Address address) throws InstructionException, ExecuteException, MemoryException, HeapException, StackException {
+		long start = Tracer.begin();
+		try {
+			this.programCounter = this.executor.execute(instruction, this.getProgramCounter(), address);// will set the program counter if changed
+		} finally {
+			Tracer.end(Tracer.CPU, "execute", start);
+		}
 	}
 
 
@@ -440,7 +523,8 @@ public class CPU {
 
 		waitForNextTick();
 
-		execute(instruction);
+		execute(instruction, thisInstruction);
+		instructionsRetired++;
 		sendMessage(new PipelineStateMessage(null, null, thisInstruction));
 
 		if (annotations.containsKey(thisInstruction) && this.isRunning) {
@@ -476,6 +560,9 @@ public class CPU {
 		isRunning = true;
 		breakAfterCycle = false;
 		cycles = 0;
+		instructionsRetired = 0;
+		caches.reset(program);
+		metrics.onStart();
 
 		messageManager.waitForAll();
 
@@ -493,8 +580,6 @@ public class CPU {
 
 		messageManager.waitForAll();
 
-		waitForFX(-1/*always wait*/); // helps with not freezing the UI during simulation startup
-
 		clock.start(); // restart the clock (was just started above) to correctly time the first tick
 
 		while (isRunning) {
@@ -509,9 +594,6 @@ public class CPU {
 				stopRunning();
 			}
 
-			// doesn't have to be done every tick or anything, just enough not to starve
-			waitForFX(100/*ms between waiting*/);
-
 			//long cycleDuration = System.nanoTime() - cycleStart;
 		}
 
@@ -520,9 +602,13 @@ public class CPU {
 		if(clock.getStatus() != Clock.Status.STOPPED)
 			clock.stop();
 		io.cancelRead();
+		for(TickBarrier barrier : tickBarriers)
+			barrier.awaitAll();
 		// make sure the simulation stopped message is the very last message
 		messageManager.waitForAll();
 		sendMessage(new SimulationMessage(SimulationMessage.Detail.SIMULATION_STOPPED));
+		// let the listeners finish handling the end of the simulation before returning
+		messageManager.waitForAll();
 	}
 
 	// Standard get methods, don't do anything special
@@ -544,6 +630,13 @@ public class CPU {
 		return memory;
 	}
 
+	/**
+	 * @return the caches the memory accesses of the program go through (disabled until configured)
+	 */
+	public CacheHierarchy getCaches() {
+		return caches;
+	}
+
 	public Address getProgramCounter() {
 		return programCounter;
 	}
@@ -0,0 +1,372 @@
+package simulizer.simulation.cpu.components;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Instruction;
+import simulizer.assembler.representation.Register;
+import simulizer.assembler.representation.Statement;
+import simulizer.simulation.cpu.CPIBreakdown;
+import simulizer.simulation.cpu.scheduling.RegisterUsage;
+import simulizer.simulation.cpu.user_interaction.IO;
+import simulizer.simulation.exceptions.*;
+import simulizer.simulation.instructions.AddressMode;
+import simulizer.simulation.instructions.InstructionFormat;
+import simulizer.simulation.messages.*;
+import simulizer.simulation.messages.PipelineHazardMessage.Hazard;
+import simulizer.simulation.messages.PipelineStateMessage.BranchOutcome;
+
+/**the classic five stage pipeline: fetch, decode, execute, memory and write back.
+ * It predicts branches and gathers statistics in the same way as the three stage pipeline it extends.
+ * Each instruction reads its operands as it leaves decode and is executed as it passes through
+ * the execute stage, so hazards change when instructions run but never what they do:
+ * <ul>
+ * <li>data hazards: without forwarding, an instruction waits in decode until the instructions writing its operands
+ * have left the memory stage (two stalls for consecutive instructions). With forwarding, results are passed back from
+ * the execute and memory stages, so only an instruction which uses the result of a load (or syscall) immediately
+ * before it stalls (for one cycle), since memory is only read in the memory stage</li>
+ * <li>structural hazards: optionally, fetches and loads/stores share a single memory port, so nothing can be
+ * fetched while a load or store is in the memory stage</li>
+ * <li>control hazards: branches are resolved in execute, so a mispredicted branch throws away the two instructions
+ * behind it</li>
+ * </ul>
+ * Every bubble which reaches the execute stage is blamed on the hazard which caused it, so the CPI breakdown
+ * accounts for every cycle
+ */
+public class CPUFiveStagePipeline extends CPUPipeline {
+
+	/**why a stage holds a bubble rather than an instruction*/
+	private enum Cause {
+		FILL, RAW, STRUCTURAL, CONTROL
+	}
+
+	/**an instruction (or bubble) in one of the stages of the pipeline
+	 */
+	private static class Slot {
+		final Address address;//null for a bubble
+		final Statement statement;
+		Prediction prediction;//null if not predicted taken
+		InstructionFormat instruction;//decoded as the instruction leaves decode
+		List<Register> writes = Collections.emptyList();
+		boolean lateResult;//the result is only ready after the memory stage (loads and syscalls)
+		boolean accessesMemory;//loads and stores use the memory port in the memory stage
+
+		// bubbles only: what caused them, and for RAW hazards, which instructions
+		final Cause cause;
+		final Address producer;
+		final Address consumer;
+		final Register register;
+
+		Slot(Address address, Statement statement, Prediction prediction) {
+			this.address = address;
+			this.statement = statement;
+			this.prediction = prediction;
+			this.cause = null;
+			this.producer = null;
+			this.consumer = null;
+			this.register = null;
+		}
+
+		Slot(Cause cause, Address producer, Address consumer, Register register) {
+			this.address = null;
+			this.statement = null;
+			this.cause = cause;
+			this.producer = producer;
+			this.consumer = consumer;
+			this.register = register;
+		}
+
+		boolean isBubble() {
+			return address == null;
+		}
+	}
+
+	private static final Slot FILL_BUBBLE = new Slot(Cause.FILL, null, null, null);
+	private static final Slot STRUCTURAL_BUBBLE = new Slot(Cause.STRUCTURAL, null, null, null);
+	private static final Slot CONTROL_BUBBLE = new Slot(Cause.CONTROL, null, null, null);
+
+	private Slot fetched;//waiting to be decoded, null if nothing has been fetched
+	private Slot id;
+	private Slot ex;
+	private Slot mem;
+	private Slot wb;
+
+	private volatile boolean singleMemoryPort;
+
+	// the bubbles which have passed through the execute stage, by cause
+	private volatile long rawStalls;
+	private volatile long structuralStalls;
+	private volatile long controlStalls;
+
+	private final ConcurrentHashMap<Address, LongAdder> executions = new ConcurrentHashMap<>();
+
+	/**constructor calls the super constructor and empties the pipeline
+	 * @param io the io class being used for syscall IO
+	 */
+	public CPUFiveStagePipeline(IO io) {
+		super(io);
+		this.singleMemoryPort = false;
+		emptyPipeline();
+	}
+
+	private void emptyPipeline() {
+		fetched = null;
+		id = FILL_BUBBLE;
+		ex = FILL_BUBBLE;
+		mem = FILL_BUBBLE;
+		wb = FILL_BUBBLE;
+	}
+
+	/**set whether fetches and loads/stores share one memory port, so that a load or store
+	 * in the memory stage stops an instruction being fetched (can be changed while running)
+	 * @param singleMemoryPort whether to share the memory port
+	 */
+	public void setSingleMemoryPort(boolean singleMemoryPort) {
+		this.singleMemoryPort = singleMemoryPort;
+	}
+
+	/**get whether fetches and loads/stores share one memory port
+	 * @return whether the memory port is shared
+	 */
+	public boolean isSingleMemoryPort() {
+		return singleMemoryPort;
+	}
+
+	/**get the number of times the instruction at an address has been executed by the current (or last) program
+	 * @param address the address of the instruction
+	 * @return the number of times it was executed
+	 */
+	public long getExecutions(Address address) {
+		LongAdder n = executions.get(address);
+		return n == null ? 0 : n.sum();
+	}
+
+	@Override
+	public CPIBreakdown getCPIBreakdown() {
+		return new CPIBreakdown(instructionsRetired, cycles, rawStalls, structuralStalls, controlStalls);
+	}
+
+	@Override
+	public int getStageCount() {
+		return 5;
+	}
+
+	/**find whether the instruction in decode has to wait for an instruction further along the pipeline
+	 * @return the bubble to insert into the execute stage, or null if the instruction can continue
+	 */
+	private Slot findStall() {
+		if(id.isBubble()) {
+			return null;
+		}
+		List<Register> reads = RegisterUsage.reads(id.statement);
+		Register fromEx = findRAWDependency(reads, ex.writes);
+		if(fromEx != null && (!isForwarding() || ex.lateResult)) {
+			return new Slot(Cause.RAW, ex.address, id.address, fromEx);
+		}
+		Register fromMem = findRAWDependency(reads, mem.writes);
+		if(fromMem != null && !isForwarding()) {
+			return new Slot(Cause.RAW, mem.address, id.address, fromMem);
+		}
+		return null;
+	}
+
+	/**record the values forwarded to the instruction leaving decode
+	 */
+	private void recordForwarding() {
+		if(!isForwarding()) {
+			return;
+		}
+		List<Register> reads = RegisterUsage.reads(id.statement);
+		Register fromEx = findRAWDependency(reads, ex.writes);
+		if(fromEx != null) {
+			getStallStatistics().record(ex.address, id.address, fromEx, true);
+		}
+		Register fromMem = findRAWDependency(reads, mem.writes);
+		if(fromMem != null) {
+			getStallStatistics().record(mem.address, id.address, fromMem, true);
+		}
+	}
+
+	/**decode the instruction leaving the decode stage, now that the instructions ahead of it have been executed
+	 * @throws DecodeException if the instruction could not be decoded
+	 */
+	private void decodeLeaving() throws DecodeException {
+		id.instruction = decode(id.statement.getInstruction(), id.statement.getOperandList());
+		id.writes = registersBeingWritten(id.instruction);
+		id.lateResult = RegisterUsage.readsMemory(id.statement) || id.statement.getInstruction() == Instruction.syscall;
+		id.accessesMemory = RegisterUsage.readsMemory(id.statement) || RegisterUsage.writesMemory(id.statement);
+	}
+
+	/**count a bubble passing through the execute stage against its cause
+	 */
+	private void countBubble(Slot bubble) {
+		switch(bubble.cause) {
+			case RAW:
+				rawStalls++;
+				getStallStatistics().record(bubble.producer, bubble.consumer, bubble.register, false);
+				break;
+			case STRUCTURAL:
+				structuralStalls++;
+				break;
+			case CONTROL:
+				controlStalls++;
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**method will overwrite the method in the CPU class for running a cycle
+	 * this method will move every instruction along one stage of the pipeline, unless there is a hazard
+	 */
+	@Override
+	protected void runSingleCycle() throws MemoryException, DecodeException, InstructionException,
+			ExecuteException, HeapException, StackException, EndedException {
+
+		Address fetchAddress = programCounter;
+		boolean pastEnd = fetchAddress.getValue() == lastAddress.getValue() + 4;
+
+		if(pastEnd && fetched == null && id.isBubble() && ex.isBubble() && isRunning) {
+			//exiting cleanly but representing that in reality an error would be thrown
+			sendMessage(new ProblemMessage(
+					new MemoryException("" +
+							"Program tried to execute a program outside the text segment.\n" +
+							"  This could be because you forgot to exit cleanly.\n" +
+							"  To exit cleanly please call syscall with code 10.\n", fetchAddress)));
+			stopRunning();
+			return;
+		}
+
+		// only hit the breakpoint once, then allow progress to continue
+		if(Breakpoints.isBreakpoint(fetchAddress)) {
+			pause();
+		}
+
+		// fetch, unless the last instruction fetched is still waiting
+		boolean structural = false;
+		boolean fetchPredicted = false;
+		if(fetched == null && !pastEnd) {
+			if(singleMemoryPort && mem.accessesMemory) {
+				sendMessage(new PipelineHazardMessage(Hazard.STRUCTURAL));
+				structural = true;
+			} else {
+				fetch();
+				Prediction prediction = null;
+				Address target = getBranchPredictor().predictTarget(fetchAddress);
+				if(target != null) {//predicted to be a taken branch: carry on fetching from the target
+					programCounter = target;
+					prediction = new Prediction(target, 0);
+					fetchPredicted = true;
+				}
+				fetched = new Slot(fetchAddress, instructionRegister, prediction);
+			}
+		}
+
+		Slot stall = findStall();
+		if(stall != null) {
+			sendMessage(new PipelineHazardMessage(ex.lateResult && isForwarding() ? Hazard.LOAD_USE : Hazard.RAW));
+		}
+
+		// the stages as they were during this cycle
+		Address shownFetch = fetched == null ? null : fetched.address;
+		Address decodeAddress = id.address;
+		Slot executing = ex;
+
+		BranchOutcome outcome = BranchOutcome.NONE;
+		boolean flushed = false;
+		if(executing.isBubble()) {
+			countBubble(executing);
+		} else {
+			InstructionFormat instruction = withReturnAddress(executing.instruction, executing.address);
+			Address nextFetch = programCounter;
+			execute(instruction, executing.address);
+			instructionsRetired++;
+			executions.computeIfAbsent(executing.address, a -> new LongAdder()).increment();
+			programCounter = nextFetch;//taken branches are followed below, only if they were mispredicted
+
+			boolean isBranch = instruction.mode.equals(AddressMode.JTYPE) || instruction.mode.equals(AddressMode.ITYPE);
+			if(isBranch && this.isRunning) {
+				Address redirect = resolveBranch(instruction, executing.address, executing.prediction, 2);
+				outcome = redirect == null ? BranchOutcome.CORRECTLY_PREDICTED : BranchOutcome.MISPREDICTED;
+				if(redirect != null) {//flush the two instructions behind the branch and carry on from the right place
+					sendMessage(new PipelineHazardMessage(Hazard.CONTROL));
+					programCounter = redirect;
+					flushed = true;
+				}
+			}
+
+			if(annotations.containsKey(executing.address) && this.isRunning) {
+				sendMessage(new AnnotationMessage(annotations.get(executing.address), executing.address));
+			}
+		}
+
+		// move everything along a stage
+		Address decodePredicted = null;//the branch predicted to be taken as it was decoded
+		Slot nextEx;
+		Slot nextId;
+		if(flushed) {
+			nextEx = CONTROL_BUBBLE;
+			nextId = CONTROL_BUBBLE;
+			fetched = null;
+		} else if(stall != null) {
+			nextEx = stall;
+			nextId = id;
+		} else {
+			if(!id.isBubble()) {
+				decodeLeaving();
+				recordForwarding();
+				if(id.prediction == null) {
+					id.prediction = predictAtDecode(id.instruction, id.address);
+					if(id.prediction != null) {
+						// followed as the branch was decoded: the instruction fetched after it is thrown away
+						decodePredicted = id.address;
+						fetched = null;
+					}
+				}
+			}
+			nextEx = id;
+			if(decodePredicted != null) {
+				nextId = CONTROL_BUBBLE;
+			} else if(fetched != null) {
+				nextId = fetched;
+			} else {
+				nextId = structural ? STRUCTURAL_BUBBLE : FILL_BUBBLE;
+			}
+			fetched = null;
+		}
+		Address shownMemory = mem.address;
+		Address shownWriteback = wb.address;
+		wb = mem;
+		mem = executing;
+		ex = nextEx;
+		id = nextId;
+
+		// a branch followed as it was decoded throws away the instruction fetched after it (even if predicted)
+		Address predictedTaken = decodePredicted != null ? decodePredicted : (fetchPredicted ? fetchAddress : null);
+		sendMessage(new PipelineStateMessage(shownFetch, decodeAddress, executing.address, shownMemory,
+				shownWriteback, predictedTaken, outcome));
+
+		waitForNextTick();
+
+		cycles++;
+		if(breakAfterCycle) {
+			pause();
+		}
+	}
+
+	/**overwriting the run program method to empty the pipeline before execution
+	 *
+	 */
+	@Override
+	public void runProgram() {
+		emptyPipeline();
+		rawStalls = 0;
+		structuralStalls = 0;
+		controlStalls = 0;
+		executions.clear();
+		super.runProgram();
+	}
+}
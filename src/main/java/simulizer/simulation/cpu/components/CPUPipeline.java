@@ -8,6 +8,12 @@ import simulizer.assembler.representation.Instruction;
 import simulizer.assembler.representation.Register;
 import simulizer.assembler.representation.Statement;
 import simulizer.assembler.representation.operand.OperandFormat;
+import simulizer.simulation.cpu.CPIBreakdown;
+import simulizer.simulation.cpu.StallStatistics;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor;
+import simulizer.simulation.cpu.branch_prediction.BranchStatistics;
+import simulizer.simulation.cpu.branch_prediction.StaticNotTaken;
+import simulizer.simulation.cpu.scheduling.RegisterUsage;
 import simulizer.simulation.cpu.user_interaction.IO;
 import simulizer.simulation.data.representation.DataConverter;
 import simulizer.simulation.data.representation.Word;
@@ -15,13 +21,14 @@ import simulizer.simulation.exceptions.*;
 import simulizer.simulation.instructions.*;
 import simulizer.simulation.messages.*;
 import simulizer.simulation.messages.PipelineHazardMessage.Hazard;
+import simulizer.simulation.messages.PipelineStateMessage.BranchOutcome;
 
 /**this class is an extension of the original CPU class
  * the difference is that the order of execution follows a very 
  * primitive pipeline. The features of this pipeline are as follows:
  * if in the decode, we find we need to read a register being written to in execute
- * then we will stall the pipeline for one cycle
- * if a successful branch is executed, the pipeline will be flushed
+ * then we will stall the pipeline for one cycle, unless the result can be forwarded
+ * if a branch is mispredicted (by default every taken branch), the pipeline will be flushed
  * @author Charlie Street
  */
 public class CPUPipeline extends CPU {
@@ -38,8 +45,34 @@ public class CPUPipeline extends CPU {
 	 * once set to 1, each cycle the counter increases and at 3, the CPU terminates
 	 */
 	private int isFinished;//used for testing end of program
-	private int nopCount;//used to check for pipeline hazards when sending messages
-	private boolean rawOccured;//used to check if a raw hazard has just occured
+
+	/**a branch which has been predicted taken (and followed)
+	 */
+	static class Prediction {
+		final Address target;
+		final int penalty;//the cycles lost by following the branch (not counting a misprediction)
+
+		Prediction(Address target, int penalty) {
+			this.target = target;
+			this.penalty = penalty;
+		}
+	}
+
+	// the address of the instruction in each stage (null for a bubble), used for the pipeline state messages
+	// and the branch predictions. The fetched instruction waits in the instruction register when the pipeline stalls
+	private Address fetchedAddress;
+	private Address ifAddress;
+	private Address idAddress;
+	// the predictions for the branches in each stage, null if not predicted taken
+	private Prediction fetchedPrediction;
+	private Prediction ifPrediction;
+	private Prediction idPrediction;
+
+	private volatile BranchPredictor predictor;
+	private final BranchStatistics branchStatistics;
+
+	private volatile boolean forwarding;//whether results can be forwarded from execute to decode
+	private final StallStatistics stallStatistics;
 	
 	/**constructor calls the super constructor
 	 * as well as initialising the new pipeline related fields
@@ -51,9 +84,68 @@ public class CPUPipeline extends CPU {
 		this.ID = createNopInstruction();
 		this.canFetch = true;
 		this.isFinished = 0;
-		this.nopCount = 2;//initially 2
-		this.rawOccured = false;//initially false
-		
+		this.predictor = new StaticNotTaken();
+		this.branchStatistics = new BranchStatistics();
+		this.forwarding = false;
+		this.stallStatistics = new StallStatistics();
+	}
+
+	/**set the strategy used to predict branches (can be changed while running)
+	 * @param predictor the branch predictor to use
+	 */
+	public void setBranchPredictor(BranchPredictor predictor) {
+		this.predictor = predictor;
+	}
+
+	/**get the strategy used to predict branches
+	 * @return the branch predictor
+	 */
+	public BranchPredictor getBranchPredictor() {
+		return predictor;
+	}
+
+	/**get how well the branches of the current (or last) program were predicted
+	 * @return the statistics for each branch site
+	 */
+	public BranchStatistics getBranchStatistics() {
+		return branchStatistics;
+	}
+
+	/**set whether the result of the instruction being executed can be forwarded to the
+	 * instruction being decoded, rather than stalling until it is written (can be changed while running)
+	 * @param forwarding whether to forward results
+	 */
+	public void setForwarding(boolean forwarding) {
+		this.forwarding = forwarding;
+	}
+
+	/**get whether results are forwarded from execute to decode
+	 * @return whether results are forwarded
+	 */
+	public boolean isForwarding() {
+		return forwarding;
+	}
+
+	/**get the data dependencies of the current (or last) program and whether they caused stalls
+	 * @return the statistics for each pair of dependent instructions
+	 */
+	public StallStatistics getStallStatistics() {
+		return stallStatistics;
+	}
+
+	/**get where the cycles of the current (or last) program went
+	 * @return the cycles per instruction, broken down by cause
+	 */
+	public CPIBreakdown getCPIBreakdown() {
+		return new CPIBreakdown(instructionsRetired, cycles, stallStatistics.getStalls(), 0,
+				branchStatistics.getTotal().getPenaltyCycles());
+	}
+
+	/**get the number of stages in the pipeline
+	 * @return the number of stages (fetch, decode and execute)
+	 */
+	public int getStageCount() {
+		return 3;
 	}
 
 	/**override the setCycleFreq method in CPU
@@ -76,42 +168,13 @@ public class CPUPipeline extends CPU {
 	}
 
 	/**method will go through a statement and extract the registers
-	 * that will be read by this instruction
+	 * that will be read by this instruction when it is decoded
+	 * (a syscall reads its arguments when it is executed, so they can't cause a hazard here)
 	 * @param statement the statement to be decoded and then executed
 	 * @return the list of registers to be read
 	 */
 	private List<Register> registersRead(Statement statement) {
-		ArrayList<Register> registers = new ArrayList<>();
-		
-		//now to get all registers read out from the statement
-		OperandFormat opForm = statement.getInstruction().getOperandFormat();
-		boolean readZero = opForm.equals(OperandFormat.register) || opForm.equals(OperandFormat.srcAddr) ||
-						   opForm.equals(OperandFormat.cmpCmpLabel) || opForm.equals(OperandFormat.cmpLabel);
-		
-		boolean readOne = opForm.equals(OperandFormat.destSrc) || opForm.equals(OperandFormat.destSrcImm) ||
-						  opForm.equals(OperandFormat.destSrcSrc) || opForm.equals(OperandFormat.cmpCmpLabel);
-		
-		boolean readTwo = opForm.equals(OperandFormat.destSrcSrc);
-		
-		boolean readRegAddress = opForm.equals(OperandFormat.destAddr) || opForm.equals(OperandFormat.srcAddr);
-		
-		
-		if(readZero) {//formats with a read in first operand
-			registers.add(statement.getOperandList().get(0).asRegisterOp().value);
-		}
-		if(readOne) {//formats with a read in second operand
-			registers.add(statement.getOperandList().get(1).asRegisterOp().value);
-		}
-		if(readTwo) {//formats with a read in third operand
-			registers.add(statement.getOperandList().get(2).asRegisterOp().value);
-		}
-		
-		if(readRegAddress) {//formats with an address represented as a base and offset
-			if(!statement.getOperandList().get(1).asAddressOp().labelOnly()) {//if base and offset 
-				registers.add(statement.getOperandList().get(1).asAddressOp().register.get());
-			}
-		}
-		return registers;
+		return RegisterUsage.operandReads(statement);
 	}
 	
 	
@@ -123,7 +186,7 @@ public class CPUPipeline extends CPU {
 	 * @param instruction the instruction being checked
 	 * @return the registers being written to due to this instruction
 	 */
-	private List<Register> registersBeingWritten(InstructionFormat instruction) {
+	List<Register> registersBeingWritten(InstructionFormat instruction) {
 		ArrayList<Register> registers = new ArrayList<>();
 		switch(instruction.mode) {
 			case RTYPE://all rtype instructions have a destination register
@@ -147,10 +210,8 @@ public class CPUPipeline extends CPU {
 				break;
 			case SPECIAL:
 				if(instruction.getInstruction().equals(Instruction.syscall)) {
-					long syscallCode = DataConverter.decodeAsSigned(getRegister(Register.v0).getBytes());
-					if(syscallCode == 5||syscallCode==8||syscallCode==9||syscallCode==12) {//these syscall codes write to v0
-						registers.add(Register.v0);
-					}
+					int syscallCode = (int) DataConverter.decodeAsSigned(getRegister(Register.v0).getBytes());
+					registers.addAll(RegisterUsage.syscallWrites(syscallCode));
 				}
 				break;
 			default:
@@ -163,20 +224,36 @@ public class CPUPipeline extends CPU {
 	
 	/**method will take the registers being read and the registers being written
 	 * and determine whether or not any stalling needs to be done in the pipeline
-	 * @param <A> the type of list being read, need multiple times so generics is appropriate
 	 * @param reads the registers being read
 	 * @param writes the registers being written
-	 * @return whether or not there is a crossover between the two lists
+	 * @return a register in both lists, or null if there is no crossover between the two lists
 	 */
-	private <A> boolean needToBubble(List<A> reads, List<A> writes) {
-		for (A write : writes) {
-			for (A read : reads) {
+	Register findRAWDependency(List<Register> reads, List<Register> writes) {
+		for (Register write : writes) {
+			for (Register read : reads) {
 				if (write != null && write.equals(read)) {
-					return true;
+					return write;
 				}
 			}
 		}
-		return false;
+		return null;
+	}
+
+	/**whether the result of an instruction is ready in time to be forwarded to the instruction
+	 * being decoded alongside it. Loads only read memory at the end of the execute stage
+	 * and syscalls get their results from outside the CPU, so the pipeline still stalls for them
+	 * @param instruction the instruction being executed
+	 * @return whether its result can be forwarded
+	 */
+	private boolean canForward(InstructionFormat instruction) {
+		if(instruction.mode.equals(AddressMode.SPECIAL)) {
+			return false;
+		}
+		//li, lui, la, mflo and mfhi are also LSTYPE but don't read memory
+		boolean readsMemory = instruction.mode.equals(AddressMode.LSTYPE)
+				&& instruction.getInstruction().getOperandFormat().equals(OperandFormat.destAddr)
+				&& !instruction.getInstruction().equals(Instruction.la);
+		return !readsMemory;
 	}
 	
 	/**creates a dummy nop statement for the pipeline bubbling
@@ -202,17 +279,26 @@ public class CPUPipeline extends CPU {
 	protected void runSingleCycle() throws MemoryException, DecodeException, InstructionException,
 			ExecuteException, HeapException, StackException, EndedException {
 
-		Address fetchAddress   = programCounter;
-		Address decodeAddress  = new Address(programCounter.getValue()-4);
-		Address executeAddress = new Address(programCounter.getValue()-8);
+		Address fetchAddress = programCounter;
 
 		// only hit the breakpoint once, then allow progress to continue
 		if(Breakpoints.isBreakpoint(fetchAddress)) {
 			pause();
 		}
 
+		boolean fetched = false;
+		boolean fetchPredicted = false;
 		if(canFetch && isFinished==0) {
 			fetch();
+			fetched = true;
+			fetchedAddress = fetchAddress;
+			fetchedPrediction = null;
+			Address target = predictor.predictTarget(fetchAddress);
+			if(target != null) {//predicted to be a taken branch: carry on fetching from the target
+				programCounter = target;
+				fetchedPrediction = new Prediction(target, 0);
+				fetchPredicted = true;
+			}
 		} else if (!canFetch) {
 			canFetch = true;
 		} else if(isFinished == 1 || isFinished == 2) {//getting closer to termination
@@ -228,69 +314,89 @@ public class CPUPipeline extends CPU {
 			return;
 		}
 		
-		if(fetchAddress.getValue() == lastAddress.getValue() && isFinished == 0) {//if end of program reached
+		if(fetched && fetchAddress.getValue() == lastAddress.getValue() && !fetchPredicted) {//if end of program reached
 			isFinished = 1;//stop fetching essentially and begin to terminate program
         }
 		
-		boolean needToBubbleRAWReg = needToBubble(registersRead(IF), registersBeingWritten(ID));//detecting pipeline hazards
-		
+		Address producerAddress = idAddress;
+		Address consumerAddress = ifAddress;
+		Register dependency = findRAWDependency(registersRead(IF), registersBeingWritten(ID));//detecting pipeline hazards
+		boolean forward = dependency != null && forwarding && canForward(ID);
+		boolean needToBubbleRAWReg = dependency != null && !forward;
+
+		// the stages as they were during this cycle (before any instructions are thrown away)
+		Address shownFetch = needToBubbleRAWReg ? ifAddress : fetchedAddress;
+		Address decodeAddress = needToBubbleRAWReg ? null : ifAddress;
+
 		InstructionFormat oldIDToExecute = ID;//storing old value of ID before overwritten, this is what I should be executing
+		Address executeAddress = idAddress;
+		Prediction executePrediction = idPrediction;
+		Address decodePredicted = null;//the branch predicted to be taken as it was decoded
 		if (needToBubbleRAWReg) { //if we need to stall to prevent incorrect reads
 			sendMessage(new PipelineHazardMessage(Hazard.RAW));
 			Statement nopBubble = createNopStatement();
 			ID = decode(nopBubble.getInstruction(),nopBubble.getOperandList());
+			idAddress = null;
+			idPrediction = null;
 			this.canFetch = false;
-		} else {
-			ID = decode(IF.getInstruction(), IF.getOperandList());
-			IF = instructionRegister;//updating IF
+		} else if (!forward && advanceDecode()) {
+			decodePredicted = idAddress;
 		}
-		
-		execute(oldIDToExecute);
-	    
-		//jumped checks if either an unconditional jump is made or, a branch returning true
-		boolean jumped = oldIDToExecute.mode.equals(AddressMode.JTYPE) ||
-				(oldIDToExecute.mode.equals(AddressMode.ITYPE) && ALU.branchFlag);
-		
-		if(jumped) {//flush pipeline and allow continuation of running
-			sendMessage(new PipelineHazardMessage(Hazard.CONTROL));
-			this.isFinished = 0;//considering edge case where jump on last instruction
-			this.isRunning = true;//keep the program running
-			IF = createNopStatement();
-			ID = createNopInstruction();
+
+		oldIDToExecute = withReturnAddress(oldIDToExecute, executeAddress);
+
+		Address nextFetch = programCounter;
+		execute(oldIDToExecute, executeAddress);
+		if(executeAddress != null) {//not a bubble
+			instructionsRetired++;
 		}
+		programCounter = nextFetch;//taken branches are followed below, only if they were mispredicted
+	    
+		BranchOutcome outcome = BranchOutcome.NONE;
+		boolean flushed = false;
+		boolean isBranch = oldIDToExecute.mode.equals(AddressMode.JTYPE) || oldIDToExecute.mode.equals(AddressMode.ITYPE);
+		if(isBranch && executeAddress != null && this.isRunning) {
+			Address redirect = resolveBranch(oldIDToExecute, executeAddress, executePrediction, 2);
+			outcome = redirect == null ? BranchOutcome.CORRECTLY_PREDICTED : BranchOutcome.MISPREDICTED;
 
-		if(annotations.containsKey(executeAddress) && nopCount==0 && this.isRunning) {//checking for annotations (not when a fake nop is executed)
-			sendMessage(new AnnotationMessage(annotations.get(executeAddress), executeAddress));
+			if(redirect != null) {//flush pipeline and carry on from the right place
+				sendMessage(new PipelineHazardMessage(Hazard.CONTROL));
+				programCounter = redirect;
+				if(redirect.getValue() == lastAddress.getValue() + 4) {
+					this.isFinished = 3;//nothing left to run
+				} else {
+					this.isFinished = 0;//considering edge case where jump on last instruction
+				}
+				IF = createNopStatement();
+				ID = createNopInstruction();
+				ifAddress = null;
+				idAddress = null;
+				ifPrediction = null;
+				idPrediction = null;
+				fetchedAddress = null;
+				fetchedPrediction = null;
+				canFetch = true;
+				flushed = true;
+			}
 		}
-		
-		//Dealing with pipeline state messages
-		if(needToBubbleRAWReg) {//got bubbling slightly wrong with RAW, need to add this to fix
-			decodeAddress = null;
-			this.rawOccured = true;//need to treat raws differently to jump flushes
-			fetchAddress = new Address(fetchAddress.getValue()-4);
+
+		// the value being written has just been calculated, so decode the instruction which reads it now
+		if(forward && !flushed && advanceDecode()) {
+			decodePredicted = idAddress;
 		}
-		
-		if(nopCount == 2) {
-			decodeAddress = null;
-		} 
-		if(nopCount >= 1) {
-			executeAddress = null;
-			if(rawOccured) {//need to do some additional stuff if a raw has previously occurred
-				fetchAddress = new Address(fetchAddress.getValue()-4);
-				decodeAddress = new Address(fetchAddress.getValue()-4);
-				rawOccured = false;
-			}
+
+		// the instruction reading the register is thrown away by a flush, so it didn't cost anything
+		if(dependency != null && !flushed) {
+			stallStatistics.record(producerAddress, consumerAddress, dependency, forward);
 		}
-		sendMessage(new PipelineStateMessage(fetchAddress, decodeAddress, executeAddress));
 
-		// decrement until 0 but no further
-		nopCount = (nopCount <= 0) ? 0 : nopCount-1;
-		
-		if(needToBubbleRAWReg) {//if raw hazard has happened in this cycle
-			nopCount = 1;
-		} else if(jumped) {//if jump occurred in this cycle
-			nopCount = 2;
+		if(executeAddress != null && annotations.containsKey(executeAddress) && this.isRunning) {//checking for annotations (not when a fake nop is executed)
+			sendMessage(new AnnotationMessage(annotations.get(executeAddress), executeAddress));
 		}
+		
+		// a branch followed as it was decoded throws away the instruction fetched after it (even if predicted)
+		Address predictedTaken = decodePredicted != null ? decodePredicted : (fetchPredicted ? fetchAddress : null);
+		sendMessage(new PipelineStateMessage(shownFetch, decodeAddress, executeAddress, predictedTaken, outcome));
 
 		waitForNextTick();
 
@@ -299,7 +405,98 @@ public class CPUPipeline extends CPU {
 			pause();
 		}
 	}
-	
+
+	/**move the fetched instruction into the IF register and decode the instruction which was there into the ID register
+	 * @return whether a branch or jump was decoded and predicted to be taken (and so followed)
+	 * @throws DecodeException if the instruction could not be decoded
+	 */
+	private boolean advanceDecode() throws DecodeException {
+		ID = decode(IF.getInstruction(), IF.getOperandList());
+		idAddress = ifAddress;
+		idPrediction = ifPrediction;
+		IF = fetchedAddress == null ? createNopStatement() : instructionRegister;//updating IF
+		ifAddress = fetchedAddress;
+		ifPrediction = fetchedPrediction;
+		fetchedAddress = null;
+		fetchedPrediction = null;
+
+		if(idAddress != null && idPrediction == null) {
+			idPrediction = predictAtDecode(ID, idAddress);
+			if(idPrediction != null) {
+				// followed as the branch was decoded: the instruction fetched after it is thrown away
+				IF = createNopStatement();
+				ifAddress = null;
+				ifPrediction = null;
+				isFinished = 0;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**ask the branch predictor about a branch or jump which has just been decoded,
+	 * and follow it if it is predicted to be taken
+	 * @param instruction the decoded instruction
+	 * @param address the address of the instruction
+	 * @return the prediction if the fetch was redirected, otherwise null
+	 */
+	Prediction predictAtDecode(InstructionFormat instruction, Address address) {
+		Address target;
+		boolean taken;
+		if(instruction.mode.equals(AddressMode.ITYPE)) {
+			target = instruction.asIType().getBranchAddress().get();
+			taken = predictor.predictTaken(address, target);
+		} else if(instruction.mode.equals(AddressMode.JTYPE)) {
+			target = instruction.asJType().getJumpAddress().get();
+			taken = predictor.followsJumps();
+		} else {
+			return null;
+		}
+		if(taken) {
+			programCounter = target;
+			return new Prediction(target, 1);
+		}
+		return null;
+	}
+
+	/**record the outcome of a branch or jump which has just been executed and tell the branch predictor about it
+	 * @param executed the instruction which was executed
+	 * @param address the address of the instruction
+	 * @param prediction the prediction made for it, null if it was predicted not taken
+	 * @param flushPenalty the number of cycles lost if it was mispredicted
+	 * @return the address to carry on fetching from if it was mispredicted, otherwise null
+	 */
+	Address resolveBranch(InstructionFormat executed, Address address, Prediction prediction, int flushPenalty) {
+		//taken if either an unconditional jump is made or, a branch returning true
+		boolean taken = executed.mode.equals(AddressMode.JTYPE) || ALU.branchFlag;
+		Address target = executed.mode.equals(AddressMode.JTYPE) ?
+				executed.asJType().getJumpAddress().get() : executed.asIType().getBranchAddress().get();
+		boolean correct = prediction == null ? !taken :
+				taken && prediction.target.getValue() == target.getValue();
+		int penalty = correct ? (prediction == null ? 0 : prediction.penalty) : flushPenalty;
+		branchStatistics.record(address, taken, correct, penalty);
+		predictor.update(address, taken, target);
+		if(correct) {
+			return null;
+		}
+		return taken ? target : new Address(address.getValue() + 4);
+	}
+
+	/**jal and jalr are decoded with the program counter at the time as the return address,
+	 * which has moved on by the time they are executed
+	 * @param instruction the instruction about to be executed
+	 * @param address the address of the instruction
+	 * @return the instruction with the return address set to the instruction after it
+	 */
+	InstructionFormat withReturnAddress(InstructionFormat instruction, Address address) {
+		if(instruction.getInstruction().equals(Instruction.jal)
+				|| instruction.getInstruction().equals(Instruction.jalr)) {
+			Word returnAddress = new Word(DataConverter.encodeAsUnsigned(address.getValue() + 4));
+			return new JTypeInstruction(instruction.getInstruction(), instruction.asJType().getJumpAddress(), Optional.of(returnAddress));
+		}
+		return instruction;
+	}
+
 	/**overwriting the run program method of CPU but adding some field changes before execution
 	 * 
 	 */
@@ -308,30 +505,20 @@ public class CPUPipeline extends CPU {
 	{
 		this.canFetch = true;//resetting fields for new program
 		this.isFinished = 0;
-		this.nopCount = 2;//decode and execute bubbled initially
-		this.rawOccured = false;
-		this.IF = createNopStatement();
+		this.IF = createNopStatement();//decode and execute bubbled initially
 		this.ID = createNopInstruction();
+		this.fetchedAddress = null;
+		this.ifAddress = null;
+		this.idAddress = null;
+		this.fetchedPrediction = null;
+		this.ifPrediction = null;
+		this.idPrediction = null;
+		this.predictor.reset();
+		this.branchStatistics.clear();
+		this.stallStatistics.clear();
 		super.runProgram();//calling original run program
 	}
 
-	/**overwriting instruction for pipeline due to problem with jal instruction getting incorrect program counter value
-	 *
-	 */
-	@Override
-	protected void execute(InstructionFormat instruction) throws InstructionException, ExecuteException, MemoryException, HeapException, StackException {
-		if(instruction.getInstruction().equals(Instruction.jal)
-				|| instruction.getInstruction().equals(Instruction.jalr)) {//jal by default will take incorrect PC value, this needs to be dealt with
-			// regardless of whether a register or address is passed: will decode into a JType instruction
-            long newCurrentAddress = DataConverter.decodeAsUnsigned(instruction.asJType().getCurrentAddress().get().getBytes()) - 4;
-            Optional<Word> trueCurrent = Optional.of(new Word(DataConverter.encodeAsUnsigned(newCurrentAddress)));
-            instruction = new JTypeInstruction(instruction.getInstruction(),instruction.asJType().getJumpAddress(),trueCurrent);
-		}
-		
-		super.execute(instruction);
-	}
-
-	
 	/**override isPipelined in CPU
 	 * 
 	 */
@@ -11,6 +11,7 @@ public class Clock {
     }
     private long tickPeriod; // in ns (10^-9 seconds)
     private volatile Status status;
+    private volatile boolean unthrottled; // tick as fast as possible without changing the reported frequency
 
     private long lastTickns;
     private long ticks;
@@ -31,6 +32,14 @@ public class Clock {
         }
     }
 
+    void setUnthrottled(boolean unthrottled) {
+        this.unthrottled = unthrottled;
+    }
+
+    boolean isUnthrottled() {
+        return unthrottled;
+    }
+
     double getTickFrequency() {
         return 1e9 / tickPeriod;
     }
@@ -49,7 +58,7 @@ public class Clock {
             }
         }
 
-        if (tickPeriod == 0) {
+        if (tickPeriod == 0 || unthrottled) {
             ++ticks;
             return;
         }
@@ -0,0 +1,145 @@
+package simulizer.simulation.cpu.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records which bytes of memory have been written to since the last time the changes were collected, so that a view
+ * of memory only has to re-read and re-draw the parts which have changed.
+ *
+ * The address space is split into pages which are only allocated once a byte in them has been written to, with a bit
+ * for every byte in the page. Pages are reused after being drained so that tracking does not allocate once the
+ * working set of the program has been touched.
+ *
+ * Tracking is disabled until something is watching, so writes cost a single volatile read otherwise.
+ */
+public class DirtyRegionTracker {
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS; // bytes
+	/**
+	 * the number of bytes covered by each element of a page (and each call to a Consumer)
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * receives the regions of memory which have been written to
+	 */
+	public interface Consumer {
+		/**
+		 * @param address
+		 *            the address of the first byte of the chunk (a multiple of CHUNK_SIZE)
+		 * @param mask
+		 *            a bit for each byte in the chunk which has been written to. Bit i corresponds to address+i
+		 */
+		void written(int address, long mask);
+	}
+
+	private static class Page {
+		final int base;
+		final long[] bits = new long[PAGE_SIZE / CHUNK_SIZE];
+		boolean dirty = false;
+
+		Page(int base) {
+			this.base = base;
+		}
+	}
+
+	private volatile boolean enabled = false;
+	private final Map<Integer, Page> pages = new HashMap<>();
+	private final List<Page> dirtyPages = new ArrayList<>();
+	private Page lastPage = null; // avoids the map lookup for consecutive writes to the same page
+
+	/**
+	 * start or stop recording writes. Disabling tracking discards any changes which have not been collected
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			for (Page p : dirtyPages) {
+				Arrays.fill(p.bits, 0);
+				p.dirty = false;
+			}
+			dirtyPages.clear();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * record that a region of memory has been written to
+	 *
+	 * @param address
+	 *            the address of the first byte written
+	 * @param length
+	 *            the number of bytes written
+	 */
+	public void markDirty(int address, int length) {
+		if (!enabled || length <= 0)
+			return;
+
+		synchronized (this) {
+			// long so that the end of the top page (and of a write reaching it) doesn't overflow
+			long end = (long) address + length; // exclusive
+			long a = address;
+			while (a < end) {
+				Page p = getPage((int) a >>> PAGE_BITS << PAGE_BITS);
+				long pageEnd = Math.min(end, (long) p.base + PAGE_SIZE);
+				while (a < pageEnd) {
+					int offset = (int) (a - p.base);
+					int bit = offset % CHUNK_SIZE;
+					int n = (int) Math.min(CHUNK_SIZE - bit, pageEnd - a);
+					long mask = n == CHUNK_SIZE ? -1L : ((1L << n) - 1) << bit;
+					p.bits[offset / CHUNK_SIZE] |= mask;
+					a += n;
+				}
+				if (!p.dirty) {
+					p.dirty = true;
+					dirtyPages.add(p);
+				}
+			}
+		}
+	}
+
+	private Page getPage(int base) {
+		if (lastPage != null && lastPage.base == base)
+			return lastPage;
+		Page p = pages.get(base);
+		if (p == null) {
+			p = new Page(base);
+			pages.put(base, p);
+		}
+		lastPage = p;
+		return p;
+	}
+
+	/**
+	 * @return whether anything has been written to since the changes were last collected
+	 */
+	public synchronized boolean hasChanges() {
+		return !dirtyPages.isEmpty();
+	}
+
+	/**
+	 * pass every region which has been written to since the last call to the consumer, then forget them
+	 *
+	 * @param c
+	 *            the consumer to pass the changes to (called while holding the lock, so keep it short)
+	 */
+	public synchronized void drain(Consumer c) {
+		for (Page p : dirtyPages) {
+			for (int i = 0; i < p.bits.length; i++) {
+				if (p.bits[i] != 0) {
+					c.written(p.base + i * CHUNK_SIZE, p.bits[i]);
+					p.bits[i] = 0;
+				}
+			}
+			p.dirty = false;
+		}
+		dirtyPages.clear();
+	}
+}
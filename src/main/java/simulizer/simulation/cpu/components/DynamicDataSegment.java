@@ -7,6 +7,8 @@ import java.util.Arrays;
 
 /**this class represents the dynamic heap section of the memory 
  * for our simulated Mips processor
+ * the array is replaced when the heap grows, and views of memory read it from other threads,
+ * so every access to the array (and the break) is synchronized on the segment
  * @author Charlie Street
  * @author mbway
  *
@@ -27,18 +29,25 @@ public class DynamicDataSegment
         heap = new byte[]{};
 	}
 	
+	/**
+	 * @return the index of one-past the highest element of the heap, relative to the base of the heap
+	 */
+	synchronized int getBreakOffset() {
+		return heapBreak;
+	}
+
 	/**this method will add bytes new bytes onto the heap
 	 * and return the pointer to the start of that block
 	 * in the negative argument case, it will return the break
 	 * @param additionalBytes the number of bytes (positive or negative) to add to the heap
 	 * @return the pointer to the start (lowest address) of the newly allocated block (or the new break when shrinking)
 	 */
-	public Address sbrk(int additionalBytes) throws HeapException
+	public synchronized Address sbrk(int additionalBytes) throws HeapException
 	{
 		if(additionalBytes % 4 != 0) {//spim only allows sbrk to be called with multiples of 4
 			throw new HeapException("Sbrk needs to be called with multiples of 4 bytes.", heapBreak, heap.length);
 
-		}else if(additionalBytes < -heap.length) { // shrink below 0 length
+		}else if(heapBreak + additionalBytes < 0) { // shrink below 0 length
 			throw new HeapException("sbrk requested shrink below the start of the heap.",heapBreak,heap.length);
 
 		} if(additionalBytes < 0) {// shrink the heap
@@ -50,17 +59,18 @@ public class DynamicDataSegment
 
 		} else { // grow the heap
 
-            if(heap.length + additionalBytes > maxLength) {
+            // the limit applies to the break, the array may already be larger than the break
+            if(heapBreak + additionalBytes > maxLength) {
                 throw new HeapException("sbrk requested extends past maximum heap length.",heapBreak,heap.length);
             }
 
-            // at least a growth factor of 1.5. definitely enough to accommodate the additional requested bytes
-            // but no longer than the maximum length (if the growth factor extends past it)
-            int newLength = Math.min(Math.max((int) (heap.length * 1.5), heap.length+additionalBytes), maxLength);
-            byte[] newHeap = new byte[newLength];
-            // the old heap is placed at the start of the new heap
-            System.arraycopy(heap, 0, newHeap, 0, heap.length);
-            heap = newHeap;
+            if(heapBreak + additionalBytes > heap.length) {
+                // at least a growth factor of 1.5. definitely enough to accommodate the additional requested bytes
+                // but no longer than the maximum length (if the growth factor extends past it)
+                int newLength = Math.min(Math.max((int) (heap.length * 1.5), heapBreak + additionalBytes), maxLength);
+                // the old heap is placed at the start of the new heap
+                heap = Arrays.copyOf(heap, newLength);
+            }
 
 			Address oldBreak = new Address(heapBaseAddress.getValue() + heapBreak);
 			heapBreak += additionalBytes;
@@ -75,6 +85,20 @@ public class DynamicDataSegment
 	 * @return the bytes in an array
 	 */
 	public byte[] getBytes(int relativeAddress, int length) throws HeapException
+	{
+		byte[] result = new byte[Math.max(length, 0)];
+		getBytes(relativeAddress, result, 0, length);
+		return result;
+	}
+
+	/**method will copy n bytes from the heap into an existing buffer
+	 *
+	 * @param relativeAddress address relative to the base of the heap of the MSB of the data
+	 * @param dest the buffer to copy the bytes into
+	 * @param destPos the index in dest to place the first byte
+	 * @param length the number of bytes to retrieve, starting at the given address
+	 */
+	public synchronized void getBytes(int relativeAddress, byte[] dest, int destPos, int length) throws HeapException
 	{
 		if(length <= 0) {
 			throw new HeapException("Invalid read on heap. (non-positive length)", heapBreak, heap.length);
@@ -87,7 +111,8 @@ public class DynamicDataSegment
 					relativeAddress + " up to " + (relativeAddress+length-1) + ")", heapBreak, heap.length);
 		}
 
-		return Arrays.copyOfRange(heap, relativeAddress, relativeAddress+length);
+		// src, srcPos, dest, destPos, length
+		System.arraycopy(heap, relativeAddress, dest, destPos, length);
 	}
 
 
@@ -99,7 +124,7 @@ public class DynamicDataSegment
 	 * @return the bytes up to but _not_ including the null character
 	 * @throws HeapException
 	 */
-	public byte[] readUntilNull(int relativeAddress) throws HeapException {
+	public synchronized byte[] readUntilNull(int relativeAddress) throws HeapException {
 		int i = relativeAddress;
 		if(0 <= i && i < heap.length) {
 			for(; i < heap.length; ++i) {
@@ -118,16 +143,28 @@ public class DynamicDataSegment
 	 */
 	public void setBytes(int relativeAddress, byte[] toWrite) throws HeapException
 	{
-        if(toWrite.length <= 0) {
+		setBytes(relativeAddress, toWrite, 0, toWrite.length);
+	}
+
+	/**allows to set a range of bytes from a buffer in one go on the heap
+	 *
+	 * @param relativeAddress address relative to the base of the heap to place the MSB of the data
+	 * @param src the buffer containing the data to write into the heap
+	 * @param srcPos the index in src of the first byte to write
+	 * @param length the number of bytes to write
+	 */
+	public synchronized void setBytes(int relativeAddress, byte[] src, int srcPos, int length) throws HeapException
+	{
+        if(length <= 0) {
             throw new HeapException("Invalid write on heap. (non-positive length)", heapBreak, heap.length);
-        } else if(relativeAddress + toWrite.length > heapBreak) {
+        } else if(relativeAddress + length > heapBreak) {
 			throw new HeapException("Invalid write on heap. (attempt to write above the break)", heapBreak, heap.length);
 		} else if(relativeAddress < 0) {
 			throw new HeapException("Invalid write on heap. (attempt to write below the heap)", heapBreak, heap.length);
 		}
 
 		// src, srcPos, dest, destPos, length
-		System.arraycopy(toWrite, 0, heap, relativeAddress, toWrite.length);
+		System.arraycopy(src, srcPos, heap, relativeAddress, length);
 	}
 	
 }
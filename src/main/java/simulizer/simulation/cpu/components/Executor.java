@@ -47,13 +47,14 @@ class Executor {
      * wrapper for method in Executor, gives nice inheritance layout
      * @param instruction instruction set up with all necessary data
      * @param programCounter the current program counter value
+     * @param instructionAddress the address of the instruction (its memory accesses are recorded against it), may be null
      * @throws InstructionException if problem during execution
      * @throws ExecuteException if problem during execution
      * @throws HeapException if problem accessing heap
      * @throws MemoryException if problem accessing memory
      * @throws StackException if problem accessing the stack
      */
-    public Address execute(InstructionFormat instruction, Address programCounter) throws InstructionException, ExecuteException, MemoryException, HeapException, StackException {
+    public Address execute(InstructionFormat instruction, Address programCounter, Address instructionAddress) throws InstructionException, ExecuteException, MemoryException, HeapException, StackException {
         Address toReturn = programCounter;
     	cpu.sendMessage(new StageEnterMessage(Stage.Execute));//signal start of execution
     	switch(instruction.mode) {//switch based on instruction format
@@ -94,7 +95,7 @@ class Executor {
             	cpu.sendMessage(new InstructionTypeMessage(AddressMode.SPECIAL));
                 if(instruction.getInstruction().equals(Instruction.syscall)) {//syscall
                     int v0 = (int)DataConverter.decodeAsSigned(cpu.getRegister(Register.v0).getBytes());//getting code for syscall
-                    syscall(v0);//carry out specified syscall op
+                    syscall(v0, instructionAddress);//carry out specified syscall op
                 }
                 else if(instruction.getInstruction().equals(Instruction.BREAK)) {
 					cpu.pause();
@@ -168,6 +169,7 @@ class Executor {
 	                    	length = 2;
 	                    }
 	                    read = cpu.getMainMemory().readFromMem(retrieveAddress, length);//read bytes from memory
+	                    cpu.getMainMemory().getCaches().read(instructionAddress, retrieveAddress, length);
 	                    cpu.sendMessage(new DataMovementMessage(Optional.of(new Word(read)),Optional.empty()));
 	                    
 	                    if(instruction.getInstruction().equals(Instruction.lb)||instruction.getInstruction().equals(Instruction.lh)) {//unsigned vs signed
@@ -197,6 +199,7 @@ class Executor {
                 	
                 	int storeAddress = instruction.asLSType().getMemAddress().get().getValue();
 	                cpu.getMainMemory().writeToMem(storeAddress, toStore);
+	                cpu.getMainMemory().getCaches().write(instructionAddress, storeAddress, toStore.length);
 	                cpu.sendMessage(new DataMovementMessage(Optional.of(new Word(toStore)),Optional.empty()));
                 }
                 else {
@@ -212,12 +215,13 @@ class Executor {
     /**will use IO to enable the use of system calls with the user
      * 
      * @param v0 the syscall code retrieved from the v0 register
+     * @param instructionAddress the address of the syscall instruction, may be null
      * @throws InstructionException if invalid syscall code
      * @throws HeapException if problem using sbrk like a0 not multiple of 4
      * @throws MemoryException if problem reading from memory for read string
      * @throws StackException if problem accessing the stack
      */
-    private void syscall(int v0) throws InstructionException, HeapException, MemoryException, StackException {
+    private void syscall(int v0, Address instructionAddress) throws InstructionException, HeapException, MemoryException, StackException {
     	int a0 = (int)DataConverter.decodeAsSigned(cpu.getRegister(Register.a0).getBytes());//getting main argument register
     	switch(v0) {
     		case 1://print int
@@ -225,6 +229,7 @@ class Executor {
     			break;
     		case 4: {//print string
 				byte[] stringData = cpu.getMainMemory().readUntilNull(a0);
+				cpu.getMainMemory().getCaches().read(instructionAddress, a0, stringData.length + 1); // including the null
 				String str = new String(stringData, StandardCharsets.UTF_8);
 
 				cpu.sendMessage(new DataMovementMessage(Optional.of(new Word(new byte[4])), Optional.empty()));
@@ -247,6 +252,7 @@ class Executor {
 				readInString += '\0';
 				byte[] stringData = readInString.getBytes(StandardCharsets.UTF_8);
 				cpu.getMainMemory().writeToMem(a0, stringData);
+				cpu.getMainMemory().getCaches().write(instructionAddress, a0, stringData.length);
 				cpu.sendMessage(new DataMovementMessage(Optional.of(new Word(new byte[4])), Optional.empty())); // send a word of nulls
 			} break;
     		case 9: {//sbrk
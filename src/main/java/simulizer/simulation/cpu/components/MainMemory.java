@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.Map;
 import simulizer.assembler.representation.Address;
 import simulizer.assembler.representation.Statement;
+import simulizer.simulation.cpu.cache.CacheHierarchy;
 import simulizer.simulation.exceptions.HeapException;
 import simulizer.simulation.exceptions.MemoryException;
 import simulizer.simulation.exceptions.StackException;
@@ -25,6 +26,10 @@ public class MainMemory {
 	private Address topOfStack;
 	private final Address endOfMemory; //TODO: why is this not used?
 	private static final int mebibyte = 1024*1024;
+	/**
+	 * the size the heap can grow to (bytes), the stack starts above it
+	 */
+	public static final int MAX_HEAP_SIZE = mebibyte;
 
 
 	private Map<Address,Statement> textSegment;
@@ -32,13 +37,16 @@ public class MainMemory {
 	private DynamicDataSegment heap;
 	private StackSegment stack;
 
+	private final DirtyRegionTracker dirtyRegions = new DirtyRegionTracker();
+	private final CacheHierarchy caches;
+
 
 	/**
 	 * this constructor just initialises the memory and then initialises all
 	 * partitions in it
 	 *
 	 */
-	MainMemory(Map<Address,Statement> textSegment, byte[] staticDataSegment, Address startOfStaticData, Address bottomOfDynamicData, Address stackPointer) {
+	MainMemory(Map<Address,Statement> textSegment, byte[] staticDataSegment, Address startOfStaticData, Address bottomOfDynamicData, Address stackPointer, CacheHierarchy caches) {
 		this.startOfStaticData = startOfStaticData;
 		this.bottomOfDynamicData = bottomOfDynamicData;
 		this.topOfStack = stackPointer;
@@ -46,10 +54,11 @@ public class MainMemory {
 
 		this.textSegment = textSegment;
 		this.staticDataSegment = staticDataSegment;
-		this.heap = new DynamicDataSegment(bottomOfDynamicData, mebibyte);
-		int topOfHeap = bottomOfDynamicData.getValue() + mebibyte;
+		this.heap = new DynamicDataSegment(bottomOfDynamicData, MAX_HEAP_SIZE);
+		int topOfHeap = bottomOfDynamicData.getValue() + MAX_HEAP_SIZE;
 		int maxStackSize = topOfStack.getValue() - topOfHeap;
 		this.stack = new StackSegment(maxStackSize);
+		this.caches = caches;
 	}
 
 	// definition of being 'in' a segment: if you write 1 byte at that location, that byte would be inside the segment
@@ -57,7 +66,7 @@ public class MainMemory {
 
 	private boolean inDynamicSegment(int address) {
 		return address >= bottomOfDynamicData.getValue()
-				  && address < bottomOfDynamicData.getValue() + mebibyte;
+				  && address < bottomOfDynamicData.getValue() + MAX_HEAP_SIZE;
 	}
 	private boolean inDynamicSegment(int address, int length) {
 		return inDynamicSegment(address) && inDynamicSegment(address + length - 1);
@@ -73,12 +82,62 @@ public class MainMemory {
 
 	private boolean inStack(int address) {
 		return address < topOfStack.getValue() // top of stack is not inside the stack
-				&& address >= bottomOfDynamicData.getValue() + mebibyte;
+				&& address >= bottomOfDynamicData.getValue() + MAX_HEAP_SIZE;
 	}
 	private boolean inStack(int address, int length) {
 		return inStack(address) && inStack(address + length - 1);
 	}
 
+	/**
+	 * @return the tracker which records the regions of memory which are written to (disabled by default)
+	 */
+	public DirtyRegionTracker getDirtyRegions() {
+		return dirtyRegions;
+	}
+
+	/**
+	 * @return the caches which the program's accesses go through (disabled by default). Fetches are recorded by
+	 * readFromTextSegment, but loads and stores have to be recorded by the caller since views of memory read it too
+	 */
+	public CacheHierarchy getCaches() {
+		return caches;
+	}
+
+	public Address getStartOfStaticData() {
+		return startOfStaticData;
+	}
+
+	public int getStaticDataLength() {
+		return staticDataSegment.length;
+	}
+
+	public Address getBottomOfDynamicData() {
+		return bottomOfDynamicData;
+	}
+
+	public Address getTopOfStack() {
+		return topOfStack;
+	}
+
+	/**
+	 * check whether a region can be read without throwing an exception. Used by views of memory to avoid reading
+	 * unmapped regions
+	 *
+	 * @param address the start address of the region
+	 * @param length the number of bytes in the region
+	 * @return whether the whole region lies in readable memory
+	 */
+	public boolean isReadable(int address, int length) {
+		if(inStaticSegment(address, length) || inStack(address, length)) {
+			return true;
+		} else if(inDynamicSegment(address, length)) {
+			int relativeAddress = address - bottomOfDynamicData.getValue();
+			return relativeAddress + length <= heap.getBreakOffset();
+		} else {
+			return false;
+		}
+	}
+
 	/**allows the use of sbrk outside of this memory class
 	 * 
 	 * @return the heap/dynamic data segment
@@ -95,18 +154,34 @@ public class MainMemory {
 	 * @throws StackException if invalid use of stack
 	 */
 	public byte[] readFromMem(int address, int length) throws MemoryException, HeapException, StackException
+	{
+		byte[] result = new byte[Math.max(length, 0)];
+		readFromMem(address, result, 0, length);
+		return result;
+	}
+
+	/**this method will read a whole region of memory into an existing buffer with a single
+	 * segment lookup. Use this for bulk reads so that a new array is not allocated for every word
+	 *
+	 * @param address the start address to read from
+	 * @param dest the buffer to copy the bytes into
+	 * @param destPos the index in dest to place the byte at the start address
+	 * @param length the number of bytes to read
+	 * @throws StackException if invalid use of stack
+	 */
+	public void readFromMem(int address, byte[] dest, int destPos, int length) throws MemoryException, HeapException, StackException
 	{
         if(inStaticSegment(address, length)) {
             int relativeAddress = address - startOfStaticData.getValue();
-			return Arrays.copyOfRange(staticDataSegment, relativeAddress, relativeAddress+length);
+			System.arraycopy(staticDataSegment, relativeAddress, dest, destPos, length);
 
 		} else if(inDynamicSegment(address, length)) {
 			int relativeAddress = address - bottomOfDynamicData.getValue();
-			return heap.getBytes(relativeAddress, length);
+			heap.getBytes(relativeAddress, dest, destPos, length);
 
 		} else if(inStack(address, length)) {
 			int relativeAddress = address - topOfStack.getValue(); // will be negative
-			return stack.getBytes(relativeAddress, length);
+			stack.getBytes(relativeAddress, dest, destPos, length);
 
 		} else {
 			throw new MemoryException("Reading from invalid area of memory", new Address(address));
@@ -155,24 +230,40 @@ public class MainMemory {
 	 */
 	public void writeToMem(int address, byte[] toWrite) throws MemoryException, HeapException, StackException
 	{
-		if(inStaticSegment(address, toWrite.length)) {
+		writeToMem(address, toWrite, 0, toWrite.length);
+	}
+
+	/**this method will write a range of a buffer into memory with a single segment lookup
+	 * @param address the address to start writing to
+	 * @param src the buffer containing the bytes to write
+	 * @param srcPos the index in src of the first byte to write
+	 * @param length the number of bytes to write
+	 * @throws MemoryException
+	 * @throws HeapException
+	 * @throws StackException
+	 */
+	public void writeToMem(int address, byte[] src, int srcPos, int length) throws MemoryException, HeapException, StackException
+	{
+		if(inStaticSegment(address, length)) {
 		    int relativeAddress = address - startOfStaticData.getValue();
-			System.arraycopy(toWrite, 0, staticDataSegment, relativeAddress, toWrite.length);
+			System.arraycopy(src, srcPos, staticDataSegment, relativeAddress, length);
 
-		} else if(inDynamicSegment(address, toWrite.length)) {
+		} else if(inDynamicSegment(address, length)) {
 		    int relativeAddress = address - bottomOfDynamicData.getValue();
-            heap.setBytes(relativeAddress, toWrite);
+            heap.setBytes(relativeAddress, src, srcPos, length);
 
-		} else if(inStack(address, toWrite.length)) {
+		} else if(inStack(address, length)) {
 		    int relativeAddress = address - topOfStack.getValue(); // will be negative
-			stack.setBytes(relativeAddress, toWrite);
+			stack.setBytes(relativeAddress, src, srcPos, length);
 
 		} else {
 			throw new MemoryException("Writing to an invalid area of memory", new Address(address));
 		}
+		dirtyRegions.markDirty(address, length);
 	}
 	
 	/**separate method for reading from the text segment of the memory
+	 * (the fetch is recorded by the instruction cache)
 	 *
 	 * @param address the address to retrieve from
 	 * @return the statement object at that address
@@ -181,6 +272,7 @@ public class MainMemory {
 	{
 		Statement retrieved = textSegment.get(address);
 		if(retrieved != null) {
+			caches.fetch(address);
 			return retrieved;
 		} else {
 			throw new MemoryException("Reading from invalid area of memory",address);
@@ -6,8 +6,6 @@ import simulizer.simulation.exceptions.StackException;
 
 
 /** Stack memory segment for the CPU
- *
- * //TODO: potential optimisation: replace getBytes with getBytes(int address, byte[] array) so the buffer being written to can be re-used rather than reallocated each time bytes are read
  *
  * @author mbway
  *
@@ -31,6 +29,9 @@ import simulizer.simulation.exceptions.StackException;
  *              MSB         LSB
  *
  *   addresses are passed relative to topOfStack. ie highest element of the stack at relative address -1
+ *
+ * the array is replaced when the stack grows, and views of memory read it from other threads, so every access to the
+ * array is synchronized on the segment
  */
 public class StackSegment {
 
@@ -101,6 +102,24 @@ public class StackSegment {
 	 * @throws StackException if reading goes out of bounds
 	 */
 	public byte[] getBytes(int MSBAddress, int length) throws StackException
+	{
+		byte[] result = new byte[Math.max(length, 0)];
+		getBytes(MSBAddress, result, 0, length);
+		return result;
+	}
+
+	/** method reads a number of bytes from the stack into an existing buffer, so that the buffer
+	 * can be re-used rather than reallocated each time bytes are read.
+	 *
+	 * Reads from 'address' to 'address'+'length'-1 inclusive
+	 *
+	 * @param MSBAddress the address of the most significant byte relative to the top of the stack (should be negative)
+	 * @param dest the buffer to copy the bytes into
+	 * @param destPos the index in dest to place the most significant byte
+	 * @param length the number of bytes to read
+	 * @throws StackException if reading goes out of bounds
+	 */
+	public synchronized void getBytes(int MSBAddress, byte[] dest, int destPos, int length) throws StackException
 	{
 	    ArrayRange r = new ArrayRange(MSBAddress, length);
 
@@ -116,19 +135,17 @@ public class StackSegment {
             // range still within valid stack memory (because if MSB is and range doesn't span above the stack then LSB is too)
             if(insideStackSegment(MSBAddress)) {
                 // below the current stack pointer is only zeroes until written to
-                byte[] result = new byte[length];
                 for (int i = 0; i < length; ++i) {
                     int index = r.MSBIndex + i;
-                    result[i] = index < 0 ? 0 : stack[index];
+                    dest[destPos + i] = index < 0 ? 0 : stack[index];
                 }
-                return result;
             } else {
                 throw new StackException("Stack Overflow. (attempt to read from the stack beyond its maximum length)", r.MSBIndex, r.LSBIndex);
             }
 
 		} else {
-			// copyFrom, from (inclusive), to (exclusive)
-		    return Arrays.copyOfRange(stack, r.MSBIndex, r.LSBIndex+1); // +1 because exclusive
+			// src, srcPos, dest, destPos, length
+		    System.arraycopy(stack, r.MSBIndex, dest, destPos, length);
 		}
 	}
 
@@ -140,7 +157,7 @@ public class StackSegment {
 	 * @return the bytes up to but _not_ including the null character
 	 * @throws StackException
 	 */
-	public byte[] readUntilNull(int MSBAddress) throws StackException {
+	public synchronized byte[] readUntilNull(int MSBAddress) throws StackException {
 		ArrayRange r = new ArrayRange(MSBAddress, 1);
 		int i = r.MSBIndex;
 
@@ -162,9 +179,22 @@ public class StackSegment {
 	 */
 	public void setBytes(int MSBAddress, byte[] toWrite) throws StackException
 	{
-	    ArrayRange r = new ArrayRange(MSBAddress, toWrite.length);
+		setBytes(MSBAddress, toWrite, 0, toWrite.length);
+	}
+
+	/**goes about writing a range of a buffer onto the stack
+	 *
+	 * @param MSBAddress the address of the most significant byte relative to the top of the stack (should be negative)
+	 * @param src the buffer containing the bytes to write
+	 * @param srcPos the index in src of the most significant byte to write
+	 * @param length the number of bytes to write
+	 * @throws StackException if an invalid write is made
+	 */
+	public synchronized void setBytes(int MSBAddress, byte[] src, int srcPos, int length) throws StackException
+	{
+	    ArrayRange r = new ArrayRange(MSBAddress, length);
 
-        if(toWrite.length <= 0) {
+        if(length <= 0) {
             throw new StackException("Invalid write on stack. (non-positive length)", r.MSBIndex, r.LSBIndex);
 
         } else if(r.spansAboveStack()) {
@@ -186,13 +216,13 @@ public class StackSegment {
 			stack = newStack;
 
             // re-calculate indices
-            r = new ArrayRange(MSBAddress, toWrite.length);
+            r = new ArrayRange(MSBAddress, length);
 			if(r.spansBelowSp() || r.spansAboveStack()) {
 				throw new StackException("Invalid write (this shouldn't happen).", r.MSBIndex, r.LSBIndex);
             }
 		}
 
         // src, srcPos, dest, destPos, length
-        System.arraycopy(toWrite, 0, stack, r.MSBIndex, toWrite.length);
+        System.arraycopy(src, srcPos, stack, r.MSBIndex, length);
 	}
 }
@@ -0,0 +1,170 @@
+package simulizer.simulation.cpu.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import simulizer.assembler.representation.Instruction;
+import simulizer.assembler.representation.Register;
+import simulizer.assembler.representation.Statement;
+import simulizer.assembler.representation.operand.AddressOperand;
+import simulizer.assembler.representation.operand.Operand;
+import simulizer.assembler.representation.operand.OperandFormat;
+import simulizer.assembler.representation.operand.RegisterOperand;
+
+/**
+ * What an instruction reads and writes, worked out from its statement alone (without running it). Writes to $zero are
+ * ignored, as are reads of it since they can never depend on another instruction. Shared by the pipelines (to detect
+ * hazards) and the static analyses of a program.
+ *
+ * Which registers a syscall uses depends on the value of $v0 at the time. Where it is known (eg when the syscall is in
+ * the pipeline) syscallWrites gives the registers written for the code. Otherwise syscalls are assumed to read $v0,
+ * $a0 and $a1 and to write $v0.
+ */
+public class RegisterUsage {
+	/**
+	 * @return the registers read by the statement
+	 */
+	public static List<Register> reads(Statement s) {
+		if (s.getInstruction() == Instruction.syscall) {
+			List<Register> registers = new ArrayList<>(3);
+			registers.add(Register.v0);
+			registers.add(Register.a0);
+			registers.add(Register.a1);
+			return registers;
+		}
+		return operandReads(s);
+	}
+
+	/**
+	 * @return the registers named by the operands of the statement which it reads. These are read when the statement
+	 *         is decoded, unlike the arguments of a syscall which are read when it is executed
+	 */
+	public static List<Register> operandReads(Statement s) {
+		OperandFormat f = s.getInstruction().getOperandFormat();
+		List<Operand> ops = s.getOperandList();
+		List<Register> registers = new ArrayList<>(3);
+		if (f == OperandFormat.register || f == OperandFormat.labelOrReg || f == OperandFormat.cmpLabel
+				|| f == OperandFormat.srcSrc || f == OperandFormat.src || f == OperandFormat.srcImm
+				|| f == OperandFormat.srcAddr || f == OperandFormat.cmpCmpLabel) {
+			addRegister(registers, ops, 0);
+		}
+		if (f == OperandFormat.cmpCmpLabel || f == OperandFormat.srcSrc || f == OperandFormat.destSrc
+				|| f == OperandFormat.destSrcImm || f == OperandFormat.destSrcSrc) {
+			addRegister(registers, ops, 1);
+		}
+		if (f == OperandFormat.destSrcSrc) {
+			addRegister(registers, ops, 2);
+		}
+		if ((f == OperandFormat.srcAddr || f == OperandFormat.destAddr) && ops.size() > 1) {
+			AddressOperand address = ops.get(1).asAddressOp();
+			if (address != null && address.register.isPresent())
+				add(registers, address.register.get());
+		}
+		return registers;
+	}
+
+	/**
+	 * @return the registers written by the statement (not including hi and lo)
+	 */
+	public static List<Register> writes(Statement s) {
+		Instruction instruction = s.getInstruction();
+		if (instruction == Instruction.syscall)
+			return Collections.singletonList(Register.v0);
+		if (instruction == Instruction.jal || instruction == Instruction.jalr)
+			return Collections.singletonList(Register.ra);
+
+		OperandFormat f = instruction.getOperandFormat();
+		if (f == OperandFormat.dest || f == OperandFormat.destAddr || f == OperandFormat.destImm
+				|| f == OperandFormat.destSrc || f == OperandFormat.destSrcImm || f == OperandFormat.destSrcSrc) {
+			List<Register> registers = new ArrayList<>(1);
+			addRegister(registers, s.getOperandList(), 0);
+			return registers;
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @param code
+	 *            the value of $v0 when the syscall is executed
+	 * @return the registers written by a syscall with the given code
+	 */
+	public static List<Register> syscallWrites(int code) {
+		switch (code) {
+			case 5: // read int
+			case 9: // sbrk
+			case 12: // read char
+				return Collections.singletonList(Register.v0);
+			default:
+				return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * @return whether the statement writes the hi and lo registers
+	 */
+	public static boolean writesHiLo(Statement s) {
+		switch (s.getInstruction()) {
+			case mul:
+			case mult:
+			case multi:
+			case div:
+			case divu:
+			case mtlo:
+			case mthi:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * @return whether the statement reads the hi or lo register
+	 */
+	public static boolean readsHiLo(Statement s) {
+		return s.getInstruction() == Instruction.mflo || s.getInstruction() == Instruction.mfhi;
+	}
+
+	/**
+	 * @return whether the statement loads a value from memory (la only calculates an address)
+	 */
+	public static boolean readsMemory(Statement s) {
+		return s.getInstruction().getOperandFormat() == OperandFormat.destAddr && s.getInstruction() != Instruction.la;
+	}
+
+	/**
+	 * @return whether the statement stores a value to memory
+	 */
+	public static boolean writesMemory(Statement s) {
+		return s.getInstruction().getOperandFormat() == OperandFormat.srcAddr;
+	}
+
+	/**
+	 * @return whether the statement is a branch or jump
+	 */
+	public static boolean isControl(Statement s) {
+		OperandFormat f = s.getInstruction().getOperandFormat();
+		return f == OperandFormat.label || f == OperandFormat.labelOrReg || f == OperandFormat.register
+				|| f == OperandFormat.cmpLabel || f == OperandFormat.cmpCmpLabel;
+	}
+
+	/**
+	 * @return whether instructions can never be moved past the statement: branches, jumps, syscalls and breakpoints
+	 */
+	public static boolean isBarrier(Statement s) {
+		return isControl(s) || s.getInstruction() == Instruction.syscall || s.getInstruction() == Instruction.BREAK;
+	}
+
+	private static void addRegister(List<Register> registers, List<Operand> ops, int i) {
+		if (i < ops.size()) {
+			RegisterOperand r = ops.get(i).asRegisterOp();
+			if (r != null)
+				add(registers, r.value);
+		}
+	}
+
+	private static void add(List<Register> registers, Register r) {
+		if (r != Register.zero && !registers.contains(r))
+			registers.add(r);
+	}
+}
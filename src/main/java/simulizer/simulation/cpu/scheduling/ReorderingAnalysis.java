@@ -0,0 +1,262 @@
+package simulizer.simulation.cpu.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Instruction;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.assembler.representation.Statement;
+
+/**
+ * What if the instructions of a program were reordered to avoid stalling the five stage pipeline?
+ *
+ * The text segment is split into basic blocks: runs of instructions which are only entered at the top (labels start a
+ * new block) and only left at the bottom (after a branch, jump or syscall). Each block is rescheduled on its own,
+ * placing one instruction at a time: whichever of the instructions with nothing left to wait for could be executed
+ * soonest (or the earliest in the original order if there is a tie). An instruction is never moved past an
+ * instruction it depends on: one reading a register (or hi/lo) it writes, writing a register it reads or writes, or
+ * either of them storing to memory while the other loads or stores. The instruction ending a block stays at the end.
+ *
+ * The stalls of each ordering are estimated with the rules of the five stage pipeline (ignoring dependencies between
+ * blocks and structural hazards) and weighted by the number of times the block was executed.
+ */
+public class ReorderingAnalysis {
+	/**
+	 * a basic block and the suggested order for its instructions
+	 */
+	public static class Block {
+		public final List<Address> original;
+		public final List<Address> reordered;
+		/**
+		 * the number of times the first instruction of the block was executed
+		 */
+		public final long executions;
+		/**
+		 * the estimated stalls each time the block is executed, in the original and suggested orders
+		 */
+		public final int stallsBefore;
+		public final int stallsAfter;
+
+		private Block(List<Address> original, List<Address> reordered, long executions, int stallsBefore,
+				int stallsAfter) {
+			this.original = original;
+			this.reordered = reordered;
+			this.executions = executions;
+			this.stallsBefore = stallsBefore;
+			this.stallsAfter = stallsAfter;
+		}
+
+		/**
+		 * @return the cycles which would have been saved by running the block in the suggested order
+		 */
+		public long getCyclesSaved() {
+			return (stallsBefore - stallsAfter) * executions;
+		}
+	}
+
+	private final List<Block> blocks = new ArrayList<>();
+
+	/**
+	 * @param program
+	 *            the program to analyse
+	 * @param forwarding
+	 *            whether the pipeline forwards results
+	 * @param executions
+	 *            the number of times the instruction at an address was executed
+	 */
+	public ReorderingAnalysis(Program program, boolean forwarding, ToLongFunction<Address> executions) {
+		List<Address> addresses = new ArrayList<>(program.textSegment.keySet());
+		Collections.sort(addresses, (a, b) -> Integer.compare(a.getValue(), b.getValue()));
+		Set<Address> labelled = new HashSet<>(program.labels.values());
+
+		List<Address> block = new ArrayList<>();
+		for (Address a : addresses) {
+			if (!block.isEmpty() && labelled.contains(a)) {
+				addBlock(program, block, forwarding, executions);
+				block = new ArrayList<>();
+			}
+			block.add(a);
+			if (RegisterUsage.isBarrier(program.textSegment.get(a))) {
+				addBlock(program, block, forwarding, executions);
+				block = new ArrayList<>();
+			}
+		}
+		if (!block.isEmpty())
+			addBlock(program, block, forwarding, executions);
+	}
+
+	private void addBlock(Program program, List<Address> block, boolean forwarding,
+			ToLongFunction<Address> executions) {
+		List<Statement> statements = new ArrayList<>(block.size());
+		for (Address a : block)
+			statements.add(program.textSegment.get(a));
+
+		int before = countStalls(statements, forwarding);
+		int[] order = schedule(statements, forwarding);
+		List<Statement> reorderedStatements = new ArrayList<>(order.length);
+		for (int i : order)
+			reorderedStatements.add(statements.get(i));
+		int after = countStalls(reorderedStatements, forwarding);
+
+		List<Address> reordered = block;
+		if (after < before) {
+			reordered = new ArrayList<>(order.length);
+			for (int i : order)
+				reordered.add(block.get(i));
+		} else {
+			after = before; // no better than the original
+		}
+		blocks.add(new Block(block, reordered, executions.applyAsLong(block.get(0)), before, after));
+	}
+
+	/**
+	 * @return every basic block of the program, in the order they appear
+	 */
+	public List<Block> getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * @return the blocks which were executed and would have stalled less if reordered, the most cycles saved first
+	 */
+	public List<Block> getImprovements() {
+		List<Block> improved = new ArrayList<>();
+		for (Block b : blocks)
+			if (b.getCyclesSaved() > 0)
+				improved.add(b);
+		improved.sort((a, b) -> Long.compare(b.getCyclesSaved(), a.getCyclesSaved()));
+		return improved;
+	}
+
+	/**
+	 * @return the cycles which would have been saved by reordering every block
+	 */
+	public long getCyclesSaved() {
+		long saved = 0;
+		for (Block b : blocks)
+			saved += b.getCyclesSaved();
+		return saved;
+	}
+
+	/**
+	 * @return the number of cycles after the earlier instruction that the later one can be executed, if it reads a
+	 *         register which the earlier one writes, otherwise 0. As in the pipeline, hi and lo never cause stalls
+	 */
+	private static int latency(Statement earlier, Statement later, boolean forwarding) {
+		boolean dependent = overlaps(RegisterUsage.writes(earlier), RegisterUsage.reads(later));
+		if (!dependent)
+			return 0;
+		if (!forwarding)
+			return 3; // written back two stages after execute
+		boolean lateResult = RegisterUsage.readsMemory(earlier) || earlier.getInstruction() == Instruction.syscall;
+		return lateResult ? 2 : 1;
+	}
+
+	/**
+	 * @return whether the later instruction has to stay after the earlier one
+	 */
+	private static boolean mustFollow(Statement earlier, Statement later) {
+		List<Register> earlierWrites = RegisterUsage.writes(earlier);
+		List<Register> laterWrites = RegisterUsage.writes(later);
+		boolean registers = overlaps(earlierWrites, RegisterUsage.reads(later))
+				|| overlaps(RegisterUsage.reads(earlier), laterWrites) || overlaps(earlierWrites, laterWrites);
+		boolean hiLo = (RegisterUsage.writesHiLo(earlier)
+				&& (RegisterUsage.readsHiLo(later) || RegisterUsage.writesHiLo(later)))
+				|| (RegisterUsage.readsHiLo(earlier) && RegisterUsage.writesHiLo(later));
+		boolean memory = (RegisterUsage.writesMemory(earlier)
+				&& (RegisterUsage.readsMemory(later) || RegisterUsage.writesMemory(later)))
+				|| (RegisterUsage.readsMemory(earlier) && RegisterUsage.writesMemory(later));
+		return registers || hiLo || memory || RegisterUsage.isBarrier(later);
+	}
+
+	private static boolean overlaps(List<Register> a, List<Register> b) {
+		for (Register r : a)
+			if (b.contains(r))
+				return true;
+		return false;
+	}
+
+	/**
+	 * the cycle each instruction of a sequence is executed in, if the first is executed in cycle 0. Only the two
+	 * instructions before an instruction can delay it, any earlier have already left the pipeline
+	 */
+	private static int[] executeCycles(List<Statement> sequence, boolean forwarding) {
+		int[] cycles = new int[sequence.size()];
+		for (int i = 0; i < cycles.length; ++i)
+			cycles[i] = earliestCycle(sequence, cycles, i, sequence.get(i), forwarding);
+		return cycles;
+	}
+
+	/**
+	 * @return the earliest cycle the statement could be executed in if it was placed at position i of the sequence,
+	 *         given the cycles of the instructions before it
+	 */
+	private static int earliestCycle(List<Statement> sequence, int[] cycles, int i, Statement s, boolean forwarding) {
+		if (i == 0)
+			return 0;
+		int earliest = cycles[i - 1] + 1;
+		for (int j = Math.max(0, i - 2); j < i; ++j)
+			earliest = Math.max(earliest, cycles[j] + latency(sequence.get(j), s, forwarding));
+		return earliest;
+	}
+
+	/**
+	 * @return the estimated number of stalls running the statements in the given order
+	 */
+	public static int countStalls(List<Statement> sequence, boolean forwarding) {
+		if (sequence.isEmpty())
+			return 0;
+		int[] cycles = executeCycles(sequence, forwarding);
+		return cycles[cycles.length - 1] - (cycles.length - 1);
+	}
+
+	/**
+	 * @return the suggested order, as indices into the block
+	 */
+	private static int[] schedule(List<Statement> block, boolean forwarding) {
+		int n = block.size();
+		// how many of the instructions each instruction has to follow haven't been placed yet
+		int[] waitingFor = new int[n];
+		boolean[][] follows = new boolean[n][n];
+		for (int later = 0; later < n; ++later) {
+			for (int earlier = 0; earlier < later; ++earlier) {
+				if (mustFollow(block.get(earlier), block.get(later))) {
+					follows[later][earlier] = true;
+					waitingFor[later]++;
+				}
+			}
+		}
+
+		int[] order = new int[n];
+		List<Statement> placed = new ArrayList<>(n);
+		int[] cycles = new int[n];
+		boolean[] done = new boolean[n];
+		for (int position = 0; position < n; ++position) {
+			int best = -1;
+			int bestCycle = Integer.MAX_VALUE;
+			for (int i = 0; i < n; ++i) {
+				if (done[i] || waitingFor[i] != 0)
+					continue;
+				int cycle = earliestCycle(placed, cycles, position, block.get(i), forwarding);
+				if (cycle < bestCycle) {
+					best = i;
+					bestCycle = cycle;
+				}
+			}
+			done[best] = true;
+			order[position] = best;
+			placed.add(block.get(best));
+			cycles[position] = bestCycle;
+			for (int i = 0; i < n; ++i)
+				if (follows[i][best])
+					waitingFor[i]--;
+		}
+		return order;
+	}
+}
@@ -14,24 +14,50 @@ import simulizer.ui.windows.Logger;
  */
 public class LoggerIO extends Observable implements IO {
 	private final Workspace workspace;
-	private final StringBuilder[] logs; // the output streams
+	private final OutputBuffer[] logs; // the output streams
+	/**
+	 * run before the program reads from or writes to the standard stream
+	 */
+	private volatile Runnable syncPoint = null;
 
-	public LoggerIO(Workspace workspace) {
+	/**
+	 * @param workspace
+	 *            the workspace to open the Logger window in when input is requested
+	 * @param scrollBack
+	 *            the number of lines to keep for each stream
+	 */
+	public LoggerIO(Workspace workspace, int scrollBack) {
 		this.workspace = workspace;
-		logs = new StringBuilder[IOStream.values().length];
+		logs = new OutputBuffer[IOStream.values().length];
 		for (int i = 0; i < IOStream.values().length; i++)
-			logs[i] = new StringBuilder();
+			logs[i] = new OutputBuffer(scrollBack);
+	}
 
+	/**
+	 * @param syncPoint
+	 *            run (on the thread doing the I/O) before the program reads from or writes to the standard stream, eg to
+	 *            wait for the display to catch up with the simulation. null for none
+	 */
+	public void setSyncPoint(Runnable syncPoint) {
+		this.syncPoint = syncPoint;
+	}
+
+	private void sync(IOStream stream) {
+		Runnable r = syncPoint;
+		if (r != null && stream == IOStream.STANDARD)
+			r.run();
 	}
 
 	@Override
 	public String readString(IOStream stream) {
+		sync(stream);
 		String in = requestInput(stream);
 		return in == null ? "" : in;
 	}
 
 	@Override
 	public int readInt(IOStream stream) {
+		sync(stream);
 		try {
 			String in = requestInput(stream);
 			return in == null || in.isEmpty() ? 0 : Integer.parseInt(in);
@@ -43,6 +69,7 @@ public class LoggerIO extends Observable implements IO {
 
 	@Override
 	public char readChar(IOStream stream) {
+		sync(stream);
 		String in = requestInput(stream);
 		return in == null || in.isEmpty() ? '\0' : in.charAt(0);
 	}
@@ -56,6 +83,7 @@ public class LoggerIO extends Observable implements IO {
 
 	@Override
 	public void printString(IOStream stream, String str) {
+		sync(stream);
 		logs[stream.getID()].append(str);
 		setChanged();
 		notifyObservers(stream);
@@ -63,13 +91,15 @@ public class LoggerIO extends Observable implements IO {
 
 	@Override
 	public void printInt(IOStream stream, int num) {
-		logs[stream.getID()].append(num);
+		sync(stream);
+		logs[stream.getID()].append(Integer.toString(num));
 		setChanged();
 		notifyObservers(stream);
 	}
 
 	@Override
 	public void printChar(IOStream stream, char letter) {
+		sync(stream);
 		logs[stream.getID()].append(letter);
 		setChanged();
 		notifyObservers(stream);
@@ -91,7 +121,8 @@ public class LoggerIO extends Observable implements IO {
 
 		// Notify observers of change
 		if (input != null) {
-			logs[stream.getID()].append(input + "\n");
+			logs[stream.getID()].append(input);
+			logs[stream.getID()].append('\n');
 			setChanged();
 			notifyObservers(stream);
 		}
@@ -104,21 +135,30 @@ public class LoggerIO extends Observable implements IO {
 	 */
 	public void clear() {
 		for (IOStream i : IOStream.values()) {
-			logs[i.getID()] = new StringBuilder();
+			logs[i.getID()].clear();
 			setChanged();
 			notifyObservers(i);
 		}
 	}
 
 	/**
-	 * Gets the contents of the log for an IOStream
+	 * Gets the log for an IOStream
 	 * 
 	 * @param stream
 	 *            the IOStream to get
-	 * @return the log history
+	 * @return the most recent lines of output
+	 */
+	public OutputBuffer getLog(IOStream stream) {
+		return logs[stream.getID()];
+	}
+
+	/**
+	 * @param lines
+	 *            the number of lines to keep for each stream
 	 */
-	public String getLog(IOStream stream) {
-		return logs[stream.getID()].toString();
+	public void setScrollBack(int lines) {
+		for (OutputBuffer log : logs)
+			log.setMaxLines(lines);
 	}
 
 }
@@ -0,0 +1,160 @@
+package simulizer.simulation.cpu.user_interaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the output of a stream as lines, keeping only the most recent lines (the scroll-back).
+ *
+ * Lines are stored in fixed size chunks. When the scroll-back is full the oldest chunk is dropped and reused, so
+ * appending never has to copy the existing output. Lines are identified by their index since the buffer was last
+ * cleared, so that a viewer can ask for only the lines it has not seen yet.
+ *
+ * The last line is the line currently being written to (which is empty if the output ends with a new line).
+ */
+public class OutputBuffer {
+	private static final int CHUNK_SIZE = 1024; // lines
+	/**
+	 * longer lines are split, so that a program which never prints a new line can't create an enormous line
+	 */
+	public static final int MAX_LINE_LENGTH = 4096;
+
+	private final List<String[]> chunks = new ArrayList<>();
+	private String[] spareChunk = null;
+	private int lastChunkSize = 0; // the number of lines used in the last chunk
+	private long firstLine = 0; // the index of the oldest line still stored
+	private long completeLines = 0; // the index of the line currently being written to
+	private final StringBuilder currentLine = new StringBuilder();
+	private int maxLines;
+	private long generation = 0;
+
+	/**
+	 * @param maxLines
+	 *            the number of lines of scroll-back to keep (at least)
+	 */
+	public OutputBuffer(int maxLines) {
+		this.maxLines = Math.max(1, maxLines);
+	}
+
+	public synchronized void setMaxLines(int maxLines) {
+		this.maxLines = Math.max(1, maxLines);
+		dropOldLines();
+	}
+
+	public synchronized void append(CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\n') {
+				endLine();
+			} else {
+				currentLine.append(c);
+				if (currentLine.length() >= MAX_LINE_LENGTH)
+					endLine();
+			}
+		}
+	}
+
+	public synchronized void append(char c) {
+		if (c == '\n') {
+			endLine();
+		} else {
+			currentLine.append(c);
+			if (currentLine.length() >= MAX_LINE_LENGTH)
+				endLine();
+		}
+	}
+
+	private void endLine() {
+		if (chunks.isEmpty() || lastChunkSize == CHUNK_SIZE) {
+			String[] chunk = spareChunk == null ? new String[CHUNK_SIZE] : spareChunk;
+			spareChunk = null;
+			chunks.add(chunk);
+			lastChunkSize = 0;
+		}
+		chunks.get(chunks.size() - 1)[lastChunkSize++] = currentLine.toString();
+		currentLine.setLength(0);
+		completeLines++;
+		dropOldLines();
+	}
+
+	/**
+	 * drop whole chunks while doing so still leaves at least maxLines lines
+	 */
+	private void dropOldLines() {
+		while (chunks.size() > 1 && completeLines - firstLine - CHUNK_SIZE >= maxLines) {
+			String[] chunk = chunks.remove(0);
+			Arrays.fill(chunk, null);
+			spareChunk = chunk;
+			firstLine += CHUNK_SIZE;
+		}
+	}
+
+	/**
+	 * @return the index of the oldest line which is still stored
+	 */
+	public synchronized long getFirstLine() {
+		return firstLine;
+	}
+
+	/**
+	 * @return the number of lines written since the buffer was cleared, including the line currently being written to
+	 */
+	public synchronized long getLineCount() {
+		return completeLines + 1;
+	}
+
+	/**
+	 * @param index
+	 *            between getFirstLine() (inclusive) and getLineCount() (exclusive)
+	 * @return the line with the given index
+	 */
+	public synchronized String getLine(long index) {
+		if (index < firstLine || index > completeLines)
+			throw new IndexOutOfBoundsException("line " + index + " is not stored");
+		if (index == completeLines)
+			return currentLine.toString();
+		long offset = index - firstLine;
+		return chunks.get((int) (offset / CHUNK_SIZE))[(int) (offset % CHUNK_SIZE)];
+	}
+
+	/**
+	 * copy the lines from the given index to the end (including the line currently being written to)
+	 *
+	 * @param from
+	 *            the first line to copy (lines which are no longer stored are skipped)
+	 * @param dest
+	 *            the list to add the lines to
+	 */
+	public synchronized void getLines(long from, List<String> dest) {
+		for (long i = Math.max(from, firstLine); i <= completeLines; i++)
+			dest.add(getLine(i));
+	}
+
+	/**
+	 * @return a number which changes whenever the buffer is cleared
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	public synchronized void clear() {
+		chunks.clear();
+		lastChunkSize = 0;
+		firstLine = 0;
+		completeLines = 0;
+		currentLine.setLength(0);
+		generation++;
+	}
+
+	/**
+	 * @return the stored output as a single string (expensive for large outputs)
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (long i = firstLine; i < completeLines; i++)
+			sb.append(getLine(i)).append('\n');
+		return sb.append(currentLine).toString();
+	}
+}
@@ -1,7 +1,9 @@
 package simulizer.simulation.messages;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
@@ -12,11 +14,14 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import simulizer.Simulizer;
 import simulizer.simulation.cpu.user_interaction.IO;
 import simulizer.simulation.cpu.user_interaction.IOStream;
 import simulizer.utils.ThreadUtils;
+import simulizer.utils.Tracer;
 
 /**
  * Manages a thread which processes messages sent from the simulation
@@ -27,7 +32,7 @@ public class MessageManager {
 
 	private final static long allowedProcessingTime = 1000; // milliseconds
 
-	private final CopyOnWriteArrayList<SimulationListener> listeners;
+	private final CopyOnWriteArrayList<TimedListener> listeners;
 	private final ThreadPoolExecutor executor;
 	private final ThreadUtils.NamedTaggedThreadFactory threadFactory;
 	private final BlockingQueue<Message> messages;
@@ -37,6 +42,35 @@ public class MessageManager {
 
 	private final IO io;
 
+	/**
+	 * A registered listener along with how long it takes to handle messages. Updated from several message threads
+	 * at once
+	 */
+	private static class TimedListener {
+		final SimulationListener listener;
+		final String name; // for tracing
+		final LongAdder messages = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+
+		TimedListener(SimulationListener listener) {
+			this.listener = listener;
+			name = listener.getClass().getName();
+		}
+
+		void record(long nanos) {
+			messages.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+
+		void reset() {
+			messages.reset();
+			totalNanos.reset();
+			maxNanos.set(0);
+		}
+	}
+
 	public MessageManager(IO io) {
 		listeners = new CopyOnWriteArrayList<>();
 		threadFactory = new ThreadUtils.NamedTaggedThreadFactory("Message-Manager");
@@ -79,7 +113,7 @@ public class MessageManager {
      * @param l the listener to send messages to
      */
     public void registerListener(SimulationListener l) {
-		listeners.add(l);
+		listeners.add(new TimedListener(l));
     }
 
     /**
@@ -87,9 +121,54 @@ public class MessageManager {
      * @param l the listener to be removed
      */
     public void unregisterListener(SimulationListener l){
-		listeners.remove(l);
+		listeners.removeIf(t -> t.listener == l);
     }
 
+	/**
+	 * @return the number of messages which have been sent but not yet dispatched to the listeners
+	 */
+	public int getQueueDepth() {
+		return messages.size();
+	}
+
+	/**
+	 * @param max
+	 *            whether to give the longest time taken to handle a single message rather than the mean
+	 * @return the time (microseconds) each listener takes to handle a message since the last reset, keyed by the
+	 *         class of the listener
+	 */
+	public Map<String, Double> getDispatchMicros(boolean max) {
+		Map<String, Double> times = new LinkedHashMap<>();
+		for (TimedListener t : listeners) {
+			String name = t.name;
+			// several listeners can have the same class
+			for (int i = 2; times.containsKey(name); ++i)
+				name = t.name + " (" + i + ")";
+
+			long count = t.messages.sum();
+			if (max)
+				times.put(name, t.maxNanos.get() / 1e3);
+			else
+				times.put(name, count == 0 ? 0 : t.totalNanos.sum() / 1e3 / count);
+		}
+		return times;
+	}
+
+	/**
+	 * forget the time taken to handle messages so far
+	 */
+	public void resetDispatchTimes() {
+		for (TimedListener t : listeners)
+			t.reset();
+	}
+
+	/**
+	 * @return the IDs of the threads which dispatch messages to the listeners
+	 */
+	public long[] getThreadIds() {
+		return threadFactory.getThreadIds();
+	}
+
 	public void sendMessage(Message m) {
 		try {
 			noWaitingMessages.set(false);
@@ -110,8 +189,12 @@ public class MessageManager {
 		@Override
 		public void run() {
 			try {
-				for (SimulationListener l : listeners) {
-					l.delegateMessage(m);
+				for (TimedListener t : listeners) {
+					long start = System.nanoTime();
+					t.listener.delegateMessage(m);
+					long end = System.nanoTime();
+					t.record(end - start);
+					Tracer.record(Tracer.MESSAGES, t.name, start, end);
 				}
 			} catch (Exception e) {
 				Simulizer.handleException(e);
@@ -15,7 +15,7 @@ public class PipelineHazardMessage extends Message {
 	 *
 	 */
 	public enum Hazard {
-		RAW, WAW, CONTROL;
+		RAW, WAW, CONTROL, LOAD_USE, STRUCTURAL;
 
 		@Override
 		public String toString() {
@@ -26,6 +26,10 @@ public class PipelineHazardMessage extends Message {
 					return "Write After Write";
 				case CONTROL:
 					return "Control";
+				case LOAD_USE:
+					return "Load-Use";
+				case STRUCTURAL:
+					return "Structural";
 				default:
 					return "UNKNOWN";
 			}
@@ -10,9 +10,20 @@ import simulizer.assembler.representation.Address;
  */
 public class PipelineStateMessage extends Message{
 
+	/**the result of the branch (or jump) which was just executed
+	 */
+	public enum BranchOutcome {
+		NONE, CORRECTLY_PREDICTED, MISPREDICTED
+	}
+
 	private Address fetched;
 	private Address decoded;
 	private Address executed;
+	private Address memory;
+	private Address writeback;
+	private int stages;
+	private Address predictedTaken;
+	private BranchOutcome outcome;
 
 	/**method will initialise all fields of information for the message
 	 *
@@ -21,9 +32,42 @@ public class PipelineStateMessage extends Message{
 	 * @param executed the address of the instruction just executed
 	 */
 	public PipelineStateMessage(Address fetched, Address decoded, Address executed) {
+		this(fetched, decoded, executed, null, BranchOutcome.NONE);
+	}
+
+	/**method will initialise all fields of information for the message, including the branch predictions
+	 *
+	 * @param fetched the address of the instruction just fetched
+	 * @param decoded the address of the instruction just decoded
+	 * @param executed the address of the instruction just executed
+	 * @param predictedTaken the address of the branch (being fetched or decoded) which was predicted to be taken, or null
+	 * @param outcome whether the prediction for the branch just executed was correct
+	 */
+	public PipelineStateMessage(Address fetched, Address decoded, Address executed, Address predictedTaken, BranchOutcome outcome) {
 		this.fetched = fetched;
 		this.decoded = decoded;
 		this.executed = executed;
+		this.stages = 3;
+		this.predictedTaken = predictedTaken;
+		this.outcome = outcome;
+	}
+
+	/**method will initialise all fields of information for the message from a five stage pipeline
+	 *
+	 * @param fetched the address of the instruction just fetched
+	 * @param decoded the address of the instruction just decoded
+	 * @param executed the address of the instruction just executed
+	 * @param memory the address of the instruction which just accessed memory
+	 * @param writeback the address of the instruction which just wrote back its result
+	 * @param predictedTaken the address of the branch (being fetched or decoded) which was predicted to be taken, or null
+	 * @param outcome whether the prediction for the branch just executed was correct
+	 */
+	public PipelineStateMessage(Address fetched, Address decoded, Address executed, Address memory, Address writeback,
+			Address predictedTaken, BranchOutcome outcome) {
+		this(fetched, decoded, executed, predictedTaken, outcome);
+		this.memory = memory;
+		this.writeback = writeback;
+		this.stages = 5;
 	}
 
 	/**get the fetched address
@@ -50,4 +94,44 @@ public class PipelineStateMessage extends Message{
 		return this.executed;
 	}
 
+	/**get the address of the instruction in the memory stage (five stage pipelines only)
+	 *
+	 * @return the memory stage address
+	 */
+	public Address getMemory() {
+		return this.memory;
+	}
+
+	/**get the address of the instruction in the write back stage (five stage pipelines only)
+	 *
+	 * @return the write back stage address
+	 */
+	public Address getWriteback() {
+		return this.writeback;
+	}
+
+	/**get the number of stages in the pipeline which sent the message
+	 *
+	 * @return 3 (fetch, decode, execute) or 5 (also memory and write back)
+	 */
+	public int getStageCount() {
+		return this.stages;
+	}
+
+	/**get the address of the branch which was predicted to be taken this cycle
+	 *
+	 * @return the address of the branch, or null if no branch was predicted taken
+	 */
+	public Address getPredictedTaken() {
+		return this.predictedTaken;
+	}
+
+	/**get whether the branch just executed was predicted correctly
+	 *
+	 * @return the outcome (NONE if the executed instruction was not a branch)
+	 */
+	public BranchOutcome getOutcome() {
+		return this.outcome;
+	}
+
 }
@@ -21,13 +21,19 @@ import simulizer.assembler.Assembler;
 import simulizer.assembler.extractor.problem.StoreProblemLogger;
 import simulizer.assembler.representation.Program;
 import simulizer.highlevel.models.HLVisualManager;
+import simulizer.lowlevel.models.PlaybackBuffer;
 import simulizer.settings.Settings;
 import simulizer.simulation.cpu.CPUChangedListener;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor;
+import simulizer.simulation.cpu.cache.Cache;
+import simulizer.simulation.cpu.cache.CacheHierarchy;
 import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUFiveStagePipeline;
 import simulizer.simulation.cpu.components.CPUPipeline;
 import simulizer.simulation.cpu.user_interaction.LoggerIO;
 import simulizer.ui.components.AssemblingDialog;
 import simulizer.ui.components.CurrentFile;
+import simulizer.ui.components.FrameScheduler;
 import simulizer.ui.components.MainMenuBar;
 import simulizer.ui.components.UISimulationListener;
 import simulizer.ui.components.Workspace;
@@ -35,6 +41,7 @@ import simulizer.ui.layout.GridBounds;
 import simulizer.ui.layout.Layouts;
 import simulizer.ui.theme.Themes;
 import simulizer.ui.windows.Editor;
+import simulizer.ui.windows.PipelineView;
 import simulizer.utils.UIUtils;
 
 /**
@@ -58,6 +65,9 @@ public class WindowManager extends GridPane {
 	private final LoggerIO io;
 	private Thread cpuThread = null;
 	private UISimulationListener simListener = new UISimulationListener(this);
+	private FrameScheduler frameScheduler = null;
+	private PlaybackBuffer playback = null;
+	private volatile boolean runAhead = false;
 	private final AnnotationManager annotationManager;
 	private HLVisualManager hlvisual;
 	private final MainMenuBar menuBar;
@@ -95,8 +105,17 @@ public class WindowManager extends GridPane {
 			primaryStage.setFullScreen(true);
 
 		// Creates CPU Simulation
-		io = new LoggerIO(workspace);
+		io = new LoggerIO(workspace, (int) settings.get("logger.scroll-back"));
 		newCPU(GuiMode.args.pipelined || (boolean) settings.get("simulation.pipelined"));
+		frameScheduler = new FrameScheduler(cpu);
+		addCPUChangedListener(frameScheduler);
+		playback = new PlaybackBuffer(PipelineView.model, (int) settings.get("simulation.run-ahead-buffer"));
+		setRunAhead((boolean) settings.get("simulation.run-ahead"));
+		// the program's I/O happens when the display has caught up with it (the JavaFX thread plays back the cycles)
+		io.setSyncPoint(() -> {
+			if (runAhead && !Platform.isFxApplicationThread())
+				playback.awaitPlayback();
+		});
 
 		// Set the theme
 		themes = new Themes((String) settings.get("window.theme"));
@@ -112,7 +131,7 @@ public class WindowManager extends GridPane {
 
 		// @formatter:on Set the layout
 		layouts = new Layouts(workspace);
-		layouts.setDefaultLayout(); // opens internal windows
+		layouts.setDefaultLayout(); // opens internal windows (only the editor until the main window is shown)
 
 		// MainMenuBar
 		menuBar = new MainMenuBar(this);
@@ -155,6 +174,10 @@ public class WindowManager extends GridPane {
 			layoutFixThread.start();
 		});
 		primaryStage.show();
+		GuiMode.startupTimer.phase("showing the main window");
+
+		// create the windows which weren't needed while the main window was hidden
+		workspace.openDeferredWindows();
 
 		if (grid != null) {
 			grid.setWindowSize(workspace.getWidth(), workspace.getHeight());
@@ -201,6 +224,8 @@ public class WindowManager extends GridPane {
 	 */
 	public void stopSimulation() {
 		if (cpuThread != null) {
+			if (runAhead)
+				playback.skipToEnd(); // show the state the simulation actually stopped in
 			cpu.stopRunning();
 			try {
 				System.out.println("Waiting for the simulation thread to close");
@@ -287,6 +312,8 @@ public class WindowManager extends GridPane {
 		if (p != null) {
 			stopSimulation();
 
+			// pick up any changes to the cache settings
+			cpu.getCaches().configure(newCacheConfiguration());
 			cpu.loadProgram(p);
 
 			io.clear();
@@ -344,6 +371,47 @@ public class WindowManager extends GridPane {
 		return annotationManager;
 	}
 
+	/**
+	 * Complete a single cycle of a paused simulation. If the simulation is running ahead then the next recorded cycle
+	 * is played back instead (if there is one)
+	 */
+	public void singleStep() {
+		if (cpu.isPaused() && !(runAhead && playback.advance(1) == 1))
+			cpu.resumeForOneCycle();
+	}
+
+	/**
+	 * Let the CPU run as fast as possible, recording each cycle so that it can be played back at the chosen cycle
+	 * frequency. Must be called from the JavaFX thread and while the simulation is not running
+	 *
+	 * @param runAhead
+	 *            whether to run ahead
+	 */
+	public void setRunAhead(boolean runAhead) {
+		this.runAhead = runAhead;
+		cpu.setRunAhead(runAhead);
+		playback.attach(runAhead ? cpu : null);
+		frameScheduler.setPlayback(runAhead ? playback : null);
+	}
+
+	public boolean isRunAhead() {
+		return runAhead;
+	}
+
+	/**
+	 * @return the recorded cycles which are being played back when running ahead
+	 */
+	public PlaybackBuffer getPlayback() {
+		return playback;
+	}
+
+	/**
+	 * @return the scheduler which refreshes the UI from the state of the CPU once per frame
+	 */
+	public FrameScheduler getFrameScheduler() {
+		return frameScheduler;
+	}
+
 	/**
 	 * Creates a new CPU. Used to switch between pipelined and non pipelined CPU
 	 * 
@@ -358,11 +426,27 @@ public class WindowManager extends GridPane {
 		}
 
 		if (pipelined) {
-			cpu = new CPUPipeline(io);
+			CPUPipeline pipeline;
+			if (isFiveStage()) {
+				CPUFiveStagePipeline fiveStage = new CPUFiveStagePipeline(io);
+				fiveStage.setSingleMemoryPort(isSingleMemoryPort());
+				pipeline = fiveStage;
+			} else {
+				pipeline = new CPUPipeline(io);
+			}
+			pipeline.setBranchPredictor(newBranchPredictor());
+			pipeline.setForwarding((boolean) settings.get("simulation.forwarding"));
+			cpu = pipeline;
 		} else {
 			cpu = new CPU(io);
 		}
+		cpu.getMetrics().register(); // unregistered by cpu.shutdown()
+		cpu.getCaches().configure(newCacheConfiguration());
 		cpu.registerListener(simListener);
+		if (runAhead) {
+			cpu.setRunAhead(true);
+			playback.attach(cpu);
+		}
 		if (oldCycleFreq < 0) {
 			cpu.setCycleFreq((Double) settings.get("simulation.default-CPU-frequency"));
 		} else {
@@ -374,6 +458,138 @@ public class WindowManager extends GridPane {
 		}
 	}
 
+	/**
+	 * @return a new branch predictor of the kind chosen in the settings
+	 */
+	private BranchPredictor newBranchPredictor() {
+		BranchPredictor.Strategy strategy = BranchPredictor.Strategy.fromId((String) settings.get("simulation.branch-predictor"));
+		return strategy.create((int) settings.get("simulation.branch-predictor-size"));
+	}
+
+	/**
+	 * Choose how the pipelined CPU predicts branches (saved to the settings). Takes effect immediately if the current
+	 * CPU is pipelined, even while a program is running
+	 *
+	 * @param strategy
+	 *            the kind of branch predictor to use
+	 */
+	public void setBranchPredictor(BranchPredictor.Strategy strategy) {
+		settings.set("simulation.branch-predictor", strategy.id);
+		settings.save();
+		if (cpu instanceof CPUPipeline)
+			((CPUPipeline) cpu).setBranchPredictor(newBranchPredictor());
+	}
+
+	/**
+	 * @return the kind of branch predictor chosen in the settings
+	 */
+	public BranchPredictor.Strategy getBranchPredictorStrategy() {
+		return BranchPredictor.Strategy.fromId((String) settings.get("simulation.branch-predictor"));
+	}
+
+	/**
+	 * Choose whether the pipelined CPU forwards results rather than stalling (saved to the settings). Takes effect
+	 * immediately if the current CPU is pipelined, even while a program is running
+	 *
+	 * @param forwarding
+	 *            whether to forward results from the execute stage to the decode stage
+	 */
+	public void setForwarding(boolean forwarding) {
+		settings.set("simulation.forwarding", forwarding);
+		settings.save();
+		if (cpu instanceof CPUPipeline)
+			((CPUPipeline) cpu).setForwarding(forwarding);
+	}
+
+	/**
+	 * @return whether forwarding is chosen in the settings
+	 */
+	public boolean isForwarding() {
+		return (boolean) settings.get("simulation.forwarding");
+	}
+
+	/**
+	 * Choose between the three and five stage pipelines (saved to the settings). Replaces the current CPU if it is
+	 * pipelined, so shouldn't be called while a program is running
+	 *
+	 * @param fiveStage
+	 *            whether to use the five stage pipeline
+	 */
+	public void setFiveStage(boolean fiveStage) {
+		settings.set("simulation.five-stage", fiveStage);
+		settings.save();
+		if (cpu.isPipelined())
+			newCPU(true);
+	}
+
+	/**
+	 * @return whether the five stage pipeline is chosen in the settings
+	 */
+	public boolean isFiveStage() {
+		return (boolean) settings.get("simulation.five-stage");
+	}
+
+	/**
+	 * Choose whether the five stage pipeline fetches through the same memory port as loads and stores (saved to the
+	 * settings). Takes effect immediately if the current CPU is the five stage pipeline, even while a program is running
+	 *
+	 * @param singleMemoryPort
+	 *            whether to share the memory port
+	 */
+	public void setSingleMemoryPort(boolean singleMemoryPort) {
+		settings.set("simulation.single-memory-port", singleMemoryPort);
+		settings.save();
+		if (cpu instanceof CPUFiveStagePipeline)
+			((CPUFiveStagePipeline) cpu).setSingleMemoryPort(singleMemoryPort);
+	}
+
+	/**
+	 * @return whether a single memory port is chosen in the settings
+	 */
+	public boolean isSingleMemoryPort() {
+		return (boolean) settings.get("simulation.single-memory-port");
+	}
+
+	/**
+	 * @return the caches chosen in the settings, or null if caches aren't simulated
+	 */
+	private CacheHierarchy.Configuration newCacheConfiguration() {
+		if (!isCachesEnabled())
+			return null;
+		CacheHierarchy.Configuration c = new CacheHierarchy.Configuration();
+		c.instructionSize = (int) settings.get("simulation.cache.l1-instruction-size");
+		c.dataSize = (int) settings.get("simulation.cache.l1-data-size");
+		c.l2Size = (int) settings.get("simulation.cache.l2-size");
+		c.associativity = (int) settings.get("simulation.cache.associativity");
+		c.l2Associativity = (int) settings.get("simulation.cache.l2-associativity");
+		c.lineSize = (int) settings.get("simulation.cache.line-size");
+		c.replacement = Cache.Replacement.fromId((String) settings.get("simulation.cache.replacement"));
+		c.writeBack = !(boolean) settings.get("simulation.cache.write-through");
+		c.l2Latency = (int) settings.get("simulation.cache.l2-latency");
+		c.memoryLatency = (int) settings.get("simulation.cache.memory-latency");
+		return c;
+	}
+
+	/**
+	 * Choose whether memory accesses go through simulated caches (saved to the settings). Takes effect immediately,
+	 * with empty caches, even while a program is running
+	 *
+	 * @param enabled
+	 *            whether to simulate the caches
+	 */
+	public void setCachesEnabled(boolean enabled) {
+		settings.set("simulation.cache.enabled", enabled);
+		settings.save();
+		cpu.getCaches().configure(newCacheConfiguration());
+	}
+
+	/**
+	 * @return whether simulating the caches is chosen in the settings
+	 */
+	public boolean isCachesEnabled() {
+		return (boolean) settings.get("simulation.cache.enabled");
+	}
+
 	/**
 	 * Adds a CPU changed listener
 	 * 
@@ -1,10 +1,12 @@
 package simulizer.ui.components;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
 import javafx.animation.FadeTransition;
-import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -14,10 +16,12 @@ import simulizer.ui.components.cpu.AnimationProcessor;
 import simulizer.ui.components.cpu.ConnectorWire;
 import simulizer.ui.components.cpu.CustomLine;
 import simulizer.ui.components.cpu.CustomWire;
+import simulizer.ui.components.cpu.DatapathElement;
 import simulizer.ui.components.cpu.GeneralComponent;
 import simulizer.ui.components.cpu.InstructionsWindow;
 import simulizer.ui.interfaces.WindowEnum;
 import simulizer.ui.windows.CPUVisualisation;
+import simulizer.utils.UIUtils;
 
 /**
  * Represents a visualised CPU
@@ -85,7 +89,7 @@ public class CPU {
 	}
 
 	/**
-	 * Show a caption for a specified time
+	 * Show a caption for a specified time. Must be called from the JavaFX thread
 	 * 
 	 * @param text
 	 *            The text to show
@@ -97,7 +101,7 @@ public class CPU {
 	}
 
 	/**
-	 * Shows a caption for a specified time
+	 * Shows a caption for a specified time. Must be called from the JavaFX thread
 	 * 
 	 * @param text
 	 *            The text to show
@@ -107,6 +111,7 @@ public class CPU {
 	 *            If the text should fade out or not
 	 */
 	public void showText(String text, double time, boolean fadeOut) {
+		UIUtils.assertFXThread();
 		if (time < 250)
 			return;
 
@@ -136,10 +141,8 @@ public class CPU {
 			}, (int) delayTime));
 		}
 
-		Platform.runLater(() -> {
-			info.setLabel(text);
-			ft.play();
-		});
+		info.setLabel(text);
+		ft.play();
 	}
 
 	/**
@@ -241,6 +244,13 @@ public class CPU {
 		allItems = new Group();
 		allItems.getChildren().addAll(components, generalWires, complexWires, info, previousInstructions);
 		vis.add(allItems);
+
+		// shown when the clock is too fast to animate each instruction
+		List<DatapathElement> datapath = new ArrayList<>();
+		for (Group g : Arrays.asList(components, generalWires, complexWires))
+			for (Node n : g.getChildren())
+				datapath.add((DatapathElement) n);
+		animationProcessor.setDatapath(datapath);
 	}
 
 	/**
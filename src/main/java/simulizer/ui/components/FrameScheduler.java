@@ -0,0 +1,306 @@
+package simulizer.ui.components;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javafx.animation.AnimationTimer;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.lowlevel.models.PlaybackBuffer;
+import simulizer.simulation.cpu.CPUChangedListener;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.data.representation.Word;
+import simulizer.simulation.messages.PipelineStateMessage;
+import simulizer.simulation.messages.SimulationListener;
+import simulizer.utils.Tracer;
+import simulizer.utils.UIUtils;
+
+/**
+ * Refreshes the parts of the UI which show the state of the CPU once per frame (driven by an AnimationTimer) rather
+ * than once per simulation message. This way the cost of keeping the UI up to date is bounded by the frame rate rather
+ * than the rate at which instructions are simulated, and the simulation never has to wait for the JavaFX thread.
+ *
+ * A snapshot of the CPU is taken at most once per frame. While the simulation is running, the snapshot is taken on the
+ * message thread when the next pipeline state arrives, since the CPU is waiting for its messages to be processed at
+ * that point (so the values are consistent). Otherwise the CPU is idle and the snapshot is taken directly.
+ *
+ * When the CPU is running ahead, the frames instead show the cycles recorded in a PlaybackBuffer, which the scheduler
+ * plays back at the cycle frequency chosen by the user.
+ */
+public class FrameScheduler implements CPUChangedListener {
+	private static final int FRAME_RATE = 45;
+
+	/**
+	 * Something which is refreshed from the state of the CPU once per frame
+	 */
+	public interface FrameListener {
+		/**
+		 * called from the JavaFX thread every frame with the latest snapshot of the CPU. Check Frame.getVersion() to skip
+		 * work when nothing has changed since the last frame
+		 */
+		void onFrame(Frame frame);
+	}
+
+	/**
+	 * A snapshot of the CPU which is safe to read from the JavaFX thread
+	 */
+	public static class Frame {
+		private long version;
+		public final CPU cpu;
+		public final Program program;
+		public final long cycles;
+		public final boolean running;
+		public final boolean paused;
+		public final boolean pipelined;
+		public final Word[] registers;
+		public final Word hi;
+		public final Word lo;
+		public final Address pc;
+		/**
+		 * the addresses of the instructions in each stage of the pipeline (may be null)
+		 */
+		public final Address fetch, decode, execute;
+
+		private Frame(CPU cpu, PipelineStateMessage stages) {
+			this.cpu = cpu;
+			program = cpu.getProgram();
+			cycles = cpu.getCycles();
+			running = cpu.isRunning();
+			paused = cpu.isPaused();
+			pipelined = cpu.isPipelined();
+			// words are immutable so a shallow copy is enough
+			registers = cpu.getRegisters().clone();
+			hi = cpu.getHi();
+			lo = cpu.getLo();
+			pc = cpu.getProgramCounter();
+			fetch = stages == null ? null : stages.getFetched();
+			decode = stages == null ? null : stages.getDecoded();
+			execute = stages == null ? null : stages.getExecuted();
+		}
+
+		private Frame(CPU cpu, PlaybackBuffer.State played, boolean running) {
+			this.cpu = cpu;
+			program = cpu.getProgram();
+			cycles = played.cycle;
+			this.running = running;
+			paused = cpu.isPaused();
+			pipelined = cpu.isPipelined();
+			registers = played.registers;
+			hi = played.hi;
+			lo = played.lo;
+			pc = played.pc;
+			fetch = played.stages == null ? null : played.stages.getFetched();
+			decode = played.stages == null ? null : played.stages.getDecoded();
+			execute = played.stages == null ? null : played.stages.getExecuted();
+		}
+
+		/**
+		 * @return a number which is incremented each time the state of the CPU changes
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		private boolean sameStateAs(Frame other) {
+			if (cpu != other.cpu || program != other.program || cycles != other.cycles || running != other.running
+					|| paused != other.paused || hi != other.hi || lo != other.lo || !Objects.equals(pc, other.pc)
+					|| !Objects.equals(fetch, other.fetch) || !Objects.equals(decode, other.decode)
+					|| !Objects.equals(execute, other.execute))
+				return false;
+			for (int i = 0; i < registers.length; i++)
+				if (registers[i] != other.registers[i])
+					return false;
+			return true;
+		}
+	}
+
+	private volatile CPU cpu;
+	private final SnapshotListener snapshotListener = new SnapshotListener();
+	private final List<FrameListener> listeners = new CopyOnWriteArrayList<>();
+	private AnimationTimer timer = null;
+
+	private volatile PlaybackBuffer playback = null;
+	private double playbackCredit = 0; // the number of cycles which are due to be played back
+	private long lastFrameTime = -1;
+
+	private Frame frame = null;
+	/**
+	 * the total time the JavaFX thread has spent refreshing the listeners
+	 */
+	private volatile long frameNanos = 0;
+	/**
+	 * set by the JavaFX thread when it wants the message thread to take a snapshot
+	 */
+	private volatile boolean snapshotWanted = false;
+	/**
+	 * a snapshot taken by the message thread, waiting to be picked up by the next frame
+	 */
+	private final AtomicReference<Frame> published = new AtomicReference<>();
+	private volatile PipelineStateMessage lastStages = null;
+
+	public FrameScheduler(CPU cpu) {
+		cpuChanged(cpu);
+	}
+
+	@Override
+	public synchronized void cpuChanged(CPU cpu) {
+		if (this.cpu != null)
+			this.cpu.unregisterListener(snapshotListener);
+		this.cpu = cpu;
+		lastStages = null;
+		published.set(null);
+		if (cpu != null)
+			cpu.registerListener(snapshotListener);
+	}
+
+	/**
+	 * @return the latest snapshot of the CPU. Must be called from the JavaFX thread
+	 */
+	public Frame getFrame() {
+		UIUtils.assertFXThread();
+		if (frame == null || (frame.cpu != cpu && cpu != null))
+			nextFrame();
+		return frame;
+	}
+
+	/**
+	 * @return the total time (nanoseconds) the JavaFX thread has spent refreshing the UI from the CPU
+	 */
+	public long getFrameNanos() {
+		return frameNanos;
+	}
+
+	/**
+	 * start refreshing a listener every frame. Must be called from the JavaFX thread
+	 */
+	public void addListener(FrameListener l) {
+		UIUtils.assertFXThread();
+		listeners.add(l);
+		updateTimer();
+	}
+
+	/**
+	 * stop refreshing a listener. Must be called from the JavaFX thread
+	 */
+	public void removeListener(FrameListener l) {
+		UIUtils.assertFXThread();
+		listeners.remove(l);
+		updateTimer();
+	}
+
+	/**
+	 * show the cycles recorded by the given buffer rather than the live state of the CPU. Must be called from the
+	 * JavaFX thread
+	 *
+	 * @param playback
+	 *            the buffer to play back, null to show the live state
+	 */
+	public void setPlayback(PlaybackBuffer playback) {
+		UIUtils.assertFXThread();
+		this.playback = playback;
+		playbackCredit = 0;
+		updateTimer();
+	}
+
+	/**
+	 * the timer has to keep running while there is something to play back, even if nothing is listening
+	 */
+	private void updateTimer() {
+		boolean needed = !listeners.isEmpty() || playback != null;
+		if (needed && timer == null) {
+			timer = new AnimationTimer() {
+				long lastTime = -1;
+
+				@Override
+				public void handle(long now) {
+					if (lastTime == -1 || now - lastTime > 1e9 / FRAME_RATE) {
+						long start = System.nanoTime();
+						lastTime = now;
+						advancePlayback(now);
+						nextFrame();
+						for (FrameListener l : listeners)
+							l.onFrame(frame);
+						long end = System.nanoTime();
+						frameNanos += end - start;
+						Tracer.record(Tracer.UI, "frame", start, end);
+					}
+				}
+			};
+			timer.start();
+		} else if (!needed && timer != null) {
+			timer.stop();
+			timer = null;
+		}
+	}
+
+	/**
+	 * play back the cycles which are due given the time since the last frame
+	 */
+	private void advancePlayback(long now) {
+		double elapsed = lastFrameTime == -1 ? 0 : (now - lastFrameTime) / 1e9;
+		lastFrameTime = now;
+
+		PlaybackBuffer p = playback;
+		CPU cpu = this.cpu;
+		if (p == null || cpu == null || !p.isActive())
+			return;
+
+		if (p.isSkipping()) {
+			p.advance(Integer.MAX_VALUE);
+		} else if (cpu.isPaused()) {
+			// show the cycle the CPU stopped at (eg a breakpoint), rather than leaving the display behind it
+			playbackCredit = 0;
+			p.advance(Integer.MAX_VALUE);
+		} else {
+			double freq = cpu.getCycleFreq();
+			playbackCredit = Math.min(playbackCredit + elapsed * freq, Integer.MAX_VALUE);
+			playbackCredit -= p.advance((int) playbackCredit);
+			if (p.getBufferedCycles() == 0)
+				playbackCredit = Math.min(playbackCredit, 1); // don't save up cycles while waiting for the CPU
+		}
+	}
+
+	/**
+	 * update the current frame if the state of the CPU has changed
+	 */
+	private void nextFrame() {
+		CPU cpu = this.cpu;
+		if (cpu == null)
+			return;
+
+		Frame next;
+		PlaybackBuffer p = playback;
+		PlaybackBuffer.State played = p == null ? null : p.getPlayedState();
+		if (played != null) {
+			next = new Frame(cpu, played, cpu.isRunning() || p.getBufferedCycles() > 0);
+		} else if (cpu.isRunning() && !cpu.isPaused()) {
+			next = published.getAndSet(null);
+			snapshotWanted = true;
+			if (next == null && (frame == null || frame.cpu != cpu))
+				next = new Frame(cpu, lastStages); // have to show something
+		} else {
+			next = new Frame(cpu, lastStages);
+		}
+
+		if (next != null && next.cpu == cpu && (frame == null || !next.sameStateAs(frame))) {
+			next.version = frame == null ? 0 : frame.version + 1;
+			frame = next;
+		}
+	}
+
+	/**
+	 * takes snapshots on the message thread while the simulation is running
+	 */
+	private class SnapshotListener extends SimulationListener {
+		@Override
+		public void processPipelineStateMessage(PipelineStateMessage m) {
+			lastStages = m;
+			if (snapshotWanted) {
+				snapshotWanted = false;
+				published.set(new Frame(cpu, m));
+			}
+		}
+	}
+}
@@ -8,7 +8,9 @@ import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
@@ -19,7 +21,9 @@ import simulizer.BuildInfo;
 import simulizer.assembler.Assembler;
 import simulizer.assembler.representation.Program;
 import simulizer.assembler.representation.ProgramStringBuilder;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor;
 import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUFiveStagePipeline;
 import simulizer.ui.WindowManager;
 import simulizer.ui.interfaces.InternalWindow;
 import simulizer.ui.interfaces.WindowEnum;
@@ -27,6 +31,7 @@ import simulizer.ui.layout.Layout;
 import simulizer.ui.theme.Theme;
 import simulizer.ui.windows.Editor;
 import simulizer.utils.FileUtils;
+import simulizer.utils.Tracer;
 import simulizer.utils.UIUtils;
 import simulizer.utils.runner.SpimRunner;
 
@@ -347,7 +352,7 @@ public class MainMenuBar extends MenuBar {
 		singleStep.setDisable(allowDisabling && (cpu.clockRunning() || !cpu.isRunning()));
 		singleStep.setOnAction(e -> {
 			if (cpu.isPaused()) {
-				cpu.resumeForOneCycle();
+				wm.singleStep();
 			}
 		});
 
@@ -359,15 +364,73 @@ public class MainMenuBar extends MenuBar {
 				wm.stopSimulation();
 		});
 
+		MenuItem skipToEnd = new MenuItem("Skip To End");
+		skipToEnd.setAccelerator(new KeyCodeCombination(KeyCode.F9));
+		skipToEnd.setDisable(allowDisabling && !(wm.isRunAhead() && cpu.isRunning()));
+		skipToEnd.setOnAction(e -> {
+			if (wm.isRunAhead())
+				wm.getPlayback().skipToEnd();
+		});
+
+		MenuItem fastForward = new MenuItem("Fast Forward 100 Cycles");
+		fastForward.setAccelerator(new KeyCodeCombination(KeyCode.F9, KeyCombination.SHIFT_DOWN));
+		fastForward.setDisable(allowDisabling && !(wm.isRunAhead() && cpu.isRunning()));
+		fastForward.setOnAction(e -> {
+			if (wm.isRunAhead())
+				wm.getPlayback().advance(100);
+		});
+
 		CheckMenuItem togglePipeline = new CheckMenuItem("Pipelined CPU?");
 		togglePipeline.setDisable(cpu.isRunning());
 		togglePipeline.setSelected(cpu.isPipelined());
 		togglePipeline.setOnAction(e -> wm.newCPU(togglePipeline.isSelected()));
 
+		// can be changed while running, to compare the predictors on the same program
+		Menu branchPredictor = new Menu("Branch Predictor");
+		branchPredictor.setDisable(!cpu.isPipelined());
+		ToggleGroup predictors = new ToggleGroup();
+		for (BranchPredictor.Strategy strategy : BranchPredictor.Strategy.values()) {
+			RadioMenuItem item = new RadioMenuItem(strategy.toString());
+			item.setToggleGroup(predictors);
+			item.setSelected(strategy == wm.getBranchPredictorStrategy());
+			item.setOnAction(e -> wm.setBranchPredictor(strategy));
+			branchPredictor.getItems().add(item);
+		}
+
+		CheckMenuItem toggleForwarding = new CheckMenuItem("Forwarding?");
+		toggleForwarding.setDisable(!cpu.isPipelined());
+		toggleForwarding.setSelected(wm.isForwarding());
+		toggleForwarding.setOnAction(e -> wm.setForwarding(toggleForwarding.isSelected()));
+
+		CheckMenuItem toggleFiveStage = new CheckMenuItem("Five Stage Pipeline?");
+		toggleFiveStage.setDisable(!cpu.isPipelined() || cpu.isRunning());
+		toggleFiveStage.setSelected(wm.isFiveStage());
+		toggleFiveStage.setOnAction(e -> wm.setFiveStage(toggleFiveStage.isSelected()));
+
+		CheckMenuItem toggleMemoryPort = new CheckMenuItem("Single Memory Port?");
+		toggleMemoryPort.setDisable(!(cpu instanceof CPUFiveStagePipeline));
+		toggleMemoryPort.setSelected(wm.isSingleMemoryPort());
+		toggleMemoryPort.setOnAction(e -> wm.setSingleMemoryPort(toggleMemoryPort.isSelected()));
+
+		CheckMenuItem toggleCaches = new CheckMenuItem("Simulate Caches?");
+		toggleCaches.setSelected(wm.isCachesEnabled());
+		toggleCaches.setOnAction(e -> wm.setCachesEnabled(toggleCaches.isSelected()));
+
 		CheckMenuItem toggleAnnotations = new CheckMenuItem("Annotations Enabled?");
 		toggleAnnotations.setSelected(wm.getAnnotationManager().isEnabled());
 		toggleAnnotations.setOnAction(e -> wm.getAnnotationManager().setEnabled(toggleAnnotations.isSelected()));
 
+		CheckMenuItem toggleAsyncAnnotations = new CheckMenuItem("Asynchronous Annotations?");
+		toggleAsyncAnnotations.setDisable(cpu.isRunning());
+		toggleAsyncAnnotations.setSelected(wm.getAnnotationManager().isAsynchronous());
+		toggleAsyncAnnotations.setOnAction(e -> wm.getAnnotationManager().setAsynchronous(toggleAsyncAnnotations.isSelected(),
+				(int) wm.getSettings().get("simulation.annotation-max-lag")));
+
+		CheckMenuItem toggleRunAhead = new CheckMenuItem("Run Ahead?");
+		toggleRunAhead.setDisable(cpu.isRunning());
+		toggleRunAhead.setSelected(wm.isRunAhead());
+		toggleRunAhead.setOnAction(e -> wm.setRunAhead(toggleRunAhead.isSelected()));
+
 		MenuItem setClockSpeed = new MenuItem("Set Clock Speed");
 		setClockSpeed.setOnAction(e -> {
 			double currentRounded = Double.parseDouble(String.format("%.5f", cpu.getCycleFreq()));
@@ -380,7 +443,7 @@ public class MainMenuBar extends MenuBar {
 			});
 		});
 
-		runMenu.getItems().addAll(assembleAndRun, new SeparatorMenuItem(), pauseResume, singleStep, stop, new SeparatorMenuItem(), togglePipeline, toggleAnnotations, setClockSpeed);
+		runMenu.getItems().addAll(assembleAndRun, new SeparatorMenuItem(), pauseResume, singleStep, stop, skipToEnd, fastForward, new SeparatorMenuItem(), togglePipeline, branchPredictor, toggleForwarding, toggleFiveStage, toggleMemoryPort, toggleCaches, toggleAnnotations, toggleAsyncAnnotations, toggleRunAhead, setClockSpeed);
 	}
 
 	/**
@@ -523,10 +586,32 @@ public class MainMenuBar extends MenuBar {
 			replThread.start();
 		});
 
+		// record a timeline of the simulation (and the threads it waits for) to view in a trace viewer
+		CheckMenuItem trace = new CheckMenuItem("Record Trace");
+		trace.setSelected(Tracer.isEnabled());
+		trace.setOnAction(e -> {
+			if (trace.isSelected()) {
+				Tracer.start(Tracer.DEFAULT_CAPACITY);
+				return;
+			}
+			Tracer.stop();
+			File saveFile = UIUtils.saveFileSelector("Save trace (Chrome Trace Event JSON)", wm.getPrimaryStage(), ".", new ExtensionFilter("JSON Files *.json", "*.json"));
+			if (saveFile != null) {
+				if (!saveFile.getName().endsWith(".json"))
+					saveFile = new File(saveFile.getAbsolutePath() + ".json");
+				try {
+					Tracer.save(saveFile);
+					System.out.println("Trace of " + Tracer.getSpanCount() + " spans saved to: \"" + saveFile + "\"");
+				} catch (IOException ex) {
+					UIUtils.showExceptionDialog(ex);
+				}
+			}
+		});
+
 		Menu themes = new Menu("Themes");
 		themeMenu(themes);
 
-		debugMenu.getItems().addAll(dumpProgram, runSpim, jsREPL, themes);
+		debugMenu.getItems().addAll(dumpProgram, runSpim, jsREPL, trace, themes);
 		return debugMenu;
 	}
 
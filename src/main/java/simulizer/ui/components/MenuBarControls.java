@@ -70,6 +70,8 @@ class MenuBarControls {
 	private final double lgClockSpeedMax = Math.log(5000);
 	private long lastClockSpeedSetTime;
 	private final Label clockSpeedLabel;
+	private final Label measuredSpeedLabel;
+	private final CheckBox autoSpeed;
 
 
 	MenuBarControls(MainMenuBar menu, WindowManager wm) {
@@ -122,6 +124,16 @@ class MenuBarControls {
 		clockSpeedLabelMenu.setStyle("-fx-padding:4px 5px 0px 0px;-fx-background-color:null;");
 		clockSpeedLabel.setStyle("-fx-text-fill: black;");
 
+		Menu measuredSpeedMenu = new Menu();
+		measuredSpeedLabel = new Label();
+		measuredSpeedMenu.setGraphic(measuredSpeedLabel);
+		measuredSpeedMenu.setStyle("-fx-padding:4px 5px 0px 0px;-fx-background-color:null;");
+
+		Menu autoSpeedMenu = new Menu();
+		autoSpeed = new CheckBox("Auto");
+		autoSpeedMenu.setGraphic(autoSpeed);
+		autoSpeedMenu.setStyle("-fx-padding:4px 5px 0px 0px;-fx-background-color:null;");
+
 
 		lastClockSpeedSetTime = 0;
 		Menu clockSpeedSliderMenu = new Menu();
@@ -139,7 +151,11 @@ class MenuBarControls {
 		setSliderToMatch(cpu.getCycleFreq());
 		clockSpeedSliderMenu.setStyle("-fx-padding:4px 5px 0px 0px;-fx-background-color:null;");
 
-		menu.getMenus().addAll(spacer, pausePlayMenu, resumeSingleMenu, stopMenu, clockSpeedSliderMenu, clockSpeedLabelMenu);
+		// measures the speed for as long as the label is showing
+		new SpeedMonitor(wm, measuredSpeedLabel, autoSpeed, Math.exp(lgClockSpeedMin), Math.exp(lgClockSpeedMax));
+
+		menu.getMenus().addAll(spacer, pausePlayMenu, resumeSingleMenu, stopMenu, clockSpeedSliderMenu, clockSpeedLabelMenu,
+				measuredSpeedMenu, autoSpeedMenu);
 	}
 
 	private Menu createButtonMenu(Button b) {
@@ -223,7 +239,7 @@ class MenuBarControls {
 
 	private void resumeSingleClicked() {
 		if(cpu != null && cpu.isPaused())
-			cpu.resumeForOneCycle();
+			wm.singleStep();
 	}
 
 	private void stopClicked() {
@@ -244,6 +260,7 @@ class MenuBarControls {
 			val = Math.exp(lgClockSpeedMin + scale * val);
 			cpu.setCycleFreq(val);
 			lastClockSpeedSetTime = currentTime;
+			autoSpeed.setSelected(false); // the user has chosen a speed
 		}
 	}
 
@@ -253,10 +270,6 @@ class MenuBarControls {
 		clockSpeedSlider.valueProperty().removeListener(sliderListener);
 		clockSpeedSlider.setValue(sliderVal);
 		clockSpeedSlider.valueProperty().addListener(sliderListener);
-		if(cyclesPerSecond < 200 || Double.isInfinite(cyclesPerSecond)) {
-			clockSpeedLabel.setText(String.format("%.3f", cyclesPerSecond) + " Hz");
-		} else {
-			clockSpeedLabel.setText(String.format("%.1f", cyclesPerSecond/1000) + " kHz");
-		}
+		clockSpeedLabel.setText(SpeedMonitor.formatFreq(cyclesPerSecond));
 	}
 }
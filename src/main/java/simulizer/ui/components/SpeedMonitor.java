@@ -0,0 +1,214 @@
+package simulizer.ui.components;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.util.Duration;
+import simulizer.simulation.cpu.CPUMetrics;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.ui.WindowManager;
+
+/**
+ * Measures the clock speed the simulation actually reaches (which can be much lower than the requested speed when the
+ * listeners, annotations or UI are slow) and shows where the time went. Optionally adjusts the requested clock speed
+ * to the highest speed which can be sustained.
+ *
+ * The simulation thread either works (fetch, decode, execute), waits for the listeners to handle its messages, waits
+ * for the UI (or asynchronous annotations) to catch up, or waits for the next tick of the clock. The last is idle time,
+ * so the requested speed could be higher.
+ */
+class SpeedMonitor {
+	/**
+	 * how often the speed is measured (seconds)
+	 */
+	private static final double SAMPLE_PERIOD = 0.5;
+	/**
+	 * the number of cycles a measurement should span for it to be trusted (at low speeds measurements take longer)
+	 */
+	private static final int MIN_SAMPLE_CYCLES = 10;
+	private static final double MAX_SAMPLE_PERIOD = 5;
+	/**
+	 * the simulation is lagging if it reaches less than this proportion of the requested speed
+	 */
+	private static final double LAG_THRESHOLD = 0.9;
+	/**
+	 * in automatic mode, speed up when the simulation is idle for more than this proportion of the time
+	 */
+	private static final double HEADROOM_THRESHOLD = 0.25;
+	private static final double SPEED_UP = 1.25;
+	private static final double SLOW_DOWN = 0.9;
+
+	/**
+	 * the totals at the start of a measurement
+	 */
+	private static class Sample {
+		final CPU cpu;
+		final long time = System.nanoTime();
+		final long cycles;
+		final double messagingMs, uiWaitMs, clockWaitMs, annotationMs;
+		final long frameNanos;
+
+		Sample(CPU cpu, long frameNanos) {
+			this.cpu = cpu;
+			CPUMetrics m = cpu.getMetrics();
+			cycles = cpu.getCycles();
+			messagingMs = m.getWaitForAllMillis();
+			uiWaitMs = m.getTickBarrierMillis();
+			clockWaitMs = m.getClockWaitMillis();
+			annotationMs = m.getAnnotationMillis();
+			this.frameNanos = frameNanos;
+		}
+	}
+
+	private final WindowManager wm;
+	private final Label label;
+	private final Tooltip breakdown;
+	private final CheckBox auto;
+	private final double minFreq, maxFreq;
+	private final Timeline timer;
+
+	private Sample start = null;
+
+	/**
+	 * @param label
+	 *            where to show the measured speed
+	 * @param auto
+	 *            whether the speed should be adjusted automatically
+	 * @param minFreq
+	 *            the slowest speed to choose automatically
+	 * @param maxFreq
+	 *            the fastest speed to choose automatically
+	 */
+	SpeedMonitor(WindowManager wm, Label label, CheckBox auto, double minFreq, double maxFreq) {
+		this.wm = wm;
+		this.label = label;
+		this.auto = auto;
+		this.minFreq = minFreq;
+		this.maxFreq = maxFreq;
+
+		breakdown = new Tooltip();
+		auto.setTooltip(new Tooltip("Automatically choose the fastest clock speed which the current visualisations can keep up with"));
+
+		timer = new Timeline(new KeyFrame(Duration.seconds(SAMPLE_PERIOD), e -> sample()));
+		timer.setCycleCount(Animation.INDEFINITE);
+		// only measure while the label is showing (a menu bar is created for each extracted window, and discarded with
+		// it)
+		label.sceneProperty().addListener((obs, oldScene, newScene) -> {
+			if (newScene == null) {
+				timer.stop();
+				clear();
+			} else {
+				timer.play();
+			}
+		});
+		if (label.getScene() != null)
+			timer.play();
+	}
+
+	private void clear() {
+		start = null;
+		label.setText("");
+		label.setTooltip(null);
+	}
+
+	/**
+	 * measure the speed since the last sample. Called from the JavaFX thread
+	 */
+	private void sample() {
+		CPU cpu = wm.getCPU();
+		long frameNanos = wm.getFrameScheduler().getFrameNanos();
+		if (cpu == null || !cpu.isRunning() || cpu.isPaused()) {
+			clear();
+			return;
+		}
+
+		Sample end = new Sample(cpu, frameNanos);
+		if (start == null || start.cpu != cpu || end.cycles < start.cycles) {
+			start = end; // a new simulation
+			return;
+		}
+
+		double elapsed = (end.time - start.time) / 1e9;
+		double requested = cpu.getCycleFreq();
+		long cycles = end.cycles - start.cycles;
+		if (cycles < MIN_SAMPLE_CYCLES && elapsed < MAX_SAMPLE_PERIOD && requested * elapsed < MIN_SAMPLE_CYCLES)
+			return; // too few cycles to measure yet
+
+		double measured = cycles / elapsed;
+		double elapsedMs = elapsed * 1000;
+		double messaging = (end.messagingMs - start.messagingMs) / elapsedMs;
+		double uiWait = (end.uiWaitMs - start.uiWaitMs) / elapsedMs;
+		double idle = (end.clockWaitMs - start.clockWaitMs) / elapsedMs;
+		double annotations = (end.annotationMs - start.annotationMs) / elapsedMs;
+		double frames = (end.frameNanos - start.frameNanos) / 1e6 / elapsedMs;
+		double simulation = Math.max(0, 1 - messaging - uiWait - idle);
+		start = end;
+
+		// when running ahead, waiting for the UI to play back the recorded cycles is idle time too
+		double headroom = wm.isRunAhead() ? idle + uiWait : idle;
+		boolean unlimited = requested == 0 || cpu.isRunAhead() && !wm.isRunAhead();
+		boolean lagging = !unlimited && isLagging(requested, measured);
+
+		label.setText("(measured " + formatFreq(measured) + ")");
+		label.setStyle(lagging ? "-fx-text-fill: #c00000;" : "-fx-text-fill: #505050;");
+		breakdown.setText(String.format("Requested: %s\nMeasured: %s\n\n" +
+				"Time spent by the simulation thread:\n" +
+				"  simulating: %.0f%%\n" +
+				"  waiting for messages to be handled: %.0f%% (annotations: %.0f%%)\n" +
+				"  waiting for the UI to catch up: %.0f%%\n" +
+				"  idle (keeping to the clock speed): %.0f%%\n\n" +
+				"JavaFX thread busy refreshing the UI: %.0f%%",
+				unlimited ? "as fast as possible" : formatFreq(requested), formatFreq(measured),
+				simulation * 100, messaging * 100, annotations * 100, uiWait * 100, idle * 100, frames * 100));
+		label.setTooltip(breakdown);
+
+		if (auto.isSelected() && !unlimited) {
+			double freq = chooseFreq(requested, measured, headroom, minFreq, maxFreq);
+			if (freq != requested)
+				cpu.setCycleFreq(freq); // the slider is updated when the CPU reports the new speed
+		}
+	}
+
+	/**
+	 * @return whether the simulation is failing to keep up with the requested (limited) speed
+	 */
+	static boolean isLagging(double requested, double measured) {
+		return measured < requested * LAG_THRESHOLD;
+	}
+
+	/**
+	 * Chooses the clock speed in automatic mode: slower than the measured speed if the simulation is lagging, faster
+	 * if it spends enough of its time idle, otherwise unchanged
+	 *
+	 * @param requested
+	 *            the current (limited) clock speed
+	 * @param measured
+	 *            the speed the simulation reached
+	 * @param headroom
+	 *            the proportion of the time the simulation was idle
+	 * @param minFreq
+	 *            the slowest speed to choose
+	 * @param maxFreq
+	 *            the fastest speed to choose
+	 * @return the new clock speed (requested if it should not change)
+	 */
+	static double chooseFreq(double requested, double measured, double headroom, double minFreq, double maxFreq) {
+		if (isLagging(requested, measured))
+			return Math.max(minFreq, measured * SLOW_DOWN);
+		else if (headroom > HEADROOM_THRESHOLD)
+			return Math.min(maxFreq, requested * SPEED_UP);
+		else
+			return requested;
+	}
+
+	static String formatFreq(double cyclesPerSecond) {
+		if (cyclesPerSecond < 200 || Double.isInfinite(cyclesPerSecond)) {
+			return String.format("%.3f", cyclesPerSecond) + " Hz";
+		} else {
+			return String.format("%.1f", cyclesPerSecond / 1000) + " kHz";
+		}
+	}
+}
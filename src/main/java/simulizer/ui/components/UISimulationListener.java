@@ -1,12 +1,7 @@
 package simulizer.ui.components;
 
-import java.util.Map;
-
 import javafx.application.Platform;
 import simulizer.BuildInfo;
-import simulizer.assembler.representation.Address;
-import simulizer.assembler.representation.Program;
-import simulizer.simulation.cpu.components.CPU;
 import simulizer.simulation.cpu.user_interaction.IOStream;
 import simulizer.simulation.messages.AnnotationMessage;
 import simulizer.simulation.messages.PipelineHazardMessage;
@@ -105,36 +100,19 @@ public class UISimulationListener extends SimulationListener {
 	public void processAnnotationMessage(AnnotationMessage m) {
 		// the annotations should all be completed before moving on to the next cycle
 		count++;
+		// when running ahead, run the annotation once the display has caught up with it
+		if (wm.isRunAhead())
+			wm.getPlayback().awaitPlayback();
 		wm.getAnnotationManager().processAnnotationMessage(m);
 	}
 
-	private void highlightAddresses(Address fetch, Address decode, Address execute) {
-		final Editor editor = Editor.getEditor();
-		if(editor != null) {
-			CPU cpu = wm.getCPU();
-
-			if (cpu != null) {
-				Program p = cpu.getProgram();
-
-				if (p != null) {
-					Map<Address, Integer> lineNums = p.lineNumbers;
-
-					int fetchL = lineNums.getOrDefault(fetch, -1);
-					int decodeL = lineNums.getOrDefault(decode, -1);
-					int executeL = lineNums.getOrDefault(execute, -1);
-
-					Platform.runLater(() -> editor.highlightPipeline(fetchL, decodeL, executeL));
-				}
-			}
-		}
-	}
-
 	@Override
 	public void processPipelineStateMessage(PipelineStateMessage m) {
-		highlightAddresses(m.getFetched(), m.getDecoded(), m.getExecuted());
+		// the editor highlighting is refreshed once per frame by the FrameScheduler
 
-		// Update the pipeline model
-		PipelineView.model.processPipelineStateMessage(m);
+		// Update the pipeline model (when running ahead, the PlaybackBuffer feeds the model instead)
+		if (!wm.getCPU().isRunAhead())
+			PipelineView.model.processPipelineStateMessage(m);
 	}
 
 	@Override
@@ -144,6 +122,7 @@ public class UISimulationListener extends SimulationListener {
 
 	@Override
 	public void processPipelineHazardMessage(PipelineHazardMessage m) {
-		PipelineView.model.processHazardStateMessage(m);
+		if (!wm.getCPU().isRunAhead())
+			PipelineView.model.processHazardStateMessage(m);
 	}
 }
@@ -19,6 +19,7 @@ import javafx.beans.value.ObservableValue;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
+import simulizer.GuiMode;
 import simulizer.settings.Settings;
 import simulizer.ui.WindowManager;
 import simulizer.ui.interfaces.InternalWindow;
@@ -39,6 +40,8 @@ import simulizer.utils.UIUtils;
  */
 public class Workspace extends Observable implements Themeable {
 	private final List<InternalWindow> openWindows = new ArrayList<>();
+	// windows to open once the main window is shown (in order)
+	private final List<WindowEnum> deferredWindows = new ArrayList<>();
 	private final Pane pane = new Pane();
 	private WindowManager wm = null;
 
@@ -188,6 +191,48 @@ public class Workspace extends Observable implements Themeable {
 		return Collections.unmodifiableList(openWindows);
 	}
 
+	/**
+	 * @return whether the main window is showing (until it is, nothing in the workspace can be seen)
+	 */
+	public boolean isShowing() {
+		return wm.getPrimaryStage().isShowing();
+	}
+
+	/**
+	 * Opens an Internal Window once the main window has been shown (or straight away if it is already showing). Used
+	 * to avoid building windows while the application is starting and there is nothing to see
+	 *
+	 * @param window
+	 *            The Internal Window to open
+	 */
+	public void openWhenShown(WindowEnum window) {
+		if (isShowing())
+			openInternalWindow(window);
+		else if (!deferredWindows.contains(window))
+			deferredWindows.add(window);
+	}
+
+	/**
+	 * Forgets about the windows waiting to be opened when the main window is shown
+	 */
+	public void clearDeferredWindows() {
+		deferredWindows.clear();
+	}
+
+	/**
+	 * Opens the windows waiting for the main window to be shown, one at a time so that the main window stays
+	 * responsive while they are created
+	 */
+	public void openDeferredWindows() {
+		if (deferredWindows.isEmpty())
+			return;
+		openInternalWindow(deferredWindows.remove(0));
+		if (deferredWindows.isEmpty())
+			Platform.runLater(() -> GuiMode.startupTimer.phase("opening the rest of the windows"));
+		else
+			Platform.runLater(this::openDeferredWindows);
+	}
+
 	/**
 	 * Opens an Internal Window if it is not already open. Returns the open Internal Window if it is already open
 	 *
@@ -199,6 +244,7 @@ public class Workspace extends Observable implements Themeable {
 		InternalWindow w = findInternalWindow(window);
 		if (w != null)
 			return w;
+		deferredWindows.remove(window); // opened before the main window was shown
 
 		// Not found -> Create a new one
 		InternalWindow w2 = window.createNewWindow();
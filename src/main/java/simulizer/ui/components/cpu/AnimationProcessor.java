@@ -1,21 +1,54 @@
 package simulizer.ui.components.cpu;
 
 import simulizer.ui.components.CPU;
+import simulizer.ui.components.FrameScheduler;
 import simulizer.ui.components.cpu.listeners.CPUListener;
-import simulizer.utils.ThreadUtils;
-import simulizer.utils.UIUtils;
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Processes animations and queues them up to be run by an executor service
+ * Processes animations and runs them once per frame. How much detail is shown depends on the clock speed:
+ * <ul>
+ * <li>ANIMATED: at low clock speeds, each step of each instruction is animated (data moving along wires, with a
+ * caption)</li>
+ * <li>HIGHLIGHTED: when instructions are too quick to animate but there are only a few per frame, the parts of the
+ * datapath used since the last frame are highlighted</li>
+ * <li>UTILISATION: when there are many instructions per frame, the datapath is coloured by how often each part of it
+ * is being used</li>
+ * </ul>
+ * The simulation thread only records what should be shown (animations are queued, uses are counted) and the JavaFX
+ * thread picks them up once per frame. Neither thread waits for the other.
  * @author Theo Styles
  */
-public class AnimationProcessor {
+public class AnimationProcessor implements FrameScheduler.FrameListener {
+
+	/**
+	 * The fastest clock speed (Hz) at which each instruction is animated
+	 */
+	private static final double MAX_ANIMATED_FREQ = 2;
+	/**
+	 * The most instructions in a frame for which the datapath is highlighted rather than showing the utilisation
+	 */
+	private static final int MAX_HIGHLIGHTED_INSTRUCTIONS = 2;
+	/**
+	 * How much of the utilisation shown is carried over from the previous frame (to smooth it out)
+	 */
+	private static final double UTILISATION_DECAY = 0.8;
+	/**
+	 * How much of a highlight is left after each frame when the element is no longer used
+	 */
+	private static final double HIGHLIGHT_DECAY = 0.6;
+
+	/**
+	 * How much detail the visualisation shows
+	 */
+	public enum DetailLevel {
+		ANIMATED, HIGHLIGHTED, UTILISATION
+	}
 
 	/**
 	 * Represents an animation to be run
@@ -31,114 +64,253 @@ public class AnimationProcessor {
         }
     }
 
-    private final ScheduledExecutorService executorService;
-    private final ScheduledFuture<?> executorTask;
-    private final PriorityBlockingQueue<Animation> animationTasks;
+	/**
+	 * An animation waiting to be run
+	 */
+	private static class ScheduledAnimation {
+		final long generation; // the cycle (or replay) which the animation belongs to
+		final long dueTime; // in ms
+		final Animation animation;
+
+		ScheduledAnimation(long generation, long dueTime, Animation animation) {
+			this.generation = generation;
+			this.dueTime = dueTime;
+			this.animation = animation;
+		}
+	}
+
+	/**
+	 * A step in the animation of an instruction: which components are highlighted and which wires data moves along.
+	 * Steps describe the animation rather than running it, so that the same steps can be used to count how often each
+	 * part of the datapath is used when there isn't time to animate them. Steps are created once and then shared
+	 */
+	public static class Step {
+		private final String caption;
+		private double captionTime = 1;
+		private ComponentStackPane[] components = new ComponentStackPane[0];
+		private Wire[] wires = new Wire[0];
+
+		/**
+		 * @param caption the caption to show during the step, or null for no caption
+		 */
+		public Step(String caption) {
+			this.caption = caption;
+		}
+
+		/**
+		 * @param multiple how long to show the caption for, as a multiple of the length of the step
+		 * @return this step
+		 */
+		public Step captionTime(double multiple) {
+			captionTime = multiple;
+			return this;
+		}
+
+		/**
+		 * @param components the components to highlight during the step
+		 * @return this step
+		 */
+		public Step highlight(ComponentStackPane... components) {
+			this.components = components;
+			return this;
+		}
+
+		/**
+		 * @param wires the wires to animate data moving along during the step
+		 * @return this step
+		 */
+		public Step animate(Wire... wires) {
+			this.wires = wires;
+			return this;
+		}
+
+		private void run(CPU cpu, int speed) {
+			if (caption != null)
+				cpu.showText(caption, speed * captionTime);
+			for (ComponentStackPane c : components)
+				c.highlight();
+			for (Wire w : wires)
+				w.animateData(speed);
+		}
+
+		private void markUsed() {
+			for (ComponentStackPane c : components)
+				c.markUsed();
+			for (Wire w : wires)
+				w.markUsed();
+		}
+	}
+
+	private final ConcurrentLinkedQueue<ScheduledAnimation> animationTasks = new ConcurrentLinkedQueue<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicInteger cyclesSinceFrame = new AtomicInteger();
+	private volatile CPUListener cpuListener;
+    private CPU cpuVisualisation;
+
+	// only accessed from the simulation thread
 	private ArrayList<Animation> animationsForInstruction;
+	private long cycleGeneration;
 	private long cycleStartTime; // in ms
 	private int cycleDelay; // in ms
-	private boolean showingWarning;
-    private CPUListener cpuListener;
-    private CPU cpuVisualisation;
+
+	// only accessed from the JavaFX thread
+	private DetailLevel level = DetailLevel.ANIMATED;
+	private List<DatapathElement> datapath = Collections.emptyList();
+	private double[] heat = new double[0];
 
 	/**
-	 * Sets initial values and sets up the executor service and task
+	 * Sets initial values
 	 * @param cpuVisualisation The cpu visualisation
      */
     public AnimationProcessor(CPU cpuVisualisation){
         this.cpuVisualisation = cpuVisualisation;
-		int dispatchInterval = 20;
 
         cycleStartTime = -1;
-        showingWarning = false;
-
 		animationsForInstruction = new ArrayList<>();
-		animationTasks = new PriorityBlockingQueue<>(10, (a1, a2) -> Integer.compare(a1.delayFromCycleStart, a2.delayFromCycleStart));
-        executorService = Executors.newSingleThreadScheduledExecutor(
-                new ThreadUtils.NamedThreadFactory("CPU-Visualisation-Job-Dispatch"));
-        executorTask = executorService.scheduleAtFixedRate(
-				this::dispatchAnimationJobs, dispatchInterval, dispatchInterval, TimeUnit.MILLISECONDS);
     }
 
 	/**
-	 * Run each time there is a new cycle, resets the cycleDelay and sets the cycleStartTime
-	 * also clears the tasks if there are any left
+	 * Sets the parts of the datapath to show the activity of when instructions are too quick to animate. Called from
+	 * the JavaFX thread
+	 * @param datapath the components and wires of the visualisation
+	 */
+	public void setDatapath(List<DatapathElement> datapath) {
+		this.datapath = new ArrayList<>(datapath);
+		heat = new double[datapath.size()];
+	}
+
+	/**
+	 * @return whether instructions are slow enough to animate each step (otherwise only the use of the datapath is
+	 *         recorded)
+	 */
+	private boolean isAnimated() {
+		CPUListener listener = cpuListener;
+		return listener != null && listener.getSimCpu().getCycleFreq() <= MAX_ANIMATED_FREQ;
+	}
+
+	/**
+	 * Run each time there is a new cycle (from the simulation thread), resets the cycleDelay and sets the
+	 * cycleStartTime. Any animations left over from the previous cycle are abandoned
 	 */
-	public synchronized void newCycle() {
+	public void newCycle() {
 		cycleDelay = 0;
 		cycleStartTime = System.currentTimeMillis();
+		cycleGeneration = generation.incrementAndGet();
 		animationsForInstruction.clear();
-		if (!animationTasks.isEmpty()) {
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException e) {
-				UIUtils.showExceptionDialog(e);
+		cyclesSinceFrame.incrementAndGet();
+	}
+
+	/**
+	 * Called by the frame scheduler (on the JavaFX thread) to run any animations that are due
+	 * @param frame The latest state of the CPU
+	 */
+	@Override
+	public void onFrame(FrameScheduler.Frame frame) {
+		dispatchAnimationJobs();
+		showActivity();
+		cpuVisualisation.previousInstructions.showPending();
+	}
+
+	/**
+	 * Runs the animations which are due (never blocks)
+	 */
+	private void dispatchAnimationJobs() {
+		final long now = System.currentTimeMillis();
+		final long current = generation.get();
+
+		ScheduledAnimation next;
+		while ((next = animationTasks.peek()) != null) {
+			if (next.generation != current) {
+				// left over from an earlier cycle
+				animationTasks.poll();
+			} else if (next.dueTime <= now) {
+				animationTasks.poll();
+				next.animation.job.run();
+			} else {
+				break; // animations are queued in the order they are due
 			}
-			animationTasks.clear();
 		}
 	}
 
 	/**
-	 * Processes animations jobs
-	 */
-	private synchronized void dispatchAnimationJobs() {
-			if (!animationTasks.isEmpty()) {
-				// Are there animation jobs?
-				// Is the clock speed too fast? If so show the warning label
-				if (cpuListener.getSimCpu().getCycleFreq() > 2) {
-					animationTasks.clear();
-					if (!showingWarning) {
-						cpuVisualisation.showText("Please lower the clock speed to less than 2Hz to see animations", 1000, false);
-						showingWarning = true;
-					}
-					return;
-				}
-
-				showingWarning = false;
-
-				if (animationTasks.size() > 15) {
-					// Too many animations, remove the lower priority ones
-					ArrayList<Animation> tmp = new ArrayList<>(15);
-					animationTasks.drainTo(tmp, 15);
-					animationTasks.clear();
-					animationTasks.addAll(tmp);
-				}
-
-				// Updates the time into the cycle
-				long timeIntoCycle = System.currentTimeMillis() - cycleStartTime;
-
-				// Runs the next task when it should be run (its absolute time is lower or equal to the time into the cycle)
-				if (animationTasks.peek().delayFromCycleStart <= timeIntoCycle) {
-					animationTasks.poll().job.run();
-				}
+	 * Chooses the level of detail for this frame and shows the activity of the datapath if it is too busy to animate
+	 */
+	private void showActivity() {
+		final int cycles = cyclesSinceFrame.getAndSet(0);
+		final DetailLevel newLevel;
+		if (isAnimated())
+			newLevel = DetailLevel.ANIMATED;
+		else if (cycles == 0)
+			return; // paused or between instructions: keep showing the last activity
+		else
+			newLevel = cycles <= MAX_HIGHLIGHTED_INSTRUCTIONS ? DetailLevel.HIGHLIGHTED : DetailLevel.UTILISATION;
+
+		if (newLevel != level) {
+			level = newLevel;
+			switch (level) {
+				case ANIMATED:
+					break;
+				case HIGHLIGHTED:
+					cpuVisualisation.showText("Highlighting the parts of the datapath used by each instruction (lower the clock speed to less than " + (int) MAX_ANIMATED_FREQ + "Hz to see animations)", 3000, true);
+					break;
+				case UTILISATION:
+					cpuVisualisation.showText("Showing how much each part of the datapath is used: the redder, the busier", 3000, true);
+					break;
+			}
+		}
+
+		for (int i = 0; i < datapath.size(); i++) {
+			DatapathElement e = datapath.get(i);
+			int uses = e.takeUses();
+			switch (level) {
+				case ANIMATED:
+					heat[i] = 0;
+					break;
+				case HIGHLIGHTED:
+					heat[i] = uses > 0 ? 1 : heat[i] * HIGHLIGHT_DECAY;
+					break;
+				case UTILISATION:
+					// an element can be used more than once per cycle
+					double share = Math.min(1, (double) uses / cycles);
+					heat[i] = heat[i] * UTILISATION_DECAY + share * (1 - UTILISATION_DECAY);
+					break;
 			}
+			e.showActivity((int) Math.round(heat[i] * DatapathElement.ACTIVITY_LEVELS));
+		}
 	}
 
 	/**
 	 * Sets the cpu listener
 	 * @param cpuListener The cpu listener
      */
-    public synchronized void setCpuListener(CPUListener cpuListener){
+    public void setCpuListener(CPUListener cpuListener){
         this.cpuListener = cpuListener;
     }
 
 	/**
-	 * Shuts down the executor task and service
+	 * Abandons any outstanding animations
 	 */
     public void shutdown() {
-		executorTask.cancel(true);
-        executorService.shutdownNow();
+		animationTasks.clear();
     }
 
 	/**
-	 * Schedule several animation tasks with a fixed delay in between, and add to the previous instruction list
-	 * @param delay The speed of each animation
-	 * @param jobs The animations to run
+	 * Schedule the steps of an animation with a fixed delay in between, and add to the previous instruction list. If
+	 * the clock speed is too high to animate them, the use of the datapath is recorded instead. Called from the
+	 * simulation thread
+	 * @param delay The speed of each step
+	 * @param steps The steps to run
 	 */
-	public synchronized void scheduleRegularAnimations(int delay, Runnable... jobs) {
-		for(Runnable r : jobs) {
-			Animation animation = new Animation(cycleDelay, r);
-			animationTasks.add(animation);
+	public void scheduleSteps(int delay, Step... steps) {
+		if (!isAnimated()) {
+			for (Step s : steps)
+				s.markUsed();
+			return;
+		}
+
+		for (Step s : steps) {
+			Animation animation = new Animation(cycleDelay, () -> s.run(cpuVisualisation, delay));
+			animationTasks.add(new ScheduledAnimation(cycleGeneration, cycleStartTime + cycleDelay, animation));
 			animationsForInstruction.add(animation);
 			// Add to the overall cycleDelay (reset on each cycle)
 			cycleDelay += delay;
@@ -149,20 +321,23 @@ public class AnimationProcessor {
 	 * Adds to the previous list of instructions
 	 * @param instructionName The name of the instruction
 	 */
-	public synchronized void addToPreviousList(String instructionName){
-		// Add to the list of previous instructions
+	public void addToPreviousList(String instructionName){
+		// Only animated instructions can be replayed
+		if (!isAnimated())
+			return;
 		ArrayList<Animation> animations = new ArrayList<>();
         animations.addAll(animationsForInstruction);
-		if (!showingWarning) cpuVisualisation.previousInstructions.addInstruction(instructionName, animations);
+		cpuVisualisation.previousInstructions.addInstruction(instructionName, animations);
 	}
 
 	/**
-	 * Replays animations
+	 * Replays animations (from the JavaFX thread). Any animations still waiting to be run are abandoned
 	 * @param animations The animations to replay
      */
-	synchronized void replayAnimations(ArrayList<Animation> animations){
-		// Start a new cycle to get the timings right
-		newCycle();
-		animationTasks.addAll(animations);
+	void replayAnimations(ArrayList<Animation> animations){
+		long replay = generation.incrementAndGet();
+		long start = System.currentTimeMillis();
+		for (Animation a : animations)
+			animationTasks.add(new ScheduledAnimation(replay, start + a.delayFromCycleStart, a));
 	}
-}
\ No newline at end of file
+}
@@ -1,7 +1,8 @@
 package simulizer.ui.components.cpu;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javafx.animation.FillTransition;
-import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.CacheHint;
 import javafx.scene.control.Tooltip;
@@ -12,12 +13,20 @@ import javafx.scene.shape.Shape;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
 import simulizer.ui.windows.CPUVisualisation;
+import simulizer.utils.UIUtils;
 
 /**
  * Used to represents each component along with the label
  * @author Theo Styles
  */
-public class ComponentStackPane extends StackPane {
+public class ComponentStackPane extends StackPane implements DatapathElement {
+    private static final String[] activityStyles = new String[ACTIVITY_LEVELS + 1];
+
+    static {
+        activityStyles[0] = "";
+        for (int level = 1; level <= ACTIVITY_LEVELS; level++)
+            activityStyles[level] = "-fx-fill: " + DatapathElement.activityColor(level) + ";";
+    }
 
     private Shape shape;
     private Text text;
@@ -26,6 +35,8 @@ public class ComponentStackPane extends StackPane {
     private double width;
     private double height;
     private CPUVisualisation vis;
+    private final AtomicInteger uses = new AtomicInteger();
+    private int activity = 0;
 
     /**
      * Sets the visualisation and sets up the label
@@ -129,11 +140,12 @@ public class ComponentStackPane extends StackPane {
     }
 
     /**
-     * Sets the component label
+     * Sets the component label. Must be called from the JavaFX thread
      * @param label The component label
      */
     public void setLabel(String label){
-        Platform.runLater(() -> text.setText(label));
+        UIUtils.assertFXThread();
+        text.setText(label);
     }
 
     /**
@@ -167,15 +179,15 @@ public class ComponentStackPane extends StackPane {
     }
 
     /**
-     * Highlights the shape to a red colour and back
+     * Highlights the shape to a red colour and back. Must be called from the JavaFX thread (animation steps are run
+     * by the frame scheduler)
      */
     public void highlight(){
-        Platform.runLater(() -> {
-			FillTransition ft = new FillTransition(Duration.millis(100), shape, Color.valueOf("#1e3c72"), Color.RED);
-			ft.setCycleCount(2);
-			ft.setAutoReverse(true);
-			ft.play();
-		});
+        UIUtils.assertFXThread();
+        FillTransition ft = new FillTransition(Duration.millis(100), shape, Color.valueOf("#1e3c72"), Color.RED);
+        ft.setCycleCount(2);
+        ft.setAutoReverse(true);
+        ft.play();
     }
 
     /**
@@ -201,4 +213,21 @@ public class ComponentStackPane extends StackPane {
 
     }
 
-}
\ No newline at end of file
+    @Override
+    public void markUsed() {
+        uses.incrementAndGet();
+    }
+
+    @Override
+    public int takeUses() {
+        return uses.getAndSet(0);
+    }
+
+    @Override
+    public void showActivity(int level) {
+        if (level != activity && shape != null) {
+            activity = level;
+            shape.setStyle(activityStyles[level]);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package simulizer.ui.components.cpu;
+
+/**
+ * A part of the CPU visualisation which is used by instructions (a component or a wire). At clock speeds too high to
+ * animate each instruction, the simulation thread counts how many times each element is used and the animation
+ * processor shows how busy each element has been once per frame.
+ */
+public interface DatapathElement {
+	/**
+	 * Records that an instruction used this element. Called from the simulation thread
+	 */
+	void markUsed();
+
+	/**
+	 * @return the number of times the element has been used since the last call
+	 */
+	int takeUses();
+
+	/**
+	 * Shows how busy the element is. Called from the JavaFX thread
+	 *
+	 * @param level
+	 *            between 0 (idle, drawn normally) and ACTIVITY_LEVELS (used by every instruction)
+	 */
+	void showActivity(int level);
+
+	/**
+	 * The number of distinct levels of activity which are shown
+	 */
+	int ACTIVITY_LEVELS = 8;
+
+	/**
+	 * @param level
+	 *            the level of activity (between 1 and ACTIVITY_LEVELS)
+	 * @return the colour to draw an element with the given level of activity as a CSS colour
+	 */
+	static String activityColor(int level) {
+		// from the normal wire colour (#1e3c72) to red
+		double t = (double) level / ACTIVITY_LEVELS;
+		int r = (int) (0x1e + t * (0xff - 0x1e));
+		int g = (int) (0x3c * (1 - t));
+		int b = (int) (0x72 * (1 - t));
+		return String.format("#%02x%02x%02x", r, g, b);
+	}
+}
@@ -1,6 +1,8 @@
 package simulizer.ui.components.cpu;
 
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -21,7 +23,13 @@ import javafx.scene.text.Font;
  */
 public class InstructionsWindow extends StackPane {
 
+    private static final int MAX_INSTRUCTIONS = 10;
+
     private ObservableList<PreviousAnimation> instructions;
+    /**
+     * instructions added by the simulation thread since the last frame (newest last)
+     */
+    private final ConcurrentLinkedDeque<PreviousAnimation> pending = new ConcurrentLinkedDeque<>();
 
     /**
      * Represents a previous animation, contains the name and list of animations
@@ -101,16 +109,26 @@ public class InstructionsWindow extends StackPane {
     }
 
     /**
-     * Adds an instruction to the list
+     * Adds an instruction to the list. The list is updated by the next frame (see showPending)
      * @param name The instruction name to use for the label
      * @param animations The animations for the cell
      */
     void addInstruction(String name, ArrayList<AnimationProcessor.Animation> animations){
-        Platform.runLater(() -> {
-            instructions.add(0, new PreviousAnimation(name, animations));
-            if(instructions.size() > 10)
-                instructions.remove(instructions.size() - 1);
-        });
+        pending.addLast(new PreviousAnimation(name, animations));
+        // only the newest instructions can be shown
+        while(pending.size() > MAX_INSTRUCTIONS)
+            pending.pollFirst();
+    }
+
+    /**
+     * Shows the instructions added since the last frame. Called by the frame scheduler (on the JavaFX thread)
+     */
+    void showPending(){
+        PreviousAnimation a;
+        while((a = pending.pollFirst()) != null)
+            instructions.add(0, a);
+        if(instructions.size() > MAX_INSTRUCTIONS)
+            instructions.remove(MAX_INSTRUCTIONS, instructions.size());
     }
 
     /**
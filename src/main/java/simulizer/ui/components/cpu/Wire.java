@@ -1,7 +1,6 @@
 package simulizer.ui.components.cpu;
 
 import javafx.animation.PathTransition;
-import javafx.application.Platform;
 import javafx.scene.CacheHint;
 import javafx.scene.Group;
 import javafx.scene.shape.Circle;
@@ -13,12 +12,22 @@ import javafx.util.Duration;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import simulizer.utils.UIUtils;
 
 /**
  * Represents a wire in the cpu visualisation
  * @author Theo Styles
  */
-public class Wire extends Group {
+public class Wire extends Group implements DatapathElement {
+	private static final String[] activityStyles = new String[ACTIVITY_LEVELS + 1];
+
+	static {
+		activityStyles[0] = "";
+		for (int level = 1; level <= ACTIVITY_LEVELS; level++)
+			activityStyles[level] = "-fx-stroke: " + DatapathElement.activityColor(level) + "; -fx-stroke-width: " + (1 + level / 2) + ";";
+	}
 
 	/**
 	 * The type of wire e.g horizontal or vertical
@@ -37,6 +46,8 @@ public class Wire extends Group {
 	private boolean animating;
 	private boolean reverse;
 	private List<PathTransition> transitions;
+	private final AtomicInteger uses = new AtomicInteger();
+	private int activity = 0;
 
 	/**
 	 * Sets up a new wire
@@ -140,43 +151,61 @@ public class Wire extends Group {
 	}
 
 	/**
-	 * Animates data along the wire
+	 * Animates data along the wire. Must be called from the JavaFX thread (animation steps are run by the frame
+	 * scheduler)
 	 * @param animTime The time for the animation to complete in
      */
 	public void animateData(double animTime) {
-        final Wire self = this;
-		Platform.runLater(() -> {
-			animating = true;
-			PathTransition pathTransition = new PathTransition();
-			time = animTime;
-
-			transitions.add(pathTransition);
+		UIUtils.assertFXThread();
+		animating = true;
+		PathTransition pathTransition = new PathTransition();
+		time = animTime;
 
-			pathTransition.setDuration(Duration.millis(time));
-			Circle data = new Circle(0, 0, 7.5);
-			data.getStyleClass().addAll("cpu-data");
-			pathTransition.setNode(data);
-			pathTransition.setPath(path);
-			pathTransition.setOrientation(PathTransition.OrientationType.ORTHOGONAL_TO_TANGENT);
-			pathTransition.setCycleCount(1);
-			pathTransition.setAutoReverse(false);
+		transitions.add(pathTransition);
 
-			data.setCache(true);
+		pathTransition.setDuration(Duration.millis(time));
+		Circle data = new Circle(0, 0, 7.5);
+		data.getStyleClass().addAll("cpu-data");
+		pathTransition.setNode(data);
+		pathTransition.setPath(path);
+		pathTransition.setOrientation(PathTransition.OrientationType.ORTHOGONAL_TO_TANGENT);
+		pathTransition.setCycleCount(1);
+		pathTransition.setAutoReverse(false);
 
-			toFront();
+		data.setCache(true);
 
-			getChildren().add(data);
-			pathTransition.play();
+		toFront();
 
-			pathTransition.setOnFinished(event -> {
-				getChildren().remove(data);
-				transitions.remove(pathTransition);
-			});
+		getChildren().add(data);
+		pathTransition.play();
 
-			synchronized (self) {
-				progressed++;
-			}
+		pathTransition.setOnFinished(event -> {
+			getChildren().remove(data);
+			transitions.remove(pathTransition);
 		});
+
+		synchronized (this) {
+			progressed++;
+		}
+	}
+
+	@Override
+	public void markUsed() {
+		uses.incrementAndGet();
+	}
+
+	@Override
+	public int takeUses() {
+		return uses.getAndSet(0);
+	}
+
+	@Override
+	public void showActivity(int level) {
+		if (level != activity) {
+			activity = level;
+			line.setStyle(activityStyles[level]);
+			arrowHead.setStyle(activityStyles[level]);
+		}
 	}
 
 }
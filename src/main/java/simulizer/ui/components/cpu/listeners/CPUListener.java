@@ -1,11 +1,15 @@
 package simulizer.ui.components.cpu.listeners;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import simulizer.assembler.representation.Instruction;
 import simulizer.simulation.cpu.components.CPU;
 import simulizer.simulation.messages.DataMovementMessage;
 import simulizer.simulation.messages.SimulationListener;
 import simulizer.simulation.messages.StageEnterMessage;
 import simulizer.ui.components.cpu.AnimationProcessor;
+import simulizer.ui.components.cpu.AnimationProcessor.Step;
 
 /**
  * Handles communication between the CPU simulation and animation processor
@@ -18,6 +22,11 @@ public class CPUListener extends SimulationListener {
     private Instruction currentInstruction;
     private AnimationProcessor animationProcessor;
 
+    // the animations are described once and reused (only accessed from the simulation thread)
+    private final Map<Instruction, Step[]> instructionSteps = new EnumMap<>(Instruction.class);
+    private Step[] fetchSteps;
+    private Step[] decodeSteps;
+
     /**
      * Sets the visualisation cpu, cpu simulation and the animation processor
      * @param cpu The visualised CPU
@@ -73,8 +82,21 @@ public class CPUListener extends SimulationListener {
      */
     private void processInstruction(Instruction instruction) {
         if(instruction == null) return;
+        Step[] steps = instructionSteps.computeIfAbsent(instruction, this::createSteps);
+        if(steps.length == 0) return; // not animated
+
+        animationProcessor.scheduleSteps(getInstructionFraction(steps.length), steps);
+        animationProcessor.addToPreviousList(instruction.toString());
+    }
+
+    /**
+     * Describes the animation of an instruction
+     * @param instruction The instruction
+     * @return the steps of the animation (empty if the instruction isn't animated)
+     */
+    private Step[] createSteps(Instruction instruction) {
         String instructionName = instruction.toString();
-        switch(instruction) { //TODO: switch is not exhaustive. Add a default case as well.
+        switch(instruction) {
             case beq:
             case beqz:
             case bgtz:
@@ -91,198 +113,89 @@ public class CPUListener extends SimulationListener {
             case bgtu:
             case blt:
             case bltu:
-            {
-                int speed = getInstructionFraction(6);
-
-                Runnable t1 = () -> {
-                    cpu.showText("BRANCH INSTRUCTION - Step 1 - Register operands are read and 16-bit immediate is sign extended", speed);
-                    cpu.ir.highlight();
-                    cpu.irToRegister1.animateData(speed);
-                    cpu.irToRegister2.animateData(speed);
-                    cpu.irToSignExtender.animateData(speed);
-                };
-
-                Runnable t2 = () -> {
-                        cpu.showText("BRANCH INSTRUCTION - Step 2 - Register operands are subtracted and 16-bit immediate is shifted left 2 bits",speed);
-                        cpu.register.highlight();
-                        cpu.signExtender.highlight();
-                        cpu.registerToALU1.animateData(speed);
-                        cpu.registerToALU2.animateData(speed);
-                        cpu.signExtenderToShift.animateData(speed);
-                };
-
-                Runnable t3 = () -> {
-                        cpu.showText("BRANCH INSTRUCTION - Step 3 - 4 is added to PC value, so it's ready to be added to the offset", speed);
-                        cpu.pcToPlusFour.animateData(speed);
-                };
-
-                Runnable t4 = () -> {
-                        cpu.showText("BRANCH INSTRUCTION - Step 4 - Next instructions address is calculated (assuming should branch)", speed);
-                        cpu.shiftToAdder.animateData(speed);
-                        cpu.plusFourToAdder.animateData(speed);
-                };
-
-                Runnable t5 = () -> {
-                        cpu.showText("BRANCH INSTRUCTION - Step 5 - (PC + 4) and (PC + offset) are fed into the mux with the alu result, this decides the next value of the PC", speed);
-
-                        cpu.alu.highlight();
-                        cpu.adder.highlight();
-                        cpu.aluToMux.animateData(speed);
-                        cpu.adderToMux.animateData(speed);
-                        cpu.plusFourToMux.animateData(speed);
+                return new Step[] {
+                    new Step("BRANCH INSTRUCTION - Step 1 - Register operands are read and 16-bit immediate is sign extended")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToRegister1, cpu.irToRegister2, cpu.irToSignExtender),
+                    new Step("BRANCH INSTRUCTION - Step 2 - Register operands are subtracted and 16-bit immediate is shifted left 2 bits")
+                        .highlight(cpu.register, cpu.signExtender)
+                        .animate(cpu.registerToALU1, cpu.registerToALU2, cpu.signExtenderToShift),
+                    new Step("BRANCH INSTRUCTION - Step 3 - 4 is added to PC value, so it's ready to be added to the offset")
+                        .animate(cpu.pcToPlusFour),
+                    new Step("BRANCH INSTRUCTION - Step 4 - Next instructions address is calculated (assuming should branch)")
+                        .animate(cpu.shiftToAdder, cpu.plusFourToAdder),
+                    new Step("BRANCH INSTRUCTION - Step 5 - (PC + 4) and (PC + offset) are fed into the mux with the alu result, this decides the next value of the PC")
+                        .highlight(cpu.alu, cpu.adder)
+                        .animate(cpu.aluToMux, cpu.adderToMux, cpu.plusFourToMux),
+                    new Step("BRANCH INSTRUCTION - Step 6 - Next PC value is updated")
+                        .highlight(cpu.muxAdder)
+                        .animate(cpu.muxToPC)
                 };
-
-                Runnable t6 = () -> {
-                        cpu.showText("BRANCH INSTRUCTION - Step 6 - Next PC value is updated", speed);
-                        cpu.muxAdder.highlight();
-                        cpu.muxToPC.animateData(speed);
-                };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3, t4, t5, t6);
-                animationProcessor.addToPreviousList(instructionName);
-            }   break;
             case sw:
-            {
-                int speed = getInstructionFraction(3);
-
-                Runnable t1 = () -> {
-                        cpu.showText("SW INSTRUCTION - Step 1 - ReadReg and WriteReg are selected and 16-bit immediate is sign extended", speed);
-                        cpu.ir.highlight();
-                        cpu.irToRegister1.animateData(speed);
-                        cpu.irToRegister3.animateData(speed);
-                        cpu.irToSignExtender.animateData(speed);
+                return new Step[] {
+                    new Step("SW INSTRUCTION - Step 1 - ReadReg and WriteReg are selected and 16-bit immediate is sign extended")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToRegister1, cpu.irToRegister3, cpu.irToSignExtender),
+                    new Step("SW INSTRUCTION - Step 2 - ALU computes sum of base address and sum extended offset")
+                        .highlight(cpu.register, cpu.signExtender)
+                        .animate(cpu.registerToALU1, cpu.signExtenderToALU),
+                    new Step("SW INSTRUCTION - Step 3 - Word is written to memory")
+                        .highlight(cpu.alu)
+                        .animate(cpu.aluToMemory)
                 };
-
-                Runnable t2 = () -> {
-                        cpu.showText("SW INSTRUCTION - Step 2 - ALU computes sum of base address and sum extended offset", speed);
-                        cpu.register.highlight();
-                        cpu.signExtender.highlight();
-                        cpu.registerToALU1.animateData(speed);
-                        cpu.signExtenderToALU.animateData(speed);
-                };
-
-                Runnable t3 = () -> {
-                        cpu.showText("SW INSTRUCTION - Step 3 - Word is written to memory", speed);
-                        cpu.alu.highlight();
-                        cpu.aluToMemory.animateData(speed);
-                };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3);
-                animationProcessor.addToPreviousList(instructionName);
-            }   break;
             case j:
-            {
-                int speed = getInstructionFraction(4);
-
-                Runnable t1 = () -> {
-                        cpu.showText("JUMP INSTRUCTION - Step 1 - 26 bit immediate is shifted left 2 bits", speed);
-                        cpu.ir.highlight();
-                        cpu.irToShift.animateData(speed);
-                };
-
-                Runnable t2 = () -> {
-                        cpu.showText("JUMP INSTRUCTION - Step 2 - PC + 4 is calculated", speed);
-                        cpu.programCounter.highlight();
-                        cpu.pcToPlusFour.animateData(speed);
-                };
-
-                Runnable t3 = () -> {
-                        cpu.showText("JUMP INSTRUCTION - Step 3 - PC + 4 is combined with the 28 bit immediate", speed);
-                        cpu.plusFour.highlight();
-                        cpu.shiftLeftIR.highlight();
-                        cpu.plusFourToMuxWithShift.animateData(speed);
-                        cpu.shiftToMux.animateData(speed);
-                };
-
-                Runnable t4 = () -> {
-                        cpu.showText("JUMP INSTRUCTION - Step 4 - PC value is updated to (PC + 4 + immediate)", speed);
-                        cpu.muxAdder.highlight();
-                        cpu.muxToPC.animateData(speed);
+                return new Step[] {
+                    new Step("JUMP INSTRUCTION - Step 1 - 26 bit immediate is shifted left 2 bits")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToShift),
+                    new Step("JUMP INSTRUCTION - Step 2 - PC + 4 is calculated")
+                        .highlight(cpu.programCounter)
+                        .animate(cpu.pcToPlusFour),
+                    new Step("JUMP INSTRUCTION - Step 3 - PC + 4 is combined with the 28 bit immediate")
+                        .highlight(cpu.plusFour, cpu.shiftLeftIR)
+                        .animate(cpu.plusFourToMuxWithShift, cpu.shiftToMux),
+                    new Step("JUMP INSTRUCTION - Step 4 - PC value is updated to (PC + 4 + immediate)")
+                        .highlight(cpu.muxAdder)
+                        .animate(cpu.muxToPC)
                 };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3, t4);
-                animationProcessor.addToPreviousList(instructionName);
-            }   break;
             case jal:
             case jalr:
-            {
-                int speed = getInstructionFraction(5);
-
-                Runnable t1 = () -> {
-                        cpu.showText("JAL INSTRUCTION - Step 1 - 26 bit immediate is shifted left 2 bits", speed);
-                        cpu.ir.highlight();
-                        cpu.irToShift.animateData(speed);
-                };
-
-                Runnable t2 = () -> {
-                        cpu.showText("JAL INSTRUCTION - Step 2 - PC + 4 is calculated", speed);
-                        cpu.programCounter.highlight();
-                        cpu.pcToPlusFour.animateData(speed);
-                };
-
-                Runnable t3 = () -> {
-                        cpu.showText("JAL INSTRUCTION - Step 3 - PC + 4 is combined with the 28 bit immediate", speed);
-                        cpu.plusFour.highlight();
-                        cpu.shiftLeftIR.highlight();
-                        cpu.plusFourToMuxWithShift.animateData(speed);
-                        cpu.shiftToMux.animateData(speed);
-                };
-
-                Runnable t4 = () -> {
-                        cpu.showText("JAL INSTRUCTION - Step 4 - PC value is updated to (PC + 4 + immediate)", speed);
-                        cpu.muxAdder.highlight();
-                        cpu.muxToPC.animateData(speed);
-                };
-
-
-                Runnable t5 = () -> {
-                        cpu.showText("JAL INSTRUCTION - Step 5 - $ra register is updated", speed);
-                        cpu.ir.highlight();
-                        cpu.irToRegister3.animateData(speed);
+                return new Step[] {
+                    new Step("JAL INSTRUCTION - Step 1 - 26 bit immediate is shifted left 2 bits")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToShift),
+                    new Step("JAL INSTRUCTION - Step 2 - PC + 4 is calculated")
+                        .highlight(cpu.programCounter)
+                        .animate(cpu.pcToPlusFour),
+                    new Step("JAL INSTRUCTION - Step 3 - PC + 4 is combined with the 28 bit immediate")
+                        .highlight(cpu.plusFour, cpu.shiftLeftIR)
+                        .animate(cpu.plusFourToMuxWithShift, cpu.shiftToMux),
+                    new Step("JAL INSTRUCTION - Step 4 - PC value is updated to (PC + 4 + immediate)")
+                        .highlight(cpu.muxAdder)
+                        .animate(cpu.muxToPC),
+                    new Step("JAL INSTRUCTION - Step 5 - $ra register is updated")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToRegister3)
                 };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3, t4, t5);
-                animationProcessor.addToPreviousList(instructionName);
-            }   break;
             case jr:
-            {
-                int speed = getInstructionFraction(3);
-
-                Runnable t1 = () -> {
-                        cpu.showText("JR INSTRUCTION - Step 1 - Register value is read", speed);
-                        cpu.ir.highlight();
-                        cpu.irToRegister1.animateData(speed);
-                };
-
-                Runnable t2 = () -> {
-                        cpu.showText("JR INSTRUCTION - Step 2 - Register value is passed to mux", speed);
-                        cpu.register.highlight();
-                        cpu.registerToMux.animateData(speed);
+                return new Step[] {
+                    new Step("JR INSTRUCTION - Step 1 - Register value is read")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToRegister1),
+                    new Step("JR INSTRUCTION - Step 2 - Register value is passed to mux")
+                        .highlight(cpu.register)
+                        .animate(cpu.registerToMux),
+                    new Step("JR INSTRUCTION - Step 3 - PC value is updated to register address")
+                        .highlight(cpu.muxAdder)
+                        .animate(cpu.muxToPC)
                 };
-
-                Runnable t3 = () -> {
-                        cpu.showText("JR INSTRUCTION - Step 3 - PC value is updated to register address", speed);
-                        cpu.muxAdder.highlight();
-                        cpu.muxToPC.animateData(speed);
-                };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3);
-                animationProcessor.addToPreviousList(instructionName);
-            }   break;
             case li:
             case la:
-            {
-                int speed = getInstructionFraction(1);
-
-                Runnable t1 = () -> {
-                        cpu.showText("LI/LA INSTRUCTION - Step 1 - Register is written to with the new value", speed);
-                        cpu.ir.highlight();
-                        cpu.irToRegister3.animateData(speed);
+                return new Step[] {
+                    new Step("LI/LA INSTRUCTION - Step 1 - Register is written to with the new value")
+                        .highlight(cpu.ir)
+                        .animate(cpu.irToRegister3)
                 };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1);
-                animationProcessor.addToPreviousList(instructionName);
-            }   break;
             case add:
             case addu:
             case and:
@@ -321,11 +234,7 @@ public class CPUListener extends SimulationListener {
             case negu:  // pseudo instruction
             case not:   // pseudo instruction
             case move:  // pseudo instruction
-            {
-                processRType(instructionName);
-                animationProcessor.addToPreviousList(instructionName);
-                break;
-            }
+                return createRTypeSteps(instructionName);
             case addi:
             case addiu:
             case subi:
@@ -343,86 +252,53 @@ public class CPUListener extends SimulationListener {
             case lh:
             case lb:
             case xori:
-            {
-                processIType(instructionName);
-                animationProcessor.addToPreviousList(instructionName);
-                break;
-            }
+                return createITypeSteps(instructionName);
 
            // Switch is missing BREAK, nop and syscall.
             default:
-            	break;
+                return new Step[0];
         }
     }
 
     /**
-     * Processes an I-TYPE instruction
+     * Describes the animation of an I-TYPE instruction
      * @param instruction The name of the instruction
+     * @return the steps of the animation
      */
-    private void processIType(String instruction){
-        int speed = getInstructionFraction(4);
-
-        Runnable t1 = () -> {
-			cpu.showText(instruction + " I-TYPE INSTRUCTION - Step 1 - ReadReg and WriteReg are selected and 16-bit immediate is sign extended", speed);
-			cpu.ir.highlight();
-			cpu.irToRegister1.animateData(speed);
-			cpu.irToRegister3.animateData(speed);
-			cpu.irToSignExtender.animateData(speed);
-        };
-
-        Runnable t2 = () -> {
-			cpu.showText(instruction + " I-TYPE INSTRUCTION - Step 2 - ALU computes sum of base address and sum extended offset", speed);
-			cpu.register.highlight();
-			cpu.signExtender.highlight();
-			cpu.registerToALU1.animateData(speed);
-			cpu.signExtenderToALU.animateData(speed);
+    private Step[] createITypeSteps(String instruction){
+        return new Step[] {
+            new Step(instruction + " I-TYPE INSTRUCTION - Step 1 - ReadReg and WriteReg are selected and 16-bit immediate is sign extended")
+                .highlight(cpu.ir)
+                .animate(cpu.irToRegister1, cpu.irToRegister3, cpu.irToSignExtender),
+            new Step(instruction + " I-TYPE INSTRUCTION - Step 2 - ALU computes sum of base address and sum extended offset")
+                .highlight(cpu.register, cpu.signExtender)
+                .animate(cpu.registerToALU1, cpu.signExtenderToALU),
+            new Step(instruction + " I-TYPE INSTRUCTION - Step 3 - Result is sent to memory")
+                .highlight(cpu.alu)
+                .animate(cpu.aluToMemory),
+            new Step(instruction + " I-TYPE INSTRUCTION - Step 4 - Word is read from memory and written to a register")
+                .highlight(cpu.mainMemory)
+                .animate(cpu.dataMemoryToRegisters)
         };
-
-        Runnable t3 = () -> {
-			cpu.showText(instruction +  "I-TYPE INSTRUCTION - Step 3 - Result is sent to memory", speed);
-			cpu.alu.highlight();
-			cpu.aluToMemory.animateData(speed);
-        };
-
-        Runnable t4 = () -> {
-			cpu.showText(instruction + " I-TYPE INSTRUCTION - Step 4 - Word is read from memory and written to a register", speed);
-			cpu.mainMemory.highlight();
-			cpu.dataMemoryToRegisters.animateData(speed);
-        };
-
-        animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3, t4);
     }
 
     /**
-     * Processes an R-TYPE instruction
+     * Describes the animation of an R-TYPE instruction
      * @param instruction The name of the instruction
+     * @return the steps of the animation
      */
-    private void processRType(String instruction){
-        int speed = getInstructionFraction(3);
-
-        Runnable t1 = () -> {
-			cpu.showText(instruction + " R-TYPE INSTRUCTION - Step 1 - Both read registers and one write register are selected", speed);
-			cpu.ir.highlight();
-			cpu.irToRegister1.animateData(speed);
-			cpu.irToRegister2.animateData(speed);
-			cpu.irToRegister3.animateData(speed);
-        };
-
-        Runnable t2 = () -> {
-			cpu.showText(instruction + " R-TYPE INSTRUCTION - Step 2 - Two registers are added together via the ALU", speed);
-			cpu.register.highlight();
-			cpu.registerToALU1.animateData(speed);
-			cpu.registerToALU2.animateData(speed);
-        };
-
-        Runnable t3 = () -> {
-            cpu.showText(instruction + " R-TYPE INSTRUCTION - Step 3 - Result is written back to the register", speed);
-            cpu.alu.highlight();
-            cpu.aluToRegisters.animateData(speed);
+    private Step[] createRTypeSteps(String instruction){
+        return new Step[] {
+            new Step(instruction + " R-TYPE INSTRUCTION - Step 1 - Both read registers and one write register are selected")
+                .highlight(cpu.ir)
+                .animate(cpu.irToRegister1, cpu.irToRegister2, cpu.irToRegister3),
+            new Step(instruction + " R-TYPE INSTRUCTION - Step 2 - Two registers are added together via the ALU")
+                .highlight(cpu.register)
+                .animate(cpu.registerToALU1, cpu.registerToALU2),
+            new Step(instruction + " R-TYPE INSTRUCTION - Step 3 - Result is written back to the register")
+                .highlight(cpu.alu)
+                .animate(cpu.aluToRegisters)
         };
-
-        animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3);
-
     }
 
     /**
@@ -442,49 +318,38 @@ public class CPUListener extends SimulationListener {
             case Fetch:
             {
                 startOfCycle();
-                int speed = getInstructionFraction(5);
-
-                Runnable t1 = () -> {
-                    cpu.showText("INSTRUCTION FETCH - Step 1 - The PC value (address of next instruction) is sent to main memory to read the next instruction", speed);
-                    cpu.programCounter.highlight();
-                    cpu.PCToIM.animateData(speed);
-                };
-
-                Runnable t2 = () -> {
-                    cpu.showText("INSTRUCTION FETCH - Step 2 - The next instruction is passed from memory to the instruction register", speed);
-                    cpu.instructionMemory.highlight();
-                    cpu.codeMemoryToIR.animateData(speed);
-                };
-
-                Runnable t3 = () -> {
-                    cpu.showText("INSTRUCTION FETCH - Step 3 - PC is updated to the next instruction address", speed * 3);
-                    cpu.programCounter.highlight();
-                    cpu.pcToPlusFour.animateData(speed);
-                };
-
-                Runnable t4 = () -> {
-                    cpu.plusFour.highlight();
-                    cpu.plusFourToMux.animateData(speed);
-                };
-
-                Runnable t5 = () -> {
-                    cpu.muxAdder.highlight();
-                    cpu.muxToPC.animateData(speed);
-                };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1, t2, t3, t4, t5);
-
+                if(fetchSteps == null) {
+                    fetchSteps = new Step[] {
+                        new Step("INSTRUCTION FETCH - Step 1 - The PC value (address of next instruction) is sent to main memory to read the next instruction")
+                            .highlight(cpu.programCounter)
+                            .animate(cpu.PCToIM),
+                        new Step("INSTRUCTION FETCH - Step 2 - The next instruction is passed from memory to the instruction register")
+                            .highlight(cpu.instructionMemory)
+                            .animate(cpu.codeMemoryToIR),
+                        new Step("INSTRUCTION FETCH - Step 3 - PC is updated to the next instruction address")
+                            .captionTime(3)
+                            .highlight(cpu.programCounter)
+                            .animate(cpu.pcToPlusFour),
+                        new Step(null)
+                            .highlight(cpu.plusFour)
+                            .animate(cpu.plusFourToMux),
+                        new Step(null)
+                            .highlight(cpu.muxAdder)
+                            .animate(cpu.muxToPC)
+                    };
+                }
+                animationProcessor.scheduleSteps(getInstructionFraction(fetchSteps.length), fetchSteps);
                 break;
             }
             case Decode:
             {
-                int speed = getInstructionFraction(1);
-                Runnable t1 = () -> {
-                    cpu.showText("INSTRUCTION DECODE - The encoded instruction present in the IR (instruction register) is interpreted by the decoder", speed);
-                    cpu.ir.highlight();
-                };
-
-                animationProcessor.scheduleRegularAnimations(speed, t1);
+                if(decodeSteps == null) {
+                    decodeSteps = new Step[] {
+                        new Step("INSTRUCTION DECODE - The encoded instruction present in the IR (instruction register) is interpreted by the decoder")
+                            .highlight(cpu.ir)
+                    };
+                }
+                animationProcessor.scheduleSteps(getInstructionFraction(decodeSteps.length), decodeSteps);
                 break;
             }
             case Execute:
@@ -495,4 +360,4 @@ public class CPUListener extends SimulationListener {
         }
     }
 
-}
\ No newline at end of file
+}
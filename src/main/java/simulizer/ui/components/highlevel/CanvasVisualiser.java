@@ -1,13 +1,21 @@
 package simulizer.ui.components.highlevel;
 
+import javafx.geometry.VPos;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.input.KeyEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
 import simulizer.highlevel.models.CanvasModel;
-import simulizer.highlevel.models.ModelAction;
+import simulizer.highlevel.models.FrameBuffer;
+import simulizer.highlevel.models.ModelChanges;
 import simulizer.ui.windows.HighLevelVisualisation;
 
 /**
- * Visualises a Canvas Model which provides access to a JavaFX canvas and some limited keyboard input
+ * Visualises a Canvas Model which provides access to a JavaFX canvas and some limited keyboard input. Frames presented
+ * from the model's frame buffer are scaled to the size of the canvas and uploaded in a single write each
  * 
  * @author mbway
  *
@@ -16,6 +24,14 @@ public class CanvasVisualiser extends DataStructureVisualiser {
     final private CanvasModel model;
 	final private Canvas canvas;
 
+	// buffers for uploading frames from the model
+	private int[] scaled = new int[0];
+	private int[] columnMap = new int[0];
+	private int mappedWidth = 0;
+	// the last frame taken from the model, which isn't reused by the model until the next frame is taken
+	private FrameBuffer lastFrame = null;
+	private int uploadedWidth, uploadedHeight;
+
 	/**
 	 * Creates a new canvas visualisation
 	 * 
@@ -100,6 +116,10 @@ public class CanvasVisualiser extends DataStructureVisualiser {
 			canvas.setWidth(windowWidth);
 			canvas.setHeight(windowHeight);
 		}
+
+		// fill the resized canvas with the last frame
+		if (lastFrame != null && ((int) canvas.getWidth() != uploadedWidth || (int) canvas.getHeight() != uploadedHeight))
+			upload(lastFrame);
 	}
 
 	@Override
@@ -108,8 +128,77 @@ public class CanvasVisualiser extends DataStructureVisualiser {
 	}
 
 	@Override
-	public void processChange(ModelAction<?> action) {
+	protected void animateChanges(ModelChanges<?> changes) {
+		jumpToChanges(changes); // frames are never animated between
+	}
+
+	@Override
+	protected void jumpToChanges(ModelChanges<?> changes) {
+		lastFrame = (FrameBuffer) changes.structure;
+		upload(lastFrame);
+	}
+
+	/**
+	 * Draws a frame from the model's frame buffer over the whole canvas
+	 */
+	private void upload(FrameBuffer frame) {
+		final int cw = (int) canvas.getWidth();
+		final int ch = (int) canvas.getHeight();
+		if (cw <= 0 || ch <= 0)
+			return;
+
+		uploadedWidth = cw;
+		uploadedHeight = ch;
+		scaleFrame(frame, cw, ch);
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.getPixelWriter().setPixels(0, 0, cw, ch, PixelFormat.getIntArgbInstance(), scaled, 0, cw);
+
+		// text is drawn over the pixels at the resolution of the canvas
+		if (frame.getTextCount() > 0) {
+			double sx = (double) cw / frame.getWidth();
+			double sy = (double) ch / frame.getHeight();
+			gc.setTextAlign(TextAlignment.LEFT);
+			gc.setTextBaseline(VPos.TOP);
+			for (int i = 0; i < frame.getTextCount(); i++) {
+				int argb = frame.getTextColor(i);
+				gc.setFill(Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0));
+				gc.setFont(Font.font(frame.getTextFont(i), frame.getTextSize(i) * sy));
+				gc.fillText(frame.getText(i), frame.getTextX(i) * sx, frame.getTextY(i) * sy);
+			}
+		}
+	}
 
+	/**
+	 * Scales a frame to the size of the canvas (nearest neighbour) into the scaled buffer
+	 */
+	private void scaleFrame(FrameBuffer frame, int cw, int ch) {
+		final int fw = frame.getWidth();
+		final int fh = frame.getHeight();
+		final int[] pixels = frame.getPixels();
+
+		if (scaled.length != cw * ch)
+			scaled = new int[cw * ch];
+		if (columnMap.length != cw || mappedWidth != fw) {
+			columnMap = new int[cw];
+			for (int x = 0; x < cw; x++)
+				columnMap[x] = (int) ((long) x * fw / cw);
+			mappedWidth = fw;
+		}
+
+		int lastRow = -1;
+		for (int y = 0; y < ch; y++) {
+			int row = (int) ((long) y * fh / ch);
+			int out = y * cw;
+			if (row == lastRow) {
+				// repeated rows are copied rather than mapped again
+				System.arraycopy(scaled, out - cw, scaled, out, cw);
+			} else {
+				int in = row * fw;
+				for (int x = 0; x < cw; x++)
+					scaled[out + x] = pixels[in + columnMap[x]];
+				lastRow = row;
+			}
+		}
 	}
 
 }
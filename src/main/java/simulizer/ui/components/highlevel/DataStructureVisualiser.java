@@ -2,40 +2,52 @@ package simulizer.ui.components.highlevel;
 
 import java.util.Observable;
 import java.util.Observer;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import javafx.scene.layout.Pane;
 import simulizer.highlevel.models.DataStructureModel;
-import simulizer.highlevel.models.ModelAction;
+import simulizer.highlevel.models.ModelChanges;
 import simulizer.ui.interfaces.Repainter;
 import simulizer.ui.interfaces.Repainter.Repaintable;
 import simulizer.ui.windows.HighLevelVisualisation;
-import simulizer.utils.CircularIntBuffer;
-import simulizer.utils.ThreadUtils;
 
 /**
  * A high level visualisation
- * 
+ *
+ * Once per frame, the changes made to the model since the last frame are collected (merged together) and the
+ * visualisation either animates them or jumps straight to the latest state of the model. While an animation is
+ * playing the changes keep accumulating in the model, so a model which changes faster than it can be animated is
+ * shown in bigger steps rather than falling further and further behind.
+ *
  * @author Michael
  *
  */
 public abstract class DataStructureVisualiser extends Pane implements Observer, Repaintable {
+	/**
+	 * The number of changes which can be animated at once. More than this and the visualisation jumps to the latest
+	 * state
+	 */
+	static final int MAX_ANIMATED_CHANGES = 32;
+
+	/**
+	 * How to show a batch of changes
+	 */
+	public enum UpdateMode {
+		ANIMATE, JUMP
+	}
+
 	protected HighLevelVisualisation vis;
 	private DataStructureModel model;
 
 	private boolean showing = false;
+	private boolean animating = false;
 
-	private BlockingQueue<ModelAction<?>> changes = new LinkedBlockingQueue<>();
-
+	/**
+	 * the speed to play animations at (1 is normal speed). Increased when changes are arriving faster than they can be
+	 * animated
+	 */
 	volatile double rate = 1;
-	private final CircularIntBuffer updateTimes;
-	private final CircularIntBuffer processTimes;
-	private long lastUpdate = -1;
 
-	private Thread updateThread;
-	private ThreadUtils.Blocker updatePaused;
-	private volatile boolean alive = false;
+	private final Repaintable frame = this::nextFrame;
 
 	/**
 	 * @param model
@@ -46,9 +58,6 @@ public abstract class DataStructureVisualiser extends Pane implements Observer,
 	DataStructureVisualiser(DataStructureModel model, HighLevelVisualisation vis) {
 		this.model = model;
 		this.vis = vis;
-		updateTimes = new CircularIntBuffer(1);
-		processTimes = new CircularIntBuffer(1);
-		updatePaused = new ThreadUtils.Blocker();
 		model.addObserver(this);
 
 		widthProperty().addListener(e -> repaint());
@@ -60,7 +69,7 @@ public abstract class DataStructureVisualiser extends Pane implements Observer,
 	public void show() {
 		if (!showing) {
 			vis.addTab(this);
-			startUpdateThreads();
+			Repainter.add(frame);
 			showing = true;
 		}
 	}
@@ -71,18 +80,39 @@ public abstract class DataStructureVisualiser extends Pane implements Observer,
 	private void hide() {
 		if (showing) {
 			vis.removeTab(this);
-			stopUpdateThreads();
+			Repainter.remove(frame);
 			showing = false;
 		}
 	}
 
 	/**
-	 * Processes a change.
-	 * 
-	 * @param action
-	 *            the change to process
+	 * Chooses whether to animate a batch of changes or to jump to the latest state. By default the changes are
+	 * animated if they were all recorded and there are few enough of them to animate at once
+	 *
+	 * @param changes
+	 *            the changes made since the last frame
+	 * @return how to show the changes
+	 */
+	protected UpdateMode chooseUpdateMode(ModelChanges<?> changes) {
+		return changes.hasActions() && changes.getCount() <= MAX_ANIMATED_CHANGES ? UpdateMode.ANIMATE : UpdateMode.JUMP;
+	}
+
+	/**
+	 * Animates a batch of changes. Call setAnimating(true) if the animation does not finish straight away, and
+	 * setAnimating(false) once it has finished. Called from the JavaFX thread
+	 *
+	 * @param changes
+	 *            the changes to animate
 	 */
-	public abstract void processChange(ModelAction<?> action);
+	protected abstract void animateChanges(ModelChanges<?> changes);
+
+	/**
+	 * Shows the latest state of the model (ModelChanges.structure) without animating. Called from the JavaFX thread
+	 *
+	 * @param changes
+	 *            the changes to skip
+	 */
+	protected abstract void jumpToChanges(ModelChanges<?> changes);
 
 	/**
 	 * Repaints the visualisation
@@ -95,11 +125,31 @@ public abstract class DataStructureVisualiser extends Pane implements Observer,
 	 */
 	public abstract String getName();
 
+	/**
+	 * collect the changes since the last frame (unless still animating the last batch), then repaint
+	 */
+	private void nextFrame() {
+		if (!animating) {
+			ModelChanges<?> changes = model.takeChanges();
+			if (changes != null) {
+				// speed up the animations if changes are arriving faster than they can be shown
+				rate = Math.min(20, Math.max(1, changes.getCount()));
+				if (chooseUpdateMode(changes) == UpdateMode.ANIMATE)
+					animateChanges(changes);
+				else
+					jumpToChanges(changes);
+			}
+		}
+		repaint();
+	}
+
 	/**
 	 * Closes the visualisation
 	 */
 	public void close() {
-		stopUpdateThreads();
+		if (showing)
+			Repainter.remove(frame);
+		showing = false;
 		model.deleteObserver(this);
 	}
 
@@ -119,110 +169,23 @@ public abstract class DataStructureVisualiser extends Pane implements Observer,
 				else
 					hide();
 			}
-		} else if (arg instanceof ModelAction<?>) {
-			changes.add((ModelAction<?>) arg);
-			long now = System.currentTimeMillis();
-			if (lastUpdate != -1)
-				updateTimes.add((int) (now - lastUpdate));
-			lastUpdate = now;
 		}
 	}
 
 	/**
-	 * Starts all update threads
-	 */
-	private void startUpdateThreads() {
-		if (alive)
-			return;
-		alive = true;
-		updateThread = new Thread(() -> {
-			while (alive) {
-				try {
-					// Process change
-					long before = -1, after = -1;
-					if (alive) {
-						ModelAction<?> change = changes.take();
-						before = System.currentTimeMillis();
-						processChange(change);
-
-						// Wait if paused
-						updatePaused.waitIfPaused();
-
-						after = System.currentTimeMillis();
-					}
-
-					if (alive && before != -1 && after != -1) {
-						// Add process time
-						processTimes.add((int) (after - before));
-
-						// Recalculate rate/skips
-						rateSkips();
-					}
-				} catch (InterruptedException ignored) {
-				}
-			}
-		}, "DataStructure " + getName() + " Updates");
-		updateThread.setDaemon(true);
-		updateThread.start();
-
-		Repainter.add(this);
-	}
-
-	/**
-	 * Calculate the rate at which animations should be animating at to stay in sync. Skips some changes if it gets too far behind
-	 */
-	private synchronized void rateSkips() {
-		int avgUpdate = updateTimes.mean();
-		int avgProcess = processTimes.mean();
-		if (avgUpdate > 0 && avgProcess > 0) {
-			double newRate = rate - 1;
-			// Averages are roughly the same, do nothing
-			if (avgUpdate + 50 > avgProcess && avgUpdate < avgProcess + 50)
-				return;
-
-			// Averages are too far apart, calculate a new rate
-			newRate += (avgProcess - avgUpdate) / (avgProcess * newRate);
-
-			// Limit the rate between 1 and 20
-			if (newRate > 20)
-				newRate = 20;
-			else if (newRate < 1)
-				newRate = 1;
-			rate = newRate + 1;
-		}
-	}
-
-	/**
-	 * Stops all update threads
-	 */
-	private void stopUpdateThreads() {
-		if (!alive)
-			return;
-		alive = false;
-		setUpdatePaused(false);
-		updateThread.interrupt();// In case of waiting on an empty list
-		Repainter.remove(this);
-		updateTimes.clear();
-		processTimes.clear();
-	}
-
-	/**
-	 * @return whether the updates are paused
+	 * @return whether an animation is playing (no new changes are collected while animating)
 	 */
-	boolean isUpdatePaused() {
-		return updatePaused.isPaused();
+	boolean isAnimating() {
+		return animating;
 	}
 
 	/**
-	 * Sets whether to pause the update threads. Used for when animating a change.
-	 * 
-	 * @param paused
-	 *            whether updates should be paused
+	 * Sets whether an animation is playing. No new changes are collected until the animation has finished
+	 *
+	 * @param animating
+	 *            whether an animation is playing
 	 */
-	void setUpdatePaused(boolean paused) {
-		if (paused)
-			updatePaused.pause();
-		else
-			updatePaused.resume();
+	void setAnimating(boolean animating) {
+		this.animating = animating;
 	}
 }
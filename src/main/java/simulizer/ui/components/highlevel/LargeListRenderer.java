@@ -0,0 +1,258 @@
+package simulizer.ui.components.highlevel;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Draws a list too long to show as boxes, either as a bar chart or as a heat map (a strip coloured by value).
+ *
+ * The plot is split into cells: one per element when there are fewer elements than pixels, otherwise one per pixel
+ * column, with each cell summarising the elements which fall in it (the bar shows the largest value with the smallest
+ * drawn over it, the heat map shows the mean). The plot is retained between frames and only the cells containing
+ * elements which have changed are drawn again, so sorting a list of 100,000 elements costs a comparison per element
+ * per frame rather than a shape per element. Markers are drawn on a separate canvas on top which is redrawn every
+ * frame.
+ */
+class LargeListRenderer {
+	private static final double XPAD = 10;
+	private static final double YPAD = 10;
+	private static final double MARKER_BAND = 25;
+
+	private static final Color BAR_COLOR = Color.SKYBLUE.darker();
+	private static final Color SPREAD_COLOR = Color.SKYBLUE;
+	private static final Color[] heatPalette = new Color[256];
+
+	static {
+		for (int i = 0; i < heatPalette.length; i++)
+			heatPalette[i] = Color.hsb(240 * (1 - i / 255.0), 0.8, 0.9); // blue (small) to red (large)
+	}
+
+	private final Canvas plot;
+	private final Canvas overlay;
+	private final Font markerFont = new Font("Arial", 15);
+
+	// the state of the retained drawing
+	private long[] shown = null;
+	private boolean shownHeatMap;
+	private double shownWidth, shownHeight;
+	private long lo, hi; // the range of values which the plot covers
+	private boolean[] dirtyCells = new boolean[0];
+
+	// the geometry of the plot
+	private int cells;
+	private double x0, y0, plotWidth, plotHeight;
+
+	/**
+	 * @param plot
+	 *            the canvas to draw the list onto
+	 * @param overlay
+	 *            the canvas on top of the plot to draw the markers onto
+	 */
+	LargeListRenderer(Canvas plot, Canvas overlay) {
+		this.plot = plot;
+		this.overlay = overlay;
+	}
+
+	/**
+	 * Forces the whole list to be drawn again next time
+	 */
+	void invalidate() {
+		shown = null;
+	}
+
+	/**
+	 * Draws the cells which have changed since the last call, then the markers
+	 *
+	 * @param list
+	 *            the list to draw (must not be modified once passed, a new array is expected when the list changes)
+	 * @param heatMap
+	 *            whether to draw a heat map rather than a bar chart
+	 * @param markers
+	 *            the markers to draw, by index
+	 * @param highlighted
+	 *            the indices with highlighted markers
+	 * @param emphasised
+	 *            the index of the element to outline, or -1
+	 */
+	void draw(long[] list, boolean heatMap, Map<Integer, String> markers, Set<Integer> highlighted, int emphasised) {
+		final double w = plot.getWidth();
+		final double h = plot.getHeight();
+
+		boolean full = shown == null || shown.length != list.length || heatMap != shownHeatMap || w != shownWidth || h != shownHeight;
+
+		if (full || list != shown) {
+			long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+			for (long v : list) {
+				if (v < min) min = v;
+				if (v > max) max = v;
+			}
+			// the plot always includes zero so that bars are measured from the same baseline
+			min = Math.min(min, 0);
+			max = Math.max(max, 0);
+			full |= min != lo || max != hi;
+			lo = min;
+			hi = max;
+
+			if (full) {
+				layout(list.length, w, h);
+				Arrays.fill(dirtyCells, 0, cells, true);
+			} else {
+				for (int i = 0; i < list.length; i++)
+					if (list[i] != shown[i])
+						dirtyCells[cellOf(i, list.length)] = true;
+			}
+		}
+
+		GraphicsContext gc = plot.getGraphicsContext2D();
+		if (full)
+			gc.clearRect(0, 0, w, h);
+		for (int c = 0; c < cells; c++) {
+			if (dirtyCells[c]) {
+				drawCell(gc, list, c, heatMap);
+				dirtyCells[c] = false;
+			}
+		}
+
+		shown = list;
+		shownHeatMap = heatMap;
+		shownWidth = w;
+		shownHeight = h;
+
+		drawOverlay(list.length, markers, highlighted, emphasised);
+	}
+
+	private void layout(int n, double w, double h) {
+		x0 = XPAD;
+		y0 = YPAD + MARKER_BAND;
+		plotWidth = Math.max(1, w - 2 * XPAD);
+		plotHeight = Math.max(1, h - y0 - YPAD);
+		cells = Math.max(1, Math.min(n, (int) plotWidth));
+		if (dirtyCells.length < cells)
+			dirtyCells = new boolean[cells];
+	}
+
+	/**
+	 * @return the cell containing the element at the given index
+	 */
+	private int cellOf(int index, int n) {
+		return (int) ((long) index * cells / n);
+	}
+
+	/**
+	 * @return the first index in the given cell
+	 */
+	private int firstIndexOf(int cell, int n) {
+		// the smallest index i with i * cells / n >= cell
+		return (int) (((long) cell * n + cells - 1) / cells);
+	}
+
+	/**
+	 * @return the x coordinate of the left of the given cell, snapped to the pixel grid
+	 */
+	private double cellX(int cell) {
+		return Math.floor(x0 + cell * plotWidth / cells);
+	}
+
+	/**
+	 * @return the y coordinate of the given value
+	 */
+	private double valueY(long value) {
+		return y0 + plotHeight * ((double) hi - value) / (hi == lo ? 1 : range());
+	}
+
+	/**
+	 * @return the size of the range of values which the plot covers, in double so that it cannot overflow when the
+	 *         list holds values of both signs near the limits of a long
+	 */
+	private double range() {
+		return (double) hi - (double) lo;
+	}
+
+	private void drawCell(GraphicsContext gc, long[] list, int cell, boolean heatMap) {
+		final int n = list.length;
+		final int from = firstIndexOf(cell, n);
+		final int to = cell + 1 == cells ? n : firstIndexOf(cell + 1, n);
+		if (from >= to)
+			return;
+
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			long v = list[i];
+			if (v < min) min = v;
+			if (v > max) max = v;
+			sum += v;
+		}
+
+		final double x = cellX(cell);
+		final double cw = Math.max(1, cellX(cell + 1) - x);
+		gc.clearRect(x, y0, cw, plotHeight);
+
+		if (heatMap) {
+			double t = hi == lo ? 0 : (sum / (to - from) - lo) / range();
+			gc.setFill(heatPalette[(int) Math.round(t * (heatPalette.length - 1))]);
+			gc.fillRect(x, y0, cw, plotHeight);
+		} else {
+			double zero = valueY(0);
+			// gaps between bars when there is room for them
+			double bw = cw >= 4 ? cw - 1 : cw;
+			if (max > 0) {
+				double top = valueY(max);
+				gc.setFill(SPREAD_COLOR);
+				gc.fillRect(x, top, bw, zero - top);
+			}
+			if (min < 0) {
+				double bottom = valueY(min);
+				gc.setFill(SPREAD_COLOR);
+				gc.fillRect(x, zero, bw, bottom - zero);
+			}
+			// the value closest to zero is drawn darker, so a cell of one element is a single solid bar
+			long inner = min > 0 ? min : max < 0 ? max : 0;
+			if (inner != 0) {
+				double y = valueY(inner);
+				gc.setFill(BAR_COLOR);
+				gc.fillRect(x, Math.min(y, zero), bw, Math.abs(zero - y));
+			}
+		}
+	}
+
+	private void drawOverlay(int n, Map<Integer, String> markers, Set<Integer> highlighted, int emphasised) {
+		GraphicsContext gc = overlay.getGraphicsContext2D();
+		gc.clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+		if (n == 0)
+			return;
+
+		gc.setFont(markerFont);
+		gc.setTextAlign(TextAlignment.CENTER);
+		gc.setTextBaseline(VPos.BOTTOM);
+		gc.setLineWidth(1);
+		for (Map.Entry<Integer, String> entry : markers.entrySet()) {
+			int index = entry.getKey();
+			if (index < 0 || index >= n)
+				continue;
+			int cell = cellOf(index, n);
+			double x = (cellX(cell) + cellX(cell + 1)) / 2;
+			Color color = highlighted.contains(index) ? Color.RED : Color.BLACK;
+			gc.setFill(color);
+			gc.setStroke(color);
+			gc.fillText(entry.getValue(), x, y0 - 5);
+			gc.strokeLine(x, y0 - 4, x, y0 + plotHeight);
+		}
+
+		if (emphasised >= 0 && emphasised < n) {
+			int cell = cellOf(emphasised, n);
+			double x = cellX(cell);
+			gc.setStroke(Color.RED);
+			gc.setLineWidth(2);
+			gc.strokeRect(x - 1, y0 - 1, Math.max(1, cellX(cell + 1) - x) + 2, plotHeight + 2);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package simulizer.ui.components.highlevel;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -21,10 +22,10 @@ import javafx.util.Duration;
 import simulizer.highlevel.models.ListModel;
 import simulizer.highlevel.models.ListModel.EmphasiseAction;
 import simulizer.highlevel.models.ListModel.HighlightAction;
-import simulizer.highlevel.models.ListModel.ListAction;
 import simulizer.highlevel.models.ListModel.MarkerAction;
 import simulizer.highlevel.models.ListModel.SwapAction;
 import simulizer.highlevel.models.ModelAction;
+import simulizer.highlevel.models.ModelChanges;
 import simulizer.ui.windows.HighLevelVisualisation;
 
 /**
@@ -35,31 +36,38 @@ import simulizer.ui.windows.HighLevelVisualisation;
  *
  * There are a number of animation methods available, such as swapping
  * and emphasis/highlighting, which can be useful for search and sorting
- * algorithms.
+ * algorithms. Long lists are drawn as a bar chart or heat map instead
+ * (see LargeListRenderer and ListModel.setStyle) without animations.
+ * The visualiser is only accessed from the JavaFX thread.
  *
  * @author Kelsey McKenna
  *
  */
-public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchronization of this class (currently synchronizing on non-final fields)
+public class ListVisualiser extends DataStructureVisualiser {
+	/**
+	 * The longest list drawn as boxes when the style is AUTO
+	 */
+	private static final int MAX_BOXES = 64;
+
 	private Canvas canvas = new Canvas();
+	private Canvas overlay = new Canvas();
+	private final LargeListRenderer renderer = new LargeListRenderer(canvas, overlay);
+	private boolean plotted = false; // whether the canvas holds a bar chart / heat map rather than boxes
+	private int plotEmphasis = -1;
 	private long[] list;
 	private ListModel model;
 
 	// -- Animation parameters
 	// |-- Swaps
+	// All the swaps in a batch of changes are shown together: each box which ends up somewhere else lifts out of the
+	// list, moves across and drops into its new position
 	private boolean swapping = false;
-
-	private int animatedLeftIndex;
-	private String animatedLeftLabel;
-	// Ratios of the width and height
-	private DoubleProperty animatedLeftX = new SimpleDoubleProperty();
-	private DoubleProperty animatedLeftY = new SimpleDoubleProperty();
-
-	private int animatedRightIndex;
-	private String animatedRightLabel;
-	// Ratios of the width and height
-	private DoubleProperty animatedRightX = new SimpleDoubleProperty();
-	private DoubleProperty animatedRightY = new SimpleDoubleProperty();
+	private int[] movedFrom = new int[0];
+	private int[] movedTo = new int[0];
+	private String[] movedLabels = new String[0];
+	private DoubleProperty moveProgress = new SimpleDoubleProperty();
+	private DoubleProperty liftProgress = new SimpleDoubleProperty();
+	private Set<Integer> movedFromSet = new HashSet<>();
 
 	// |-- Emphasis
 	private boolean emphasising = false;
@@ -83,12 +91,14 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 		super(model, vis);
 		this.model = model;
 		list = model.getList();
-		getChildren().add(canvas);
+		getChildren().addAll(canvas, overlay);
 
 		canvas.widthProperty().bind(super.widthProperty());
 		canvas.widthProperty().addListener(e -> Platform.runLater(this::repaint));
 		canvas.heightProperty().bind(super.heightProperty());
 		canvas.heightProperty().addListener(e -> Platform.runLater(this::repaint));
+		overlay.widthProperty().bind(super.widthProperty());
+		overlay.heightProperty().bind(super.heightProperty());
 
 		GraphicsContext gc = canvas.getGraphicsContext2D();
 		gc.setLineWidth(2);
@@ -97,23 +107,47 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 		gc.setTextAlign(TextAlignment.CENTER);
 	}
 
+	/**
+	 * @param length
+	 *            the length of the list
+	 * @return whether to draw the list as boxes (otherwise it is plotted by the renderer)
+	 */
+	private boolean usingBoxes(int length) {
+		ListModel.Style style = model.getStyle();
+		return style == ListModel.Style.BOXES || (style == ListModel.Style.AUTO && length <= MAX_BOXES);
+	}
+
 	@Override
 	public void repaint() {
-		if (model.size() == 0) return;
+		if (!usingBoxes(list.length)) {
+			renderer.draw(list, model.getStyle() == ListModel.Style.HEAT_MAP, markers, highlightedMarkers, plotEmphasis);
+			plotted = true;
+			return;
+		} else if (plotted) {
+			overlay.getGraphicsContext2D().clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+			renderer.invalidate();
+			plotted = false;
+		}
 
 		GraphicsContext gc = canvas.getGraphicsContext2D();
 		this.w = canvas.getWidth();
 		this.h = canvas.getHeight();
 
 		gc.clearRect(0, 0, w, h);
+		if (list.length == 0) return;
 
 		calculateDimensions(gc);
 
 		drawMarkers(gc);
 		drawList(gc);
 		if (swapping) {
-			drawTextBox(gc, animatedLeftX.doubleValue() * w, animatedLeftY.doubleValue() * h, animatedLeftLabel);
-			drawTextBox(gc, animatedRightX.doubleValue() * w, animatedRightY.doubleValue() * h, animatedRightLabel);
+			for (int m = 0; m < movedTo.length; m++) {
+				double x = getX(movedFrom[m]) + (getX(movedTo[m]) - getX(movedFrom[m])) * moveProgress.doubleValue();
+				// boxes moving right pass above the list, boxes moving left pass below it
+				double lift = (rectLength / 2 + 10) * liftProgress.doubleValue();
+				double y = movedTo[m] > movedFrom[m] ? y0 - lift : y0 + lift;
+				drawTextBox(gc, x, y, movedLabels[m]);
+			}
 		}
 	}
 
@@ -129,14 +163,12 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 		gc.setFont(markerFont);
 		gc.setTextBaseline(VPos.BOTTOM);
 
-		synchronized (markers) {
-			for (Map.Entry<Integer, String> entry : markers.entrySet()) {
-				gc.setFill(highlightedMarkers.contains(entry.getKey()) ? Color.RED : Color.BLACK);
-				double x = getX(entry.getKey());
-				gc.beginPath();
-				gc.fillText(entry.getValue(), x + rectLength / 2, y0 - 7, rectLength);
-				gc.closePath();
-			}
+		for (Map.Entry<Integer, String> entry : markers.entrySet()) {
+			gc.setFill(highlightedMarkers.contains(entry.getKey()) ? Color.RED : Color.BLACK);
+			double x = getX(entry.getKey());
+			gc.beginPath();
+			gc.fillText(entry.getValue(), x + rectLength / 2, y0 - 7, rectLength);
+			gc.closePath();
 		}
 	}
 
@@ -149,14 +181,17 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 	 */
 	private void drawList(GraphicsContext gc) {
 		gc.setTextBaseline(VPos.CENTER);
-		synchronized (list) {
-			for (int i = 0; i < list.length; ++i) {
-				if (swapping && (i == animatedLeftIndex || i == animatedRightIndex)) continue;
-				else if (emphasising && i == emphasiseIndex) {
-					Color blend = Color.SKYBLUE.interpolate(Color.RED, emphasiseProgress.doubleValue());
-					drawTextBox(gc, i, list[i] + "", blend);
-				} else drawTextBox(gc, i, list[i] + "");
-			}
+		if (swapping) {
+			movedFromSet.clear();
+			for (int from : movedFrom)
+				movedFromSet.add(from);
+		}
+		for (int i = 0; i < list.length; ++i) {
+			if (swapping && movedFromSet.contains(i)) continue;
+			else if (emphasising && i == emphasiseIndex) {
+				Color blend = Color.SKYBLUE.interpolate(Color.RED, emphasiseProgress.doubleValue());
+				drawTextBox(gc, i, list[i] + "", blend);
+			} else drawTextBox(gc, i, list[i] + "");
 		}
 	}
 
@@ -254,9 +289,9 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 		double rectCalc = w - 2 * XPAD;
 
 		rectLength = rectCalc < h - 2 * YPAD ? rectCalc : h - 2 * YPAD;
-		this.rectLength = rectCalc / model.size();
+		this.rectLength = rectCalc / list.length;
 
-		this.x0 = (w - model.size() * rectLength) / 2;
+		this.x0 = (w - list.length * rectLength) / 2;
 		this.y0 = h / 2 - rectLength / 2;
 	}
 
@@ -290,92 +325,91 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
-	public void processChange(ModelAction<?> action) {
-		Timeline timeline = null;
-
-		if (action instanceof SwapAction) {
-			// Swap animation
-			SwapAction swap = (SwapAction) action;
-
-			swapping = true;
-
-			animatedLeftIndex = swap.a;
-			animatedRightIndex = swap.b;
+	protected UpdateMode chooseUpdateMode(ModelChanges<?> changes) {
+		if (usingBoxes(((long[]) changes.structure).length))
+			return super.chooseUpdateMode(changes);
+		// plots aren't animated, but the markers can still be applied from the changes
+		return changes.hasActions() ? UpdateMode.ANIMATE : UpdateMode.JUMP;
+	}
 
-			// This is correct
-			synchronized (list) {
-				animatedLeftLabel = "" + list[animatedLeftIndex];
-				animatedRightLabel = "" + list[animatedRightIndex];
+	@Override
+	protected void animateChanges(ModelChanges<?> changes) {
+		final long[] result = (long[]) changes.structure;
+
+		// follow each box through the swaps so that the whole batch is shown as a single rearrangement
+		Map<Integer, Integer> originOf = new HashMap<>(); // current index -> index at the start of the batch
+		boolean emphasise = false;
+		for (ModelAction<?> action : changes.getActions()) {
+			if (action instanceof SwapAction) {
+				SwapAction swap = (SwapAction) action;
+				int a = originOf.getOrDefault(swap.a, swap.a);
+				int b = originOf.getOrDefault(swap.b, swap.b);
+				originOf.put(swap.a, b);
+				originOf.put(swap.b, a);
+			} else if (action instanceof MarkerAction) {
+				applyMarker((MarkerAction) action);
+			} else if (action instanceof HighlightAction) {
+				highlightedMarkers.add(((HighlightAction) action).index);
+			} else if (action instanceof EmphasiseAction) {
+				// only the most recent emphasis is shown
+				emphasiseIndex = ((EmphasiseAction) action).index;
+				emphasise = true;
 			}
+			// set actions are shown when the batch is finished
+		}
 
-			double startXLeft = getX(animatedLeftIndex) / w;
-			double startXRight = getX(animatedRightIndex) / w;
+		if (!usingBoxes(result.length)) {
+			// shown straight away
+			plotEmphasis = emphasise ? emphasiseIndex : -1;
+			list = result;
+			return;
+		}
 
-			double startY = y0 / h;
-			double upY = (y0 - rectLength / 2 - 10) / h;
-			double downY = (y0 + rectLength / 2 + 10) / h;
+		originOf.entrySet().removeIf(e -> e.getKey().equals(e.getValue()));
+		movedTo = new int[originOf.size()];
+		movedFrom = new int[originOf.size()];
+		movedLabels = new String[originOf.size()];
+		int m = 0;
+		for (Map.Entry<Integer, Integer> entry : originOf.entrySet()) {
+			movedTo[m] = entry.getKey();
+			movedFrom[m] = entry.getValue();
+			movedLabels[m] = movedFrom[m] < list.length ? "" + list[movedFrom[m]] : "";
+			m++;
+		}
+		swapping = m > 0;
+		emphasising = emphasise;
 
+		if (!swapping && !emphasising) {
+			list = result;
+			return;
+		}
+
+		Timeline timeline = new Timeline();
+		if (swapping) {
 			// @formatter:off
-			timeline = new Timeline(
+			timeline.getKeyFrames().addAll(
 				new KeyFrame(Duration.seconds(0),
-					new KeyValue(animatedLeftX, startXLeft),
-					new KeyValue(animatedLeftY, startY),
-					new KeyValue(animatedRightX, startXRight),
-					new KeyValue(animatedRightY, startY)
+					new KeyValue(moveProgress, 0.0),
+					new KeyValue(liftProgress, 0.0)
 				),
 				new KeyFrame(Duration.seconds(0.5),
-					new KeyValue(animatedLeftX, startXLeft),
-					new KeyValue(animatedLeftY, upY),
-					new KeyValue(animatedRightX, startXRight),
-					new KeyValue(animatedRightY, downY)
+					new KeyValue(moveProgress, 0.0),
+					new KeyValue(liftProgress, 1.0)
 				),
 				new KeyFrame(Duration.seconds(0.8),
-					new KeyValue(animatedLeftX, startXRight),
-					new KeyValue(animatedLeftY, upY),
-					new KeyValue(animatedRightX, startXLeft),
-					new KeyValue(animatedRightY, downY)
+					new KeyValue(moveProgress, 1.0),
+					new KeyValue(liftProgress, 1.0)
 				),
 				new KeyFrame(Duration.seconds(1.3),
-					e -> swapping = false,
-					new KeyValue(animatedLeftX, startXRight),
-					new KeyValue(animatedLeftY, startY),
-					new KeyValue(animatedRightX, startXLeft),
-					new KeyValue(animatedRightY, startY)
+					new KeyValue(moveProgress, 1.0),
+					new KeyValue(liftProgress, 0.0)
 				)
 			);
 			// @formatter:on
-
-		} else if (action instanceof MarkerAction) {
-			// Marker action
-			MarkerAction marker = (MarkerAction) action;
-			synchronized (markers) {
-				if (marker.index.isPresent()) {
-					int index = marker.index.get();
-					if (marker.name.isPresent()) {
-						// We need to add the marker
-						String name = marker.name.get();
-						String existing = markers.get(index);
-						if (existing != null) markers.put(index, existing + " " + name);
-						else markers.put(index, name);
-					} else {
-						// We need to clear the marker
-						markers.remove(index);
-						highlightedMarkers.remove(index);
-					}
-				} else {
-					markers.clear();
-					highlightedMarkers.clear();
-				}
-			}
-		} else if (action instanceof EmphasiseAction) {
-			// Emphasise an element
-			EmphasiseAction emphasise = (EmphasiseAction) action;
-			this.emphasiseIndex = emphasise.index;
-			emphasising = true;
-
+		}
+		if (emphasising) {
 			// @formatter:off
-			timeline = new Timeline(
+			timeline.getKeyFrames().addAll(
 				new KeyFrame(Duration.seconds(0),
 					new KeyValue(emphasiseProgress, 0.0)
 				),
@@ -383,38 +417,61 @@ public class ListVisualiser extends DataStructureVisualiser { //TODO: fix synchr
 					new KeyValue(emphasiseProgress, 1.0)
 				),
 				new KeyFrame(Duration.seconds(1),
-					e -> emphasising = false,
 					new KeyValue(emphasiseProgress, 0.0)
 				)
 			);
 			// @formatter:on
-
-		} else if (action instanceof HighlightAction) {
-			// Highlight a marker
-			highlightedMarkers.add(((HighlightAction) action).index);
-
-		} else if (action instanceof ListAction) {
-			// List changed
-			ListAction list = (ListAction) action;
-			synchronized (this.list) {
-				synchronized (markers) { // TODO: don't hold more than 1 lock (might deadlock)
-					this.list = list.structure;
-					markers.clear();
-				}
-			}
 		}
 
-		if (timeline != null) {
-			timeline.setCycleCount(1);
-			timeline.setRate(rate);
-			timeline.setOnFinished(e -> {
-				synchronized (list) {
-					list = ((ModelAction<long[]>) action).structure;
-				}
-				setUpdatePaused(false);
-			});
-			timeline.play();
-			setUpdatePaused(true);
+		timeline.setCycleCount(1);
+		timeline.setRate(rate);
+		timeline.setOnFinished(e -> {
+			list = result;
+			swapping = false;
+			emphasising = false;
+			setAnimating(false);
+		});
+		setAnimating(true);
+		timeline.play();
+	}
+
+	@Override
+	protected void jumpToChanges(ModelChanges<?> changes) {
+		list = (long[]) changes.structure;
+		swapping = false;
+		emphasising = false;
+		plotEmphasis = -1;
+
+		// the markers are taken from the model rather than replayed
+		markers.clear();
+		for (Map.Entry<Integer, ArrayList<String>> entry : model.getMarkers().entrySet())
+			markers.put(entry.getKey(), String.join(" ", entry.getValue()));
+		highlightedMarkers.retainAll(markers.keySet());
+	}
+
+	/**
+	 * Adds or clears markers
+	 *
+	 * @param marker
+	 *            the action to apply
+	 */
+	private void applyMarker(MarkerAction marker) {
+		if (marker.index.isPresent()) {
+			int index = marker.index.get();
+			if (marker.name.isPresent()) {
+				// We need to add the marker
+				String name = marker.name.get();
+				String existing = markers.get(index);
+				if (existing != null) markers.put(index, existing + " " + name);
+				else markers.put(index, name);
+			} else {
+				// We need to clear the marker
+				markers.remove(index);
+				highlightedMarkers.remove(index);
+			}
+		} else {
+			markers.clear();
+			highlightedMarkers.clear();
 		}
 	}
 
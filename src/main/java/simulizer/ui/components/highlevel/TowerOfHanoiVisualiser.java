@@ -1,6 +1,8 @@
 package simulizer.ui.components.highlevel;
 
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Queue;
 import java.util.Stack;
 
 import javafx.animation.KeyFrame;
@@ -14,9 +16,9 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import javafx.util.Duration;
 import simulizer.highlevel.models.HanoiModel;
-import simulizer.highlevel.models.HanoiModel.Discs;
 import simulizer.highlevel.models.HanoiModel.Move;
 import simulizer.highlevel.models.ModelAction;
+import simulizer.highlevel.models.ModelChanges;
 import simulizer.ui.windows.HighLevelVisualisation;
 
 /**
@@ -25,14 +27,20 @@ import simulizer.ui.windows.HighLevelVisualisation;
  *
  * When a disc moves from one peg to another it is animated by moving up the peg, horizontally
  * across over the destination peg, and then downwards along the destination peg until it reaches
- * the lowest possible point.
+ * the lowest possible point. When several moves are made in one frame they are played one after another,
+ * faster, before the next batch is collected.
  *
  * @author Kelsey McKenna
  *
  */
 public class TowerOfHanoiVisualiser extends DataStructureVisualiser {
 	private List<Stack<Integer>> pegs;
-	private volatile int numDiscs = 0;
+	private int numDiscs = 0;
+
+	// the moves from the current batch of changes which have not been animated yet
+	private final Queue<Move> queuedMoves = new ArrayDeque<>();
+	private List<Stack<Integer>> finalPegs;
+	private boolean discMoving = false;
 
 	private Canvas canvas = new Canvas();
 	private HanoiModel model;
@@ -71,7 +79,7 @@ public class TowerOfHanoiVisualiser extends DataStructureVisualiser {
 	}
 
 	@Override
-	public synchronized void repaint() {
+	public void repaint() {
 		GraphicsContext gc = canvas.getGraphicsContext2D();
 		final double width = canvas.getWidth();
 		final double height = canvas.getHeight();
@@ -82,7 +90,7 @@ public class TowerOfHanoiVisualiser extends DataStructureVisualiser {
 		gc.clearRect(0, 0, width, height);
 		drawBase(gc);
 		drawStaticDiscs(gc);
-		if (isUpdatePaused()) {
+		if (discMoving) {
 			drawBorderedRectangle(gc, colorGradient[animatedDiscIndex % colorGradient.length], animatedDiscX.doubleValue(),
 				animatedDiscY.doubleValue(), animatedDiscWidth, discHeight);
 		}
@@ -111,7 +119,7 @@ public class TowerOfHanoiVisualiser extends DataStructureVisualiser {
 	 * @param gc
 	 *            the graphics context for the canvas being drawn onto
 	 */
-	private synchronized void drawStaticDiscs(GraphicsContext gc) {
+	private void drawStaticDiscs(GraphicsContext gc) {
         for (int pegIndex = 0; pegIndex < pegs.size(); ++pegIndex) {
             Stack<Integer> peg = pegs.get(pegIndex);
 
@@ -121,7 +129,7 @@ public class TowerOfHanoiVisualiser extends DataStructureVisualiser {
                 int n = peg.get(i);
 
                 // Don't draw the animated disc
-                if (isUpdatePaused() && n == animatedDiscIndex) continue;
+                if (discMoving && n == animatedDiscIndex) continue;
 
                 double discWidth = getDiscWidth(n, numDiscs);
                 double discY = getDiscY(i);
@@ -216,72 +224,94 @@ public class TowerOfHanoiVisualiser extends DataStructureVisualiser {
 		return "Towers of Hanoi";
 	}
 
-	@SuppressWarnings("UnnecessaryLocalVariable")
 	@Override
-	public synchronized void processChange(ModelAction<?> action) {
-        if (action instanceof Discs) {
-            Discs discs = (Discs) action;
-            pegs = discs.structure;
-            numDiscs = discs.numDiscs;
-        } else if (action instanceof Move) {
-            Move move = (Move) action;
-
-            int numDiscsOnStart = pegs.get(move.start).size();
-            int numDiscsOnEnd = pegs.get(move.end).size();
-
-            animatedDiscIndex = pegs.get(move.start).peek();
-            this.animatedDiscWidth = getDiscWidth(animatedDiscIndex, model.getNumDiscs());
-
-            double startX = getPegX(move.start) - animatedDiscWidth / 2;
-            double startY = getDiscY(numDiscsOnStart);
-
-            double upX = startX;
-            double upY = pegY0 - canvas.getHeight() / 10;
-
-            double shiftX = getPegX(move.end) - animatedDiscWidth / 2;
-            double shiftY = upY;
-
-            double endX = shiftX;
-            double endY = getDiscY(numDiscsOnEnd);
-
-            animatedDiscX.set(startX);
-            animatedDiscY.set(startY);
-
-            // @formatter:off
-            Timeline timeline = new Timeline(
-                new KeyFrame(Duration.seconds(0),
-                    new KeyValue(animatedDiscX, startX),
-                    new KeyValue(animatedDiscY, startY)
-                ),
-                new KeyFrame(Duration.seconds(0.5),
-                    new KeyValue(animatedDiscX, upX),
-                    new KeyValue(animatedDiscY, upY)
-                ),
-                new KeyFrame(Duration.seconds(0.8),
-                    new KeyValue(animatedDiscX, shiftX),
-                    new KeyValue(animatedDiscY, shiftY)
-                ),
-                new KeyFrame(Duration.seconds(1.3),
-                    new KeyValue(animatedDiscX, endX),
-                    new KeyValue(animatedDiscY, endY)
-                )
-            );
-            // @formatter:on
-            timeline.setCycleCount(1);
-            timeline.setRate(rate);
-            final TowerOfHanoiVisualiser self = this;
-            timeline.setOnFinished(e -> {
-                // Apply Update
-                synchronized (self) {
-                    pegs = move.structure;
-                }
-                setUpdatePaused(false);
-            });
-
-            timeline.play();
-
-            setUpdatePaused(true);
-        }
+	@SuppressWarnings("unchecked")
+	protected void animateChanges(ModelChanges<?> changes) {
+		queuedMoves.clear();
+		for (ModelAction<?> action : changes.getActions())
+			queuedMoves.add((Move) action);
+		finalPegs = (List<Stack<Integer>>) changes.structure;
+		setAnimating(true);
+		animateNextMove();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void jumpToChanges(ModelChanges<?> changes) {
+		queuedMoves.clear();
+		discMoving = false;
+		pegs = (List<Stack<Integer>>) changes.structure;
+		int discs = 0;
+		for (Stack<Integer> peg : pegs)
+			discs += peg.size();
+		numDiscs = discs;
+	}
+
+	/**
+	 * Plays the next of the queued moves, or resynchronises with the model if there are none left
+	 */
+	@SuppressWarnings("UnnecessaryLocalVariable")
+	private void animateNextMove() {
+		Move move = queuedMoves.poll();
+		if (move == null) {
+			discMoving = false;
+			pegs = finalPegs;
+			setAnimating(false);
+			return;
+		}
+
+		int numDiscsOnStart = pegs.get(move.start).size();
+		int numDiscsOnEnd = pegs.get(move.end).size();
+
+		animatedDiscIndex = pegs.get(move.start).peek();
+		this.animatedDiscWidth = getDiscWidth(animatedDiscIndex, numDiscs);
+
+		double startX = getPegX(move.start) - animatedDiscWidth / 2;
+		double startY = getDiscY(numDiscsOnStart - 1);
+
+		double upX = startX;
+		double upY = pegY0 - canvas.getHeight() / 10;
+
+		double shiftX = getPegX(move.end) - animatedDiscWidth / 2;
+		double shiftY = upY;
+
+		double endX = shiftX;
+		double endY = getDiscY(numDiscsOnEnd);
+
+		animatedDiscX.set(startX);
+		animatedDiscY.set(startY);
+
+		// @formatter:off
+		Timeline timeline = new Timeline(
+			new KeyFrame(Duration.seconds(0),
+				new KeyValue(animatedDiscX, startX),
+				new KeyValue(animatedDiscY, startY)
+			),
+			new KeyFrame(Duration.seconds(0.5),
+				new KeyValue(animatedDiscX, upX),
+				new KeyValue(animatedDiscY, upY)
+			),
+			new KeyFrame(Duration.seconds(0.8),
+				new KeyValue(animatedDiscX, shiftX),
+				new KeyValue(animatedDiscY, shiftY)
+			),
+			new KeyFrame(Duration.seconds(1.3),
+				new KeyValue(animatedDiscX, endX),
+				new KeyValue(animatedDiscY, endY)
+			)
+		);
+		// @formatter:on
+		timeline.setCycleCount(1);
+		// a batch of moves is played faster the more moves it holds
+		timeline.setRate(rate);
+		timeline.setOnFinished(e -> {
+			// Apply the move to the local copy of the pegs
+			pegs.get(move.end).push(pegs.get(move.start).pop());
+			animateNextMove();
+		});
+
+		discMoving = true;
+		timeline.play();
 	}
 
 }
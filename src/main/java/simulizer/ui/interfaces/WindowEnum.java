@@ -17,6 +17,7 @@ public enum WindowEnum {
 	LOGGER("Logger", "Program I/O"),
 	PIPELINE_VIEW("PipelineView", "Pipeline View"),
 	MEMORY_VIEW("MemoryView", "Memory View"),
+	CACHE_VIEW("CacheView", "Cache View"),
 	REGISTERS("Registers"),
 	OPTIONS("Options", "Options", false),
 	SYSCALL_REFERENCE("help.SyscallReference", "Syscall Reference", false),
@@ -20,6 +20,7 @@ import com.google.gson.stream.JsonReader;
 import simulizer.GuiMode;
 import simulizer.ui.components.Workspace;
 import simulizer.ui.interfaces.InternalWindow;
+import simulizer.ui.interfaces.WindowEnum;
 import simulizer.utils.FileUtils;
 import simulizer.utils.UIUtils;
 
@@ -157,9 +158,16 @@ public class Layouts implements Iterable<Layout> {
 
 		// Close any internal windows not in the layout
 		workspace.closeAllExcept(layoutWindows);
+		workspace.clearDeferredWindows();
 
-		// Open the rest of the layout windows
-		needToOpenWindows.forEach(l -> layoutWindows.add(workspace.openInternalWindow(l.getWindowEnum())));
+		// Open the rest of the layout windows. Until the main window is shown, only the editor is created (so that it
+		// can load while the splash screen is showing) and the rest are created once there is something to see
+		for (WindowLocation l : needToOpenWindows) {
+			if (workspace.isShowing() || l.getWindowEnum() == WindowEnum.EDITOR)
+				layoutWindows.add(workspace.openInternalWindow(l.getWindowEnum()));
+			else
+				workspace.openWhenShown(l.getWindowEnum()); // sized when it is opened
+		}
 		needToOpenWindows.clear();
 
 		// Update all InternalWindow dimensions
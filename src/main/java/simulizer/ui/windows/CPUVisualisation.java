@@ -160,6 +160,7 @@ public class CPUVisualisation extends InternalWindow {
 		attachCPU(getWindowManager().getCPU());
 		CPUChangedListener cpuChangedListener = new CPUChangedListener(this);
 		getWindowManager().addCPUChangedListener(cpuChangedListener);
+		getWindowManager().getFrameScheduler().addListener(cpu.animationProcessor);
 		super.ready();
 	}
 
@@ -178,6 +179,7 @@ public class CPUVisualisation extends InternalWindow {
 	@Override
 	public void close() {
 		getWindowManager().getCPU().unregisterListener(cpuListener);
+		getWindowManager().getFrameScheduler().removeListener(cpu.animationProcessor);
 		cpu.closeAllThreads();
 		super.close();
 	}
@@ -0,0 +1,223 @@
+package simulizer.ui.windows;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Cursor;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.cpu.cache.Cache;
+import simulizer.simulation.cpu.cache.CacheHierarchy;
+import simulizer.simulation.cpu.cache.CacheReport;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.ui.components.FrameScheduler;
+import simulizer.ui.interfaces.InternalWindow;
+import simulizer.utils.UIUtils;
+
+/**
+ * Shows the lines held by one of the simulated caches: a row for each set and a column for each way. Empty lines are
+ * grey, lines holding data are blue (orange if dirty) and the lines used since the last frame are highlighted, so a
+ * traversal which keeps evicting the lines it is about to need shows up as a few sets thrashing while the rest stay
+ * empty. Hovering over a line shows the addresses it holds.
+ *
+ * The caches are snapshotted at most once per frame, and only when they have been accessed since the last frame.
+ */
+public class CacheView extends InternalWindow implements FrameScheduler.FrameListener {
+	private static final Color EMPTY = Color.gray(0.9);
+	private static final Color CLEAN = Color.STEELBLUE;
+	private static final Color DIRTY = Color.DARKORANGE;
+	private static final Color RECENT = Color.GOLD;
+
+	private final Canvas canvas = new Canvas();
+	private final Pane canvasPane = new Pane();
+	private final ChoiceBox<CacheHierarchy.Level> levelBox = new ChoiceBox<>();
+	private final Label summaryLabel = new Label();
+	private final Label statusLabel = new Label();
+
+	private CPU cpu = null;
+	private Program program = null;
+	private CacheHierarchy.Level level = CacheHierarchy.Level.L1_DATA;
+	private Cache.Snapshot snapshot = null;
+	private long lastAccesses = -1;
+	private long recentSince = 0; // the lines used after this many accesses are highlighted
+	private boolean changed = true;
+
+	public CacheView() {
+		setTitle("Cache View");
+
+		levelBox.getItems().addAll(CacheHierarchy.Level.values());
+		levelBox.setValue(level);
+		levelBox.valueProperty().addListener((o, old, n) -> {
+			level = n;
+			changed = true;
+		});
+
+		Button reportButton = new Button("Report");
+		reportButton.setOnAction(e -> showReport());
+
+		canvasPane.getChildren().add(canvas);
+		canvas.widthProperty().bind(canvasPane.widthProperty());
+		canvas.heightProperty().bind(canvasPane.heightProperty());
+		canvas.widthProperty().addListener(e -> repaint());
+		canvas.heightProperty().addListener(e -> repaint());
+		canvasPane.addEventFilter(MouseEvent.MOUSE_MOVED, e -> showInfo(e.getX(), e.getY()));
+		canvasPane.addEventFilter(MouseEvent.MOUSE_EXITED, e -> statusLabel.setText(""));
+
+		HBox controls = new HBox(10);
+		controls.setAlignment(Pos.CENTER_LEFT);
+		controls.setPadding(new Insets(5));
+		controls.getChildren().addAll(new Label("Cache:"), levelBox, reportButton, summaryLabel);
+		statusLabel.setPadding(new Insets(5));
+		statusLabel.setStyle("-fx-font-family: monospace");
+
+		BorderPane borderPane = new BorderPane();
+		borderPane.setTop(controls);
+		borderPane.setCenter(canvasPane);
+		borderPane.setBottom(statusLabel);
+		borderPane.setCursor(Cursor.DEFAULT);
+		getContentPane().getChildren().add(borderPane);
+	}
+
+	@Override
+	public void ready() {
+		super.ready();
+		FrameScheduler scheduler = getWindowManager().getFrameScheduler();
+		onFrame(scheduler.getFrame());
+		scheduler.addListener(this);
+	}
+
+	@Override
+	public void close() {
+		getWindowManager().getFrameScheduler().removeListener(this);
+		super.close();
+	}
+
+	@Override
+	public void onFrame(FrameScheduler.Frame frame) {
+		if (frame == null)
+			return;
+
+		if (frame.cpu != cpu || frame.program != program) {
+			cpu = frame.cpu;
+			program = frame.program;
+			changed = true;
+		}
+
+		CacheHierarchy caches = cpu.getCaches();
+		long accesses = caches.getAccesses();
+		if (accesses == lastAccesses && !changed)
+			return;
+
+		Cache.Snapshot s = caches.getSnapshot(level);
+		// highlight the lines used since the last snapshot of the same cache
+		if (s != null)
+			recentSince = changed || snapshot == null ? s.accesses : snapshot.accesses;
+		snapshot = s;
+		lastAccesses = accesses;
+		changed = false;
+
+		String summary;
+		if (!caches.isEnabled()) {
+			summary = "Caches are not being simulated (Run > Simulate Caches?)";
+		} else if (snapshot == null) {
+			summary = "There is no " + level + " cache";
+		} else {
+			int used = 0;
+			for (boolean v : snapshot.valid)
+				if (v)
+					used++;
+			summary = String.format("%d sets x %d ways, %d of %d lines used, %.1f%% misses", snapshot.sets,
+					snapshot.associativity, used, snapshot.valid.length,
+					snapshot.accesses == 0 ? 0.0 : 100.0 * snapshot.misses / snapshot.accesses);
+		}
+		summaryLabel.setText(summary);
+		repaint();
+	}
+
+	private void repaint() {
+		if (!isVisible())
+			return;
+
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		double w = canvas.getWidth(), h = canvas.getHeight();
+		gc.setFill(Color.WHITE);
+		gc.fillRect(0, 0, w, h);
+		if (snapshot == null)
+			return;
+
+		double cellW = w / snapshot.associativity;
+		double cellH = h / snapshot.sets;
+		double gap = cellH > 4 && cellW > 4 ? 1 : 0;
+		for (int set = 0; set < snapshot.sets; ++set) {
+			for (int way = 0; way < snapshot.associativity; ++way) {
+				int i = set * snapshot.associativity + way;
+				Color c = !snapshot.valid[i] ? EMPTY : snapshot.dirty[i] ? DIRTY : CLEAN;
+				gc.setFill(c);
+				gc.fillRect(way * cellW, set * cellH, cellW - gap, cellH - gap);
+				if (snapshot.valid[i] && snapshot.lastUsed[i] > recentSince) {
+					gc.setFill(RECENT);
+					gc.fillRect(way * cellW, set * cellH, Math.min(cellW - gap, Math.max(3, cellW / 8)), cellH - gap);
+				}
+			}
+		}
+	}
+
+	/**
+	 * describe the line under the mouse
+	 */
+	private void showInfo(double x, double y) {
+		if (snapshot == null)
+			return;
+		int way = (int) (x / (canvas.getWidth() / snapshot.associativity));
+		int set = (int) (y / (canvas.getHeight() / snapshot.sets));
+		if (way < 0 || way >= snapshot.associativity || set < 0 || set >= snapshot.sets) {
+			statusLabel.setText("");
+			return;
+		}
+
+		int i = set * snapshot.associativity + way;
+		if (!snapshot.valid[i]) {
+			statusLabel.setText(String.format("set %d, way %d: empty", set, way));
+			return;
+		}
+		int start = snapshot.addresses[i];
+		int end = start + snapshot.lineSize - 1;
+		statusLabel.setText(String.format("set %d, way %d: 0x%08x-0x%08x %s%s", set, way, start, end,
+				describe(start, end), snapshot.dirty[i] ? " (dirty)" : ""));
+	}
+
+	/**
+	 * @return the lines of the program held by an instruction cache line, or the label of a data cache line
+	 */
+	private String describe(int start, int end) {
+		if (program == null)
+			return "";
+		Integer first = null, last = null;
+		for (int a = start; a <= end && a >= start; a += 4) {
+			Integer line = program.lineNumbers.get(new Address(a));
+			if (line != null) {
+				if (first == null)
+					first = line;
+				last = line;
+			}
+		}
+		if (first != null)
+			return first.equals(last) ? "line " + (first + 1) : "lines " + (first + 1) + "-" + (last + 1);
+		return cpu.getCaches().getLabel(start);
+	}
+
+	private void showReport() {
+		if (cpu == null)
+			return;
+		UIUtils.showReportDialog("Cache Statistics", "Hits and misses", CacheReport.generate(cpu.getCaches(), program));
+	}
+}
@@ -1,8 +1,14 @@
 package simulizer.ui.windows;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javafx.concurrent.Task;
 import org.w3c.dom.Document;
@@ -21,13 +27,16 @@ import javafx.scene.text.FontSmoothingType;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
+import simulizer.GuiMode;
 import simulizer.assembler.extractor.problem.Problem;
+import simulizer.assembler.representation.Address;
 import simulizer.assembler.representation.Instruction;
 import simulizer.assembler.representation.Register;
 import simulizer.settings.Settings;
 import simulizer.simulation.cpu.components.Breakpoints;
 import simulizer.ui.WindowManager;
 import simulizer.ui.components.CurrentFile;
+import simulizer.ui.components.FrameScheduler;
 import simulizer.ui.interfaces.InternalWindow;
 import simulizer.ui.interfaces.WindowEnum;
 import simulizer.ui.theme.Theme;
@@ -41,10 +50,14 @@ import simulizer.utils.UIUtils;
  * @author mbway
  */
 @SuppressWarnings("WeakerAccess")
-public class Editor extends InternalWindow {
+public class Editor extends InternalWindow implements FrameScheduler.FrameListener {
 
 	private static volatile Editor editor; // only one instance
 
+	// the contents of the scripts used by the page, read in the background by preloadScripts. Each entry is removed
+	// once it has been used so that the scripts are not held on to for the life of the application
+	private static final Map<String, Future<String>> preloadedScripts = new ConcurrentHashMap<>();
+
 	private volatile boolean pageLoaded;
 	private final WebEngine engine;
 
@@ -72,6 +85,12 @@ public class Editor extends InternalWindow {
 	private SafeJSObject jsEditor;
 	private SafeJSObject jsSession;
 
+	// the pipeline highlighting is only updated when it changes
+	private long lastFrameVersion = -1;
+	private int highlightedFetch = -1, highlightedDecode = -1, highlightedExecute = -1;
+	private boolean following = true;
+	private double followMaxFrequency = 20; // Hz
+
 	public boolean hasLoaded() {
 		return pageLoaded;
 	}
@@ -222,28 +241,12 @@ public class Editor extends InternalWindow {
 		jsWindow.setMember("bridge", bridge);
 
 
-		engine.executeScript(FileUtils.getResourceContent("/external/ace.js"));
+		engine.executeScript(getScript("/external/ace.js"));
 
-		engine.executeScript(FileUtils.getResourceContent("/external/mode-javascript.js"));
+		engine.executeScript(getScript("/external/mode-javascript.js"));
 
-		// only load the javascript for the theme that the user selected
-		// this is fine since the settings can't change at runtime (the app must be closed)
-		String userTheme = (String) settings.get("editor.theme");
-		userTheme = userTheme.substring(userTheme.lastIndexOf("/")+1); // eg "ace/theme/THEME" --> "THEME"
-		List<String> availableThemes = Arrays.asList(
-			"/editor/theme-high-viz.js",
-			"/external/theme-ambiance.js",
-			"/external/theme-chaos.js",
-			"/external/theme-monokai.js",
-			"/external/theme-tomorrow_night_eighties.js",
-            "/external/theme-predawn.js",
-            "/external/theme-flatland.js"
-		);
-		for(String theme : availableThemes) {
-			// eg "/external/theme-monokai.js" contains the substring "monokai"
-			if(theme.contains(userTheme)) {
-				engine.executeScript(FileUtils.getResourceContent(theme));
-			}
+		for(String theme : getThemeScripts(settings)) {
+			engine.executeScript(getScript(theme));
 		}
 
 		initSyntaxHighlighter();
@@ -266,12 +269,13 @@ public class Editor extends InternalWindow {
 
 		boolean vim = (boolean) settings.get("editor.vim-mode");
 		if(vim) {
-			engine.executeScript(FileUtils.getResourceContent("/external/keybinding-vim.js"));
+			engine.executeScript(getScript("/external/keybinding-vim.js"));
 			jsEditor.call("setKeyboardHandler", "ace/keyboard/vim");
 		}
 
 		boolean userInControl = (boolean) settings.get("editor.user-control-during-execution");
 		jsWindow.setMember("userInControl", userInControl);
+		followMaxFrequency = (Double) settings.get("editor.follow-max-frequency");
 
 		if(getWindowManager().getCPU().isRunning())
 			executeMode();
@@ -283,12 +287,85 @@ public class Editor extends InternalWindow {
 		// signals that all the editor methods are now safe to call
 		pageLoaded = true;
         editor = this; // only set once ready to be used
+		GuiMode.startupTimer.phase("loading the editor");
+
+		getWindowManager().getFrameScheduler().addListener(this);
+	}
+
+	/**
+	 * the theme scripts to load for the theme that the user selected. This is fine since the settings can't change at
+	 * runtime (the app must be closed)
+	 */
+	private static List<String> getThemeScripts(Settings settings) {
+		String userTheme = (String) settings.get("editor.theme");
+		userTheme = userTheme.substring(userTheme.lastIndexOf("/")+1); // eg "ace/theme/THEME" --> "THEME"
+		List<String> availableThemes = Arrays.asList(
+			"/editor/theme-high-viz.js",
+			"/external/theme-ambiance.js",
+			"/external/theme-chaos.js",
+			"/external/theme-monokai.js",
+			"/external/theme-tomorrow_night_eighties.js",
+            "/external/theme-predawn.js",
+            "/external/theme-flatland.js"
+		);
+		List<String> themes = new ArrayList<>();
+		for(String theme : availableThemes) {
+			// eg "/external/theme-monokai.js" contains the substring "monokai"
+			if(theme.contains(userTheme)) {
+				themes.add(theme);
+			}
+		}
+		return themes;
+	}
+
+	/**
+	 * Starts reading the page and scripts used by the editor on a background thread, so that they are ready by the
+	 * time the editor is created rather than being read on the JavaFX thread while the application is starting.
+	 * Ace alone is several hundred kilobytes.
+	 *
+	 * @param settings
+	 *            the settings which determine which scripts are needed
+	 */
+	public static void preloadScripts(Settings settings) {
+		List<String> paths = new ArrayList<>(Arrays.asList("/editor/editor.html", "/external/ace.js",
+				"/external/mode-javascript.js", "/editor/mode-simp.js"));
+		paths.addAll(getThemeScripts(settings));
+		if((boolean) settings.get("editor.vim-mode"))
+			paths.add("/external/keybinding-vim.js");
+
+		List<FutureTask<String>> tasks = new ArrayList<>();
+		for(String path : paths) {
+			FutureTask<String> task = new FutureTask<>(() -> FileUtils.getResourceContent(path));
+			preloadedScripts.put(path, task);
+			tasks.add(task);
+		}
+
+		Thread preload = new Thread(() -> tasks.forEach(FutureTask::run), "Editor-Preload");
+		preload.setDaemon(true);
+		preload.start();
+	}
+
+	/**
+	 * @return the content of a resource used by the editor, waiting for it if it is being preloaded
+	 */
+	private static String getScript(String path) {
+		Future<String> preloaded = preloadedScripts.remove(path);
+		if(preloaded != null) {
+			try {
+				return preloaded.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// read it again below, so that the problem is reported in the usual way
+			}
+		}
+		return FileUtils.getResourceContent(path);
 	}
 
 	private void loadPage(Settings settings) {
 		UIUtils.assertFXThread();
 
-		engine.loadContent(FileUtils.getResourceContent("/editor/editor.html"));
+		engine.loadContent(getScript("/editor/editor.html"));
 
 		// can only execute scripts once the page has loaded
 		engine.documentProperty().addListener(new ChangeListener<Document>() {
@@ -319,6 +396,7 @@ public class Editor extends InternalWindow {
 
 		if(!cancelled) {
 			editor = null;
+			getWindowManager().getFrameScheduler().removeListener(this);
 
 			super.close();
 		}
@@ -370,7 +448,7 @@ public class Editor extends InternalWindow {
 		sb.append(String.join("|", directives));
 		sb.append(")\\\\b';\n");
 
-		sb.append(FileUtils.getResourceContent("/editor/mode-simp.js"));
+		sb.append(getScript("/editor/mode-simp.js"));
 
 		engine.executeScript(sb.toString());
 	}
@@ -574,11 +652,46 @@ public class Editor extends InternalWindow {
 		return (boolean) jsSession.call("getUseWrapMode");
 	}
 
+	/**
+	 * highlight the instructions in the pipeline, once per frame rather than once per simulation message. Only the
+	 * latest lines are highlighted, and nothing is sent to the editor if they haven't changed since the last frame.
+	 * Above the follow-max-frequency setting the editor stops scrolling to the executing line, since scrolling is the
+	 * most expensive part and the lines change too quickly to read anyway
+	 */
+	@Override
+	public void onFrame(FrameScheduler.Frame frame) {
+		if (frame.getVersion() == lastFrameVersion)
+			return;
+		lastFrameVersion = frame.getVersion();
+
+		if (!frame.running || frame.program == null) {
+			highlightedFetch = highlightedDecode = highlightedExecute = -1;
+			return;
+		}
+
+		Map<Address, Integer> lineNums = frame.program.lineNumbers;
+		int fetchL = lineNums.getOrDefault(frame.fetch, -1);
+		int decodeL = lineNums.getOrDefault(frame.decode, -1);
+		int executeL = lineNums.getOrDefault(frame.execute, -1);
+
+		// stays in sync with the lines shown when the program is paused or stepped through
+		boolean follow = frame.paused || frame.cpu.getCycleFreq() <= followMaxFrequency;
+
+		if (fetchL != highlightedFetch || decodeL != highlightedDecode || executeL != highlightedExecute || follow != following) {
+			highlightedFetch = fetchL;
+			highlightedDecode = decodeL;
+			highlightedExecute = executeL;
+			following = follow;
+			highlightPipeline(fetchL, decodeL, executeL, follow);
+		}
+	}
+
 	/**
 	 * lines start from 0
+	 * @param follow whether to scroll to the line being executed (unless the user is in control)
 	 * @warning must be called from a JavaFX thread
 	 */
-	public void highlightPipeline(int fetchLine, int decodeLine, int executeLine) {
-		jsWindow.call("highlightPipeline", fetchLine, decodeLine, executeLine);
+	public void highlightPipeline(int fetchLine, int decodeLine, int executeLine, boolean follow) {
+		jsWindow.call("highlightPipeline", fetchLine, decodeLine, executeLine, follow);
 	}
 }
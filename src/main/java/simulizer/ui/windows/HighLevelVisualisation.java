@@ -2,15 +2,16 @@ package simulizer.ui.windows;
 
 import java.util.Observable;
 import java.util.Observer;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.stream.Collectors;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.geometry.Side;
 import javafx.scene.Cursor;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
+import javafx.util.Duration;
 import javafx.util.Pair;
 import simulizer.highlevel.models.CanvasModel;
 import simulizer.highlevel.models.DataStructureModel;
@@ -102,21 +103,20 @@ public class HighLevelVisualisation extends InternalWindow implements Observer {
 		Tab tab = new Tab(vis.getName());
 		tab.setContent(vis);
 
-		// JavaFX doesn't appear to have an event to handle this
-		Timer t = new Timer(true);
-		t.scheduleAtFixedRate(new TimerTask() {
-			private int runs = 0;
-
-			@Override
-			public void run() {
-				if (runs++ == 10)
-					t.cancel();
-				Platform.runLater(vis::repaint);
-			}
-		}, 0, 10);
-
-		tab.setOnClosed(e -> vis.close());
-		Platform.runLater(() -> tabs.getTabs().add(tab));
+		// JavaFX doesn't appear to have an event to handle this, so repaint a few times while the tab is laid out. The
+		// timeline runs on the JavaFX thread rather than posting a task for every repaint
+		Timeline repaint = new Timeline(new KeyFrame(Duration.millis(10), e -> vis.repaint()));
+		repaint.setCycleCount(10);
+
+		tab.setOnClosed(e -> {
+			repaint.stop();
+			vis.close();
+		});
+		Platform.runLater(() -> {
+			tabs.getTabs().add(tab);
+			vis.repaint();
+			repaint.play();
+		});
 	}
 
 	/**
@@ -1,5 +1,7 @@
 package simulizer.ui.windows;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.concurrent.Executors;
@@ -8,20 +10,28 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.scene.Cursor;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
-import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.text.Font;
 import simulizer.simulation.cpu.user_interaction.IOStream;
+import simulizer.simulation.cpu.user_interaction.OutputBuffer;
 import simulizer.ui.interfaces.InternalWindow;
 import simulizer.utils.FileUtils;
 import simulizer.utils.ThreadUtils;
@@ -37,6 +47,8 @@ public class Logger extends InternalWindow implements Observer {
 	private ScheduledExecutorService flush = Executors.newSingleThreadScheduledExecutor(new ThreadUtils.NamedThreadFactory("Logger"));
 	private static final long BUFFER_TIME = 20; // milliseconds
 	private volatile boolean callUpdate = true;
+	private volatile boolean updateQueued = false;
+	private static final KeyCombination C_c = new KeyCodeCombination(KeyCode.C, KeyCombination.SHORTCUT_DOWN);
 
 	private TextField input = new TextField();
 	private Button submit;
@@ -47,14 +59,23 @@ public class Logger extends InternalWindow implements Observer {
 
 	private TabPane tabPane;
 	private boolean[] ioChanged;
-	private TextArea[] outputs;
+	/**
+	 * only the visible lines of each stream are rendered. New output is appended to the end rather than replacing
+	 * the whole log each update
+	 */
+	private List<ListView<String>> outputs;
+	private long[] shownEnd; // the index (in the OutputBuffer) of the line after the last line shown
+	private long[] shownGeneration;
+	private Font font = new Font(15);
 
 	private boolean emphasise = true;
 	private final ImageView notifyIcon = new ImageView(new Image(FileUtils.getResourcePath("/img/notify.png")));
 
 	public Logger() {
 		ioChanged = new boolean[IOStream.values().length];
-		outputs = new TextArea[IOStream.values().length];
+		outputs = new ArrayList<>(IOStream.values().length);
+		shownEnd = new long[IOStream.values().length];
+		shownGeneration = new long[IOStream.values().length];
 		GridPane pane = new GridPane();
 
 		inputWait = new Semaphore(0, true);
@@ -66,14 +87,25 @@ public class Logger extends InternalWindow implements Observer {
 			tab.setText(IOStream.values()[i].toString());
 			tab.setClosable(false);
 
-			TextArea output = new TextArea();
+			ListView<String> output = new ListView<>();
 			output.setEditable(false);
-			output.textProperty().addListener((e) -> output.setScrollTop(Double.MAX_VALUE));
-			output.setOnMouseClicked((e) -> input.requestFocus());
+			output.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+			output.setCellFactory(list -> new ListCell<String>() {
+				@Override
+				protected void updateItem(String line, boolean empty) {
+					super.updateItem(line, empty);
+					setText(empty ? null : line);
+					setFont(font);
+				}
+			});
+			output.addEventHandler(KeyEvent.KEY_PRESSED, (e) -> {
+				if (C_c.match(e))
+					copySelection(output);
+			});
 			tab.setContent(output);
 
 			ioChanged[i] = false;
-			outputs[i] = output;
+			outputs.add(output);
 
 			tabPane.getTabs().add(tab);
 		}
@@ -142,20 +174,21 @@ public class Logger extends InternalWindow implements Observer {
 	public void ready() {
 		getWindowManager().getIO().addObserver(this);
 		emphasise = (boolean) getWindowManager().getSettings().get("logger.emphasise");
-		int fontSize = (int) getWindowManager().getSettings().get("logger.font-size");
+		font = new Font((int) getWindowManager().getSettings().get("logger.font-size"));
 
 		flush.scheduleAtFixedRate(() -> {
-			if (callUpdate) {
+			// don't queue another update if the last one hasn't run yet
+			if (callUpdate && !updateQueued) {
+				updateQueued = true;
 				Platform.runLater(() -> {
 					synchronized (ioChanged) {
 						callUpdate = false;
+						updateQueued = false;
 						for (IOStream i : IOStream.values()) {
-							String log = getWindowManager().getIO().getLog(i);
+							boolean added = appendNewOutput(i);
 							Tab t = tabPane.getTabs().get(i.getID());
-							if (!t.isSelected() && ioChanged[i.getID()] && !log.equals(""))
+							if (!t.isSelected() && ioChanged[i.getID()] && added)
 								t.setGraphic(notifyIcon);
-							outputs[i.getID()].setText(log);
-							outputs[i.getID()].setFont(new Font(fontSize));
 							ioChanged[i.getID()] = false;
 						}
 					}
@@ -173,15 +206,72 @@ public class Logger extends InternalWindow implements Observer {
 		flush.shutdown();
 	}
 
+	/**
+	 * Show the output which has been written to a stream since the last update
+	 *
+	 * @param stream
+	 *            the stream to update
+	 * @return whether there was any new output
+	 */
+	private boolean appendNewOutput(IOStream stream) {
+		final int id = stream.getID();
+		OutputBuffer log = getWindowManager().getIO().getLog(stream);
+		ObservableList<String> items = outputs.get(id).getItems();
+		List<String> newLines = new ArrayList<>();
+
+		synchronized (log) {
+			if (log.getGeneration() != shownGeneration[id]) {
+				// the log has been cleared
+				shownGeneration[id] = log.getGeneration();
+				items.clear();
+				shownEnd[id] = 0;
+			}
+
+			long lineCount = log.getLineCount();
+			if (lineCount == shownEnd[id] && (items.isEmpty() || items.get(items.size() - 1).equals(log.getLine(lineCount - 1))))
+				return false; // nothing new
+
+			// remove the lines which have dropped out of the scroll-back
+			long shownFirst = shownEnd[id] - items.size();
+			long drop = Math.min(log.getFirstLine() - shownFirst, items.size());
+			if (drop > 0)
+				items.remove(0, (int) drop);
+
+			// the last line shown may have been written to since
+			if (!items.isEmpty()) {
+				items.remove(items.size() - 1);
+				shownEnd[id]--;
+			}
+
+			log.getLines(shownEnd[id], newLines);
+			shownEnd[id] = lineCount;
+		}
+
+		items.addAll(newLines);
+		outputs.get(id).scrollTo(items.size() - 1);
+		return !(items.size() == 1 && items.get(0).isEmpty());
+	}
+
+	/**
+	 * Copy the selected lines of output to the clipboard
+	 */
+	private void copySelection(ListView<String> output) {
+		ClipboardContent content = new ClipboardContent();
+		content.putString(String.join("\n", output.getSelectionModel().getSelectedItems()));
+		Clipboard.getSystemClipboard().setContent(content);
+	}
+
 	/**
 	 * Clears all the logs
 	 */
 	public void clear() {
 		lastInput = "";
-		for (TextArea output : outputs)
-			output.setText("");
-		for (int i = 0; i < ioChanged.length; i++)
+		for (ListView<String> output : outputs)
+			output.getItems().clear();
+		for (int i = 0; i < ioChanged.length; i++) {
 			ioChanged[i] = false;
+			shownEnd[i] = 0;
+		}
 	}
 
 	/**
@@ -1,223 +1,535 @@
 package simulizer.ui.windows;
 
-import java.io.IOException;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
-import javafx.application.Platform;
-import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
 import javafx.geometry.VPos;
+import javafx.scene.Cursor;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.control.Button;
-import javafx.scene.control.ButtonBar.ButtonData;
-import javafx.scene.control.ButtonType;
-import javafx.scene.control.Dialog;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
-import javafx.scene.control.Slider;
-import javafx.scene.control.TextField;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
-import javafx.util.Pair;
-import simulizer.ui.components.NumberTextField;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.simulation.cpu.components.DirtyRegionTracker;
+import simulizer.simulation.cpu.components.MainMemory;
+import simulizer.simulation.data.representation.DataConverter;
+import simulizer.simulation.exceptions.HeapException;
+import simulizer.simulation.exceptions.MemoryException;
+import simulizer.simulation.exceptions.StackException;
+import simulizer.ui.components.FrameScheduler;
 import simulizer.ui.interfaces.InternalWindow;
 
 /**
- * Contains several components which visualise the underlying memory of the system.
- * The stack, heap, and static panes shows the memory for their respective components.
- * The bytes in each pane are drawn dynamically and can be resized.
+ * Shows the contents of main memory as a grid of rows of 16 bytes, with the bytes shown in hex (or grouped into words)
+ * alongside their ASCII representation.
  *
- * This class is not ready for use, as the visualisations have not yet been linked
- * with the underlying system.
+ * Only the rows which are visible are read from memory and drawn. While the simulation is running, the regions which
+ * the program writes to are collected from the memory's DirtyRegionTracker each frame, so only the rows which have
+ * changed are re-read and re-drawn, and recently written bytes are highlighted.
  *
- * @author Kelsey McKenna
+ * Memory is read on the FX thread while the CPU writes to it. The heap and stack segments lock around every access
+ * (since they reallocate as they grow), and the static data segment never moves, so a row read while the program is
+ * running is at worst a mix of the bytes before and after a write, which the next frame redraws.
  *
+ * @author Kelsey McKenna
  */
-public class MemoryView extends InternalWindow {
-	@FXML
-	private Label lblScale;
-	@FXML
-	private Rectangle byteRectangle;
-	@FXML
-	private Slider sldrByteSize;
-	@FXML
-	private Button btnLoadRange;
-
-	@FXML
-	private ScrollPane paneStack;
-	@FXML
-	private Canvas canvasStack;
-
-	private Color[] colorScheme = { Color.rgb(255, 38, 34), Color.rgb(15, 154, 255), Color.rgb(204, 204, 33) };
+public class MemoryView extends InternalWindow implements FrameScheduler.FrameListener {
+	private static final int BYTES_PER_ROW = 16;
+	private static final long TOTAL_ROWS = (1L << 31) / BYTES_PER_ROW;
+	private static final long HIGHLIGHT_TIME = 1500; // milliseconds
+	private static final int SCROLL_ROWS = 3; // rows per notch of the mouse wheel
+
+	private enum Mode {
+		BYTES("Bytes"), WORDS_HEX("Words (Hex)"), WORDS_DECIMAL("Words (Decimal)");
+
+		private final String name;
+
+		Mode(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * the bytes of a row which have been written to recently
+	 */
+	private static class Highlight {
+		int mask; // a bit for each byte in the row
+		long time;
+	}
+
+	private final Canvas canvas = new Canvas();
+	private final Pane canvasPane = new Pane();
+	private final ScrollBar scrollBar = new ScrollBar();
+	private final ComboBox<String> gotoBox = new ComboBox<>();
+	private final ChoiceBox<Mode> modeBox = new ChoiceBox<>();
+	private final Label statusLabel = new Label();
+
+	private final Font font = new Font("Monospace", 13);
+	private double charWidth, rowHeight;
+
+	private MainMemory memory = null;
+	private Program program = null;
+	private int stackPointer = 0;
+	private Mode mode = Mode.BYTES;
+	private long topRow;
+	private int visibleRows = 0;
+	private int selectedAddress = -1; // the address which was last jumped to (outlined)
+
+	private boolean fullRedraw = true;
+	private boolean hidden = false; // while the simulation is running ahead of the display
+	private final BitSet dirtyRows = new BitSet(); // relative to topRow
+	private final Map<Long, Highlight> highlights = new HashMap<>(); // keyed by row
+	private final byte[] rowBuffer = new byte[BYTES_PER_ROW];
+	private final boolean[] rowReadable = new boolean[BYTES_PER_ROW];
 
 	public MemoryView() {
 		setTitle("Memory View");
+
+		Text sample = new Text("0");
+		sample.setFont(font);
+		charWidth = sample.getLayoutBounds().getWidth();
+		rowHeight = Math.ceil(sample.getLayoutBounds().getHeight()) + 2;
+
+		gotoBox.setEditable(true);
+		gotoBox.setPromptText("Address or label");
+		gotoBox.setOnAction(e -> {
+			String target = gotoBox.getValue();
+			if (target != null && !target.trim().isEmpty())
+				jumpTo(target.trim());
+		});
+
+		modeBox.getItems().addAll(Mode.values());
+		modeBox.setValue(mode);
+		modeBox.valueProperty().addListener((o, old, n) -> {
+			mode = n;
+			fullRedraw = true;
+			repaint();
+		});
+
+		scrollBar.setOrientation(Orientation.VERTICAL);
+		scrollBar.setMin(0);
+		scrollBar.setUnitIncrement(1);
+		scrollBar.valueProperty().addListener((o, old, n) -> setTopRow((long) n.doubleValue()));
+
+		canvasPane.getChildren().add(canvas);
+		canvas.widthProperty().bind(canvasPane.widthProperty());
+		canvas.heightProperty().bind(canvasPane.heightProperty());
+		canvas.widthProperty().addListener(e -> resized());
+		canvas.heightProperty().addListener(e -> resized());
+		canvasPane.setOnScroll(e -> {
+			if (e.getDeltaY() != 0)
+				scrollBar.setValue(clampRow(topRow - (long) Math.signum(e.getDeltaY()) * SCROLL_ROWS));
+		});
+		canvasPane.setOnKeyPressed(e -> {
+			KeyCode code = e.getCode();
+			if (code == KeyCode.PAGE_DOWN)
+				scrollBar.setValue(clampRow(topRow + visibleRows));
+			else if (code == KeyCode.PAGE_UP)
+				scrollBar.setValue(clampRow(topRow - visibleRows));
+			else if (code == KeyCode.DOWN)
+				scrollBar.setValue(clampRow(topRow + 1));
+			else if (code == KeyCode.UP)
+				scrollBar.setValue(clampRow(topRow - 1));
+		});
+		canvasPane.addEventFilter(MouseEvent.MOUSE_CLICKED, e -> canvasPane.requestFocus());
+		canvasPane.addEventFilter(MouseEvent.MOUSE_MOVED, e -> showInfo(e.getX(), e.getY()));
+
+		HBox controls = new HBox(10);
+		controls.setAlignment(Pos.CENTER_LEFT);
+		controls.setPadding(new Insets(5));
+		controls.getChildren().addAll(new Label("Go to:"), gotoBox, new Label("Show:"), modeBox);
+		statusLabel.setPadding(new Insets(5));
+		statusLabel.setStyle("-fx-font-family: monospace");
+
+		BorderPane borderPane = new BorderPane();
+		borderPane.setTop(controls);
+		borderPane.setCenter(canvasPane);
+		borderPane.setRight(scrollBar);
+		borderPane.setBottom(statusLabel);
+		borderPane.setCursor(Cursor.DEFAULT);
+		getContentPane().getChildren().add(borderPane);
 	}
 
 	@Override
 	public void ready() {
 		super.ready();
+		FrameScheduler scheduler = getWindowManager().getFrameScheduler();
+		onFrame(scheduler.getFrame()); // jumps to the static data segment
+		scheduler.addListener(this);
+	}
 
-		try {
-			// This cannot be in the constructor, otherwise a stackoverflow error
-			BorderPane pane = (BorderPane) FXMLLoader.load(getClass().getResource("/fxml/MemoryView.fxml"));
-			getContentPane().getChildren().add(pane);
-		} catch (IOException e) {
-			e.printStackTrace();
+	@Override
+	public void close() {
+		getWindowManager().getFrameScheduler().removeListener(this);
+		setMemory(null);
+		super.close();
+	}
+
+	@Override
+	public void onFrame(FrameScheduler.Frame frame) {
+		if (frame == null)
+			return;
+
+		MainMemory m = frame.cpu.getMainMemory();
+		if (m != memory) {
+			setMemory(m);
+			if (m != null)
+				jumpTo(m.getStartOfStaticData().getValue());
+		}
+		if (frame.program != program) {
+			program = frame.program;
+			updateGotoItems();
 		}
+		stackPointer = (int) DataConverter.decodeAsSigned(frame.registers[Register.sp.getID()].getBytes());
+
+		// only the registers are played back when running ahead, so the memory is further on than the cycle being
+		// shown. It is hidden until the simulation pauses or ends (when the playback catches up)
+		boolean hide = getWindowManager().isRunAhead() && frame.running && !frame.paused;
+		if (hide != hidden) {
+			hidden = hide;
+			canvasPane.setVisible(!hidden);
+			statusLabel.setText(hidden ? "Memory is shown when the simulation is paused (it is running ahead)" : "");
+			fullRedraw = true;
+		}
+		if (hidden)
+			return; // writes are collected once it is shown again
+
+		collectWrites();
+		repaint();
 	}
 
-	@FXML
-	public void initialize() {
-		initSlider();
-		initStackPane();
+	/**
+	 * start watching a different memory (eg after a new program is loaded)
+	 */
+	private void setMemory(MainMemory m) {
+		if (memory != null)
+			memory.getDirtyRegions().setEnabled(false);
+		memory = m;
+		if (memory != null)
+			memory.getDirtyRegions().setEnabled(true);
+		highlights.clear();
+		selectedAddress = -1;
+		fullRedraw = true;
 	}
 
-	private void initSlider() {
-		byteRectangle.setHeight(Math.max((100 - sldrByteSize.getValue()) / 100. * sldrByteSize.getHeight(), 50));
+	/**
+	 * collect the regions written to since the last frame. Writes to rows which are not visible are not highlighted
+	 */
+	private void collectWrites() {
+		if (memory == null)
+			return;
+		DirtyRegionTracker tracker = memory.getDirtyRegions();
+		if (!tracker.hasChanges())
+			return;
+
+		final long now = System.currentTimeMillis();
+		final long firstAddress = topRow * BYTES_PER_ROW;
+		final long endAddress = (topRow + visibleRows) * BYTES_PER_ROW;
+		tracker.drain((address, mask) -> {
+			if (address + DirtyRegionTracker.CHUNK_SIZE <= firstAddress || address >= endAddress)
+				return;
+			for (int i = 0; i < DirtyRegionTracker.CHUNK_SIZE / BYTES_PER_ROW; i++) {
+				int rowMask = (int) ((mask >>> (i * BYTES_PER_ROW)) & 0xFFFF);
+				long row = (address + i * BYTES_PER_ROW) / BYTES_PER_ROW;
+				if (rowMask == 0 || row < topRow || row >= topRow + visibleRows)
+					continue;
+				Highlight h = highlights.get(row);
+				if (h == null) {
+					h = new Highlight();
+					highlights.put(row, h);
+				}
+				h.mask |= rowMask;
+				h.time = now;
+				dirtyRows.set((int) (row - topRow));
+			}
+		});
+	}
 
-		// sldrByteSize.heightProperty().addListener((o, old, n) -> {
-		// recalculateByteHeight(n.doubleValue());
-		// Platform.runLater(this::drawTest);
-		// });
+	private void updateGotoItems() {
+		List<String> items = new ArrayList<>();
+		items.add("Static Data");
+		items.add("Heap");
+		items.add("$sp");
+		if (program != null) {
+			List<String> labels = new ArrayList<>();
+			program.labels.keySet().forEach(l -> labels.add(l.getName()));
+			labels.sort(String::compareTo);
+			items.addAll(labels);
+		}
+		gotoBox.getItems().setAll(items);
+	}
 
-		sldrByteSize.valueProperty().addListener((o, old, n) -> {
-			recalculateByteHeight(n.doubleValue());
-			Platform.runLater(this::drawTest);
-		});
+	/**
+	 * jump to an address given as a label name, a named region of memory, or a (hex or decimal) number
+	 */
+	private void jumpTo(String target) {
+		if (memory == null)
+			return;
+
+		Integer address = null;
+		if (target.equals("Static Data")) {
+			address = memory.getStartOfStaticData().getValue();
+		} else if (target.equals("Heap")) {
+			address = memory.getBottomOfDynamicData().getValue();
+		} else if (target.equals("$sp")) {
+			address = stackPointer;
+		} else if (program != null) {
+			for (Map.Entry<simulizer.assembler.representation.Label, Address> e : program.labels.entrySet())
+				if (e.getKey().getName().equals(target))
+					address = e.getValue().getValue();
+		}
+
+		if (address == null) {
+			try {
+				long value = target.toLowerCase().startsWith("0x") ? Long.parseLong(target.substring(2), 16) : Long.parseLong(target);
+				if (value >= 0 && value <= Integer.MAX_VALUE)
+					address = (int) value;
+			} catch (NumberFormatException ignored) {
+			}
+		}
+
+		if (address == null)
+			statusLabel.setText("Unknown address or label: " + target);
+		else
+			jumpTo(address);
 	}
 
-	private void recalculateByteHeight(double v) {
-		double h = (100 - v) / 100. * sldrByteSize.getHeight();
-		byteRectangle.setHeight(h);
+	private void jumpTo(int address) {
+		selectedAddress = address;
+		scrollBar.setValue(clampRow(address / BYTES_PER_ROW));
+		fullRedraw = true;
+		repaint();
 	}
 
-	private void initStackPane() {
-		// TODO replace 20 with the width of the scroll bar (which should be set in CSS)
-		// TODO make scroll bar always ON in scroll panes (to make calculations easier)
-		canvasStack.widthProperty().bind(paneStack.widthProperty().subtract(20));
-		canvasStack.widthProperty().addListener(o -> drawTest());
-		Platform.runLater(() -> drawTest());
+	private long clampRow(long row) {
+		return Math.max(0, Math.min(row, (long) scrollBar.getMax()));
 	}
 
-	private void drawTest() {
-		final String HIGH = "HIGH (0xFFF)";
-		final String LOW = "LOW (0xFFA)";
+	private void setTopRow(long row) {
+		row = Math.max(0, Math.min(row, TOTAL_ROWS - 1));
+		if (row == topRow)
+			return;
 
-		double numBytesToDraw = 3;
-		final double byteSize = byteRectangle.getHeight();
+		topRow = row;
+		// keep the highlights for the rows which are still visible
+		highlights.keySet().removeIf(r -> r < topRow || r >= topRow + visibleRows);
+		fullRedraw = true;
+		repaint();
+	}
 
-		GraphicsContext gc = canvasStack.getGraphicsContext2D();
-		final double width = canvasStack.getWidth();
-		final double height = numBytesToDraw * (byteSize + 2) + 100;
-		canvasStack.setHeight(height);
-		gc.clearRect(0, 0, width, height);
+	private void resized() {
+		visibleRows = (int) Math.ceil(canvas.getHeight() / rowHeight);
+		scrollBar.setMax(Math.max(0, TOTAL_ROWS - visibleRows));
+		scrollBar.setBlockIncrement(Math.max(1, visibleRows - 1));
+		scrollBar.setVisibleAmount(visibleRows);
+		fullRedraw = true;
+		repaint();
+	}
 
-		final double x0 = 0.1 * width;
-		final double y0 = 30;
-		final double blockWidth = 0.8 * width;
-		final double delimiterX0 = 0.8 * x0;
-		double yTracker = y0;
+	/**
+	 * redraw the rows which have changed
+	 */
+	private void repaint() {
+		if (!isVisible() || visibleRows == 0)
+			return;
+
+		// fade out old highlights
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<Long, Highlight>> it = highlights.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Long, Highlight> e = it.next();
+			if (now - e.getValue().time > HIGHLIGHT_TIME)
+				it.remove();
+			long i = e.getKey() - topRow;
+			if (i >= 0 && i < visibleRows)
+				dirtyRows.set((int) i);
+		}
 
-		// Write HIGH (0xFFF)
-		gc.setFill(Color.BLACK);
-		gc.setTextAlign(TextAlignment.CENTER);
-		gc.setTextBaseline(VPos.CENTER);
-		gc.fillText(HIGH, width / 2, yTracker);
-
-		yTracker += 15;
-
-		// Draw top delimiter
-		gc.setStroke(Color.BLACK);
-		gc.setLineWidth(2);
-		gc.strokeLine(delimiterX0, yTracker, width - delimiterX0, yTracker);
-
-		++yTracker; // Move down one pixel
-
-		double[] numBytes = { 1, 2 }; // Draw a 1-byte block and then a 2-byte block
-		for (int i = 0; i < numBytes.length; ++i) {
-			gc.setFill(colorScheme[i]);
-			gc.fillRect(x0, yTracker, blockWidth, numBytes[i] * byteSize);
-			yTracker += numBytes[i] * byteSize;
-
-			// Draw a bottom line for all blocks except the bottom one
-			if (i < numBytes.length - 1) {
-				++yTracker;
-				gc.strokeLine(x0 + 1, yTracker, x0 + blockWidth - 1, yTracker);
-				++yTracker;
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.setFont(font);
+		gc.setTextBaseline(VPos.TOP);
+		gc.setTextAlign(TextAlignment.LEFT);
+
+		if (fullRedraw) {
+			gc.setFill(Color.WHITE);
+			gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+			for (int i = 0; i < visibleRows; i++)
+				drawRow(gc, i, now);
+			fullRedraw = false;
+		} else {
+			for (int i = dirtyRows.nextSetBit(0); i >= 0 && i < visibleRows; i = dirtyRows.nextSetBit(i + 1))
+				drawRow(gc, i, now);
+		}
+		dirtyRows.clear();
+	}
+
+	/**
+	 * @return the x coordinate of the given byte (or word) of a row
+	 */
+	private double cellX(int byteIndex) {
+		double x0 = 12 * charWidth; // after the address
+		switch (mode) {
+			case BYTES:
+				return x0 + byteIndex * 3 * charWidth + (byteIndex / 4) * charWidth;
+			case WORDS_HEX:
+				return x0 + (byteIndex / 4) * 11 * charWidth;
+			default:
+				return x0 + (byteIndex / 4) * 13 * charWidth;
+		}
+	}
+
+	private double asciiX() {
+		return cellX(BYTES_PER_ROW) + charWidth;
+	}
+
+	private void drawRow(GraphicsContext gc, int i, long now) {
+		long row = topRow + i;
+		int address = (int) (row * BYTES_PER_ROW);
+		double y = i * rowHeight;
+
+		gc.setFill(Color.WHITE);
+		gc.fillRect(0, y, canvas.getWidth(), rowHeight);
+		if (row >= TOTAL_ROWS)
+			return;
+
+		readRow(address);
+
+		Highlight h = highlights.get(row);
+		if (h != null) {
+			double alpha = 1 - (now - h.time) / (double) HIGHLIGHT_TIME;
+			gc.setFill(Color.ORANGE.deriveColor(0, 1, 1, Math.max(0, Math.min(alpha, 1))));
+			for (int b = 0; b < BYTES_PER_ROW; b++) {
+				if ((h.mask & (1 << b)) != 0) {
+					double cellW = mode == Mode.BYTES ? 2 * charWidth : cellX(4) - cellX(0) - charWidth;
+					double x = mode == Mode.BYTES ? cellX(b) : cellX(b - b % 4);
+					gc.fillRect(x, y, cellW, rowHeight);
+					gc.fillRect(asciiX() + b * charWidth, y, charWidth, rowHeight);
+				}
 			}
 		}
 
-		// Draw the bottom delimiter
-		yTracker += 1;
-		gc.strokeLine(delimiterX0, yTracker, width - delimiterX0, yTracker);
-		yTracker += 1;
+		if (selectedAddress >= address && selectedAddress < address + BYTES_PER_ROW) {
+			int b = selectedAddress - address;
+			gc.setStroke(Color.DODGERBLUE);
+			gc.setLineWidth(1);
+			double x = mode == Mode.BYTES ? cellX(b) : cellX(b - b % 4);
+			double w = mode == Mode.BYTES ? 2 * charWidth : cellX(4) - cellX(0) - charWidth;
+			gc.strokeRect(x - 1, y + 0.5, w + 2, rowHeight - 1);
+		}
+
+		gc.setFill(Color.GRAY);
+		gc.fillText(String.format("0x%08x", address), 0, y + 1);
 
-		yTracker += 10;
 		gc.setFill(Color.BLACK);
-		gc.fillText(LOW, width / 2, yTracker);
+		if (mode == Mode.BYTES) {
+			for (int b = 0; b < BYTES_PER_ROW; b++)
+				gc.fillText(rowReadable[b] ? String.format("%02x", rowBuffer[b] & 0xFF) : "..", cellX(b), y + 1);
+		} else {
+			for (int w = 0; w < BYTES_PER_ROW; w += 4) {
+				String s;
+				if (!(rowReadable[w] && rowReadable[w + 3])) {
+					s = "........";
+				} else {
+					int word = ((rowBuffer[w] & 0xFF) << 24) | ((rowBuffer[w + 1] & 0xFF) << 16) | ((rowBuffer[w + 2] & 0xFF) << 8) | (rowBuffer[w + 3] & 0xFF);
+					s = mode == Mode.WORDS_HEX ? String.format("0x%08x", word) : String.format("%11d", word);
+				}
+				gc.fillText(s, cellX(w), y + 1);
+			}
+		}
+
+		StringBuilder ascii = new StringBuilder(BYTES_PER_ROW);
+		for (int b = 0; b < BYTES_PER_ROW; b++) {
+			char c = (char) (rowBuffer[b] & 0xFF);
+			ascii.append(rowReadable[b] && c >= 0x20 && c < 0x7F ? c : '.');
+		}
+		gc.setFill(Color.DARKSLATEGRAY);
+		gc.fillText(ascii.toString(), asciiX(), y + 1);
 	}
 
 	/**
-	 * Called when the load range button is clicked. Displays a dialog asking the user for input.
+	 * read a row of memory into rowBuffer, without reading unmapped memory
 	 */
-	@FXML
-	public void loadRange() {
-		// Thanks to http://code.makery.ch/blog/javafx-dialogs-official/
-
-		// TODO figure out how to set the owner of the dialog
-		// so it works on dual monitors
-
-		// Set up the dialog
-		Dialog<Pair<String, Integer>> dialog = new Dialog<>();
-		dialog.setTitle("Load Arbitrary Range");
-		dialog.setHeaderText("Header text");
-		dialog.setContentText("Content text");
-
-		// Add OK and cancel buttons
-		ButtonType btnOK = new ButtonType("OK", ButtonData.OK_DONE);
-		dialog.getDialogPane().getButtonTypes().addAll(btnOK, ButtonType.CANCEL);
-
-		// Create the username and password labels and fields.
-		GridPane grid = new GridPane();
-		grid.setHgap(10);
-		grid.setVgap(10);
-		grid.setPadding(new Insets(20, 150, 10, 10));
-
-		// Add the labels and fields
-		TextField fldAddress = new TextField();
-		fldAddress.setPromptText("0xFFA");
-		NumberTextField fldLength = new NumberTextField();
-		fldLength.setPromptText("10");
-
-		grid.add(new Label("Address:"), 0, 0);
-		grid.add(fldAddress, 1, 0);
-		grid.add(new Label("Length:"), 0, 1);
-		grid.add(fldLength, 1, 1);
-
-		// Add the grid to the dialog
-		dialog.getDialogPane().setContent(grid);
-
-		// Extract the data and return it when the user presses OK
-		dialog.setResultConverter(dialogButton -> {
-			String address = fldAddress.getText();
-			String length = fldLength.getText();
-
-			if (dialogButton == btnOK && !address.isEmpty() && !length.isEmpty()) return new Pair<>(address, Integer.valueOf(length));
-			else return null;
-		});
+	private void readRow(int address) {
+		if (memory != null && memory.isReadable(address, BYTES_PER_ROW)) {
+			if (read(address, 0, BYTES_PER_ROW)) {
+				for (int b = 0; b < BYTES_PER_ROW; b++)
+					rowReadable[b] = true;
+				return;
+			}
+		}
 
-		// Get the result
-		Optional<Pair<String, Integer>> result = dialog.showAndWait();
-		result.ifPresent(e -> {
-			String address = e.getKey();
-			Integer length = e.getValue();
-			System.out.printf("Load Range: address=%s, length=%d%n", address, length);
-		});
+		// the row spans the edge of a segment (or nothing is loaded)
+		for (int b = 0; b < BYTES_PER_ROW; b++)
+			rowReadable[b] = memory != null && memory.isReadable(address + b, 1) && read(address + b, b, 1);
+	}
+
+	private boolean read(int address, int offset, int length) {
+		try {
+			memory.readFromMem(address, rowBuffer, offset, length);
+			return true;
+		} catch (MemoryException | HeapException | StackException e) {
+			return false; // memory changed since checking
+		}
+	}
+
+	/**
+	 * describe the value under the mouse
+	 */
+	private void showInfo(double x, double y) {
+		if (memory == null)
+			return;
+		int i = (int) (y / rowHeight);
+		int b = -1;
+		for (int j = 0; j < BYTES_PER_ROW; j++)
+			if (x >= cellX(j) && x < cellX(j + 1))
+				b = j;
+		if (b == -1) {
+			statusLabel.setText("");
+			return;
+		}
+		if (mode != Mode.BYTES)
+			b -= b % 4;
+
+		int address = (int) ((topRow + i) * BYTES_PER_ROW + b);
+		int length = mode == Mode.BYTES ? 1 : 4;
+		if (!memory.isReadable(address, length)) {
+			statusLabel.setText(String.format("0x%08x: unmapped", address));
+			return;
+		}
+		byte[] data = new byte[length];
+		try {
+			memory.readFromMem(address, data, 0, length);
+		} catch (MemoryException | HeapException | StackException e) {
+			return;
+		}
+		long unsigned = 0;
+		for (byte d : data)
+			unsigned = (unsigned << 8) | (d & 0xFF);
+		long signed = length == 1 ? data[0] : (int) unsigned;
+		statusLabel.setText(String.format("0x%08x: unsigned %d, signed %d", address, unsigned, signed));
 	}
 }
@@ -35,19 +35,23 @@ import javafx.util.Pair;
 import simulizer.assembler.representation.Address;
 import simulizer.assembler.representation.Statement;
 import simulizer.lowlevel.models.PipelineHistoryModel;
+import simulizer.simulation.cpu.PipelineReport;
+import simulizer.simulation.cpu.branch_prediction.BranchStatistics;
 import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUPipeline;
 import simulizer.simulation.messages.PipelineHazardMessage;
+import simulizer.simulation.messages.PipelineStateMessage.BranchOutcome;
+import simulizer.ui.components.FrameScheduler;
 import simulizer.ui.components.NumberTextField;
 import simulizer.ui.interfaces.InternalWindow;
-import simulizer.ui.interfaces.Repainter;
-import simulizer.ui.interfaces.Repainter.Repaintable;
 import simulizer.ui.interfaces.WindowEnum;
 import simulizer.utils.ColorUtils;
 import simulizer.utils.FileUtils;
 import simulizer.utils.UIUtils;
 
 /**
- * Visualises the instructions during each stage of the pipeline (fetch, decode, execute).
+ * Visualises the instructions during each stage of the pipeline (fetch, decode, execute,
+ * and for the five stage pipeline, memory and write back).
  * If the CPU is pipelined, the waiting instructions will be drawn above the instructions
  * in the pipeline and the completed instructions will be drawn below. Different
  * instructions are drawn in different colours, but an instruction will remain the same
@@ -57,10 +61,14 @@ import simulizer.utils.UIUtils;
  * By hovering over an instruction or hazard, more detailed information about that
  * instruction or hazard will be displayed as text.
  *
+ * Branches which the branch predictor predicted to be taken are marked with a T
+ * when they are fetched or decoded, and executed branches are marked with a tick
+ * or a cross depending on whether the prediction was correct.
+ *
  * @author Kelsey McKenna
  *
  */
-public class PipelineView extends InternalWindow implements Observer, Repaintable {
+public class PipelineView extends InternalWindow implements Observer, FrameScheduler.FrameListener {
 	// Graphical things
 	private Canvas canvas = new Canvas();
 	private Pane canvasPane = new Pane();
@@ -70,6 +78,7 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 	private final String DEFAULT_INSTR = "\n\n\n\n";
 	private Label instructionInfoLabel = new Label(DEFAULT_INSTR);
+	private Label branchSummaryLabel = new Label();
 
 	private String selectedAddress;
 
@@ -81,6 +90,7 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 	private boolean isPipelined;
 	private boolean isRunning;
+	private int stages = 3;
 
 	// Dimensions used for calculations
 	private double rectWidth;
@@ -191,7 +201,7 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 			double x = e.getX(), y = e.getY();
 			// Don't show information above and below the pipeline if non-pipelined
-			if (!isPipelined && (y < rectGap / 2 + 3 * (rectGap + rectWidth) || y > rectGap / 2 + 6 * (rectGap + rectWidth))) {
+			if (!isPipelined && (y < rectGap / 2 + 3 * (rectGap + rectWidth) || y > rectGap / 2 + (3 + stages) * (rectGap + rectWidth))) {
 				newText = DEFAULT_INSTR;
 			} else {
 				Optional<Pair<Integer, Address>> cycleAndAddress = getAddressAtPoint(x, y);
@@ -201,7 +211,7 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 					int cycle = ca.getKey();
 					Address addr = ca.getValue();
 
-					newText = addr == null ? getHazardInfo(cycle) : getAddressInfo(addr);
+					newText = addr == null ? getHazardInfo(cycle) : getAddressInfo(addr) + getBranchInfo(addr);
 				} else
 					newText = DEFAULT_INSTR;
 			}
@@ -221,8 +231,13 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 		topBox.getChildren().addAll(followCheckBox, leftButton, rightButton);
 		Label cycleInputLabel = new Label("Go to:");
 		bottomBox.getChildren().addAll(cycleInputLabel, cycleInput);
-		buttonBox.getChildren().addAll(topBox, bottomBox);
-		controlBox.getChildren().addAll(buttonBox, instructionInfoLabel);
+		Button statisticsButton = new Button("Statistics");
+		statisticsButton.setCursor(Cursor.DEFAULT);
+		statisticsButton.setOnAction(e -> showStatistics());
+		buttonBox.getChildren().addAll(topBox, bottomBox, statisticsButton);
+		branchSummaryLabel.setStyle("-fx-font-family: monospace");
+		branchSummaryLabel.setPadding(new Insets(20, 0, 15, 20));
+		controlBox.getChildren().addAll(buttonBox, instructionInfoLabel, branchSummaryLabel);
 
 		BorderPane borderPane = new BorderPane();
 		borderPane.setCenter(canvasPane);
@@ -257,17 +272,14 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 	 * @return the cycle number & address at the specified position.
 	 */
 	private Optional<Pair<Integer, Address>> getAddressAtPoint(double x, double y) {
-		List<PipelineHistoryModel.PipelineState> history = model.getHistory();
-
 		// Loop over each column
-		for (int col = 0, cycle = startCycle; col < numColumnsToDraw; ++col, ++cycle) {
-			PipelineHistoryModel.PipelineState state = history.get(cycle);
-
+		for (int col = 0, cycle = startCycle; col < numColumnsToDraw && cycle < model.size(); ++col, ++cycle) {
 			double xLeft = x0 + (col + 0.5) * cycleWidth - rectWidth / 2;
 			// If the x coordinate isn't right, then skip to the next iteration
 			if (x < xLeft || x > xLeft + rectWidth)
 				continue;
 
+			PipelineHistoryModel.PipelineState state = model.get(cycle);
 			double yTop = rectGap / 2;
 
 			List<Address> before = state.before;
@@ -280,15 +292,15 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 			yTop = rectGap / 2 + 3 * (rectGap + rectWidth);
 
-			List<Address> pipeline = Arrays.asList(state.fetched, state.decoded, state.executed);
-			for (Address stage : pipeline) {
+			List<Address> pipeline = Arrays.asList(state.fetched, state.decoded, state.executed, state.memory, state.writeback);
+			for (Address stage : pipeline.subList(0, stages)) {
 				if (y >= yTop && y < yTop + rectWidth) {
 					return Optional.of(new Pair<>(cycle, stage));
 				} else
 					yTop += rectGap + rectWidth;
 			}
 
-			yTop = rectGap / 2 + 6 * (rectGap + rectWidth);
+			yTop = rectGap / 2 + (3 + stages) * (rectGap + rectWidth);
 
 			List<Address> after = state.after;
 			for (Address addr : after) {
@@ -305,7 +317,7 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 	@Override
 	public void close() {
 		model.removeObserver(this);
-		Repainter.remove(this);
+		getWindowManager().getFrameScheduler().removeListener(this);
 		super.close();
 	}
 
@@ -337,10 +349,12 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 		this.w = realW - x0;
 		this.h = 0.95 * realH;
 
-		rectWidth = 2. / 21 * h;
+		// 3 rows of waiting instructions, a row for each stage and 3 rows of completed instructions
+		stages = model.getStageCount();
+		double rowHeight = h / (6 + stages);
+		rectWidth = 6. / 7 * rowHeight;
 		cycleWidth = 3. / 2 * rectWidth;
-		// TODO figure out a proper calculation
-		rectGap = (h - 8 * rectWidth) / 15;
+		rectGap = rowHeight / 7;
 
 		setStartCycle(startCycle); // will reset startCycle to 0 if model has been reset
 
@@ -372,14 +386,17 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 			double xEnd = x0 + numColumnsToDraw * cycleWidth;
 			// Draw the horizontal dividers
 			gc.setStroke(Color.BLACK);
-			double y0 = h / 3;
-			double y1 = 2 * h / 3;
+			double y0 = 3 * (rectGap + rectWidth);
+			double y1 = (3 + stages) * (rectGap + rectWidth);
 			gc.strokeLine(0, y0, xEnd, y0);
 			gc.strokeLine(0, y1, xEnd, y1);
 		}
 		gc.closePath();
 	}
 
+	private static final String[] stageNames = { "Stage 1: Fetch", "Stage 2: Decode", "Stage 3: Execute",
+			"Stage 4: Memory", "Stage 5: Write Back" };
+
 	/**
 	 * Draw messages explaining what each horizontal section represents, e.g. waiting instructions etc.
 	 *
@@ -391,23 +408,20 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 		double x = 0.95 * x0;
 		double maxWidth = 0.90 * x0;
-		double y = h / 6;
+		double y = 1.5 * (rectGap + rectWidth);
 
 		gc.setFill(Paint.valueOf("black"));
 
 		gc.beginPath();
 		gc.fillText("Waiting\nInstructions", x, y, maxWidth);
 
-		y = h / 3 + rectGap / 2 + rectWidth / 2;
-		gc.fillText("Stage 1: Fetch", x, y, maxWidth);
-
-		y += rectGap + rectWidth;
-		gc.fillText("Stage 2: Decode", x, y, maxWidth);
-
-		y += rectGap + rectWidth;
-		gc.fillText("Stage 3: Execute", x, y, maxWidth);
+		y = 3 * (rectGap + rectWidth) + rectGap / 2 + rectWidth / 2;
+		for (int stage = 0; stage < stages; ++stage) {
+			gc.fillText(stageNames[stage], x, y, maxWidth);
+			y += rectGap + rectWidth;
+		}
 
-		y = 5 * h / 6;
+		y = (4.5 + stages) * (rectGap + rectWidth);
 		gc.fillText("Completed\nInstructions", x, y, maxWidth);
 
 		gc.closePath();
@@ -417,8 +431,15 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 	@Override
 	public void update(Observable o, Object pipelineState) {
-		this.isPipelined = getWindowManager().getCPU().isPipelined();
-		this.isRunning = getWindowManager().getCPU().isRunning();
+		// redrawn on the next frame
+		hasChanged = true;
+	}
+
+	@Override
+	public void onFrame(FrameScheduler.Frame frame) {
+		this.isPipelined = frame.pipelined;
+		this.isRunning = frame.running;
+		updateBranchSummary();
 		repaint();
 	}
 
@@ -436,12 +457,15 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 		// half way between the cycle boundaries then - rectWidth/2.
 		gc.setFill(Paint.valueOf("skyblue"));
 
-		List<PipelineHistoryModel.PipelineState> history = model.getHistory();
+		// only the visible cycles are looked up from the model
+		PipelineHistoryModel.PipelineState[] history = new PipelineHistoryModel.PipelineState[numColumnsToDraw];
+		for (int col = 0; col < numColumnsToDraw; ++col)
+			history[col] = model.get(startCycle + col);
 
 		if (isPipelined) {
 			// Draw the addresses before the pipeline
-			for (int col = 0, cycle = startCycle; col < numColumnsToDraw; ++col, ++cycle) {
-				List<Address> before = history.get(cycle).before;
+			for (int col = 0; col < numColumnsToDraw; ++col) {
+				List<Address> before = history[col].before;
 
 				double yTracker = rectGap / 2;
 				double yCenter = yTracker + rectWidth / 2;
@@ -467,17 +491,17 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 		// Draw the addresses in the pipeline
 		for (int col = 0, cycle = startCycle; col < numColumnsToDraw; ++col, ++cycle) {
-			PipelineHistoryModel.PipelineState state = history.get(cycle);
+			PipelineHistoryModel.PipelineState state = history[col];
 
-			double yTracker = h / 3 + rectGap / 2; // starts at top of first rect to draw
+			double yTracker = 3 * (rectGap + rectWidth) + rectGap / 2; // starts at top of first rect to draw
 			double yCenter = yTracker + rectWidth / 2;
 
 			double xCenter = x0 + (col + 0.5) * cycleWidth;
 			double xLeft = xCenter - rectWidth / 2;
 
-			Address[] parts = { state.fetched, state.decoded, state.executed };
+			Address[] parts = { state.fetched, state.decoded, state.executed, state.memory, state.writeback };
 
-			for (int a = 0; a < 3; ++a) {
+			for (int a = 0; a < stages; ++a) {
 				Color bg = ColorUtils.getColor(parts[a]);
 				gc.setFill(bg);
 				if (parts[a] == null)
@@ -489,6 +513,15 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 					drawText(gc, name, xCenter, yCenter);
 				}
 
+				if ((a == 0 && state.fetchPredictedTaken) || (a == 1 && state.decodePredictedTaken)) {
+					gc.setFill(Color.BLACK);
+					drawText(gc, "T", xLeft + rectWidth - 6, yTracker + 8);
+				} else if (a == 2 && state.outcome != BranchOutcome.NONE) {
+					boolean correct = state.outcome == BranchOutcome.CORRECTLY_PREDICTED;
+					gc.setFill(correct ? Color.GREEN : Color.RED);
+					drawText(gc, correct ? "\u2713" : "\u2717", xLeft + rectWidth - 6, yTracker + 8);
+				}
+
 				yTracker += rectGap + rectWidth;
 				yCenter += rectGap + rectWidth;
 			}
@@ -499,10 +532,10 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 
 		if (isPipelined) {
 			// Draw the addresses after the pipeline
-			for (int col = 0, cycle = startCycle; col < numColumnsToDraw; ++col, ++cycle) {
-				List<Address> after = history.get(cycle).after;
+			for (int col = 0; col < numColumnsToDraw; ++col) {
+				List<Address> after = history[col].after;
 
-				double yTracker = 2 * h / 3 + rectGap / 2;
+				double yTracker = (3 + stages) * (rectGap + rectWidth) + rectGap / 2;
 				double yCenter = yTracker + rectWidth / 2;
 
 				double xCenter = x0 + (col + 0.5) * cycleWidth;
@@ -530,10 +563,9 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 		super.ready();
 		isPipelined = getWindowManager().getCPU().isPipelined();
 		isRunning = getWindowManager().getCPU().isRunning();
-		Repainter.add(this);
+		getWindowManager().getFrameScheduler().addListener(this);
 	}
 
-	@Override
 	public void repaint() {
 		if (Platform.isFxApplicationThread() && hasChanged) {
 			GraphicsContext gc = canvas.getGraphicsContext2D();
@@ -667,7 +699,7 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 	 * @return a name describing the hazard, or "Not a hazard" if there is no hazard at this cycle.
 	 */
 	private String getHazardInfo(int cycle) {
-		Optional<PipelineHazardMessage.Hazard> hOpt = model.getHistory().get(cycle).hazard;
+		Optional<PipelineHazardMessage.Hazard> hOpt = model.get(cycle).hazard;
 
 		if (hOpt.isPresent()) {
 			String fortune = " ";
@@ -681,6 +713,62 @@ public class PipelineView extends InternalWindow implements Observer, Repaintabl
 			return String.format("Not a hazard%n %n %n ");
 	}
 
+	/**
+	 * @param address
+	 *            the address of an instruction
+	 * @return how well the branch at the given address has been predicted so far (on a line of its own), or an empty
+	 *         string if it isn't a branch which has been executed
+	 */
+	private String getBranchInfo(Address address) {
+		CPU cpu = getWindowManager().getCPU();
+		if (!(cpu instanceof CPUPipeline))
+			return "";
+
+		BranchStatistics.Site s = ((CPUPipeline) cpu).getBranchStatistics().getSite(address);
+		if (s == null)
+			return "";
+		return String.format("%n          Branch: %.0f%% predicted, %d flushes avoided, CPI %.2f", s.getAccuracy() * 100,
+				s.getFlushesAvoided(), s.getCPI());
+	}
+
+	/**
+	 * Show the branch predictor in use, how well it has done so far and where the cycles have gone
+	 */
+	private void updateBranchSummary() {
+		CPU cpu = getWindowManager().getCPU();
+		if (!isRunning || !(cpu instanceof CPUPipeline)) {
+			branchSummaryLabel.setText("");
+			return;
+		}
+
+		CPUPipeline pipeline = (CPUPipeline) cpu;
+		BranchStatistics.Site total = pipeline.getBranchStatistics().getTotal();
+		// @formatter:off
+		branchSummaryLabel.setText(String.format(
+			  "Branch predictor: %s%n"
+			+ "        Accuracy: %.1f%% of %d branches%n"
+			+ " Flushes avoided: %d%n"
+			+ "      Forwarding: %s (%d stalls)%n"
+			+ "%s",
+				pipeline.getBranchPredictor(), total.getAccuracy() * 100, total.getExecutions(),
+				total.getFlushesAvoided(), pipeline.isForwarding() ? "on" : "off",
+				pipeline.getStallStatistics().getStalls(), pipeline.getCPIBreakdown()));
+		// @formatter:on
+	}
+
+	/**
+	 * Show where the cycles went: the CPI breakdown, the instructions which caused stalls and how well each branch
+	 * has been predicted
+	 */
+	private void showStatistics() {
+		CPU cpu = getWindowManager().getCPU();
+		if (!(cpu instanceof CPUPipeline)) {
+			UIUtils.showInfoDialog("Pipeline Statistics", "Only collected by the pipelined CPU");
+			return;
+		}
+		UIUtils.showReportDialog("Pipeline Statistics", "Where the cycles went", PipelineReport.generate((CPUPipeline) cpu));
+	}
+
 	private static List<String> fortunes = new ArrayList<>();
 
 	{
@@ -1,48 +1,64 @@
 package simulizer.ui.windows;
 
-import java.nio.ByteBuffer;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.scene.Cursor;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.cell.PropertyValueFactory;
+import simulizer.assembler.representation.Address;
 import simulizer.assembler.representation.Register;
-import simulizer.simulation.cpu.CPUChangedListener;
-import simulizer.simulation.cpu.components.CPU;
 import simulizer.simulation.data.representation.DataConverter;
-import simulizer.simulation.messages.PipelineStateMessage;
-import simulizer.simulation.messages.RegisterChangedMessage;
-import simulizer.simulation.messages.SimulationListener;
+import simulizer.simulation.data.representation.Word;
+import simulizer.ui.components.FrameScheduler;
 import simulizer.ui.interfaces.InternalWindow;
-import simulizer.utils.ThreadUtils;
-import simulizer.utils.UIUtils;
 
 /**
- * Provides a visual representation of what each Register contains
+ * Provides a visual representation of what each Register contains.
+ *
+ * Once per frame the registers are read into a primitive snapshot and compared with the values shown, so only the rows
+ * which have changed are updated (rather than updating a row for every write). Each row is also shaded by how often the
+ * register has been written to recently, which fades once the register stops being used.
  * 
  * @author Michael
  *
  */
-public class Registers extends InternalWindow implements CPUChangedListener {
+public class Registers extends InternalWindow implements FrameScheduler.FrameListener {
+	private static final int PC = 32, HI = 33, LO = 34, NUM_ROWS = 35;
+	/**
+	 * How much of the write heat is left after each frame
+	 */
+	private static final double HEAT_DECAY = 0.95;
+	/**
+	 * The number of distinct shades of write heat shown
+	 */
+	private static final int HEAT_LEVELS = 10;
+	private static final String[] heatStyles = new String[HEAT_LEVELS + 1];
+
+	static {
+		heatStyles[0] = "";
+		for (int i = 1; i <= HEAT_LEVELS; i++)
+			heatStyles[i] = String.format("-fx-background-color: rgba(255, 90, 0, %.2f);", 0.6 * i / HEAT_LEVELS);
+	}
+
 	private final TableView<Data> table = new TableView<>();
-	private CPU cpu;
-	private RegisterListener listener = new RegisterListener();
 	private ValueType valueType = ValueType.UNSIGNED;
 	private TableColumn<Data, String> valueCol;
-	private Timer refreshTimer;
+	private long lastFrameVersion = -1;
 
-	private final Set<Integer> changedRegisters = new HashSet<>();
+	// the rows in register order (the table may be sorted differently)
+	private final Data[] rows = new Data[NUM_ROWS];
+	// the values and sources (Word or Address objects) of the registers last frame
+	private final int[] values = new int[NUM_ROWS];
+	private final Object[] sources = new Object[NUM_ROWS];
+	private final double[] heat = new double[NUM_ROWS];
 
 	public Registers() {
 		getEventManager().addPropertyListener(widthProperty(), (o, old, newValue) -> {
@@ -54,53 +70,101 @@ public class Registers extends InternalWindow implements CPUChangedListener {
 		table.setEditable(false);
 		table.setCursor(Cursor.DEFAULT);
 		table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+		table.setRowFactory(t -> new HeatRow());
 	}
 
 	/**
-	 * Refreshes the table data
+	 * Creates the rows of the table from the current frame
 	 */
-	private void refreshTable() {
-		synchronized (table) {
-			ObservableList<Data> data = FXCollections.observableArrayList();
-			for (Register r : Register.values())
-				data.add(createData(r));
-			// Adding special registers
-			data.add(new Data(9997, "pc"));
-			data.add(new Data(9998, "hi"));
-			data.add(new Data(9999, "lo"));
-			try {
-				ThreadUtils.platformRunAndWait(() -> table.setItems(data));
-			} catch (Throwable e) {
-				UIUtils.showExceptionDialog(e);
-			}
+	private void createRows() {
+		FrameScheduler.Frame frame = getWindowManager().getFrameScheduler().getFrame();
+		ObservableList<Data> data = FXCollections.observableArrayList();
+		for (Register r : Register.values())
+			rows[r.getID()] = new Data(r.getID(), "$" + r.getName());
+		// Adding special registers
+		rows[PC] = new Data(PC, "pc");
+		rows[HI] = new Data(HI, "hi");
+		rows[LO] = new Data(LO, "lo");
+		for (int i = 0; i < NUM_ROWS; i++) {
+			sources[i] = getSource(frame, i);
+			values[i] = toInt(sources[i]);
+			rows[i].setValue(sources[i] == null ? null : values[i]);
+			data.add(rows[i]);
 		}
+		lastFrameVersion = frame.getVersion();
+		table.setItems(data);
+	}
+
+	/**
+	 * Reformats every value (when the value type changes)
+	 */
+	private void refreshValues() {
+		for (int i = 0; i < NUM_ROWS; i++)
+			rows[i].setValue(sources[i] == null ? null : values[i]);
 	}
 
-	private void refreshRegisters() {
-		FilteredList<Data> changed;
-		synchronized (table) {
-			synchronized (changedRegisters) {
-				if (changedRegisters.size() == 0)
-					return;
-				changed = table.getItems().filtered(d -> changedRegisters.contains(d.id));
-				changedRegisters.clear();
+	/**
+	 * Updates the rows of the registers which have changed since the last frame and the write heat of each register
+	 */
+	@Override
+	public void onFrame(FrameScheduler.Frame frame) {
+		final boolean changed = frame.getVersion() != lastFrameVersion;
+		// keep showing the last heat while the simulation is stopped
+		if (!changed && (!frame.running || frame.paused))
+			return;
+		lastFrameVersion = frame.getVersion();
+
+		for (int i = 0; i < NUM_ROWS; i++) {
+			boolean written = false;
+			if (changed) {
+				Object source = getSource(frame, i);
+				// Words are immutable, so a register which refers to the same Word as last frame has not been written
+				if (source != sources[i]) {
+					written = true;
+					sources[i] = source;
+					int value = toInt(source);
+					if (value != values[i] || rows[i].isEmpty()) {
+						values[i] = value;
+						rows[i].setValue(source == null ? null : value);
+					}
+				}
 			}
-			changed.forEach(Data::refresh);
+			// the program counter is written every cycle, so the heat would not tell you anything
+			if (i != PC) {
+				heat[i] = heat[i] * HEAT_DECAY + (written ? 1 - HEAT_DECAY : 0);
+				rows[i].setHeat((int) Math.round(heat[i] * HEAT_LEVELS));
+			}
+		}
+	}
+
+	/**
+	 * @return the Word or Address held by the register with the given row index in the frame
+	 */
+	private static Object getSource(FrameScheduler.Frame frame, int i) {
+		switch (i) {
+			case PC:
+				return frame.pc;
+			case HI:
+				return frame.hi;
+			case LO:
+				return frame.lo;
+			default:
+				return frame.registers[i];
 		}
 	}
 
-	private Data createData(Register r) {
-		return new Data(r.getID(), "$" + r.getName());
+	private static int toInt(Object source) {
+		if (source instanceof Address)
+			return ((Address) source).getValue();
+		else if (source instanceof Word)
+			return (int) DataConverter.decodeAsSigned(((Word) source).getBytes());
+		else
+			return 0;
 	}
 
 	@Override
 	@SuppressWarnings("unchecked")
 	public void ready() {
-		// Add Listeners
-		getWindowManager().addCPUChangedListener(this);
-		cpu = getWindowManager().getCPU();
-		cpu.registerListener(listener);
-
 		// Create Name column
 		TableColumn<Data, String> registerName = new TableColumn<>("Name");
 		registerName.setCellValueFactory(new PropertyValueFactory<>("name"));
@@ -122,27 +186,19 @@ public class Registers extends InternalWindow implements CPUChangedListener {
 			item.setOnAction(e -> {
 				valueType = type;
 				valueCol.setText(type.toString());
-				refreshTable();
+				refreshValues();
 			});
 			item.setToggleGroup(toggleGroup);
 			menu.getItems().add(item);
 		}
 		valueCol.setContextMenu(menu);
 
-		refreshTable();
+		createRows();
 		table.getColumns().addAll(registerName, registerID, valueCol);
 		table.setEditable(false);
 
-		// Refresh registers regularly
-		refreshTimer = new Timer(true);
-		refreshTimer.schedule(new TimerTask() {
-
-			@Override
-			public void run() {
-				refreshRegisters();
-			}
-
-		}, 0, 30);
+		// Refresh registers every frame
+		getWindowManager().getFrameScheduler().addListener(this);
 
 		getContentPane().getChildren().add(table);
 		super.ready();
@@ -155,12 +211,31 @@ public class Registers extends InternalWindow implements CPUChangedListener {
 
 	@Override
 	public void close() {
-		cpu.unregisterListener(listener);
-		getWindowManager().removeCPUChangedListener(this);
-		refreshTimer.cancel();
+		getWindowManager().getFrameScheduler().removeListener(this);
 		super.close();
 	}
 
+	/**
+	 * A row of the table, shaded by the write heat of the register it shows
+	 */
+	private static class HeatRow extends TableRow<Data> {
+		private final ChangeListener<Number> heatListener = (o, old, level) -> setStyle(heatStyles[level.intValue()]);
+
+		@Override
+		protected void updateItem(Data item, boolean empty) {
+			Data old = getItem();
+			if (old != null)
+				old.heat.removeListener(heatListener);
+			super.updateItem(item, empty);
+			if (item == null || empty) {
+				setStyle("");
+			} else {
+				item.heat.addListener(heatListener);
+				setStyle(heatStyles[item.heat.get()]);
+			}
+		}
+	}
+
 	/**
 	 * Data is a row in the table
 	 * 
@@ -169,41 +244,48 @@ public class Registers extends InternalWindow implements CPUChangedListener {
 	 */
 	@SuppressWarnings({ "WeakerAccess", "unused" })
 	public class Data {
-		private Register reg;
 		private final int id;
 		private final String name;
-		private byte[] contents;
+		private boolean empty = true;
+		private int contents;
 		private SimpleStringProperty value = new SimpleStringProperty();
+		private final SimpleIntegerProperty heat = new SimpleIntegerProperty();
 
 		public Data(final int id, final String name) {
 			this.id = id;
 			this.name = name;
-			try {
-				reg = Register.fromID(id);
-			} catch (Exception e) {
-				reg = null;
-			}
-			refresh();
 		}
 
-		public void refresh() {
-			if (reg != null) // Normal Register
-				contents = cpu.getRegister(reg).getBytes();
-			else if (id == 9997 && cpu.getProgramCounter() != null) { // pc Register
-				contents = ByteBuffer.allocate(4).putInt(cpu.getProgramCounter().getValue()).array();
-			} else if (id == 9998) // hi Register
-				contents = cpu.getHi().getBytes();
-			else if (id == 9999) // lo Register
-				contents = cpu.getLo().getBytes();
-
+		/**
+		 * sets the value shown in the row
+		 * 
+		 * @param contents
+		 *            the contents of the register, or null if it is empty
+		 */
+		private void setValue(Integer contents) {
+			empty = contents == null;
+			this.contents = empty ? 0 : contents;
 			value.set(getValue());
 		}
 
+		private boolean isEmpty() {
+			return empty;
+		}
+
+		/**
+		 * @param level
+		 *            how often the register has been written to recently, between 0 and HEAT_LEVELS
+		 */
+		private void setHeat(int level) {
+			if (heat.get() != level)
+				heat.set(level);
+		}
+
 		/**
 		 * @return register id
 		 */
 		public String getId() {
-			if (id < 9000)
+			if (id < 32)
 				return "" + id;
 			else
 				return "";
@@ -221,21 +303,18 @@ public class Registers extends InternalWindow implements CPUChangedListener {
 		 */
 		public String getValue() {
 			String output = "EMPTY";
-			if (contents != null) {
+			if (!empty) {
 				switch (valueType) {
 					case HEX:
-						output = Long.toHexString(DataConverter.decodeAsUnsigned(contents));
-						while (output.length() < 8)
-							output = "0" + output;
-						output = "0x" + output;
+						output = String.format("0x%08x", contents);
 						break;
 
 					case SIGNED:
-						output = "" + DataConverter.decodeAsSigned(contents);
+						output = "" + contents;
 						break;
 
 					case UNSIGNED:
-						output = "" + DataConverter.decodeAsUnsigned(contents);
+						output = "" + Integer.toUnsignedLong(contents);
 						break;
 				}
 			}
@@ -248,43 +327,6 @@ public class Registers extends InternalWindow implements CPUChangedListener {
 
 	}
 
-	/**
-	 * Listens for Register Changed events
-	 * 
-	 * @author Michael
-	 *
-	 */
-	private class RegisterListener extends SimulationListener {
-		@Override
-		public void processRegisterChangedMessage(RegisterChangedMessage m) {
-			synchronized (changedRegisters) {
-				if (m.registerChanged == null) {
-					// Updating hi/lo
-					changedRegisters.add(9998);
-					changedRegisters.add(9999);
-				} else
-					changedRegisters.add(m.registerChanged.getID());
-			}
-		}
-
-		@Override
-		public void processPipelineStateMessage(PipelineStateMessage m) {
-			synchronized (changedRegisters) {
-				// Updating pc
-				changedRegisters.add(9997);
-			}
-		}
-	}
-
-	@Override
-	public void cpuChanged(CPU cpu) {
-		if (this.cpu != null)
-			cpu.unregisterListener(listener);
-		this.cpu = cpu;
-		if (cpu != null)
-			cpu.registerListener(listener);
-	}
-
 	/**
 	 * Enum for the different ways the data can be interpreted.
 	 * 
@@ -2,6 +2,9 @@ package simulizer.utils;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
 
 import simulizer.Simulizer;
 
@@ -46,4 +49,46 @@ public class DebugUtils {
 			System.out.println(name + ": " + (stop() / 1000.0) + " seconds");
 		}
 	}
+
+	/**
+	 * Measures the time taken by each phase of a long process which is spread over several threads and classes (like
+	 * starting the application). Each phase is reported once, with the time since the previous phase and since the
+	 * JVM was launched. Nothing is printed unless the timer is enabled
+	 */
+	public static class PhaseTimer {
+		private final String name;
+		private final long launchTime;
+		private long lastPhase;
+		private final Set<String> reported = new HashSet<>();
+		private boolean enabled = false;
+
+		public PhaseTimer(String name) {
+			this.name = name;
+			launchTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+			lastPhase = launchTime;
+		}
+
+		/**
+		 * @param enabled
+		 *            whether to print the phases as they finish
+		 */
+		public synchronized void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		/**
+		 * Reports that a phase has finished. Phases which have already been reported are ignored
+		 *
+		 * @param phase
+		 *            the name of the phase which has just finished
+		 */
+		public synchronized void phase(String phase) {
+			if (!reported.add(phase))
+				return;
+			long now = System.currentTimeMillis();
+			if (enabled)
+				System.out.println(name + ": " + phase + " took " + (now - lastPhase) + " ms (" + (now - launchTime) + " ms since launch)");
+			lastPhase = now;
+		}
+	}
 }
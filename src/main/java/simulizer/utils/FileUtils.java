@@ -149,8 +149,10 @@ public class FileUtils {
 			InputStream in = FileUtils.class.getResourceAsStream(path);
 			if(in != null) {
 				br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
-				for(int c = br.read(); c != -1; c = br.read())
-                    sb.append((char) c);
+				// some resources (eg ace.js) are large, so read them in chunks rather than a character at a time
+				char[] buffer = new char[8192];
+				for(int n = br.read(buffer); n != -1; n = br.read(buffer))
+					sb.append(buffer, 0, n);
 			} else {
 				throw new FileNotFoundException(path);
 			}
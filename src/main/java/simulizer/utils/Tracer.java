@@ -0,0 +1,233 @@
+package simulizer.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records timestamped spans (eg each stage of each cycle, each message handled by each listener, each annotation
+ * executed) from all of the threads involved in a simulation, so that a timeline of where the time goes, including the
+ * time threads spend waiting for each other, can be viewed. Saved as Chrome Trace Event JSON, which can be opened with
+ * chrome://tracing or https://ui.perfetto.dev
+ *
+ * Tracing is off unless started. When off, recording a span costs a single check. When on, the spans are written to
+ * preallocated arrays (a ring buffer which keeps the most recent spans) so that tracing doesn't allocate or lock. Each
+ * slot is published with an ordered write once it has been filled, and slots which haven't been are skipped when saving.
+ *
+ * usage:
+ * <pre>
+ * long start = Tracer.begin();
+ * ...
+ * Tracer.end(Tracer.CPU, "fetch", start);
+ * </pre>
+ */
+public class Tracer {
+	// categories of span
+	public static final String CPU = "cpu";
+	public static final String WAIT = "wait";
+	public static final String MESSAGES = "messages";
+	public static final String ANNOTATIONS = "annotations";
+	public static final String ASSEMBLER = "assembler";
+	public static final String UI = "ui";
+
+	/**
+	 * the default number of spans to keep (each takes around 40 bytes)
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 18;
+
+	/**
+	 * the spans of a single trace. A new buffer is used for each trace so that a thread which is still recording into
+	 * the previous one (having checked enabled just before the trace was restarted) can't write outside of the arrays
+	 */
+	private static class Buffer {
+		final int trace;
+		final long start;
+		final int capacity;
+		final String[] categories;
+		final String[] names;
+		final long[] threads;
+		final long[] starts; // ns
+		final long[] durations; // ns
+		/**
+		 * for each slot, 1 + the number of the span stored in it, or 0 while it is being filled. Set after the rest of
+		 * the slot is written so that a filled slot is visible to the thread saving the trace
+		 */
+		final AtomicLongArray filled;
+		final AtomicLong recorded = new AtomicLong();
+		final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+
+		Buffer(int trace, int capacity) {
+			this.trace = trace;
+			this.capacity = capacity;
+			categories = new String[capacity];
+			names = new String[capacity];
+			threads = new long[capacity];
+			starts = new long[capacity];
+			durations = new long[capacity];
+			filled = new AtomicLongArray(capacity);
+			start = System.nanoTime();
+		}
+	}
+
+	/**
+	 * the trace a thread last recorded into, so that its name is only registered once per trace
+	 */
+	private static class ThreadInfo {
+		final long id = Thread.currentThread().getId();
+		int trace = -1;
+	}
+
+	private static volatile boolean enabled = false;
+	private static volatile Buffer buffer = null;
+	private static int traces = 0;
+	private static final ThreadLocal<ThreadInfo> threadInfo = ThreadLocal.withInitial(ThreadInfo::new);
+
+	/**
+	 * start recording spans, discarding any from a previous trace
+	 *
+	 * @param capacity
+	 *            the number of spans to keep (the oldest are overwritten)
+	 */
+	public static synchronized void start(int capacity) {
+		enabled = false;
+		buffer = new Buffer(traces++, capacity);
+		enabled = true;
+	}
+
+	/**
+	 * stop recording spans. The spans recorded so far are kept until the next trace is started
+	 */
+	public static synchronized void stop() {
+		enabled = false;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the start time of a span, to pass to end()
+	 */
+	public static long begin() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * record a span which started at the time given by begin() and ends now
+	 */
+	public static void end(String category, String name, long begin) {
+		if (enabled && begin != 0)
+			record(category, name, begin, System.nanoTime());
+	}
+
+	/**
+	 * record a span between two times measured with System.nanoTime(). Spans from before the trace started are
+	 * ignored
+	 */
+	public static void record(String category, String name, long start, long end) {
+		if (!enabled)
+			return;
+		Buffer b = buffer;
+		if (b == null || start - b.start < 0) // nanoTime can overflow so compare the difference
+			return;
+
+		ThreadInfo t = threadInfo.get();
+		if (t.trace != b.trace) {
+			t.trace = b.trace;
+			b.threadNames.put(t.id, Thread.currentThread().getName());
+		}
+
+		long n = b.recorded.getAndIncrement();
+		int i = (int) (n % b.capacity);
+		b.filled.set(i, 0);
+		b.categories[i] = category;
+		b.names[i] = name;
+		b.threads[i] = t.id;
+		b.starts[i] = start;
+		b.durations[i] = end - start;
+		b.filled.lazySet(i, n + 1);
+	}
+
+	/**
+	 * @return the number of spans which have been kept
+	 */
+	public static long getSpanCount() {
+		Buffer b = buffer;
+		return b == null ? 0 : Math.min(b.recorded.get(), b.capacity);
+	}
+
+	/**
+	 * save the spans of the last trace (stopping it if it is still running)
+	 *
+	 * @param file
+	 *            the file to write the trace to (overwritten)
+	 */
+	public static synchronized void save(File file) throws IOException {
+		stop();
+		try (Writer w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			write(w, buffer);
+		}
+	}
+
+	private static void write(Writer w, Buffer b) throws IOException {
+		w.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+		if (b != null)
+			writeEvents(w, b);
+		w.write("\n]}\n");
+	}
+
+	private static void writeEvents(Writer w, Buffer b) throws IOException {
+		boolean first = true;
+		for (Map.Entry<Long, String> e : b.threadNames.entrySet()) {
+			if (!first)
+				w.write(",\n");
+			first = false;
+			w.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":" + e.getKey() + ",\"args\":{\"name\":"
+					+ quote(e.getValue()) + "}}");
+		}
+
+		long total = b.recorded.get();
+		long oldest = Math.max(0, total - b.capacity);
+		for (long n = oldest; n < total; ++n) {
+			int i = (int) (n % b.capacity);
+			// a thread which has claimed a slot may not have filled it yet (or may be overwriting it)
+			if (b.filled.get(i) != n + 1)
+				continue;
+			String category = b.categories[i];
+			String name = b.names[i];
+			long thread = b.threads[i];
+			long start = b.starts[i];
+			long duration = b.durations[i];
+			if (b.filled.get(i) != n + 1)
+				continue;
+
+			if (!first)
+				w.write(",\n");
+			first = false;
+			// times are in microseconds
+			w.write(String.format(Locale.ROOT, "{\"ph\":\"X\",\"cat\":%s,\"name\":%s,\"pid\":1,\"tid\":%d,\"ts\":%.3f,\"dur\":%.3f}",
+					quote(category), quote(name), thread, (start - b.start) / 1e3, duration / 1e3));
+		}
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+}
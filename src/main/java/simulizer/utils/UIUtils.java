@@ -57,8 +57,13 @@ public class UIUtils {
             return c.call();
         } else {
             FutureTask<V> f = new FutureTask<>(c);
+            long start = Tracer.begin();
             Platform.runLater(f);
-            return f.get();
+            try {
+                return f.get();
+            } finally {
+                Tracer.end(Tracer.WAIT, "wait for JavaFX", start);
+            }
         }
 	}
 
@@ -153,6 +158,36 @@ public class UIUtils {
 	}
 
 
+	/**
+	 * show a dialog box containing a table or report in a fixed width font
+	 * @param title the title for the dialog box
+	 * @param header the header for the dialog box
+	 * @param report the text to display (can be selected and copied)
+	 */
+	public static void showReportDialog(String title, String header, String report) {
+		Platform.runLater(() -> {
+			Alert alert = new Alert(Alert.AlertType.INFORMATION);
+			alert.setResizable(true);
+			Stage parent = GuiMode.getPrimaryStage(); // owner is null if JavaFX not fully loaded yet
+			if(parent != null && parent.getOwner() != null) {
+				alert.initOwner(parent.getOwner());
+			}
+			alert.setTitle(title);
+			setDialogBoxIcon(alert);
+			alert.setHeaderText(header);
+			alert.getDialogPane().setPrefSize(720, 480);
+
+			TextArea text = new TextArea(report);
+			text.setEditable(false);
+			text.setFont(javafx.scene.text.Font.font(Font.MONOSPACED));
+			text.setMaxWidth(Double.MAX_VALUE);
+			text.setMaxHeight(Double.MAX_VALUE);
+
+			alert.getDialogPane().setContent(text);
+			alert.show();
+		});
+	}
+
 	/**
 	 * show a dialog box showing the stack trace of an exception.
      * this method should be used instead of printStackTrace as it provides more
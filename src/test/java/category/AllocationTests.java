@@ -0,0 +1,10 @@
+package category;
+
+/**
+ * Category of test which measures memory allocation, so requires a JVM
+ * which can measure the bytes allocated by each thread (eg HotSpot).
+ * Excluded from `gradle test`, run with `gradle allocationTest`
+ */
+public class AllocationTests {
+    // placeholder
+}
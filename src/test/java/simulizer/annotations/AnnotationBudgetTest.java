@@ -0,0 +1,203 @@
+package simulizer.annotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.cmd.CmdSimulationListener;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.user_interaction.IO;
+import simulizer.simulation.cpu.user_interaction.IOStream;
+import simulizer.simulation.data.representation.DataConverter;
+
+/**
+ * Test that annotations which exceed their time budget are stopped and disabled, without holding up the simulation
+ */
+@Category({UnitTests.class})
+public class AnnotationBudgetTest {
+
+	/**
+	 * collects everything written to the error stream
+	 */
+	private static class RecordingIO implements IO {
+		final StringBuffer errors = new StringBuffer();
+
+		@Override
+		public String readString(IOStream stream) {
+			return "";
+		}
+
+		@Override
+		public int readInt(IOStream stream) {
+			return 0;
+		}
+
+		@Override
+		public char readChar(IOStream stream) {
+			return '\0';
+		}
+
+		@Override
+		public void printString(IOStream stream, String str) {
+			if (stream == IOStream.ERROR)
+				errors.append(str);
+		}
+
+		@Override
+		public void printInt(IOStream stream, int num) {
+		}
+
+		@Override
+		public void printChar(IOStream stream, char letter) {
+		}
+
+		@Override
+		public void cancelRead() {
+		}
+	}
+
+	/**
+	 * a loop which runs 5 times, with the given annotation on line 6 (0 based line 5). $s0 counts the iterations
+	 */
+	private static String program(String annotation) {
+		return "# @{ }@\n" +
+				".text\n" +
+				"main:\n" +
+				"li $t1, 5\n" +
+				"loop:\n" +
+				"addi $s0, $s0, 1 # @{ " + annotation + " }@\n" +
+				"blt $s0, $t1, loop\n" +
+				"li $v0, 10\n" +
+				"syscall\n";
+	}
+
+	private static long getRegister(CPU cpu, Register r) {
+		return DataConverter.decodeAsSigned(cpu.getRegister(r).getBytes());
+	}
+
+	/**
+	 * run a program with annotations and a time budget, as in cmd mode
+	 *
+	 * @return the manager (for its profiler)
+	 */
+	private AnnotationManager run(CPU cpu, IO io, String program, long budget) {
+		AnnotationManager a = new AnnotationManager(cpu, io, false/*enable visualisations*/);
+		a.newExecutor();
+		a.setTimeBudget(budget, true);
+		cpu.registerListener(new CmdSimulationListener(a));
+		cpu.setCycleFreq(0);
+
+		Program p = Assembler.assemble(program, null, false);
+		assertNotNull(p);
+		a.onNewProgram(cpu);
+		cpu.loadProgram(p);
+		cpu.runProgram();
+		return a;
+	}
+
+	private long executions(AnnotationManager a, int line) {
+		for (AnnotationProfiler.Entry e : a.getProfiler().getSlowest(10))
+			if (e.lineNumber == line)
+				return e.getExecutions();
+		return 0;
+	}
+
+	@Test(timeout = 20000)
+	public void testStoppedAtBridgeCall() {
+		RecordingIO io = new RecordingIO();
+		CPU cpu = new CPU(io);
+		try {
+			// counts its executions in $s1, then spins calling the bridge
+			AnnotationManager a = run(cpu, io, program("$s1.set($s1.get() + 1); while (true) { $s0.get(); }"), 50);
+
+			assertEquals(5, getRegister(cpu, Register.s0)); // the program ran to completion
+			assertEquals(1, getRegister(cpu, Register.s1)); // ran once (on the simulation's thread), then disabled
+			assertEquals(1, executions(a, 5));
+			String errors = io.errors.toString();
+			assertTrue(errors, errors.contains("exceeded its time budget of 50 ms"));
+			assertTrue(errors, errors.contains("line: 6"));
+			assertTrue(errors, errors.contains("It was stopped"));
+
+			// no thread is left running the annotation
+			for (Thread t : Thread.getAllStackTraces().keySet())
+				assertFalse(t.getName(), t.getName().startsWith("Annotations"));
+		} finally {
+			cpu.shutdown();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testOverrunWithoutBridgeCalls() {
+		RecordingIO io = new RecordingIO();
+		CPU cpu = new CPU(io);
+		try {
+			// can't be stopped, so runs to completion and is disabled afterwards
+			AnnotationManager a = run(cpu, io, program("var t = Date.now(); while (Date.now() - t < 100) {}"), 20);
+
+			assertEquals(5, getRegister(cpu, Register.s0));
+			assertEquals(1, executions(a, 5));
+			List<AnnotationProfiler.Entry> slowest = a.getProfiler().getSlowest(1);
+			assertTrue(slowest.get(0).getMaxNanos() >= 100000000L);
+			String errors = io.errors.toString();
+			assertTrue(errors, errors.contains("exceeded its time budget of 20 ms"));
+			assertTrue(errors, errors.contains("It has been disabled"));
+		} finally {
+			cpu.shutdown();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testWithinBudget() {
+		RecordingIO io = new RecordingIO();
+		CPU cpu = new CPU(io);
+		try {
+			AnnotationManager a = run(cpu, io, program("$s1.set($s1.get() + 1);"), 500);
+			assertEquals(5, getRegister(cpu, Register.s1));
+			assertEquals(5, executions(a, 5));
+			assertEquals("", io.errors.toString());
+		} finally {
+			cpu.shutdown();
+		}
+
+		// without a budget nothing is disabled
+		io = new RecordingIO();
+		cpu = new CPU(io);
+		try {
+			AnnotationManager a = run(cpu, io, program("var t = Date.now(); while (Date.now() - t < 5) {}"), 0);
+			assertEquals(5, executions(a, 5));
+			assertEquals("", io.errors.toString());
+		} finally {
+			cpu.shutdown();
+		}
+	}
+
+	@Test
+	public void testBudget() throws InterruptedException {
+		AnnotationBudget b = new AnnotationBudget();
+		b.check(); // not timing anything
+
+		b.start(1000);
+		b.check();
+
+		b.start(0);
+		Thread.sleep(2);
+		try {
+			b.check();
+			throw new AssertionError("expected the budget to be exceeded");
+		} catch (AnnotationTimeout ignored) {
+		}
+
+		b.stop();
+		b.check();
+	}
+}
@@ -0,0 +1,72 @@
+package simulizer.annotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+
+/**
+ * Test the recording of the time spent executing each annotation
+ */
+@Category({UnitTests.class})
+public class AnnotationProfilerTest {
+
+	@Test
+	public void testRecord() {
+		AnnotationProfiler p = new AnnotationProfiler();
+		assertTrue(p.getSlowest(5).isEmpty());
+		assertEquals("", p.report(5));
+		assertEquals(0, p.getTotalNanos());
+
+		p.record(AnnotationProfiler.INITIAL_ANNOTATION, 1000);
+		p.record(3, 2000);
+		p.record(3, 4000);
+		p.record(7, 5000);
+
+		assertEquals(12000, p.getTotalNanos());
+		List<AnnotationProfiler.Entry> slowest = p.getSlowest(5);
+		assertEquals(3, slowest.size());
+
+		// the most total time first
+		AnnotationProfiler.Entry e = slowest.get(0);
+		assertEquals(3, e.lineNumber);
+		assertEquals(2, e.getExecutions());
+		assertEquals(6000, e.getTotalNanos());
+		assertEquals(4000, e.getMaxNanos());
+		assertEquals(7, slowest.get(1).lineNumber);
+		assertEquals(AnnotationProfiler.INITIAL_ANNOTATION, slowest.get(2).lineNumber);
+
+		// limited to n
+		assertEquals(1, p.getSlowest(1).size());
+
+		// copies, not affected by later executions
+		p.record(3, 1000);
+		assertEquals(2, e.getExecutions());
+		assertEquals(3, p.getSlowest(1).get(0).getExecutions());
+
+		p.clear();
+		assertTrue(p.getSlowest(5).isEmpty());
+		assertEquals(0, p.getTotalNanos());
+	}
+
+	@Test
+	public void testReport() {
+		AnnotationProfiler p = new AnnotationProfiler();
+		p.record(AnnotationProfiler.INITIAL_ANNOTATION, 500000);
+		p.record(9, 2000000);
+		p.record(9, 1000000);
+
+		String[] lines = p.report(5).split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].startsWith("Slowest annotations (3.500 ms in total)"));
+		assertTrue(lines[1].contains("line 10: 3.000 ms total, 2 executions, 1.500 ms mean, 2.000 ms max"));
+		assertTrue(lines[2].contains("initial annotation"));
+
+		assertEquals(2, p.report(1).split("\n").length);
+	}
+}
@@ -0,0 +1,186 @@
+package simulizer.annotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.cmd.CmdSimulationListener;
+import simulizer.simulation.components.IOTest;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.data.representation.DataConverter;
+
+/**
+ * Test the running of annotations on their own thread: in order, no more than a set number of cycles behind the CPU,
+ * and with their writes applied by the simulation thread
+ */
+@Category({UnitTests.class})
+public class AsyncAnnotationRunnerTest {
+
+	@Test(timeout = 10000)
+	public void testOrder() throws InterruptedException {
+		AsyncAnnotationRunner runner = new AsyncAnnotationRunner(1000);
+		try {
+			List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+			for (int i = 0; i < 100; ++i) {
+				final int n = i;
+				runner.submit(i, () -> {
+					if (n % 10 == 0)
+						Thread.yield();
+					ran.add(n);
+				});
+			}
+			runner.awaitAll();
+
+			assertEquals(0, runner.getOutstandingCount());
+			assertEquals(100, ran.size());
+			for (int i = 0; i < 100; ++i)
+				assertEquals(i, (int) ran.get(i));
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testLagBound() throws InterruptedException {
+		AsyncAnnotationRunner runner = new AsyncAnnotationRunner(10);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			assertTrue(runner.awaitCycle(1000, 10)); // nothing outstanding
+
+			// an annotation reached at cycle 5 which doesn't finish until released
+			runner.submit(5, () -> {
+				try {
+					release.await();
+				} catch (InterruptedException ignored) {
+				}
+			});
+			assertEquals(1, runner.getOutstandingCount());
+			assertTrue(runner.awaitCycle(15, 10)); // 10 cycles ahead: allowed
+			assertFalse(runner.awaitCycle(16, 10)); // too far ahead
+
+			// raising the limit lets the CPU carry on
+			runner.setMaxLag(20);
+			assertTrue(runner.awaitCycle(16, 10));
+			assertFalse(runner.awaitCycle(26, 10));
+			runner.setMaxLag(10);
+
+			// the CPU is blocked until the annotation finishes
+			AtomicReference<Boolean> proceeded = new AtomicReference<>();
+			Thread cpu = new Thread(() -> {
+				try {
+					proceeded.set(runner.awaitCycle(100, 5000));
+				} catch (InterruptedException ignored) {
+				}
+			});
+			cpu.start();
+			Thread.sleep(50);
+			assertTrue(cpu.isAlive());
+			release.countDown();
+			cpu.join(5000);
+			assertEquals(Boolean.TRUE, proceeded.get());
+			assertEquals(0, runner.getOutstandingCount());
+		} finally {
+			release.countDown();
+			runner.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testDeferredWrites() throws InterruptedException {
+		AsyncAnnotationRunner runner = new AsyncAnnotationRunner(1000);
+		try {
+			List<Integer> applied = new ArrayList<>();
+			AtomicReference<Thread> appliedBy = new AtomicReference<>();
+			CountDownLatch written = new CountDownLatch(1);
+			runner.submit(0, () -> {
+				for (int i = 0; i < 3; ++i) {
+					final int n = i;
+					runner.deferWrite(() -> {
+						applied.add(n);
+						appliedBy.set(Thread.currentThread());
+					});
+				}
+				written.countDown();
+			});
+			assertTrue(written.await(5, TimeUnit.SECONDS));
+			assertTrue(applied.isEmpty()); // not applied by the annotation thread
+
+			// applied in order by the thread passing the barrier
+			assertTrue(runner.awaitCycle(1, 10));
+			assertEquals(3, applied.size());
+			assertEquals(0, (int) applied.get(0));
+			assertEquals(2, (int) applied.get(2));
+			assertSame(Thread.currentThread(), appliedBy.get());
+
+			// discarded when a new program is loaded
+			runner.deferWrite(() -> applied.add(3));
+			runner.reset();
+			runner.awaitAll();
+			assertEquals(3, applied.size());
+		} finally {
+			runner.shutdown();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testProgramWrites() {
+		// the annotation copies the loop counter to $s2 and memory, then reads back what it wrote into $s3
+		String program = "# @{ sim.watchMemory(0x10010000, 4) }@\n" +
+				".data\n" +
+				"out: .word 0\n" +
+				".text\n" +
+				"main:\n" +
+				"li $t1, 5\n" +
+				"la $t2, out\n" +
+				"loop:\n" +
+				"addi $s0, $s0, 1 # @{ var n = $s0.get(); $s2.set(n);" +
+				" sim.writeBytesToMem($t2.get(), convert.encodeAsSigned(n));" +
+				" $s3.set($s2.get() == n && sim.readSignedWordArrayFromMem($t2.get(), 4)[0] == n ? 1 : 0); }@\n" +
+				"blt $s0, $t1, loop\n" +
+				"li $v0, 10\n" +
+				"syscall\n";
+
+		IOTest io = new IOTest();
+		CPU cpu = new CPU(io);
+		try {
+			AnnotationManager a = new AnnotationManager(cpu, io, false/*enable visualisations*/);
+			a.newExecutor();
+			a.setAsynchronous(true, 100);
+			cpu.registerListener(new CmdSimulationListener(a));
+			cpu.setCycleFreq(0);
+
+			Program p = Assembler.assemble(program, null, false);
+			assertNotNull(p);
+			a.onNewProgram(cpu);
+			cpu.loadProgram(p);
+			cpu.runProgram();
+
+			assertEquals(5, a.getProfiler().getSlowest(5).stream().filter(e -> e.lineNumber == 8).findFirst().get().getExecutions());
+			assertEquals(5, DataConverter.decodeAsSigned(cpu.getRegister(Register.s2).getBytes()));
+			assertEquals(1, DataConverter.decodeAsSigned(cpu.getRegister(Register.s3).getBytes()));
+			int out = (int) DataConverter.decodeAsSigned(cpu.getRegister(Register.t2).getBytes());
+			assertEquals(5, DataConverter.decodeAsSigned(cpu.getMainMemory().readFromMem(out, 4)));
+			a.setAsynchronous(false, 0);
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		} finally {
+			cpu.shutdown();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package simulizer.annotations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.components.IOTest;
+import simulizer.simulation.cpu.components.CPU;
+
+/**
+ * Test the bulk memory access of the simulation bridge, for accesses which fit in its scratch buffer and those which
+ * don't
+ */
+@Category({UnitTests.class})
+public class SimulationBridgeTest {
+
+	@Test
+	public void testBulkAccess() throws Exception {
+		Program p = Assembler.assemble(".data\narr: .space 8192\n.text\nmain:\nli $v0, 10\nsyscall\n", null, false);
+		assertNotNull(p);
+		CPU cpu = new CPU(new IOTest());
+		try {
+			cpu.loadProgram(p);
+			SimulationBridge sim = new SimulationBridge();
+			sim.cpu = cpu;
+			int arr = p.dataSegmentStart.getValue();
+
+			for (int words : new int[] { 4, 2000 }) { // 16 bytes and 8000 bytes
+				int[] signed = new int[words];
+				for (int i = 0; i < words; ++i)
+					signed[i] = i * (i % 2 == 0 ? 1 : -1);
+				sim.writeSignedWordsToMem(arr, signed);
+				assertArrayEquals(signed, sim.readSignedWordArrayFromMem(arr, words * 4));
+
+				long[] unsigned = new long[words];
+				for (int i = 0; i < words; ++i)
+					unsigned[i] = 0xFFFFFFFFL - i;
+				sim.writeUnsignedWordsToMem(arr, unsigned);
+				long[] read = new long[words];
+				sim.readUnsignedWordsIntoArray(arr, read);
+				assertArrayEquals(unsigned, read);
+				assertEquals(0xFFFFFFFFL, (long) sim.readUnsignedWordsFromMem(arr, 4).get(0));
+
+				ByteBuffer direct = ByteBuffer.allocateDirect(words * 4);
+				while (direct.hasRemaining())
+					direct.put((byte) (direct.position() % 3));
+				direct.flip();
+				sim.writeBufferToMem(arr, direct);
+				assertEquals(direct.limit(), direct.position());
+				boolean[] bools = sim.readBoolsFromMem(arr, words * 4);
+				for (int i = 0; i < bools.length; ++i)
+					assertEquals(i % 3 != 0, bools[i]);
+			}
+		} finally {
+			cpu.shutdown();
+		}
+	}
+}
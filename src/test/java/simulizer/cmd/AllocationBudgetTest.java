@@ -0,0 +1,164 @@
+package simulizer.cmd;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.AllocationTests;
+import simulizer.annotations.AnnotationManager;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.components.IOTest;
+import simulizer.simulation.cpu.CPUMetrics;
+import simulizer.simulation.cpu.components.CPU;
+
+/**
+ * Checks that the simulation allocates no more than a set number of bytes for each instruction it executes, running
+ * headless as in cmd mode. Allocation in the execution loop means garbage collection pauses in the simulation, and
+ * creeps back in easily when features are added.
+ *
+ * Annotations are run as in cmd mode: synchronously (on the thread handling the simulation
+ * messages), with a time budget as set by --annotation-budget.
+ *
+ * The bytes allocated by the simulation thread and the threads which handle its messages are measured for the same
+ * program running two different numbers of iterations, so that the fixed costs (starting the simulation, the initial
+ * annotation) cancel out and only the steady state cost per instruction remains.
+ */
+@Category({AllocationTests.class})
+public class AllocationBudgetTest {
+	// the budgets are around 10% over what was measured when they were set, so that a few hundred more bytes per
+	// instruction are caught. The figures depend on the JVM (version, JIT and escape analysis, Nashorn), which is why
+	// these tests are only run by `gradle allocationTest`. Re-measure when changing JVM, and when allocation is taken
+	// out of the execution loop lower the budgets to match
+
+	/**
+	 * the most bytes which may be allocated for each instruction executed
+	 */
+	private static final double BUDGET = 2800; // measured: 2550 (OpenJDK 11.0.21, varying by less than 1% between runs)
+	/**
+	 * the most bytes which may be allocated for each instruction executed when running annotations
+	 */
+	private static final double ANNOTATIONS_BUDGET = 3650; // measured: 3320 (OpenJDK 11.0.21, as above)
+
+	/**
+	 * the time budget for each annotation (as set by --annotation-budget). Enforcing it adds to the cost of
+	 * running an annotation
+	 */
+	private static final long ANNOTATION_TIME_BUDGET = 500;
+
+	private static final int WARMUP_RUNS = 3;
+	private static final int SHORT_RUN = 200;
+	private static final int LONG_RUN = 1000;
+
+	/**
+	 * a loop exercising the ALU, memory, branches and function calls. The iteration count is substituted for %d and
+	 * the annotations (bound to a line in the loop) for the %s
+	 */
+	private static final String program = "%s\n" +
+			".data\n" +
+			"array: .space 64\n" +
+			".text\n" +
+			"main:\n" +
+			"li $s0, %d\n" +
+			"li $s1, 0\n" +
+			"la $s2, array\n" +
+			"loop:\n" +
+			"andi $t0, $s1, 15\n" +
+			"sll $t0, $t0, 2\n" +
+			"addu $t0, $t0, $s2\n" +
+			"lw $t1, 0($t0)\n" +
+			"move $a0, $t1\n" +
+			"move $a1, $s1\n" +
+			"jal combine %s\n" +
+			"sw $v0, 0($t0)\n" +
+			"addi $s1, $s1, 1\n" +
+			"blt $s1, $s0, loop\n" +
+			"move $a0, $v0\n" +
+			"li $v0, 10\n" +
+			"syscall\n" +
+			"combine:\n" +
+			"sll $v0, $a0, 3\n" +
+			"addu $v0, $v0, $a0\n" +
+			"xor $v0, $v0, $a1\n" +
+			"jr $ra\n";
+
+	private static final String initialAnnotation = "# @{ var total = 0 }@";
+	private static final String loopAnnotation = "# @{ total += $s1.get() }@";
+
+	@Before
+	public void checkSupported() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+	}
+
+	/**
+	 * @return the bytes allocated while running the program
+	 */
+	private long measureRun(CPU cpu, AnnotationManager annotations, Program p) {
+		if (annotations != null)
+			annotations.onNewProgram(cpu);
+		cpu.loadProgram(p);
+		CPUMetrics metrics = cpu.getMetrics();
+		long before = metrics.getAllocatedBytes();
+		cpu.runProgram();
+		return metrics.getAllocatedBytes() - before;
+	}
+
+	/**
+	 * @return the bytes allocated per instruction executed, in the steady state
+	 */
+	private double measure(boolean runAnnotations) {
+		IOTest io = new IOTest();
+		CPU cpu = new CPU(io); // not pipelined, as in cmd mode
+		try {
+			AnnotationManager annotations = null;
+			if (runAnnotations) {
+				annotations = new AnnotationManager(cpu, io, false/*enable visualisations*/);
+				annotations.newExecutor();
+				annotations.setTimeBudget(ANNOTATION_TIME_BUDGET, false);
+			}
+			cpu.registerListener(new CmdSimulationListener(annotations));
+			cpu.setCycleFreq(0);
+
+			Program shortRun = assemble(SHORT_RUN, runAnnotations);
+			Program longRun = assemble(LONG_RUN, runAnnotations);
+
+			for (int i = 0; i < WARMUP_RUNS; ++i)
+				measureRun(cpu, annotations, longRun);
+
+			long shortBytes = measureRun(cpu, annotations, shortRun);
+			long shortInstructions = cpu.getInstructionsRetired();
+			long longBytes = measureRun(cpu, annotations, longRun);
+			long longInstructions = cpu.getInstructionsRetired();
+
+			return (double) (longBytes - shortBytes) / (longInstructions - shortInstructions);
+		} finally {
+			cpu.shutdown();
+		}
+	}
+
+	private Program assemble(int iterations, boolean runAnnotations) {
+		String text = String.format(program, runAnnotations ? initialAnnotation : "", iterations,
+				runAnnotations ? loopAnnotation : "");
+		Program p = Assembler.assemble(text, null, false);
+		assertTrue(p != null);
+		return p;
+	}
+
+	@Test
+	public void testWithoutAnnotations() {
+		double bytes = measure(false);
+		assertTrue(String.format("%.1f bytes allocated per instruction (budget: %.1f)", bytes, BUDGET), bytes <= BUDGET);
+	}
+
+	@Test
+	public void testWithAnnotations() {
+		double bytes = measure(true);
+		assertTrue(String.format("%.1f bytes allocated per instruction (budget: %.1f)", bytes, ANNOTATIONS_BUDGET),
+				bytes <= ANNOTATIONS_BUDGET);
+	}
+}
@@ -0,0 +1,102 @@
+package simulizer.highlevel.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.simulation.components.IOTest;
+
+/**
+ * Test drawing into the canvas frame buffer and presenting frames
+ */
+@Category({UnitTests.class})
+public class FrameBufferTest {
+
+	@Test
+	public void testDrawing() {
+		FrameBuffer f = new FrameBuffer(4, 3);
+		f.plot(1, 2, 5);
+		f.plot(4, 0, 6); // outside
+		f.plot(-1, 0, 6);
+		assertEquals(5, f.getPixels()[2 * 4 + 1]);
+
+		// clipped at the right and bottom
+		f.fillRect(2, 1, 100, Integer.MAX_VALUE, 7);
+		int[] expected = {
+			0, 0, 0, 0,
+			0, 0, 7, 7,
+			0, 5, 7, 7 };
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], f.getPixels()[i]);
+
+		// clipped at the left and top
+		f.fillRect(-5, -5, 6, 6, 8);
+		assertEquals(8, f.getPixels()[0]);
+		assertEquals(0, f.getPixels()[1]);
+
+		f.clear(9);
+		for (int p : f.getPixels())
+			assertEquals(9, p);
+	}
+
+	@Test
+	public void testText() {
+		FrameBuffer f = new FrameBuffer(10, 10);
+		for (int i = 0; i < FrameBuffer.MAX_TEXT_COMMANDS; i++)
+			assertTrue(f.text("t" + i, i, 0, 1, "Monospace", 12));
+		assertFalse(f.text("too many", 0, 0, 1, "Monospace", 12));
+		assertTrue(f.takeTextOverflowed());
+		assertFalse(f.takeTextOverflowed());
+		assertEquals("t3", f.getText(3));
+		assertEquals(3.0, f.getTextX(3), 0);
+
+		FrameBuffer copy = new FrameBuffer(1, 1);
+		copy.copyFrom(f);
+		assertEquals(10, copy.getWidth());
+		assertEquals(FrameBuffer.MAX_TEXT_COMMANDS, copy.getTextCount());
+
+		f.clearText();
+		assertEquals(0, f.getTextCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new FrameBuffer(0, 10);
+	}
+
+	@Test
+	public void testPresent() {
+		CanvasModel c = new CanvasModel(new IOTest());
+		assertNull(c.takeChanges());
+
+		c.setResolution(2, 2);
+		c.fill(c.rgb(255, 0, 0));
+		c.plot(1, 1, c.color("#00FF00"));
+		c.present();
+		c.plot(0, 0, c.rgb(0, 0, 255));
+		c.present(); // only the latest frame is shown
+
+		ModelChanges<FrameBuffer> changes = c.takeChanges();
+		assertEquals(2, changes.getCount());
+		assertFalse(changes.hasActions());
+		int[] pixels = changes.structure.getPixels();
+		assertEquals(0xFF0000FF, pixels[0]);
+		assertEquals(0xFFFF0000, pixels[1]);
+		assertEquals(0xFF00FF00, pixels[3]);
+		assertNull(c.takeChanges());
+
+		// drawing continues from the presented frame, into a different buffer to the one being shown
+		c.plot(1, 0, 0);
+		c.present();
+		ModelChanges<FrameBuffer> next = c.takeChanges();
+		assertNotSame(changes.structure, next.structure);
+		assertEquals(0xFF0000FF, next.structure.getPixels()[0]);
+		assertEquals(0, next.structure.getPixels()[1]);
+	}
+}
@@ -0,0 +1,111 @@
+package simulizer.highlevel.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.simulation.components.IOTest;
+
+/**
+ * Test the coalescing of the changes made to a list between frames
+ */
+@Category({UnitTests.class})
+public class ListModelTest {
+
+	private ListModel newModel() {
+		ListModel model = new ListModel(new IOTest(), Arrays.asList(1L, 2L, 3L, 4L));
+		model.takeChanges(); // the initial list
+		return model;
+	}
+
+	@Test
+	public void testCoalesce() {
+		ListModel model = newModel();
+		assertNull(model.takeChanges());
+
+		model.swap(0, 1);
+		model.swap(1, 2);
+		model.set(3, 9L);
+		model.setMarkers("i", 2);
+
+		ModelChanges<long[]> changes = model.takeChanges();
+		assertTrue(changes.hasActions());
+		assertEquals(4, changes.getCount());
+		assertEquals(4, changes.getActions().size());
+		assertTrue(changes.getActions().get(0) instanceof ListModel.SwapAction);
+		assertTrue(changes.getActions().get(2) instanceof ListModel.SetAction);
+		assertArrayEquals(new long[] { 2, 3, 1, 9 }, changes.structure);
+		assertEquals(Arrays.asList("i"), model.getMarkers().get(2));
+
+		// taken
+		assertNull(model.takeChanges());
+	}
+
+	@Test
+	public void testOverflow() {
+		ListModel model = newModel();
+		final int n = ChangeCoalescer.MAX_ACTIONS + 10;
+		for (int i = 0; i < n; i++)
+			model.swap(0, 1);
+
+		ModelChanges<long[]> changes = model.takeChanges();
+		assertFalse(changes.hasActions());
+		assertTrue(changes.getActions().isEmpty());
+		assertEquals(n, changes.getCount());
+		assertArrayEquals(new long[] { 1, 2, 3, 4 }, changes.structure); // an even number of swaps
+
+		// the next batch can be animated again
+		model.swap(2, 3);
+		assertTrue(model.takeChanges().hasActions());
+	}
+
+	@Test
+	public void testReplacement() {
+		ListModel model = newModel();
+		model.swap(0, 1);
+		model.setList(new long[] { 5, 6 });
+		model.swap(0, 1);
+
+		ModelChanges<long[]> changes = model.takeChanges();
+		assertFalse(changes.hasActions());
+		assertEquals(3, changes.getCount());
+		assertArrayEquals(new long[] { 6, 5 }, changes.structure);
+	}
+
+	@Test
+	public void testMarkersKeptInBounds() {
+		ListModel model = newModel();
+		model.setMarkers("i", 1);
+		model.setMarkers("j", 3);
+		model.setList(new long[] { 5, 6 });
+
+		assertEquals(Arrays.asList("i"), model.getMarkers().get(1));
+		assertNull(model.getMarkers().get(3));
+	}
+
+	@Test
+	public void testInvalidIndex() {
+		ListModel model = newModel();
+		model.swap(0, 4);
+		model.set(-1, 0L);
+		assertNull(model.takeChanges());
+	}
+
+	@Test
+	public void testStyle() {
+		ListModel model = newModel();
+		assertEquals(ListModel.Style.AUTO, model.getStyle());
+		model.setStyle("heat-map");
+		assertEquals(ListModel.Style.HEAT_MAP, model.getStyle());
+		model.setStyle("nonsense");
+		assertEquals(ListModel.Style.HEAT_MAP, model.getStyle());
+	}
+}
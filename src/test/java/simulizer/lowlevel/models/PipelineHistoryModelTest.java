@@ -0,0 +1,161 @@
+package simulizer.lowlevel.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.representation.Address;
+import simulizer.simulation.messages.PipelineHazardMessage;
+import simulizer.simulation.messages.PipelineStateMessage;
+import simulizer.simulation.messages.PipelineStateMessage.BranchOutcome;
+
+/**
+ * Test the recording of the history of the pipeline
+ */
+@Category({UnitTests.class})
+public class PipelineHistoryModelTest {
+
+	private static Address a(int value) {
+		return new Address(value);
+	}
+
+	/**
+	 * simulate a pipeline running straight through the instructions from the given address
+	 */
+	private static void straightLine(PipelineHistoryModel model, int start, int cycles) {
+		for (int i = 0; i < cycles; i++) {
+			int f = start + 4 * i;
+			model.processPipelineStateMessage(new PipelineStateMessage(a(f), i >= 1 ? a(f - 4) : null, i >= 2 ? a(f - 8) : null));
+		}
+	}
+
+	@Test
+	public void testBeforeAndAfter() {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		straightLine(model, 0x400000, 6);
+		assertEquals(6, model.size());
+
+		PipelineHistoryModel.PipelineState s = model.get(5);
+		assertEquals(a(0x400014), s.fetched);
+		assertEquals(a(0x400010), s.decoded);
+		assertEquals(a(0x40000C), s.executed);
+		assertFalse(s.isJump);
+		assertFalse(s.hazard.isPresent());
+		assertEquals(Arrays.asList(a(0x400020), a(0x40001C), a(0x400018)), s.before);
+		assertEquals(Arrays.asList(a(0x400008), a(0x400004), a(0x400000)), s.after);
+
+		// nothing completed yet
+		assertTrue(model.get(0).after.isEmpty());
+		assertNull(model.get(0).decoded);
+	}
+
+	@Test
+	public void testJumpAndHazard() {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		straightLine(model, 0x400000, 4);
+		model.processHazardStateMessage(new PipelineHazardMessage(PipelineHazardMessage.Hazard.CONTROL));
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x400100), null, a(0x400008)));
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x400104), a(0x400100), null));
+
+		PipelineHistoryModel.PipelineState jump = model.get(4);
+		assertTrue(jump.isJump);
+		assertTrue(jump.after.isEmpty());
+		assertEquals(PipelineHazardMessage.Hazard.CONTROL, jump.hazard.get());
+
+		// the completed instructions stop at the jump
+		PipelineHistoryModel.PipelineState next = model.get(5);
+		assertFalse(next.isJump);
+		assertTrue(next.after.isEmpty());
+	}
+
+	@Test
+	public void testBranchPredictions() {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		straightLine(model, 0x400000, 3);
+		// the branch at 0x400008 is predicted taken as it is decoded, then found to be correct
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x40000C), a(0x400008), a(0x400004), a(0x400008), BranchOutcome.NONE));
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x400100), null, a(0x400008), null, BranchOutcome.CORRECTLY_PREDICTED));
+		// the branch at 0x400104 is predicted taken as it is fetched, then found to be wrong
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x400104), a(0x400100), null, a(0x400104), BranchOutcome.NONE));
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x400200), a(0x400104), a(0x400100)));
+		model.processPipelineStateMessage(new PipelineStateMessage(a(0x400204), a(0x400200), a(0x400104), null, BranchOutcome.MISPREDICTED));
+
+		PipelineHistoryModel.PipelineState s = model.get(2);
+		assertFalse(s.fetchPredictedTaken || s.decodePredictedTaken);
+		assertEquals(BranchOutcome.NONE, s.outcome);
+
+		s = model.get(3);
+		assertTrue(s.decodePredictedTaken);
+		assertFalse(s.fetchPredictedTaken);
+		assertEquals(BranchOutcome.CORRECTLY_PREDICTED, model.get(4).outcome);
+		assertTrue(model.get(4).isJump);
+
+		s = model.get(5);
+		assertTrue(s.fetchPredictedTaken);
+		assertFalse(s.decodePredictedTaken);
+		assertEquals(BranchOutcome.MISPREDICTED, model.get(7).outcome);
+	}
+
+	@Test
+	public void testFiveStages() {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		for (int i = 0; i < 8; i++) {
+			int f = 0x400000 + 4 * i;
+			Address[] stages = new Address[5];
+			for (int stage = 0; stage < 5; stage++)
+				stages[stage] = i >= stage ? a(f - 4 * stage) : null;
+			model.processPipelineStateMessage(new PipelineStateMessage(stages[0], stages[1], stages[2], stages[3],
+					stages[4], null, BranchOutcome.NONE));
+		}
+		assertEquals(5, model.getStageCount());
+
+		PipelineHistoryModel.PipelineState s = model.get(7);
+		assertEquals(5, s.stages);
+		assertEquals(a(0x40001C), s.fetched);
+		assertEquals(a(0x400014), s.executed);
+		assertEquals(a(0x400010), s.memory);
+		assertEquals(a(0x40000C), s.writeback);
+		// instructions are completed once they have been written back
+		assertEquals(Arrays.asList(a(0x400008), a(0x400004), a(0x400000)), s.after);
+		assertTrue(model.get(4).after.isEmpty());
+		assertNull(model.get(3).writeback);
+
+		// back to three stages for the next program
+		model.clear();
+		straightLine(model, 0x400000, 2);
+		assertEquals(3, model.getStageCount());
+		assertEquals(3, model.get(1).stages);
+		assertNull(model.get(1).memory);
+	}
+
+	@Test
+	public void testLongHistory() {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		final int cycles = 100_000; // several chunks, and more than the old limit
+		straightLine(model, 0, cycles);
+		assertEquals(cycles, model.size());
+
+		for (int cycle : new int[] { (1 << 14) - 1, 1 << 14, 1 << 14 + 1, cycles - 1 }) {
+			PipelineHistoryModel.PipelineState s = model.get(cycle);
+			assertEquals(a(4 * cycle), s.fetched);
+			assertEquals(a(4 * (cycle - 3)), s.after.get(0));
+		}
+
+		model.clear();
+		assertEquals(0, model.size());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testNotRecorded() {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		straightLine(model, 0, 3);
+		model.get(3);
+	}
+}
@@ -0,0 +1,125 @@
+package simulizer.lowlevel.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.extractor.problem.ProblemCountLogger;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.simulation.components.IOTest;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUPipeline;
+import simulizer.simulation.data.representation.DataConverter;
+
+/**
+ * Test that the cycles recorded while the CPU runs ahead play back to the same state
+ */
+@Category({UnitTests.class})
+public class PlaybackBufferTest {
+
+	private Program createProgram() {
+		String program = "" +
+				".text\n" +
+				"main:\n" +
+				"    li $t0, 0\n" +
+				"    li $t1, 50\n" +
+				"loop:\n" +
+				"    addi $t0, $t0, 1\n" +
+				"    add $t2, $t2, $t0\n" +
+				"    bne $t0, $t1, loop\n" +
+				"    li $v0, 10\n" +
+				"    syscall\n";
+
+		ProblemCountLogger log = new ProblemCountLogger(null);
+		Program p = Assembler.assemble(program, log, false);
+		assertEquals(0, log.problemCount);
+		return p;
+	}
+
+	private void playBack(CPU cpu) throws InterruptedException {
+		PipelineHistoryModel model = new PipelineHistoryModel();
+		PlaybackBuffer playback = new PlaybackBuffer(model, 10);
+		playback.attach(cpu);
+		cpu.setRunAhead(true);
+		cpu.setCycleFreq(1); // would take minutes if the CPU was not running ahead
+		cpu.loadProgram(createProgram());
+
+		Thread t = new Thread(cpu::runProgram);
+		t.start();
+
+		long played = 0;
+		while (t.isAlive() || playback.getBufferedCycles() > 0) {
+			// the CPU may not get more than the capacity ahead of the playback
+			assertTrue(playback.getBufferedCycles() <= 10);
+			played += playback.advance(3);
+			Thread.sleep(1);
+		}
+		t.join();
+
+		PlaybackBuffer.State state = playback.getPlayedState();
+		assertTrue(played > 0);
+		assertTrue(model.size() > 0);
+		assertEquals(cpu.getCycles(), state.cycle);
+		assertEquals(50, DataConverter.decodeAsSigned(state.registers[Register.t0.getID()].getBytes()));
+		assertEquals(1275, DataConverter.decodeAsSigned(state.registers[Register.t2.getID()].getBytes()));
+		for (int i = 0; i < state.registers.length; i++)
+			assertSame(cpu.getRegisters()[i], state.registers[i]);
+	}
+
+	@Test
+	public void testAwaitPlayback() throws InterruptedException {
+		CPU cpu = new CPU(new IOTest());
+		PlaybackBuffer playback = new PlaybackBuffer(new PipelineHistoryModel(), 10);
+		playback.attach(cpu);
+		cpu.setRunAhead(true);
+		cpu.setCycleFreq(1);
+		cpu.loadProgram(createProgram());
+
+		Thread simulation = new Thread(cpu::runProgram);
+		simulation.start();
+		try {
+			while (playback.getBufferedCycles() < 10)
+				Thread.sleep(1);
+
+			// waits for the recorded cycles to be played back (eg before running an annotation)
+			Thread waiting = new Thread(playback::awaitPlayback);
+			waiting.start();
+			waiting.join(100);
+			assertTrue(waiting.isAlive());
+			playback.advance(10);
+			waiting.join(1000);
+			assertFalse(waiting.isAlive());
+		} finally {
+			playback.skipToEnd();
+			simulation.join();
+			cpu.shutdown();
+		}
+	}
+
+	@Test
+	public void testDrainWait() {
+		// never waits forever (wait(0)) or for longer than the allowed drain time
+		assertEquals(1000, PlaybackBuffer.drainWait(0));
+		assertEquals(1000, PlaybackBuffer.drainWait(-1));
+		assertEquals(1000, PlaybackBuffer.drainWait(Double.NaN));
+		assertEquals(1000, PlaybackBuffer.drainWait(Double.POSITIVE_INFINITY));
+		assertEquals(1000, PlaybackBuffer.drainWait(0.5));
+		assertEquals(1000, PlaybackBuffer.drainWait(1e-300));
+		// long enough for a couple of cycles to be played back
+		assertEquals(200, PlaybackBuffer.drainWait(10));
+		assertEquals(1, PlaybackBuffer.drainWait(1e9));
+	}
+
+	@Test
+	public void testPlayBack() throws InterruptedException {
+		playBack(new CPU(new IOTest()));
+		playBack(new CPUPipeline(new IOTest()));
+	}
+}
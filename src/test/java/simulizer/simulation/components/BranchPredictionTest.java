@@ -0,0 +1,224 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor.Strategy;
+import simulizer.simulation.cpu.branch_prediction.BranchStatistics;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUPipeline;
+import simulizer.simulation.data.representation.DataConverter;
+import simulizer.simulation.messages.PipelineStateMessage;
+import simulizer.simulation.messages.ProblemMessage;
+import simulizer.simulation.messages.SimulationListener;
+
+/**
+ * Test the branch prediction strategies, on their own and in the pipelined CPU
+ */
+@Category({UnitTests.class})
+public class BranchPredictionTest {
+
+	/**
+	 * nested loops with a function call and a branch which alternates. Leaves the sum of the values in $s2
+	 */
+	private static final String program = ".text\nmain:\n" +
+			"li $s0, 0\n" +
+			"li $s2, 0\n" +
+			"li $s3, 5\n" +
+			"li $s4, 8\n" +
+			"outer:\n" +
+			"li $s1, 0\n" +
+			"inner:\n" +
+			"move $a0, $s1\n" +
+			"jal f\n" +
+			"addu $s2, $s2, $v0\n" +
+			"andi $t0, $s1, 1\n" +
+			"beqz $t0, even\n" +
+			"addi $s2, $s2, 1\n" +
+			"even:\n" +
+			"addi $s1, $s1, 1\n" +
+			"blt $s1, $s4, inner\n" +
+			"addi $s0, $s0, 1\n" +
+			"blt $s0, $s3, outer\n" +
+			"li $v0, 10\n" +
+			"syscall\n" +
+			"f:\n" +
+			"sll $v0, $a0, 1\n" +
+			"jr $ra\n";
+
+	private static final long expectedSum = 5 * (2 * 28 + 4);
+
+	private static class Result {
+		long sum;
+		long cycles;
+		long instructions;
+		BranchStatistics.Site total;
+		List<PipelineStateMessage> states = new ArrayList<>();
+		List<ProblemMessage> problems = new ArrayList<>();
+	}
+
+	private Result run(CPU cpu) {
+		Result r = new Result();
+		cpu.registerListener(new SimulationListener() {
+			@Override
+			public void processPipelineStateMessage(PipelineStateMessage m) {
+				r.states.add(m);
+			}
+
+			@Override
+			public void processProblemMessage(ProblemMessage m) {
+				r.problems.add(m);
+			}
+		});
+		Program p = Assembler.assemble(program, null, false);
+		assertNotNull(p);
+		cpu.loadProgram(p);
+		cpu.setCycleFreq(0);
+		cpu.runProgram();
+		r.sum = DataConverter.decodeAsSigned(cpu.getRegister(Register.s2).getBytes());
+		r.cycles = cpu.getCycles();
+		r.instructions = cpu.getInstructionsRetired();
+		if (cpu instanceof CPUPipeline)
+			r.total = ((CPUPipeline) cpu).getBranchStatistics().getTotal();
+		cpu.shutdown();
+		return r;
+	}
+
+	private Result runPipelined(Strategy strategy) {
+		CPUPipeline cpu = new CPUPipeline(new IOTest());
+		cpu.setBranchPredictor(strategy.create(16));
+		return run(cpu);
+	}
+
+	@Test
+	public void testStrategiesInPipeline() {
+		Result reference = run(new CPU(new IOTest()));
+		assertEquals(expectedSum, reference.sum);
+
+		Map<Strategy, Result> results = new EnumMap<>(Strategy.class);
+		for (Strategy s : Strategy.values()) {
+			Result r = runPipelined(s);
+			results.put(s, r);
+
+			// prediction only changes the timing, never the result
+			assertEquals(s.toString(), expectedSum, r.sum);
+			assertEquals(s.toString(), reference.instructions, r.instructions);
+			assertTrue(s.toString(), r.problems.isEmpty());
+
+			// 5 * (8 * (jal, jr, beqz, blt) + blt)
+			assertEquals(s.toString(), 5 * (8 * 4 + 1), r.total.getExecutions());
+			assertEquals(s.toString(), r.total.getExecutions() - r.total.getCorrect(), r.total.getFlushes());
+
+			long flushes = 0, predicted = 0;
+			for (PipelineStateMessage m : r.states) {
+				if (m.getOutcome() == PipelineStateMessage.BranchOutcome.MISPREDICTED)
+					flushes++;
+				if (m.getPredictedTaken() != null)
+					predicted++;
+			}
+			assertEquals(s.toString(), r.total.getFlushes(), flushes);
+			assertEquals(s.toString(), s != Strategy.NOT_TAKEN, predicted > 0);
+		}
+
+		Result notTaken = results.get(Strategy.NOT_TAKEN);
+		// every taken branch and every jump flushes
+		assertEquals(0, notTaken.total.getFlushesAvoided());
+		assertEquals(notTaken.total.getTaken(), notTaken.total.getFlushes());
+		assertEquals(1 + 2.0 * notTaken.total.getFlushes() / notTaken.total.getExecutions(), notTaken.total.getCPI(), 1e-9);
+
+		for (Strategy s : new Strategy[] { Strategy.BACKWARD_TAKEN, Strategy.ONE_BIT, Strategy.TWO_BIT, Strategy.BTB }) {
+			Result r = results.get(s);
+			assertTrue(s.toString(), r.total.getFlushesAvoided() > 0);
+			assertTrue(s.toString(), r.cycles < notTaken.cycles);
+			assertTrue(s.toString(), r.total.getCPI() < notTaken.total.getCPI());
+		}
+		// the loop branches are only mispredicted when leaving the loop with 2 bits, and on entering too with 1
+		assertTrue(results.get(Strategy.TWO_BIT).total.getCorrect() > results.get(Strategy.ONE_BIT).total.getCorrect());
+		// following branches as they are fetched saves a cycle over following them when decoded
+		assertTrue(results.get(Strategy.BTB).cycles < results.get(Strategy.TWO_BIT).cycles);
+	}
+
+	@Test
+	public void testPatternTable() {
+		Address branch = new Address(0x400010);
+		Address target = new Address(0x400000);
+
+		BranchPredictor oneBit = Strategy.ONE_BIT.create(4);
+		assertFalse(oneBit.predictTaken(branch, target));
+		oneBit.update(branch, true, target);
+		assertTrue(oneBit.predictTaken(branch, target));
+		oneBit.update(branch, false, target);
+		assertFalse(oneBit.predictTaken(branch, target));
+
+		BranchPredictor twoBit = Strategy.TWO_BIT.create(4);
+		assertFalse(twoBit.predictTaken(branch, target));
+		twoBit.update(branch, true, target);
+		assertTrue(twoBit.predictTaken(branch, target));
+		twoBit.update(branch, true, target);
+		twoBit.update(branch, false, target); // one not taken isn't enough to change the prediction
+		assertTrue(twoBit.predictTaken(branch, target));
+		twoBit.update(branch, false, target);
+		assertFalse(twoBit.predictTaken(branch, target));
+
+		// branches 4 instructions apart share an entry
+		twoBit.reset();
+		twoBit.update(branch, true, target);
+		assertTrue(twoBit.predictTaken(new Address(branch.getValue() + 16), target));
+		assertFalse(twoBit.predictTaken(new Address(branch.getValue() + 4), target));
+
+		assertTrue(Strategy.BACKWARD_TAKEN.create(4).predictTaken(branch, target));
+		assertFalse(Strategy.BACKWARD_TAKEN.create(4).predictTaken(target, branch));
+		assertFalse(Strategy.NOT_TAKEN.create(4).predictTaken(branch, target));
+	}
+
+	@Test
+	public void testBranchTargetBuffer() {
+		Address branch = new Address(0x400010);
+		Address target = new Address(0x400000);
+		BranchPredictor btb = Strategy.BTB.create(4);
+
+		assertNull(btb.predictTarget(branch));
+		btb.update(branch, false, target); // not taken branches aren't stored
+		assertNull(btb.predictTarget(branch));
+		btb.update(branch, true, target);
+		assertEquals(target, btb.predictTarget(branch));
+
+		// the target is updated (eg jr to a different return address)
+		Address other = new Address(0x400100);
+		btb.update(branch, true, other);
+		assertEquals(other, btb.predictTarget(branch));
+
+		// replaced by a branch which maps to the same entry
+		Address clash = new Address(branch.getValue() + 16);
+		btb.update(clash, true, target);
+		assertNull(btb.predictTarget(branch));
+		assertEquals(target, btb.predictTarget(clash));
+
+		btb.reset();
+		assertNull(btb.predictTarget(clash));
+	}
+
+	@Test
+	public void testStrategyIds() {
+		for (Strategy s : Strategy.values())
+			assertEquals(s, Strategy.fromId(s.id));
+		assertEquals(Strategy.NOT_TAKEN, Strategy.fromId("nonsense"));
+	}
+}
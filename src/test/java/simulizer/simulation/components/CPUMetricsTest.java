@@ -0,0 +1,86 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.cpu.CPUMetrics;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUPipeline;
+import simulizer.simulation.messages.SimulationListener;
+
+/**
+ * Test the live counters of the CPU and their publication over JMX
+ */
+@Category({UnitTests.class})
+public class CPUMetricsTest {
+
+	private static final String program = ".text\nmain:\n" +
+			"li $t0, 0\n" +
+			"li $t1, 10\n" +
+			"loop:\n" +
+			"addi $t0, $t0, 1\n" +
+			"blt $t0, $t1, loop\n" +
+			"move $a0, $t0\n" +
+			"li $v0, 10\n" +
+			"syscall\n";
+
+	private Set<ObjectName> findCPUs(MBeanServer server) throws JMException {
+		return server.queryNames(new ObjectName("simulizer:type=CPU,*"), null);
+	}
+
+	@Test
+	public void testCounters() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Program p = Assembler.assemble(program, null, false);
+		for (boolean pipelined : new boolean[] { false, true }) {
+			Set<ObjectName> before = findCPUs(server);
+			CPU cpu = pipelined ? new CPUPipeline(new IOTest()) : new CPU(new IOTest());
+			cpu.registerListener(new SimulationListener() {});
+			cpu.loadProgram(p);
+			cpu.setCycleFreq(0);
+			cpu.runProgram();
+
+			// 2 + 2 * 10 + 3
+			CPUMetrics metrics = cpu.getMetrics();
+			assertEquals(25, metrics.getInstructionsRetired());
+			assertTrue(metrics.getCycles() > 0);
+			assertEquals(pipelined, metrics.isPipelined());
+			assertFalse(metrics.isRunning());
+			assertEquals(0, metrics.getMessageQueueDepth());
+			assertTrue(metrics.getWaitForAllMillis() > 0);
+
+			Map<String, Double> dispatch = metrics.getListenerMeanDispatchMicros();
+			assertEquals(1, dispatch.size());
+			assertTrue(dispatch.values().iterator().next() >= 0);
+
+			// only published once registered
+			Set<ObjectName> published = findCPUs(server);
+			published.removeAll(before);
+			assertTrue(published.isEmpty());
+			metrics.register();
+			published = findCPUs(server);
+			published.removeAll(before);
+			assertEquals(1, published.size());
+			ObjectName name = published.iterator().next();
+			assertEquals(25L, server.getAttribute(name, "InstructionsRetired"));
+
+			cpu.shutdown();
+			assertFalse(server.isRegistered(name));
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.simulation.cpu.cache.Cache;
+import simulizer.simulation.cpu.cache.Cache.Replacement;
+import simulizer.simulation.cpu.cache.CacheHierarchy;
+import simulizer.simulation.cpu.cache.CacheHierarchy.Level;
+import simulizer.simulation.cpu.cache.CacheReport;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUFiveStagePipeline;
+import simulizer.simulation.data.representation.DataConverter;
+
+/**
+ * Test the simulated caches and the statistics gathered from running programs through them
+ */
+@Category({UnitTests.class})
+public class CacheTest {
+
+	/**
+	 * adds 1 to every element of a 32x32 matrix of words, a row at a time or a column at a time, then sums the matrix
+	 * into $s2 (1024)
+	 */
+	private static String matrixProgram(boolean rowMajor) {
+		String i = rowMajor ? "$s0" : "$s1";
+		String j = rowMajor ? "$s1" : "$s0";
+		return ".data\n" +
+				"matrix: .space 4096\n" +
+				".text\nmain:\n" +
+				"li $t9, 32\n" +
+				"li $s0, 0\n" +
+				"outer:\n" +
+				"li $s1, 0\n" +
+				"inner:\n" +
+				"sll $t0, " + i + ", 7\n" + // row * 128 bytes
+				"sll $t1, " + j + ", 2\n" + // column * 4 bytes
+				"addu $t0, $t0, $t1\n" +
+				"la $t2, matrix\n" +
+				"addu $t2, $t2, $t0\n" +
+				"lw $t3, 0($t2)\n" + // line 14 (0 based)
+				"addi $t3, $t3, 1\n" +
+				"sw $t3, 0($t2)\n" +
+				"addi $s1, $s1, 1\n" +
+				"blt $s1, $t9, inner\n" +
+				"addi $s0, $s0, 1\n" +
+				"blt $s0, $t9, outer\n" +
+				"la $t0, matrix\n" +
+				"li $t1, 1024\n" +
+				"li $s2, 0\n" +
+				"sum:\n" +
+				"lw $t3, 0($t0)\n" +
+				"addu $s2, $s2, $t3\n" +
+				"addi $t0, $t0, 4\n" +
+				"addi $t1, $t1, -1\n" +
+				"bgtz $t1, sum\n" +
+				"li $v0, 10\n" +
+				"syscall\n";
+	}
+
+	private static CacheHierarchy.Configuration config() {
+		CacheHierarchy.Configuration c = new CacheHierarchy.Configuration();
+		c.instructionSize = 1024;
+		c.dataSize = 1024;
+		c.associativity = 2;
+		c.lineSize = 16;
+		return c;
+	}
+
+	private static CPU run(CPU cpu, String program, CacheHierarchy.Configuration c) {
+		Program p = Assembler.assemble(program, null, false);
+		assertNotNull(p);
+		cpu.getCaches().configure(c);
+		cpu.loadProgram(p);
+		cpu.setCycleFreq(0);
+		cpu.runProgram();
+		cpu.shutdown();
+		assertEquals(1024, DataConverter.decodeAsSigned(cpu.getRegister(Register.s2).getBytes()));
+		return cpu;
+	}
+
+	@Test
+	public void testGeometry() {
+		Cache c = new Cache("L1D", 1024, 2, 16, Replacement.LRU, true, null, 100);
+		assertEquals(32, c.getSets());
+		assertEquals(1024, c.getSize());
+		assertEquals(0x1230, c.lineAddress(0x123F));
+		assertEquals("1024 bytes, 2-way, 16 byte lines, LRU, write-back", c.describe());
+
+		// rounded down to powers of two
+		c = new Cache("L1D", 1000, 3, 20, Replacement.LRU, true, null, 100);
+		assertEquals(16, c.getLineSize());
+		assertEquals(16, c.getSets()); // 1000 / (16 * 3) = 20
+		assertEquals(16 * 3 * 16, c.getSize());
+
+		assertEquals("64 bytes, fully associative, 16 byte lines, FIFO, write-through",
+				new Cache("L1D", 64, 4, 16, Replacement.FIFO, false, null, 100).describe());
+		assertEquals(Replacement.RANDOM, Replacement.fromId("Random"));
+		assertEquals(Replacement.LRU, Replacement.fromId("unknown"));
+	}
+
+	@Test
+	public void testConflicts() {
+		// direct mapped: 4 sets of 16 bytes, so addresses 64 bytes apart share a set
+		Cache c = new Cache("L1D", 64, 1, 16, Replacement.LRU, true, null, 100);
+		assertEquals(100, c.access(0x1000, false));
+		assertEquals(0, c.access(0x1004, false)); // same line
+		assertEquals(100, c.access(0x1010, false)); // next set
+		assertEquals(100, c.access(0x1040, false)); // evicts 0x1000
+		assertEquals(100, c.access(0x1000, false));
+		assertEquals(5, c.getAccesses());
+		assertEquals(4, c.getMisses());
+		assertEquals(2, c.getEvictions());
+		assertEquals(0, c.getWriteBacks());
+		assertArrayEquals(new int[] { 1, 1, 0, 0 }, c.getOccupancy());
+
+		// 2 way: the same addresses fit side by side
+		c = new Cache("L1D", 128, 2, 16, Replacement.LRU, true, null, 100);
+		c.access(0x1000, false);
+		c.access(0x1040, false);
+		assertEquals(0, c.access(0x1000, false));
+		assertEquals(0, c.access(0x1040, false));
+	}
+
+	@Test
+	public void testReplacement() {
+		// one set of two lines: A, B, A, C then A again
+		int a = 0x1000, b = 0x1010, c = 0x1020;
+
+		Cache lru = new Cache("L1D", 32, 2, 16, Replacement.LRU, true, null, 100);
+		for (int address : new int[] { a, b, a, c })
+			lru.access(address, false);
+		assertEquals(0, lru.access(a, false)); // B was least recently used
+
+		Cache fifo = new Cache("L1D", 32, 2, 16, Replacement.FIFO, true, null, 100);
+		for (int address : new int[] { a, b, a, c })
+			fifo.access(address, false);
+		assertEquals(100, fifo.access(a, false)); // A was loaded first
+
+		// random replacement is repeatable
+		long[] misses = new long[2];
+		for (int run = 0; run < 2; ++run) {
+			Cache random = new Cache("L1D", 64, 4, 16, Replacement.RANDOM, true, null, 100);
+			for (int i = 0; i < 100; ++i)
+				random.access(0x1000 + 16 * ((i * 7) % 9), false);
+			misses[run] = random.getMisses();
+		}
+		assertEquals(misses[0], misses[1]);
+	}
+
+	@Test
+	public void testWritePolicies() {
+		// write-back: written lines are dirty and written to the level below when evicted
+		Cache l2 = new Cache("L2", 1024, 4, 16, Replacement.LRU, true, null, 100);
+		Cache back = new Cache("L1D", 16, 1, 16, Replacement.LRU, true, l2, 10);
+		assertEquals(110, back.access(0x1000, true)); // allocated on a write miss
+		assertEquals(0, back.access(0x1004, true));
+		assertEquals(1, l2.getAccesses());
+		assertEquals(110, back.access(0x2000, false)); // evicts the dirty line
+		assertEquals(1, back.getWriteBacks());
+		assertEquals(3, l2.getAccesses()); // fetch, fetch, write back
+		assertEquals(1, l2.getWrites());
+
+		// write-through: every write goes to the level below and write misses don't allocate
+		l2 = new Cache("L2", 1024, 4, 16, Replacement.LRU, true, null, 100);
+		Cache through = new Cache("L1D", 16, 1, 16, Replacement.LRU, false, l2, 10);
+		assertEquals(0, through.access(0x1000, true));
+		assertEquals(10, through.access(0x1000, false)); // not allocated by the write, but the L2 cache has it
+		assertEquals(0, through.access(0x1000, true));
+		assertEquals(110, through.access(0x2000, false)); // evicts a clean line
+		assertEquals(0, through.getWriteBacks());
+		assertEquals(2, through.getWrites());
+		assertEquals(1, through.getWriteMisses());
+		assertEquals(2, l2.getWrites());
+	}
+
+	@Test
+	public void testHierarchy() {
+		CacheHierarchy caches = new CacheHierarchy();
+		assertFalse(caches.isEnabled());
+		caches.read(null, 0x1000, 4); // ignored while disabled
+		assertNull(caches.getSnapshot(Level.L1_DATA));
+
+		CacheHierarchy.Configuration c = config();
+		c.l2Size = 4096;
+		caches.configure(c);
+		assertTrue(caches.isEnabled());
+		assertNotNull(caches.getSnapshot(Level.L2));
+
+		caches.read(null, 0x1000, 4); // misses both levels
+		caches.read(null, 0x100E, 4); // spans two lines, the second misses both levels
+		assertEquals(3, caches.getSnapshot(Level.L1_DATA).accesses);
+		assertEquals(2, caches.getSnapshot(Level.L1_DATA).misses);
+		assertEquals(2, caches.getSnapshot(Level.L2).accesses);
+		assertEquals(2 * (c.l2Latency + c.memoryLatency), caches.getStallCycles());
+
+		// the level 2 cache is shared, so the line read as data is already there
+		caches.fetch(new Address(0x1000));
+		assertEquals(3, caches.getSnapshot(Level.L2).accesses);
+		assertEquals(2, caches.getSnapshot(Level.L2).misses);
+
+		List<CacheHierarchy.Site> labels = caches.getLabels();
+		assertEquals(1, labels.size());
+		assertEquals("(unlabelled)", labels.get(0).label);
+		assertEquals(3, labels.get(0).getAccesses());
+
+		caches.reset(null);
+		assertEquals(0, caches.getAccesses());
+		assertEquals(0, caches.getStallCycles());
+		assertTrue(caches.getLabels().isEmpty());
+		assertFalse(caches.getSnapshot(Level.L2).valid[0]);
+
+		caches.configure(null);
+		assertFalse(caches.isEnabled());
+		assertEquals("Caches: not simulated", CacheReport.generate(caches, null).trim());
+	}
+
+	@Test
+	public void testTraversal() {
+		CPU rowMajor = run(new CPU(new IOTest()), matrixProgram(true), config());
+		CPU columnMajor = run(new CPU(new IOTest()), matrixProgram(false), config());
+
+		// every line is used 4 times in a row, or evicted before the next word of it is used
+		Cache.Snapshot rows = rowMajor.getCaches().getSnapshot(Level.L1_DATA);
+		Cache.Snapshot columns = columnMajor.getCaches().getSnapshot(Level.L1_DATA);
+		assertEquals(3072, rows.accesses);
+		assertEquals(3072, columns.accesses);
+		assertEquals(512, rows.misses); // 256 lines, twice
+		assertEquals(1024 + 256, columns.misses);
+		assertTrue(columnMajor.getCaches().getStallCycles() > rowMajor.getCaches().getStallCycles());
+
+		// the misses are attributed to the load in the loop and to the matrix
+		CacheHierarchy.Site worst = columnMajor.getCaches().getInstructions().get(0);
+		assertEquals(14, (int) columnMajor.getProgram().lineNumbers.get(worst.address));
+		assertEquals(1024, worst.getAccesses());
+		assertEquals(1024, worst.getMisses());
+		List<CacheHierarchy.Site> labels = columnMajor.getCaches().getLabels();
+		assertEquals(1, labels.size());
+		assertEquals("matrix", labels.get(0).label);
+		assertEquals(1024 + 256, labels.get(0).getMisses());
+
+		// the loops fit in the instruction cache
+		Cache.Snapshot instructions = rowMajor.getCaches().getSnapshot(Level.L1_INSTRUCTION);
+		assertEquals(rowMajor.getInstructionsRetired(), instructions.accesses);
+		assertTrue(instructions.misses <= 7);
+
+		String report = CacheReport.generate(columnMajor.getCaches(), columnMajor.getProgram());
+		assertTrue(report.contains("matrix"));
+		assertTrue(report.contains("lw $t3"));
+	}
+
+	@Test
+	public void testPipelined() {
+		// the pipeline fetches some instructions which are thrown away, but the data accesses are the same
+		CPU plain = run(new CPU(new IOTest()), matrixProgram(true), config());
+		CPU pipelined = run(new CPUFiveStagePipeline(new IOTest()), matrixProgram(true), config());
+		Cache.Snapshot plainData = plain.getCaches().getSnapshot(Level.L1_DATA);
+		Cache.Snapshot pipelinedData = pipelined.getCaches().getSnapshot(Level.L1_DATA);
+		assertEquals(plainData.accesses, pipelinedData.accesses);
+		assertEquals(plainData.misses, pipelinedData.misses);
+		assertTrue(pipelined.getCaches().getSnapshot(Level.L1_INSTRUCTION).accesses >= pipelined
+				.getInstructionsRetired());
+
+		// disabled by default
+		CPU disabled = run(new CPU(new IOTest()), matrixProgram(true), null);
+		assertFalse(disabled.getCaches().isEnabled());
+		assertEquals(0, disabled.getCaches().getAccesses());
+	}
+}
@@ -0,0 +1,167 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.DirtyRegionTracker;
+import simulizer.simulation.cpu.components.MainMemory;
+
+/**
+ * Test the tracking of the regions of memory which are written to
+ */
+@Category({UnitTests.class})
+public class DirtyRegionTrackerTest {
+
+	/**
+	 * @return the chunks which have been written to, mapped to the bytes written in each
+	 */
+	private TreeMap<Integer, Long> drain(DirtyRegionTracker t) {
+		TreeMap<Integer, Long> chunks = new TreeMap<>();
+		t.drain((address, mask) -> chunks.put(address, mask));
+		return chunks;
+	}
+
+	@Test
+	public void testMarkDirty() {
+		DirtyRegionTracker t = new DirtyRegionTracker();
+
+		// disabled by default
+		t.markDirty(0x1000, 4);
+		assertFalse(t.hasChanges());
+
+		t.setEnabled(true);
+		t.markDirty(0x1004, 4);
+		t.markDirty(0x1006, 1); // overlapping
+		assertTrue(t.hasChanges());
+
+		TreeMap<Integer, Long> chunks = drain(t);
+		assertEquals(1, chunks.size());
+		assertEquals(0xF0L, (long) chunks.get(0x1000));
+
+		// drained
+		assertFalse(t.hasChanges());
+		assertTrue(drain(t).isEmpty());
+	}
+
+	@Test
+	public void testSpanningChunksAndPages() {
+		DirtyRegionTracker t = new DirtyRegionTracker();
+		t.setEnabled(true);
+
+		// 8 bytes either side of a page boundary
+		t.markDirty(0x2000 - 8, 16);
+		TreeMap<Integer, Long> chunks = drain(t);
+		assertEquals(2, chunks.size());
+		assertEquals(0xFFL << 56, (long) chunks.get(0x2000 - 64));
+		assertEquals(0xFFL, (long) chunks.get(0x2000));
+
+		// a large write marks every chunk in its range
+		t.markDirty(0x10000, 3 * 4096);
+		chunks = drain(t);
+		assertEquals(3 * 4096 / DirtyRegionTracker.CHUNK_SIZE, chunks.size());
+		for (long mask : chunks.values())
+			assertEquals(-1L, mask);
+	}
+
+	@Test(timeout = 2000)
+	public void testTopOfMemory() {
+		DirtyRegionTracker t = new DirtyRegionTracker();
+		t.setEnabled(true);
+
+		// the end of the top page doesn't fit in an int (the stack lives just below it)
+		t.markDirty(0x7ffffffc, 4);
+		t.markDirty(0x7ffff3c4, 4);
+		TreeMap<Integer, Long> chunks = drain(t);
+		assertEquals(2, chunks.size());
+		assertEquals(0xFL << 60, (long) chunks.get(0x7fffffc0));
+		assertEquals(0xFL << 4, (long) chunks.get(0x7ffff3c0));
+
+		// spanning into the top page
+		t.markDirty(0x7ffff000 - 2, 4);
+		chunks = drain(t);
+		assertEquals(0x3L << 62, (long) chunks.get(0x7ffff000 - 64));
+		assertEquals(0x3L, (long) chunks.get(0x7ffff000));
+	}
+
+	@Test(timeout = 5000)
+	public void testStackWrites() {
+		String program = "" +
+				".text\n" +
+				"main:\n" +
+				"    li $t1, 7\n" +
+				"    addiu $sp, $sp, -4\n" +
+				"    sw $t1, 0($sp)\n" +
+				"    li $v0, 10\n" +
+				"    syscall\n";
+		Program p = Assembler.assemble(program, null, false);
+		CPU cpu = new CPU(new IOTest());
+		cpu.loadProgram(p);
+		cpu.getMainMemory().getDirtyRegions().setEnabled(true);
+		cpu.runProgram();
+
+		TreeMap<Integer, Long> chunks = drain(cpu.getMainMemory().getDirtyRegions());
+		assertEquals(1, chunks.size());
+		assertTrue(chunks.firstKey() > 0x7fff0000);
+	}
+
+	@Test
+	public void testDisable() {
+		DirtyRegionTracker t = new DirtyRegionTracker();
+		t.setEnabled(true);
+		t.markDirty(0x1000, 4);
+		t.setEnabled(false);
+		assertFalse(t.hasChanges());
+		t.setEnabled(true);
+		assertTrue(drain(t).isEmpty());
+	}
+
+	@Test
+	public void testProgramWrites() throws Exception {
+		String program = "" +
+				".data\n" +
+				"arr: .space 64\n" +
+				".text\n" +
+				"main:\n" +
+				"    la $t0, arr\n" +
+				"    li $t1, 7\n" +
+				"    sw $t1, 8($t0)\n" +
+				"    sb $t1, 33($t0)\n" +
+				"    li $v0, 10\n" +
+				"    syscall\n";
+		Program p = Assembler.assemble(program, null, false);
+		CPU cpu = new CPU(new IOTest());
+		cpu.loadProgram(p);
+
+		MainMemory memory = cpu.getMainMemory();
+		memory.getDirtyRegions().setEnabled(true);
+		cpu.runProgram();
+
+		int arr = p.dataSegmentStart.getValue();
+		long[] written = new long[2];
+		memory.getDirtyRegions().drain((address, mask) -> {
+			for (int i = 0; i < DirtyRegionTracker.CHUNK_SIZE; i++) {
+				if ((mask & (1L << i)) != 0) {
+					int offset = address + i - arr;
+					assertTrue(offset >= 0 && offset < 64);
+					written[offset < 32 ? 0 : 1] |= 1L << (offset % 32);
+				}
+			}
+		});
+		assertEquals(0xF00L, written[0]); // bytes 8-11
+		assertEquals(0x2L, written[1]); // byte 33
+
+		assertTrue(memory.isReadable(arr, 64));
+		assertFalse(memory.isReadable(memory.getBottomOfDynamicData().getValue(), 4)); // nothing allocated
+		assertFalse(memory.isReadable(0, 4));
+	}
+}
@@ -233,5 +233,27 @@ public class DynamicDataSegmentTest {
 			heap.setBytes(-1, new byte[]{0x00});
 		}
 	}
-}
 
+	/**
+	 * many small allocations should be able to fill the whole heap (the space reserved for the heap grows by more
+	 * than is requested each time, which must not count against the maximum length)
+	 * @throws HeapException if problem with heap
+	 */
+	@Test
+	public void sbrkSmallAllocations() throws HeapException
+	{
+		setUpHeap(4096);
+		for(int i = 0; i < 1024; ++i) {
+			assertEquals(10 + i*4, heap.sbrk(4).getValue());
+		}
+		heap.setBytes(4092, new byte[]{0x12});
+		assertEquals(0x12, heap.getBytes(4092, 1)[0]);
+
+		// shrinking and growing again reuses the reserved space
+		assertEquals(10 + 4096 - 8, heap.sbrk(-8).getValue());
+		assertEquals(10 + 4096 - 8, heap.sbrk(8).getValue());
+
+		exception.expect(HeapException.class);
+		heap.sbrk(4);
+	}
+}
@@ -0,0 +1,299 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Address;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.simulation.cpu.CPIBreakdown;
+import simulizer.simulation.cpu.StallStatistics;
+import simulizer.simulation.cpu.branch_prediction.BranchPredictor.Strategy;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUFiveStagePipeline;
+import simulizer.simulation.cpu.scheduling.ReorderingAnalysis;
+import simulizer.simulation.data.representation.DataConverter;
+import simulizer.simulation.data.representation.Word;
+import simulizer.simulation.messages.PipelineHazardMessage;
+import simulizer.simulation.messages.PipelineHazardMessage.Hazard;
+import simulizer.simulation.messages.PipelineStateMessage;
+import simulizer.simulation.messages.ProblemMessage;
+import simulizer.simulation.messages.SimulationListener;
+
+/**
+ * Test the timing of the five stage pipeline and the reordering what-if
+ */
+@Category({UnitTests.class})
+public class FiveStagePipelineTest {
+
+	/**
+	 * sums an array into $s0. Each iteration has a load-use dependency, and a dependency between an addition and the
+	 * branch straight after it
+	 */
+	private static final String sumProgram = ".data\n" +
+			"values: .word 3, 1, 4, 1, 5\n" +
+			".text\nmain:\n" +
+			"la $t0, values\n" +
+			"li $t1, 5\n" +
+			"li $s0, 0\n" +
+			"loop:\n" +
+			"lw $t2, 0($t0)\n" +
+			"addu $s0, $s0, $t2\n" +
+			"addi $t0, $t0, 4\n" +
+			"addi $t1, $t1, -1\n" +
+			"bgtz $t1, loop\n" +
+			"li $v0, 10\n" +
+			"syscall\n";
+
+	/**
+	 * fills an array, with no dependency between the store and the instructions around it
+	 */
+	private static final String storeProgram = ".data\n" +
+			"values: .space 40\n" +
+			".text\nmain:\n" +
+			"la $t0, values\n" +
+			"li $t1, 10\n" +
+			"loop:\n" +
+			"sw $t1, 0($t0)\n" +
+			"addi $t0, $t0, 4\n" +
+			"addi $t1, $t1, -1\n" +
+			"nop\n" +
+			"bgtz $t1, loop\n" +
+			"li $v0, 10\n" +
+			"syscall\n";
+
+	/**
+	 * sums pairs of values, using each value straight after loading it
+	 */
+	private static String pairsProgram(boolean reordered) {
+		String body = reordered ?
+				"lw $t2, 0($t0)\n" +
+				"lw $t3, 4($t0)\n" +
+				"addi $t0, $t0, 8\n" +
+				"addu $s0, $s0, $t2\n" +
+				"addu $s1, $s1, $t3\n" :
+				"lw $t2, 0($t0)\n" +
+				"addu $s0, $s0, $t2\n" +
+				"lw $t3, 4($t0)\n" +
+				"addu $s1, $s1, $t3\n" +
+				"addi $t0, $t0, 8\n";
+		return ".data\n" +
+				"values: .word 3, 1, 4, 1, 5, 9, 2, 6\n" +
+				".text\nmain:\n" +
+				"la $t0, values\n" +
+				"li $t1, 8\n" +
+				"li $s0, 0\n" +
+				"li $s1, 0\n" +
+				"loop:\n" +
+				body +
+				"addi $t1, $t1, -2\n" +
+				"bgtz $t1, loop\n" +
+				"mult $s0, $s1\n" +
+				"mflo $s2\n" +
+				"li $v0, 10\n" +
+				"syscall\n";
+	}
+
+	private static class Result {
+		long[] registers;
+		long instructions;
+		CPIBreakdown cpi;
+		StallStatistics stalls;
+		List<PipelineStateMessage> states = new ArrayList<>();
+		List<Hazard> hazards = new ArrayList<>();
+		List<ProblemMessage> problems = new ArrayList<>();
+		Program program;
+		CPU cpu;
+	}
+
+	private static Result run(CPU cpu, String program) {
+		Result r = new Result();
+		cpu.registerListener(new SimulationListener() {
+			@Override
+			public void processPipelineStateMessage(PipelineStateMessage m) {
+				r.states.add(m);
+			}
+
+			@Override
+			public void processPipelineHazardMessage(PipelineHazardMessage m) {
+				r.hazards.add(m.getHazard());
+			}
+
+			@Override
+			public void processProblemMessage(ProblemMessage m) {
+				r.problems.add(m);
+			}
+		});
+		r.program = Assembler.assemble(program, null, false);
+		assertNotNull(r.program);
+		cpu.loadProgram(r.program);
+		cpu.setCycleFreq(0);
+		cpu.runProgram();
+		Word[] registers = cpu.getRegisters();
+		r.registers = new long[registers.length];
+		for (int i = 0; i < registers.length; ++i)
+			r.registers[i] = DataConverter.decodeAsSigned(registers[i].getBytes());
+		r.instructions = cpu.getInstructionsRetired();
+		if (cpu instanceof CPUFiveStagePipeline) {
+			r.cpi = ((CPUFiveStagePipeline) cpu).getCPIBreakdown();
+			r.stalls = ((CPUFiveStagePipeline) cpu).getStallStatistics();
+		}
+		r.cpu = cpu;
+		cpu.shutdown();
+		return r;
+	}
+
+	private static Result runFiveStage(String program, boolean forwarding, boolean singleMemoryPort,
+			Strategy strategy) {
+		CPUFiveStagePipeline cpu = new CPUFiveStagePipeline(new IOTest());
+		cpu.setForwarding(forwarding);
+		cpu.setSingleMemoryPort(singleMemoryPort);
+		cpu.setBranchPredictor(strategy.create(16));
+		return run(cpu, program);
+	}
+
+	private static void assertAccountedFor(CPIBreakdown b) {
+		assertEquals(b.cycles,
+				b.instructions + b.rawStalls + b.structuralStalls + b.controlCycles + b.getOtherCycles());
+		assertTrue(b.getOtherCycles() <= 2); // filling the pipeline
+	}
+
+	@Test
+	public void testSameResults() {
+		for (String program : new String[] { sumProgram, storeProgram, pairsProgram(false) }) {
+			Result reference = run(new CPU(new IOTest()), program);
+			for (boolean forwarding : new boolean[] { false, true }) {
+				for (boolean port : new boolean[] { false, true }) {
+					for (Strategy s : new Strategy[] { Strategy.NOT_TAKEN, Strategy.TWO_BIT, Strategy.BTB }) {
+						Result r = runFiveStage(program, forwarding, port, s);
+						String config = s + " forwarding=" + forwarding + " port=" + port;
+						// hazards only change the timing, never the result
+						assertTrue(config, Arrays.equals(reference.registers, r.registers));
+						assertEquals(config, reference.instructions, r.instructions);
+						assertTrue(config, r.problems.isEmpty());
+						assertAccountedFor(r.cpi);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testStages() {
+		Result r = runFiveStage(sumProgram, true, false, Strategy.NOT_TAKEN);
+		// la, li, li then lw: each instruction moves down a stage every cycle
+		for (int cycle = 0; cycle < 4; ++cycle) {
+			PipelineStateMessage m = r.states.get(cycle + 4);
+			assertEquals(5, m.getStageCount());
+			Address fetched = r.states.get(cycle).getFetched();
+			assertEquals(fetched, r.states.get(cycle + 1).getDecoded());
+			assertEquals(fetched, r.states.get(cycle + 2).getExecuted());
+			assertEquals(fetched, r.states.get(cycle + 3).getMemory());
+			assertEquals(fetched, m.getWriteback());
+		}
+	}
+
+	@Test
+	public void testDataHazards() {
+		// without forwarding, consecutive dependent instructions stall for two cycles: lw => addu and addi => bgtz on
+		// each iteration, then li => syscall
+		Result stalling = runFiveStage(sumProgram, false, false, Strategy.NOT_TAKEN);
+		assertEquals(5 * 2 + 5 * 2 + 2, stalling.cpi.rawStalls);
+		assertEquals(stalling.cpi.rawStalls, stalling.stalls.getStalls());
+		assertEquals(0, stalling.stalls.getForwarded());
+
+		// with forwarding only the loads stall, for one cycle
+		Result forwarding = runFiveStage(sumProgram, true, false, Strategy.NOT_TAKEN);
+		assertEquals(5, forwarding.cpi.rawStalls);
+		assertEquals(5, forwarding.hazards.stream().filter(h -> h == Hazard.LOAD_USE).count());
+		assertEquals(0, forwarding.hazards.stream().filter(h -> h == Hazard.RAW).count());
+		assertEquals(stalling.cpi.cycles - 17, forwarding.cpi.cycles);
+		assertEquals(stalling.cpi.controlCycles, forwarding.cpi.controlCycles);
+
+		for (StallStatistics.Dependency d : forwarding.stalls.getDependencies()) {
+			if (d.register == Register.t2)
+				assertEquals(5, d.getStalls()); // lw => addu
+			else
+				assertEquals(0, d.getStalls());
+		}
+	}
+
+	@Test
+	public void testStructuralHazards() {
+		Result separate = runFiveStage(storeProgram, true, false, Strategy.BTB);
+		Result shared = runFiveStage(storeProgram, true, true, Strategy.BTB);
+		assertEquals(0, separate.cpi.structuralStalls);
+		// nothing is fetched while each store is in the memory stage
+		assertEquals(10, shared.cpi.structuralStalls);
+		assertEquals(separate.cpi.cycles + 10, shared.cpi.cycles);
+		assertTrue(shared.hazards.contains(Hazard.STRUCTURAL));
+	}
+
+	@Test
+	public void testReordering() {
+		for (boolean forwarding : new boolean[] { false, true }) {
+			Result original = runFiveStage(pairsProgram(false), forwarding, false, Strategy.TWO_BIT);
+			CPUFiveStagePipeline cpu = (CPUFiveStagePipeline) original.cpu;
+			ReorderingAnalysis analysis = new ReorderingAnalysis(original.program, forwarding, cpu::getExecutions);
+
+			// only the loop can be improved (hi and lo never stall the pipeline)
+			List<ReorderingAnalysis.Block> improvements = analysis.getImprovements();
+			assertEquals(1, improvements.size());
+			ReorderingAnalysis.Block loop = improvements.get(0);
+			assertEquals(4, loop.executions);
+			assertEquals(forwarding ? 2 : 6, loop.stallsBefore);
+			assertEquals(forwarding ? 0 : 2, loop.stallsAfter);
+			assertEquals(analysis.getCyclesSaved(), loop.getCyclesSaved());
+
+			// each value is still loaded before it is used, and the branch stays at the end
+			List<Integer> lines = new ArrayList<>();
+			for (Address a : loop.reordered)
+				lines.add(original.program.lineNumbers.get(a));
+			assertTrue(lines.indexOf(9) < lines.indexOf(10));
+			assertTrue(lines.indexOf(11) < lines.indexOf(12));
+			assertTrue(lines.indexOf(9) < lines.indexOf(13) && lines.indexOf(11) < lines.indexOf(13));
+			assertEquals(15, (int) lines.get(lines.size() - 1));
+
+			// running the reordered loop saves as many cycles as estimated
+			Result reordered = runFiveStage(pairsProgram(true), forwarding, false, Strategy.TWO_BIT);
+			assertTrue(Arrays.equals(original.registers, reordered.registers));
+			assertEquals(original.cpi.cycles - loop.getCyclesSaved(), reordered.cpi.cycles);
+		}
+	}
+
+	@Test
+	public void testMemoryOrderKept() {
+		// the load can't be moved above the store (they may be to the same address) but the independent addition can
+		String program = ".data\nx: .word 0\n.text\nmain:\n" +
+				"la $t0, x\n" +
+				"lw $t1, 0($t0)\n" +
+				"addi $t1, $t1, 1\n" +
+				"sw $t1, 0($t0)\n" +
+				"lw $t2, 0($t0)\n" +
+				"addi $t2, $t2, 1\n" +
+				"li $t3, 5\n" +
+				"li $v0, 10\n" +
+				"syscall\n";
+		Result r = runFiveStage(program, true, false, Strategy.NOT_TAKEN);
+		ReorderingAnalysis analysis = new ReorderingAnalysis(r.program, true,
+				((CPUFiveStagePipeline) r.cpu)::getExecutions);
+		ReorderingAnalysis.Block block = analysis.getBlocks().get(0);
+		List<Integer> lines = new ArrayList<>();
+		for (Address a : block.reordered)
+			lines.add(r.program.lineNumbers.get(a));
+		assertTrue(lines.indexOf(5) < lines.indexOf(6) && lines.indexOf(6) < lines.indexOf(7));
+		assertTrue(lines.indexOf(7) < lines.indexOf(8));
+		assertEquals(2, block.stallsBefore);
+		assertEquals(0, block.stallsAfter);
+	}
+}
@@ -0,0 +1,117 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.simulation.cpu.CPIBreakdown;
+import simulizer.simulation.cpu.StallStatistics;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.cpu.components.CPUPipeline;
+import simulizer.simulation.data.representation.DataConverter;
+
+/**
+ * Test forwarding results in the pipelined CPU and accounting for the cycles lost to stalls
+ */
+@Category({UnitTests.class})
+public class ForwardingTest {
+
+	/**
+	 * sums an array into $s0. Each iteration has a load-use dependency (which always stalls) and a dependency between
+	 * an addition and a branch (which can be forwarded)
+	 */
+	private static final String program = ".data\n" +
+			"values: .word 3, 1, 4, 1, 5\n" +
+			".text\nmain:\n" +
+			"la $t0, values\n" +
+			"li $t1, 5\n" +
+			"li $s0, 0\n" +
+			"loop:\n" +
+			"lw $t2, 0($t0)\n" +
+			"addu $s0, $s0, $t2\n" +
+			"addi $t0, $t0, 4\n" +
+			"addi $t1, $t1, -1\n" +
+			"bgtz $t1, loop\n" +
+			"li $v0, 10\n" +
+			"syscall\n";
+
+	private CPUPipeline run(boolean forwarding) {
+		CPUPipeline cpu = new CPUPipeline(new IOTest());
+		cpu.setForwarding(forwarding);
+		Program p = Assembler.assemble(program, null, false);
+		assertNotNull(p);
+		cpu.loadProgram(p);
+		cpu.setCycleFreq(0);
+		cpu.runProgram();
+		cpu.shutdown();
+		assertEquals(14, DataConverter.decodeAsSigned(cpu.getRegister(Register.s0).getBytes()));
+		return cpu;
+	}
+
+	private static void assertAccountedFor(CPIBreakdown b) {
+		assertEquals(b.cycles, b.instructions + b.rawStalls + b.controlCycles + b.getOtherCycles());
+		assertTrue(b.getOtherCycles() <= 2); // filling and draining the pipeline
+		assertEquals(b.getCPI(), b.getBaseCPI() + b.getRAWCPI() + b.getControlCPI() + b.getOtherCPI(), 1e-9);
+	}
+
+	@Test
+	public void testForwarding() {
+		CPUPipeline stalling = run(false);
+		CPUPipeline forwarding = run(true);
+
+		// the same instructions are run either way
+		assertEquals(stalling.getInstructionsRetired(), forwarding.getInstructionsRetired());
+
+		StallStatistics s = stalling.getStallStatistics();
+		assertEquals(10, s.getStalls());
+		assertEquals(0, s.getForwarded());
+
+		// the loads still stall
+		StallStatistics f = forwarding.getStallStatistics();
+		assertEquals(5, f.getStalls());
+		assertEquals(5, f.getForwarded());
+
+		assertEquals(stalling.getCycles() - 5, forwarding.getCycles());
+
+		CPIBreakdown sb = stalling.getCPIBreakdown();
+		CPIBreakdown fb = forwarding.getCPIBreakdown();
+		assertAccountedFor(sb);
+		assertAccountedFor(fb);
+		assertEquals(10, sb.rawStalls);
+		assertEquals(5, fb.rawStalls);
+		assertEquals(sb.controlCycles, fb.controlCycles);
+		assertTrue(fb.getCPI() < sb.getCPI());
+	}
+
+	@Test
+	public void testDependencies() {
+		List<StallStatistics.Dependency> ds = run(true).getStallStatistics().getDependencies();
+		assertEquals(2, ds.size());
+
+		for (StallStatistics.Dependency d : ds) {
+			assertEquals(d.producer.getValue() + 4, d.consumer.getValue()); // consecutive instructions
+			if (d.register == Register.t2) { // lw => addu
+				assertEquals(5, d.getStalls());
+				assertEquals(0, d.getForwarded());
+			} else { // addi => bgtz
+				assertEquals(Register.t1, d.register);
+				assertEquals(0, d.getStalls());
+				assertEquals(5, d.getForwarded());
+			}
+		}
+
+		// cleared for the next program
+		CPU cpu = run(false);
+		assertEquals(2, ((CPUPipeline) cpu).getStallStatistics().getDependencies().size());
+		assertEquals(10, ((CPUPipeline) cpu).getStallStatistics().getStalls());
+	}
+}
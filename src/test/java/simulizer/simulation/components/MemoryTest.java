@@ -204,8 +204,50 @@ public class MemoryTest {
 		}
 			
 	}
-	
-	
+
+
+	/**this method will test reading and writing whole regions of memory through existing buffers
+	 * in every segment, including the part of the stack which has not been written to yet
+	 */
+	@Test
+	public void testBufferedReadWriteMem() throws MemoryException, HeapException, StackException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException
+	{
+		String myInstructions = "li $v0, 9;\n" +
+								"li $a0, 16;\n" +
+								"syscall;\n";//allocating some heap mem (amount in $a0)
+
+		Program program = createProgram(myInstructions);
+
+		CPU cpu = new CPU(new IOTest());
+		cpu.loadProgram(program);
+		cpu.runProgram();//run the program
+
+		Address dataSegStart = program.dataSegmentStart;
+		Address dynamicSegStart = program.dynamicSegmentStart;
+		Address topOfStack = new Address((int)DataConverter.decodeAsSigned(program.initialSP.getBytes()));
+
+		Field mem = cpu.getClass().getDeclaredField("memory");
+		mem.setAccessible(true);
+		MainMemory memory = (MainMemory)mem.get(cpu);//getting memory
+
+		byte[] src = new byte[]{0x7F,0x00,0x11,0x12,0x33,0x44,0x55,0x66,0x77,0x7F};
+		int[] addresses = {dataSegStart.getValue(), dynamicSegStart.getValue(), topOfStack.getValue()-8};
+
+		for(int address : addresses) {
+			memory.writeToMem(address, src, 1, 8); // skip the padding either side
+			byte[] dest = new byte[]{0x7F,0x7F,0x7F,0x7F,0x7F,0x7F,0x7F,0x7F,0x7F,0x7F};
+			memory.readFromMem(address, dest, 1, 8);
+			assertArrayEquals(src, dest);
+			assertArrayEquals(new byte[]{0x33,0x44,0x55,0x66}, memory.readFromMem(address+3, 4));
+		}
+
+		{//reading a region which is partly below the lowest stack address written to is padded with zeroes
+			byte[] dest = new byte[8];
+			memory.readFromMem(topOfStack.getValue()-200, dest, 0, 8);
+			assertArrayEquals(new byte[8], dest);
+		}
+	}
+
 	/**this method will test the reading of the text segment
 	 * it will check if it can find valid instructions in the segment
 	 * invalid instructions within the segment
@@ -0,0 +1,105 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.simulation.cpu.user_interaction.OutputBuffer;
+
+/**
+ * Test the capped line buffer used to store program output
+ */
+@Category({UnitTests.class})
+public class OutputBufferTest {
+
+	@Test
+	public void testAppend() {
+		OutputBuffer b = new OutputBuffer(100);
+		assertEquals(1, b.getLineCount());
+		assertEquals("", b.getLine(0));
+
+		b.append("hello ");
+		b.append("world\nsecond");
+		b.append('\n');
+		b.append("third");
+
+		assertEquals(3, b.getLineCount());
+		assertEquals("hello world", b.getLine(0));
+		assertEquals("second", b.getLine(1));
+		assertEquals("third", b.getLine(2));
+		assertEquals("hello world\nsecond\nthird", b.toString());
+
+		List<String> lines = new ArrayList<>();
+		b.getLines(1, lines);
+		assertEquals(2, lines.size());
+		assertEquals("second", lines.get(0));
+		assertEquals("third", lines.get(1));
+	}
+
+	@Test
+	public void testLongLinesSplit() {
+		OutputBuffer b = new OutputBuffer(100);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < OutputBuffer.MAX_LINE_LENGTH + 10; i++)
+			sb.append('a');
+		b.append(sb);
+
+		assertEquals(2, b.getLineCount());
+		assertEquals(OutputBuffer.MAX_LINE_LENGTH, b.getLine(0).length());
+		assertEquals(10, b.getLine(1).length());
+	}
+
+	@Test
+	public void testScrollBack() {
+		final int maxLines = 100;
+		OutputBuffer b = new OutputBuffer(maxLines);
+		for (int i = 0; i < 10000; i++)
+			b.append(i + "\n");
+
+		assertEquals(10001, b.getLineCount());
+		long first = b.getFirstLine();
+		assertTrue(first > 0);
+		// at least maxLines lines are kept
+		assertTrue(b.getLineCount() - first >= maxLines);
+		// the oldest lines are dropped whole chunks at a time, but never more than a chunk too many are kept
+		assertTrue(b.getLineCount() - first <= maxLines + 1024 + 1);
+		assertEquals(Long.toString(first), b.getLine(first));
+		assertEquals("9999", b.getLine(9999));
+
+		// lines which have been dropped are skipped
+		List<String> lines = new ArrayList<>();
+		b.getLines(0, lines);
+		assertEquals(b.getLineCount() - first, lines.size());
+		assertEquals(Long.toString(first), lines.get(0));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testDroppedLine() {
+		OutputBuffer b = new OutputBuffer(10);
+		for (int i = 0; i < 5000; i++)
+			b.append(i + "\n");
+		b.getLine(0);
+	}
+
+	@Test
+	public void testClear() {
+		OutputBuffer b = new OutputBuffer(100);
+		b.append("one\ntwo");
+		long generation = b.getGeneration();
+		b.clear();
+
+		assertTrue(b.getGeneration() != generation);
+		assertEquals(0, b.getFirstLine());
+		assertEquals(1, b.getLineCount());
+		assertEquals("", b.toString());
+
+		b.append("three\n");
+		assertEquals("three", b.getLine(0));
+	}
+}
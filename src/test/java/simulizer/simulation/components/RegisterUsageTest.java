@@ -0,0 +1,69 @@
+package simulizer.simulation.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.assembler.representation.Program;
+import simulizer.assembler.representation.Register;
+import simulizer.assembler.representation.Statement;
+import simulizer.simulation.cpu.scheduling.RegisterUsage;
+
+/**
+ * Test the registers which instructions are found to read and write (used by both pipelines to detect hazards)
+ */
+@Category({UnitTests.class})
+public class RegisterUsageTest {
+
+	/**
+	 * @return the statement of a program consisting of a single instruction
+	 */
+	private Statement statement(String instruction) {
+		Program p = Assembler.assemble(".data\nvalue: .word 0\n.text\nmain:\n" + instruction + "\n", null, false);
+		return p.textSegment.get(p.textSegmentStart);
+	}
+
+	private void assertReads(String instruction, Register... expected) {
+		assertEquals(instruction, Arrays.asList(expected), RegisterUsage.operandReads(statement(instruction)));
+	}
+
+	@Test
+	public void testOperandReads() {
+		assertReads("add $t0, $t1, $t2", Register.t1, Register.t2);
+		assertReads("addi $t0, $t1, 5", Register.t1);
+		assertReads("mult $t1, $t2", Register.t1, Register.t2);
+		assertReads("mthi $t1", Register.t1);
+		assertReads("jr $ra", Register.ra);
+		assertReads("beq $t1, $t2, main", Register.t1, Register.t2);
+		assertReads("sw $t1, 4($sp)", Register.t1, Register.sp);
+		assertReads("lw $t0, 4($sp)", Register.sp);
+		assertReads("lw $t0, value");
+		// $zero can never depend on another instruction
+		assertReads("add $t0, $zero, $t1", Register.t1);
+		// the arguments of a syscall are read when it is executed
+		assertReads("syscall");
+	}
+
+	@Test
+	public void testSyscall() {
+		Statement syscall = statement("syscall");
+		// without knowing the code, assume every argument is used
+		assertEquals(Arrays.asList(Register.v0, Register.a0, Register.a1), RegisterUsage.reads(syscall));
+		assertEquals(Collections.singletonList(Register.v0), RegisterUsage.writes(syscall));
+
+		List<Register> v0 = Collections.singletonList(Register.v0);
+		assertEquals(v0, RegisterUsage.syscallWrites(5)); // read int
+		assertEquals(v0, RegisterUsage.syscallWrites(9)); // sbrk
+		assertEquals(v0, RegisterUsage.syscallWrites(12)); // read char
+		assertEquals(Collections.emptyList(), RegisterUsage.syscallWrites(1)); // print int
+		assertEquals(Collections.emptyList(), RegisterUsage.syscallWrites(8)); // read string (writes to memory)
+		assertEquals(Collections.emptyList(), RegisterUsage.syscallWrites(10)); // exit
+	}
+}
@@ -0,0 +1,50 @@
+package simulizer.ui.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import category.UnitTests;
+
+/**
+ * Test the choice of clock speed made by the automatic speed control
+ */
+@Category({UnitTests.class})
+public class SpeedMonitorTest {
+	private static final double MIN = 0.05, MAX = 5000;
+
+	@Test
+	public void testLagging() {
+		assertFalse(SpeedMonitor.isLagging(100, 100));
+		assertFalse(SpeedMonitor.isLagging(100, 95));
+		assertTrue(SpeedMonitor.isLagging(100, 80));
+	}
+
+	@Test
+	public void testSlowDown() {
+		// slower than the speed which was reached, so that the simulation can keep up
+		assertEquals(36, SpeedMonitor.chooseFreq(100, 40, 0, MIN, MAX), 1e-9);
+		// even if it was idle some of the time (eg waiting on the clock at the start of the measurement)
+		assertEquals(36, SpeedMonitor.chooseFreq(100, 40, 0.5, MIN, MAX), 1e-9);
+		// but no slower than the minimum
+		assertEquals(MIN, SpeedMonitor.chooseFreq(1, 0, 0, MIN, MAX), 1e-9);
+	}
+
+	@Test
+	public void testSpeedUp() {
+		// idle for a lot of the time
+		assertEquals(125, SpeedMonitor.chooseFreq(100, 100, 0.5, MIN, MAX), 1e-9);
+		// but no faster than the maximum
+		assertEquals(MAX, SpeedMonitor.chooseFreq(4500, 4500, 0.5, MIN, MAX), 1e-9);
+	}
+
+	@Test
+	public void testSteady() {
+		// keeping up without much time to spare
+		assertEquals(100, SpeedMonitor.chooseFreq(100, 100, 0.1, MIN, MAX), 1e-9);
+		assertEquals(100, SpeedMonitor.chooseFreq(100, 95, 0.25, MIN, MAX), 1e-9);
+	}
+}
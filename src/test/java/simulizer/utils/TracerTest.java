@@ -0,0 +1,147 @@
+package simulizer.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import category.UnitTests;
+import simulizer.assembler.Assembler;
+import simulizer.simulation.components.IOTest;
+import simulizer.simulation.cpu.components.CPU;
+import simulizer.simulation.messages.SimulationListener;
+
+/**
+ * Test recording spans and saving them as Chrome Trace Event JSON
+ */
+@Category({UnitTests.class})
+public class TracerTest {
+
+	@After
+	public void stopTracing() {
+		Tracer.stop();
+	}
+
+	private JsonArray save() throws IOException {
+		File f = File.createTempFile("trace", ".json");
+		try {
+			Tracer.save(f);
+			try (Reader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+				return new JsonParser().parse(r).getAsJsonObject().getAsJsonArray("traceEvents");
+			}
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testRingBuffer() throws IOException {
+		assertFalse(Tracer.isEnabled());
+		assertEquals(0, Tracer.begin());
+
+		Tracer.start(4);
+		long t = System.nanoTime();
+		for (int i = 0; i < 6; i++)
+			Tracer.record(Tracer.CPU, "span \"" + i + "\"", t + i * 1000, t + i * 1000 + 500);
+		Tracer.record(Tracer.CPU, "before the trace", t - 1000000000L, t);
+		assertEquals(4, Tracer.getSpanCount());
+
+		JsonArray events = save();
+		assertFalse(Tracer.isEnabled());
+
+		int spans = 0;
+		for (JsonElement e : events) {
+			JsonObject o = e.getAsJsonObject();
+			if (o.get("ph").getAsString().equals("M")) {
+				assertEquals(Thread.currentThread().getName(), o.getAsJsonObject("args").get("name").getAsString());
+				continue;
+			}
+			// the oldest spans are overwritten, in order
+			assertEquals("span \"" + (spans + 2) + "\"", o.get("name").getAsString());
+			assertEquals(Tracer.CPU, o.get("cat").getAsString());
+			assertEquals(0.5, o.get("dur").getAsDouble(), 1e-9);
+			assertEquals(Thread.currentThread().getId(), o.get("tid").getAsLong());
+			spans++;
+		}
+		assertEquals(4, spans);
+	}
+
+	@Test
+	public void testRecordWhileRestarting() throws Exception {
+		// restarting with a different capacity or saving while another thread is recording must not fail
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Runnable recorder = () -> {
+			try {
+				while (!done.get()) {
+					long now = System.nanoTime();
+					Tracer.record(Tracer.CPU, "span", now, now);
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		};
+		Thread[] threads = new Thread[4];
+		Tracer.start(1000);
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(recorder, "recorder " + i);
+			threads[i].start();
+		}
+		try {
+			for (int i = 0; i < 2000 && failure.get() == null; i++) {
+				Tracer.start(i % 2 == 0 ? 7 : 1000);
+				if (i % 10 != 0)
+					continue;
+				for (JsonElement e : save()) {
+					JsonObject o = e.getAsJsonObject();
+					if (o.get("ph").getAsString().equals("X"))
+						assertEquals("span", o.get("name").getAsString());
+				}
+			}
+		} finally {
+			done.set(true);
+			for (Thread t : threads)
+				t.join();
+		}
+		assertEquals(null, failure.get());
+	}
+
+	@Test
+	public void testSimulation() throws IOException {
+		Tracer.start(Tracer.DEFAULT_CAPACITY);
+		CPU cpu = new CPU(new IOTest());
+		cpu.registerListener(new SimulationListener() {});
+		cpu.loadProgram(Assembler.assemble(".text\nmain:\nli $v0, 10\nsyscall\n", null, false));
+		cpu.setCycleFreq(0);
+		cpu.runProgram();
+		cpu.shutdown();
+
+		Set<String> names = new HashSet<>();
+		for (JsonElement e : save())
+			names.add(e.getAsJsonObject().get("name").getAsString());
+		assertTrue(names.contains("assemble"));
+		assertTrue(names.contains("fetch"));
+		assertTrue(names.contains("decode"));
+		assertTrue(names.contains("execute"));
+		assertTrue(names.contains("wait for listeners"));
+		assertTrue(names.contains(TracerTest.class.getName() + "$1")); // the listener
+	}
+}
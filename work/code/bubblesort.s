@@ -15,7 +15,7 @@ main:
 
 nop # @{ startAddress = $v0.get() }@
     # @{ if($v1.get() == -1) ret() // no elements }@
-    # @{ l.setList(simulation.readUnsignedWordsFromMem($v1.get(), 4*($v0.get()-1))) }@
+    # @{ l.setList(simulation.readUnsignedWordArrayFromMem($v1.get(), 4*$v0.get())) }@
     # @{ l.show()     }@
     # @{ setSpeed(10) }@
 
@@ -37,7 +37,7 @@ NEmpty: li $t0, 4               ; #setting t0 to 4, will let me go back to the s
         la $s0, ($s1)           ; #storing the start of the heap into $s0
 
         nop  # @{ startAddress = $s0.get() }@
-             # @{ l.setList(simulation.readUnsignedWordsFromMem($s0.get(), $s2.get()-$s0.get())) }@
+             # @{ l.setList(simulation.readUnsignedWordArrayFromMem($s0.get(), $s2.get()-$s0.get()+4)) }@
              # @{ l.show()     }@
              # @{ setSpeed(10) }@
 